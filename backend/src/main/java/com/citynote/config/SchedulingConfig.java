@@ -0,0 +1,10 @@
+package com.citynote.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// background jobs: like counter flushes and other @Scheduled maintenance
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,6 +1,7 @@
 package com.citynote.config;
 
 import com.citynote.security.JwtRequestFilter;
+import com.citynote.security.UploadAdmissionFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,9 +20,11 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
 
     private final JwtRequestFilter jwtRequestFilter;
+    private final UploadAdmissionFilter uploadAdmissionFilter;
 
-    public SecurityConfig(JwtRequestFilter jwtRequestFilter) {
+    public SecurityConfig(JwtRequestFilter jwtRequestFilter, UploadAdmissionFilter uploadAdmissionFilter) {
         this.jwtRequestFilter = jwtRequestFilter;
+        this.uploadAdmissionFilter = uploadAdmissionFilter;
     }
 
     @Bean
@@ -37,6 +40,8 @@ public class SecurityConfig {
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 
         http.addFilterBefore(jwtRequestFilter, UsernamePasswordAuthenticationFilter.class);
+        // after authentication, so uploads are also limited per user
+        http.addFilterAfter(uploadAdmissionFilter, JwtRequestFilter.class);
 
         return http.build();
     }
@@ -36,10 +36,13 @@ public class AuthController {
                         loginRequest.getPassword()));
 
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-        String token = jwtTokenUtil.generateToken(userDetails);
         try {
             User user = userService.getUserByUsername(loginRequest.getUsername())
                     .orElseThrow(() -> new RuntimeException("User not found"));
+            // ids in the token let later requests skip the user and profile lookups
+            String token = userService.getProfileIdByUserId(user.getId())
+                    .map(profileId -> jwtTokenUtil.generateToken(userDetails, user.getId(), profileId))
+                    .orElseGet(() -> jwtTokenUtil.generateToken(userDetails));
             return ResponseEntity.ok(new AuthResponse(token, convertToDTO(user)));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("User not found");
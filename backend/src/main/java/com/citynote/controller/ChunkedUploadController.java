@@ -0,0 +1,128 @@
+package com.citynote.controller;
+
+import com.citynote.dto.ChunkedUploadDTO;
+import com.citynote.dto.ChunkedUploadRequestDTO;
+import com.citynote.service.impl.ChunkedUploadStore;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import com.citynote.service.impl.ImageRenditionWorker;
+import com.citynote.service.impl.PerceptualHashIndex;
+import com.citynote.service.impl.UploadRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resumable alternative to {@code POST /upload/image} for large photos on flaky connections:
+ * <ol>
+ *     <li>{@code POST /upload/chunked} with the file name and size returns an upload id and
+ *     the chunk size</li>
+ *     <li>{@code PUT /upload/chunked/{id}/chunks/{n}?offset=<n * chunkSize>} with the raw
+ *     chunk bytes, in any order; {@code GET /upload/chunked/{id}} lists the chunks received
+ *     so far, so a client resuming after a dropped connection only resends the rest</li>
+ *     <li>{@code POST /upload/chunked/{id}/complete} returns the same body as a
+ *     single-request upload, metadata and near-duplicates included</li>
+ * </ol>
+ */
+@RestController
+@RequestMapping("/upload/chunked")
+public class ChunkedUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    private final ChunkedUploadStore chunkedUploadStore;
+    private final ImageRenditionWorker imageRenditionWorker;
+    private final PerceptualHashIndex perceptualHashIndex;
+
+    public ChunkedUploadController(ChunkedUploadStore chunkedUploadStore,
+                                   ImageRenditionWorker imageRenditionWorker,
+                                   PerceptualHashIndex perceptualHashIndex) {
+        this.chunkedUploadStore = chunkedUploadStore;
+        this.imageRenditionWorker = imageRenditionWorker;
+        this.perceptualHashIndex = perceptualHashIndex;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> initiate(@RequestBody ChunkedUploadRequestDTO uploadRequest, Principal principal,
+                                      HttpServletRequest request) {
+        // open uploads are limited per user, or per address for anonymous clients
+        String client = principal != null ? "user:" + principal.getName() : "address:" + request.getRemoteAddr();
+        try {
+            return ResponseEntity.ok(chunkedUploadStore.initiate(uploadRequest.getFilename(), uploadRequest.getSize(),
+                    client));
+        } catch (UploadRejectedException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Could not start upload: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ChunkedUploadDTO> status(@PathVariable String uploadId) {
+        return chunkedUploadStore.status(uploadId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId,
+                                         @PathVariable int index,
+                                         @RequestParam long offset,
+                                         HttpServletRequest request) {
+        try {
+            Optional<ChunkedUploadDTO> upload = chunkedUploadStore.writeChunk(uploadId, index, offset,
+                    request.getInputStream());
+            return upload.<ResponseEntity<?>>map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        } catch (UploadRejectedException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            // usually the connection dropped mid-chunk; the chunk is not counted and can be resent
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Chunk upload failed: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<?> complete(@PathVariable String uploadId, HttpServletRequest request) {
+        try {
+            Optional<StoredUpload> completed = chunkedUploadStore.complete(uploadId);
+            if (completed.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String filename = completed.get().filename();
+            if (completed.get().created()) {
+                imageRenditionWorker.submit(filename);
+            }
+            logger.debug("Chunked upload {} saved as {}", uploadId, filename);
+            return ResponseEntity.ok(UploadResponses.image(completed.get(), request, perceptualHashIndex));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "File upload failed: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> abort(@PathVariable String uploadId) throws IOException {
+        try {
+            return chunkedUploadStore.abort(uploadId)
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.citynote.controller;
 
+import com.citynote.dto.CountyActivityDTO;
+import com.citynote.dto.CursorPageDTO;
 import com.citynote.dto.EventResponseDTO;
 import com.citynote.dto.EventRequestDTO;
+import com.citynote.dto.LikeStatusRequestDTO;
 import com.citynote.service.EventService;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
@@ -11,10 +14,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/event")
 public class EventController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    private static final int MAX_VIEWPORT_COUNTIES = 500;
+    private static final int MAX_LIKE_STATUS_IDS = 500;
+
     private final EventService eventService;
 
     public EventController(@Qualifier("RdbEventServiceImpl") EventService eventService) {
@@ -27,35 +38,68 @@ public class EventController {
         return ResponseEntity.ok(eventId);
     }
 
+    // Without a cursor these endpoints keep the page/size contract (Spring Page, with total count).
+    // Passing cursor (empty for the first slice) switches to keyset pagination: a CursorPageDTO
+    // with an opaque nextCursor and no count query.
     @GetMapping("/county/{countyId}")
-    public ResponseEntity<Page<EventResponseDTO>> getEventsByCounty(
+    public ResponseEntity<?> getEventsByCounty(
             @PathVariable int countyId,
-            @RequestParam int page,
-            @RequestParam int size) {
-        Pageable pageable = PageRequest.of(page, size);
+            @RequestParam(required = false) Integer page,
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return cursorResponse(size, () -> eventService.getCursorPageOfEventsByCounty(countyId, cursor, size));
+        }
+        Pageable pageable = PageRequest.of(page != null ? page : 0, size);
         Page<EventResponseDTO> events = eventService.getPagesOfEventsByCounty(countyId, pageable);
         return ResponseEntity.ok(events);
     }
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<Page<EventResponseDTO>> getEventsByUser(
+    public ResponseEntity<?> getEventsByUser(
             @PathVariable Long userId,
-            @RequestParam int page,
-            @RequestParam int size) {
-        Pageable pageable = PageRequest.of(page, size);
+            @RequestParam(required = false) Integer page,
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return cursorResponse(size, () -> eventService.getCursorPageOfUserPostedEvents(userId, cursor, size));
+        }
+        Pageable pageable = PageRequest.of(page != null ? page : 0, size);
         Page<EventResponseDTO> events = eventService.getPagesOfUserPostedEvents(userId, pageable);
         return ResponseEntity.ok(events);
     }
 
     @GetMapping("/user/me")
-    public ResponseEntity<Page<EventResponseDTO>> getCurrentUserEvents(
-            @RequestParam int page,
-            @RequestParam int size) {
-        Pageable pageable = PageRequest.of(page, size);
+    public ResponseEntity<?> getCurrentUserEvents(
+            @RequestParam(required = false) Integer page,
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return cursorResponse(size, () -> eventService.getCursorPageOfCurrentUserEvents(cursor, size));
+        }
+        Pageable pageable = PageRequest.of(page != null ? page : 0, size);
         Page<EventResponseDTO> events = eventService.getPagesOfCurrentUserEvents(pageable);
         return ResponseEntity.ok(events);
     }
 
+    // Map viewport: newest events across all visible counties in one call
+    @GetMapping("/viewport")
+    public ResponseEntity<?> getViewportEvents(
+            @RequestParam List<Integer> countyIds,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor) {
+        if (countyIds.isEmpty() || countyIds.size() > MAX_VIEWPORT_COUNTIES) {
+            return ResponseEntity.badRequest().body("countyIds must contain 1 to " + MAX_VIEWPORT_COUNTIES + " ids");
+        }
+        return cursorResponse(limit, () -> eventService.getRecentEventsAcrossCounties(countyIds, cursor, limit));
+    }
+
+    // Map shading: per-county event count, likes and latest update for all active counties
+    @GetMapping("/county-activity")
+    public ResponseEntity<CountyActivityDTO> getCountyActivity() {
+        return ResponseEntity.ok(eventService.getCountyActivity());
+    }
+
     @PutMapping("/{id}")
     // Pre authorize
     public ResponseEntity<Integer> updateEvent(@PathVariable int id, @RequestBody EventRequestDTO eventRequestDTO) {
@@ -90,9 +134,34 @@ public class EventController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // POST so the JWT filter authenticates the viewer; answers for every requested id at once
+    @PostMapping("/like-status")
+    public ResponseEntity<?> getLikeStatus(@RequestBody LikeStatusRequestDTO likeStatusRequestDTO) {
+        List<Integer> eventIds = likeStatusRequestDTO.getEventIds();
+        if (eventIds == null || eventIds.isEmpty() || eventIds.size() > MAX_LIKE_STATUS_IDS) {
+            return ResponseEntity.badRequest().body("eventIds must contain 1 to " + MAX_LIKE_STATUS_IDS + " ids");
+        }
+        if (eventIds.stream().anyMatch(Objects::isNull)) {
+            return ResponseEntity.badRequest().body("eventIds must not contain null");
+        }
+        return ResponseEntity.ok(eventService.getLikeStatus(eventIds));
+    }
+
     @GetMapping("/{id}/can-modify")
     public ResponseEntity<Boolean> canUserModifyEvent(@PathVariable int id) {
         return ResponseEntity.ok(eventService.canUserModifyEvent(id));
     }
 
+    private ResponseEntity<?> cursorResponse(int size, Supplier<CursorPageDTO<EventResponseDTO>> slice) {
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+        }
+        try {
+            return ResponseEntity.ok(slice.get());
+        } catch (IllegalArgumentException e) {
+            // malformed or tampered cursor
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
 }
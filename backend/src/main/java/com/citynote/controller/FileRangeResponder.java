@@ -0,0 +1,143 @@
+package com.citynote.controller;
+
+import com.citynote.service.StoredObject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes an immutable stored file (uploads are named by the SHA-256 of their content, so a
+ * name always refers to the same bytes) as a static-file response: strong ETag,
+ * {@code Cache-Control: immutable}, conditional GET and single byte ranges. Callers whose
+ * URL may answer with other bytes later pass their own cache policy instead.
+ * <p>
+ * Conditional requests are answered from the file's attributes alone, the file is only
+ * read to send a body. On Tomcat a whole file is handed to the connector's sendfile
+ * support; anything else is copied by {@link StoredObject#transferTo}.
+ */
+@Component
+public class FileRangeResponder {
+
+    // Tomcat request attributes (org.apache.catalina.Globals), set only by connectors with sendfile enabled
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS)
+            .cachePublic()
+            .immutable();
+
+    public void serve(StoredObject object, MediaType contentType, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        serve(object, contentType, IMMUTABLE, request, response);
+    }
+
+    public void serve(StoredObject object, MediaType contentType, CacheControl cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = object.size();
+        String etag = etag(length, object.lastModified());
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, object.lastModified().toEpochMilli());
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        List<HttpRange> ranges = requestedRanges(request, etag);
+        // a single range is served partially; multiple ranges are answered with the whole file
+        if (ranges.size() == 1) {
+            try {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (end < start) {
+                    // only an empty file gets here
+                    throw new IllegalArgumentException("Unsatisfiable range");
+                }
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        long count = end - start + 1;
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        Optional<Path> file = object.file();
+        if (file.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // the connector writes the file straight to the socket once the handler returns
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            return;
+        }
+
+        object.transferTo(start, count, Channels.newChannel(response.getOutputStream()));
+    }
+
+    // size and modification time change whenever the bytes could have, without reading them
+    static String etag(long size, Instant lastModified) {
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified.toEpochMilli()) + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<HttpRange> requestedRanges(HttpServletRequest request, String etag) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        // If-Range with a stale validator means "send the whole, current file"
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // malformed Range headers are ignored
+            return List.of();
+        }
+    }
+}
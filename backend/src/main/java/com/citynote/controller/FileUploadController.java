@@ -1,50 +1,76 @@
 package com.citynote.controller;
 
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import com.citynote.service.impl.ContentAddressedStore;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import com.citynote.service.impl.ImageFormat;
+import com.citynote.service.impl.ImageRenditionWorker;
+import com.citynote.service.impl.PerceptualHashIndex;
+import com.citynote.service.impl.ImageUploadStream;
+import com.citynote.service.impl.UploadRejectedException;
+import com.citynote.service.impl.VideoFormat;
+import com.citynote.service.impl.VideoPosterExtractor;
+import com.citynote.service.impl.VideoUploadStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.UUID;
+import java.io.InputStream;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Optional;
 import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
-import java.net.MalformedURLException;
 
 @RestController
 @RequestMapping("/upload")
 public class FileUploadController {
-//    private static final Logger logger = LoggerFactory.getLogger(FileUploadController.class);
+    private static final Logger logger = LoggerFactory.getLogger(FileUploadController.class);
 
-    private final Path uploadDir;
+    private static final long MAX_FILE_SIZE = 50 * 1024 * 1024;
+    // room for the other form fields and part headers around the file
+    public static final long MAX_REQUEST_SIZE = MAX_FILE_SIZE + 64 * 1024;
+    // short clips only; the request may carry a poster image as well
+    private static final long MAX_VIDEO_SIZE = 200 * 1024 * 1024;
+    public static final long MAX_VIDEO_REQUEST_SIZE = MAX_VIDEO_SIZE + MAX_REQUEST_SIZE;
 
-    public FileUploadController(@Value("${file.upload.path:uploads/}") String uploadPath) {
-        uploadDir = Paths.get(System.getProperty("user.dir"), uploadPath).toAbsolutePath();
+    private final UploadStorage uploadStorage;
+    private final FileRangeResponder fileRangeResponder;
+    private final ImageRenditionWorker imageRenditionWorker;
+    private final ContentAddressedStore contentAddressedStore;
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final VideoPosterExtractor videoPosterExtractor;
+
+    public FileUploadController(UploadStorage uploadStorage,
+                                FileRangeResponder fileRangeResponder,
+                                ImageRenditionWorker imageRenditionWorker,
+                                ContentAddressedStore contentAddressedStore,
+                                PerceptualHashIndex perceptualHashIndex,
+                                VideoPosterExtractor videoPosterExtractor) {
+        this.uploadStorage = uploadStorage;
+        this.fileRangeResponder = fileRangeResponder;
+        this.imageRenditionWorker = imageRenditionWorker;
+        this.contentAddressedStore = contentAddressedStore;
+        this.perceptualHashIndex = perceptualHashIndex;
+        this.videoPosterExtractor = videoPosterExtractor;
     }
 
     @PostMapping("/image")
     public ResponseEntity<Map<String, String>> uploadImage(@RequestParam("file") MultipartFile file,
             HttpServletRequest request) {
         try {
-            System.out.printf("[File Controller] Request uploading file: %s, size: %s bytes, path: %s\n",
-                    file.getOriginalFilename(), file.getSize(), uploadDir.toString());
-//            logger.info("[File Controller] Request uploading file: {0}, size: {1} bytes, path: {2}",
-//                    file.getOriginalFilename(), file.getSize(), uploadDir.toString());
+            logger.debug("Request uploading file: {}, size: {} bytes", file.getOriginalFilename(), file.getSize());
 
             // Check file size (50MB limit)
-            if (file.getSize() > 50 * 1024 * 1024) {
-                System.err.println("File too large: " + file.getSize() + " bytes");
+            if (file.getSize() > MAX_FILE_SIZE) {
+                logger.debug("File too large: {} bytes", file.getSize());
                 return ResponseEntity.badRequest().body(Map.of("error", "File size exceeds 50MB limit"));
             }
 
@@ -56,92 +82,270 @@ public class FileUploadController {
 
             String extension = getExtension(originalFilename);
             if (!isValidImageExtension(extension)) {
-                System.err.println("Invalid file extension: " + extension);
+                logger.debug("Invalid file extension: {}", extension);
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "Only image files are allowed (jpg, jpeg, png, gif, webp, heic, heif)"));
             }
 
-            if (!Files.exists(uploadDir)) {
-                System.out.println("Creating upload directory...");
-                Files.createDirectories(uploadDir);
+            return storeImage(file.getInputStream(), extension, request);
+        } catch (IOException e) {
+            logger.warn("Image upload failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "File upload failed: " + e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Unexpected error during image upload", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Unexpected error: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Same contract as {@link #uploadImage}, but the multipart body is parsed while it
+     * arrives and the image goes straight from the socket into storage: size limit and
+     * image signature are checked on the fly, and no part is buffered in memory or spooled
+     * to a temp file by the servlet container first.
+     */
+    @PostMapping("/image/stream")
+    public ResponseEntity<Map<String, String>> uploadImageStream(HttpServletRequest request) {
+        try {
+            String boundary = multipartBoundary(request.getContentType());
+            if (boundary == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Expected a multipart/form-data request"));
+            }
+            // reject announced oversize bodies before reading them
+            if (request.getContentLengthLong() > MAX_REQUEST_SIZE) {
+                return ResponseEntity.badRequest().body(Map.of("error", "File size exceeds 50MB limit"));
+            }
+
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary, MAX_REQUEST_SIZE);
+            for (MultipartStreamReader.Part part = reader.nextPart(); part != null; part = reader.nextPart()) {
+                if (!"file".equals(part.name())) {
+                    continue;
+                }
+                String originalFilename = part.filename();
+                logger.debug("Request streaming file: {}", originalFilename);
+                if (originalFilename == null || originalFilename.isEmpty()) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Invalid filename"));
+                }
+
+                String extension = getExtension(originalFilename);
+                Optional<ImageFormat> format = ImageFormat.fromExtension(extension);
+                if (format.isEmpty()) {
+                    logger.debug("Invalid file extension: {}", extension);
+                    return ResponseEntity.badRequest()
+                            .body(Map.of("error", "Only image files are allowed (jpg, jpeg, png, gif, webp, heic, heif)"));
+                }
+                return storeImage(new ImageUploadStream(part.content(), format.get(), MAX_FILE_SIZE), extension, request);
             }
+            return ResponseEntity.badRequest().body(Map.of("error", "Missing file part"));
+        } catch (UploadRejectedException e) {
+            logger.debug("Rejected streamed upload: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.warn("Streamed image upload failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "File upload failed: " + e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Unexpected error during streamed image upload", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Unexpected error: " + e.getMessage()));
+        }
+    }
 
-            String filename = UUID.randomUUID() + extension;
+    private ResponseEntity<Map<String, String>> storeImage(InputStream content, String extension,
+                                                           HttpServletRequest request) throws IOException {
+        // stored once per distinct content: re-uploading the same photo returns the same name
+        StoredUpload stored = contentAddressedStore.store(content, extension);
+        String filename = stored.filename();
+        if (stored.created()) {
+            // thumbnails are rendered in the background, getImage serves the original until then
+            imageRenditionWorker.submit(filename);
+        }
 
-            Path destPath = uploadDir.resolve(filename);
+        logger.debug("File saved as {}", filename);
+        return ResponseEntity.ok(UploadResponses.image(stored, request, perceptualHashIndex));
+    }
 
-            // use Files.copy instead of transferTO
-            Files.copy(file.getInputStream(), destPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Streams a video clip (part "file": mp4, m4v, mov or webm, up to 200MB) into storage
+     * the same way as {@link #uploadImageStream}, next to the images. The poster is the
+     * cover art embedded in the video when it has one, otherwise the image sent in the
+     * optional part "poster" (e.g. a frame the browser drew to a canvas); the response
+     * names it in "poster" when there is one.
+     */
+    @PostMapping("/video/stream")
+    public ResponseEntity<Map<String, String>> uploadVideoStream(HttpServletRequest request) {
+        try {
+            String boundary = multipartBoundary(request.getContentType());
+            if (boundary == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Expected a multipart/form-data request"));
+            }
+            if (request.getContentLengthLong() > MAX_VIDEO_REQUEST_SIZE) {
+                return ResponseEntity.badRequest().body(Map.of("error", "File size exceeds 200MB limit"));
+            }
 
-            String serverUrl = request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort();
-            String imageUrl = serverUrl + "/api/upload/image/" + filename;
+            StoredUpload video = null;
+            StoredUpload clientPoster = null;
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary, MAX_VIDEO_REQUEST_SIZE);
+            for (MultipartStreamReader.Part part = reader.nextPart(); part != null; part = reader.nextPart()) {
+                if (!"file".equals(part.name()) && !"poster".equals(part.name())) {
+                    continue;
+                }
+                // checked before storing, so an earlier part is never stored and then dropped
+                if ("file".equals(part.name()) ? video != null : clientPoster != null) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Duplicate " + part.name() + " part"));
+                }
+                String originalFilename = part.filename();
+                logger.debug("Request streaming {}: {}", part.name(), originalFilename);
+                if (originalFilename == null || originalFilename.isEmpty()) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Invalid filename"));
+                }
+                String extension = getExtension(originalFilename);
 
-            System.out.printf("[File Controller] File saved successfully.\tFile name: %s.\tFull path: %s\n",
-                    filename, destPath.toAbsolutePath());
+                if ("file".equals(part.name())) {
+                    Optional<VideoFormat> format = VideoFormat.fromExtension(extension);
+                    if (format.isEmpty()) {
+                        return ResponseEntity.badRequest()
+                                .body(Map.of("error", "Only video files are allowed (mp4, m4v, mov, webm)"));
+                    }
+                    video = contentAddressedStore.store(
+                            new VideoUploadStream(part.content(), format.get(), MAX_VIDEO_SIZE), extension);
+                } else {
+                    Optional<ImageFormat> format = ImageFormat.fromExtension(extension);
+                    if (format.isEmpty()) {
+                        return ResponseEntity.badRequest()
+                                .body(Map.of("error", "Only image files are allowed (jpg, jpeg, png, gif, webp, heic, heif)"));
+                    }
+                    clientPoster = contentAddressedStore.store(
+                            new ImageUploadStream(part.content(), format.get(), MAX_FILE_SIZE), extension);
+                    if (clientPoster.created()) {
+                        imageRenditionWorker.submit(clientPoster.filename());
+                    }
+                }
+            }
+            if (video == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Missing file part"));
+            }
 
-            Map<String, String> response = new HashMap<>();
-            response.put("url", imageUrl);
-            response.put("filename", filename);
+            Map<String, String> response = UploadResponses.video(video, request);
+            Optional<StoredUpload> poster = videoPosterExtractor.extract(video.filename());
+            if (poster.isEmpty() && clientPoster != null) {
+                poster = Optional.of(clientPoster);
+            }
+            poster.ifPresent(image -> response.put("poster", image.filename()));
 
+            logger.debug("Video saved as {}, poster: {}",
+                    video.filename(), poster.map(StoredUpload::filename).orElse("none"));
             return ResponseEntity.ok(response);
+        } catch (UploadRejectedException e) {
+            logger.debug("Rejected streamed video upload: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
-            System.err.println("Error during file upload: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("Video upload failed", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "File upload failed: " + e.getMessage()));
         } catch (Exception e) {
-            System.err.println("Unexpected error during file upload: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Unexpected error during video upload", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Unexpected error: " + e.getMessage()));
         }
     }
 
+    /**
+     * Serves a video with single byte ranges, so players can seek without downloading
+     * the clip again; whole files go out through the connector's sendfile.
+     */
+    @GetMapping("/video/{filename:.+}")
+    public void getVideo(@PathVariable String filename,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        if (!UploadStorage.isValidName(filename)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        Optional<VideoFormat> format = VideoFormat.fromExtension(getExtension(filename));
+        Optional<StoredObject> stored = format.isPresent() ? uploadStorage.open(filename) : Optional.empty();
+        if (stored.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        fileRangeResponder.serve(stored.get(), MediaType.parseMediaType(format.get().mimeType()), request, response);
+    }
+
     @GetMapping("/image/{filename:.+}")
-    public ResponseEntity<Resource> getImage(@PathVariable String filename) {
-        System.out.println("[File Controller] <GET /image/{filename:.+}> - " + filename);
-        try {
-            Path filePath = uploadDir.resolve(filename).normalize();
-//            System.out.println("[GET /image/{filename:.+}] - " + filePath.toAbsolutePath());
-
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists()) {
-                // determine the file-extensions based on Content-Type
-                String contentType = getContentType(filename);
-                System.out.printf("[File Controller] <GET content type: %s\n", contentType);
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+    public void getImage(@PathVariable String filename,
+                         @RequestParam(value = "w", required = false) Integer width,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        if (!UploadStorage.isValidName(filename)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        // ?w=<px> picks the smallest rendition at least that wide, once it has been rendered
+        Optional<StoredObject> rendition = imageRenditionWorker.select(filename, width);
+        if (rendition.isPresent()) {
+            fileRangeResponder.serve(rendition.get(), MediaType.IMAGE_JPEG, request, response);
+            return;
+        }
+        Optional<StoredObject> stored = uploadStorage.open(filename);
+        if (stored.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        // the type sniffed at upload, so a JPEG named .png still goes out as image/jpeg
+        MediaType contentType = MediaType.parseMediaType(
+                contentAddressedStore.mimeType(filename).orElseGet(() -> getContentType(filename)));
+        if (width != null && width > 0) {
+            // the rendition is not rendered yet; revalidate so the ?w= URL picks it up once it is
+            fileRangeResponder.serve(stored.get(), contentType, CacheControl.noCache(), request, response);
+            return;
+        }
+        fileRangeResponder.serve(stored.get(), contentType, request, response);
     }
 
     @DeleteMapping("/image")
     public ResponseEntity<Integer> removeFile(@RequestBody String filename) {
         try {
-            String fullPath = uploadDir.resolve(filename).toAbsolutePath().toString();
-
-            System.out.printf("[File Controller] request to remove file: %s\n", fullPath);
+            logger.debug("Request to remove file: {}", filename);
 
-            File targetFile = new File(fullPath);
-            if (!targetFile.exists()) {
+            if (!uploadStorage.exists(filename)) {
                 return ResponseEntity.notFound().build();
             }
-            // delete the file
-            if (targetFile.delete()) {
-                System.out.println("[File Controller] successfully removed file: " + fullPath);
+            // unlinked only when no note references the content (and no one uploaded it just now)
+            if (contentAddressedStore.discard(filename)) {
+                logger.debug("Released file: {}", filename);
                 return ResponseEntity.ok().body(0);
             } else {
                 return ResponseEntity.badRequest().body(-2);
             }
+        } catch (IOException e) {
+            logger.warn("Could not check or remove file {}", filename, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(-1);
+        } catch (RuntimeException e) {
+            // e.g. the ref-count row could not be locked or updated
+            logger.error("Could not remove file {}", filename, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(-1);
+        }
+    }
 
-        } catch (Error error) {
-            error.printStackTrace();
-            return ResponseEntity.badRequest().body(-1);
+    private static String multipartBoundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            if (!MediaType.MULTIPART_FORM_DATA.includes(mediaType)) {
+                return null;
+            }
+            String boundary = mediaType.getParameter("boundary");
+            if (boundary != null && boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                boundary = boundary.substring(1, boundary.length() - 1);
+            }
+            // RFC 2046 boundaries are 1 to 70 characters
+            return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+        } catch (InvalidMediaTypeException e) {
+            return null;
         }
     }
 
@@ -173,10 +377,6 @@ public class FileUploadController {
     }
 
     private boolean isValidImageExtension(String extension) {
-        String lowerExtension = extension.toLowerCase();
-        return lowerExtension.equals(".jpg") || lowerExtension.equals(".jpeg") ||
-                lowerExtension.equals(".png") || lowerExtension.equals(".gif") ||
-                lowerExtension.equals(".webp") || lowerExtension.equals(".heic") ||
-                lowerExtension.equals(".heif");
+        return ImageFormat.fromExtension(extension).isPresent();
     }
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package com.citynote.controller;
+
+import com.citynote.service.impl.UploadRejectedException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads a {@code multipart/form-data} body part by part straight from the request stream.
+ * <p>
+ * Part content is handed out through a fixed buffer as it arrives, so reading a 50MB part
+ * takes the same memory as reading a form field; nothing is spooled to disk or collected
+ * on the heap. The bytes that could begin a boundary are held back until the next read
+ * shows whether they do.
+ * <p>
+ * Parts are read in order: calling {@link #nextPart()} skips whatever is left of the
+ * current part. The whole body may be at most {@code maxBytes} long.
+ */
+public class MultipartStreamReader {
+
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    public record Part(String name, String filename, String contentType, InputStream content) {
+    }
+
+    private final InputStream body;
+    private final long maxBytes;
+    // CRLF "--" boundary; the body gets a virtual leading CRLF so the first boundary matches too
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private long bytesRead;
+    private boolean eof;
+
+    // part content is known to run until dataEnd; the delimiter starts there if delimiterAhead
+    private int dataEnd;
+    private boolean delimiterAhead;
+    private boolean inPart = true;
+    private boolean finished;
+
+    public MultipartStreamReader(InputStream body, String boundary, long maxBytes) {
+        this(body, boundary, maxBytes, DEFAULT_BUFFER_SIZE);
+    }
+
+    MultipartStreamReader(InputStream body, String boundary, long maxBytes, int bufferSize) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary");
+        }
+        this.body = body;
+        this.maxBytes = maxBytes;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        if (bufferSize <= delimiter.length) {
+            throw new IllegalArgumentException("Buffer must be longer than the delimiter");
+        }
+        this.buffer = new byte[bufferSize];
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * The next part, or null after the closing boundary. Its content stream ends at the
+     * part's boundary and is only valid until the next call.
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        // the preamble before the first boundary is skipped like unread content
+        while (inPart) {
+            int available = dataAvailable();
+            if (available > 0) {
+                pos += available;
+            }
+        }
+
+        int first = readByte();
+        int second = readByte();
+        if (first == '-' && second == '-') {
+            // the epilogue after the closing boundary is ignored
+            finished = true;
+            return null;
+        }
+        while (first == ' ' || first == '\t') {
+            first = second;
+            second = readByte();
+        }
+        if (first != '\r' || second != '\n') {
+            throw malformed("Malformed multipart boundary line");
+        }
+
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        int headerBytes = 0;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw malformed("Multipart part headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw malformed("Malformed multipart part header");
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals(HttpHeaders.CONTENT_DISPOSITION.toLowerCase(Locale.ROOT))) {
+                try {
+                    ContentDisposition disposition = ContentDisposition.parse(value);
+                    name = disposition.getName();
+                    filename = disposition.getFilename();
+                } catch (IllegalArgumentException e) {
+                    throw malformed("Malformed Content-Disposition header");
+                }
+            } else if (header.equals(HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ROOT))) {
+                contentType = value;
+            }
+        }
+
+        inPart = true;
+        dataEnd = pos;
+        delimiterAhead = false;
+        return new Part(name, filename, contentType, new PartInputStream());
+    }
+
+    // bytes of part content ready at pos, or -1 (delimiter consumed) at the end of the part
+    private int dataAvailable() throws IOException {
+        while (true) {
+            if (pos < dataEnd) {
+                return dataEnd - pos;
+            }
+            if (delimiterAhead) {
+                pos += delimiter.length;
+                dataEnd = pos;
+                delimiterAhead = false;
+                inPart = false;
+                return -1;
+            }
+            int index = indexOfDelimiter();
+            if (index >= 0) {
+                dataEnd = index;
+                delimiterAhead = true;
+                continue;
+            }
+            // everything except a possible start of the delimiter at the very end
+            dataEnd = Math.max(pos, limit - delimiter.length + 1);
+            if (pos < dataEnd) {
+                return dataEnd - pos;
+            }
+            if (eof) {
+                throw malformed("Multipart body ended inside a part");
+            }
+            fill();
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            if (buffer[i] != delimiter[0]) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        int shift = pos;
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= shift;
+        dataEnd -= shift;
+        pos = 0;
+        int n = body.read(buffer, limit, buffer.length - limit);
+        if (n == -1) {
+            eof = true;
+            return;
+        }
+        limit += n;
+        bytesRead += n;
+        if (bytesRead > maxBytes) {
+            throw new UploadRejectedException("Request body exceeds " + (maxBytes / (1024 * 1024)) + "MB limit");
+        }
+    }
+
+    private int readByte() throws IOException {
+        while (pos == limit) {
+            if (eof) {
+                throw malformed("Multipart body ended early");
+            }
+            fill();
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = readByte();
+            if (b == '\r') {
+                if (readByte() != '\n') {
+                    throw malformed("Malformed multipart part header");
+                }
+                // browsers send file names as raw UTF-8
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() >= MAX_HEADER_BYTES) {
+                throw malformed("Multipart part headers too large");
+            }
+            line.write(b);
+        }
+    }
+
+    private static UploadRejectedException malformed(String message) {
+        return new UploadRejectedException(message);
+    }
+
+    private class PartInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!inPart) {
+                return -1;
+            }
+            int available = dataAvailable();
+            if (available == -1) {
+                return -1;
+            }
+            int n = Math.min(len, available);
+            System.arraycopy(buffer, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return inPart ? Math.max(0, dataEnd - pos) : 0;
+        }
+
+        @Override
+        public void close() {
+            // the request body stays open; nextPart() skips any unread content
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.citynote.controller;
+
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import com.citynote.service.impl.ImageMetadata;
+import com.citynote.service.impl.PerceptualHashIndex;
+import com.citynote.service.impl.PerceptualHashIndex.NearDuplicate;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the JSON body returned for a stored upload, the same for every way a file can
+ * arrive (multipart, streamed or chunked): {@code url} and {@code filename}, plus
+ * {@code size}, {@code mimeType}, {@code width}/{@code height} and {@code blurHash} when
+ * the metadata is known, so the client can reserve the picture's box and paint a
+ * placeholder before it loads.
+ */
+final class UploadResponses {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadResponses.class);
+
+    private UploadResponses() {
+    }
+
+    /**
+     * Describes a stored image; {@code nearDuplicates} lists stored pictures that look the
+     * same (re-encoded or resized, e.g. reposted across counties), closest first.
+     */
+    static Map<String, String> image(StoredUpload stored, HttpServletRequest request,
+                                     PerceptualHashIndex perceptualHashIndex) {
+        Map<String, String> response = describe(stored, "/api/upload/image/", request);
+        ImageMetadata metadata = stored.metadata();
+        if (metadata != null) {
+            List<NearDuplicate> nearDuplicates =
+                    perceptualHashIndex.nearDuplicates(stored.filename(), PerceptualHashIndex.hashOf(metadata));
+            if (!nearDuplicates.isEmpty()) {
+                logger.debug("{} looks like {} stored picture(s), closest {}",
+                        stored.filename(), nearDuplicates.size(), nearDuplicates.get(0).filename());
+                response.put("nearDuplicates", nearDuplicates.stream()
+                        .map(NearDuplicate::filename)
+                        .collect(Collectors.joining(",")));
+            }
+        }
+        return response;
+    }
+
+    static Map<String, String> video(StoredUpload stored, HttpServletRequest request) {
+        return describe(stored, "/api/upload/video/", request);
+    }
+
+    private static Map<String, String> describe(StoredUpload stored, String path, HttpServletRequest request) {
+        String serverUrl = request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort();
+        Map<String, String> response = new HashMap<>();
+        response.put("url", serverUrl + path + stored.filename());
+        response.put("filename", stored.filename());
+        ImageMetadata metadata = stored.metadata();
+        if (metadata != null) {
+            response.put("size", String.valueOf(metadata.size()));
+            if (metadata.mimeType() != null) {
+                response.put("mimeType", metadata.mimeType());
+            }
+            if (metadata.width() != null && metadata.height() != null) {
+                response.put("width", String.valueOf(metadata.width()));
+                response.put("height", String.valueOf(metadata.height()));
+            }
+            if (metadata.blurHash() != null) {
+                response.put("blurHash", metadata.blurHash());
+            }
+        }
+        return response;
+    }
+}
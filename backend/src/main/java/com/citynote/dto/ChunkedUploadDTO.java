@@ -0,0 +1,75 @@
+package com.citynote.dto;
+
+import java.util.List;
+
+// State of a resumable upload: chunk i covers bytes [i * chunkSize, min((i + 1) * chunkSize, size))
+public class ChunkedUploadDTO {
+    private String uploadId;
+    private String filename;
+    private long size;
+    private int chunkSize;
+    private int chunkCount;
+    private List<Integer> receivedChunks;
+
+    public ChunkedUploadDTO() {
+    }
+
+    public ChunkedUploadDTO(String uploadId, String filename, long size, int chunkSize, int chunkCount,
+                            List<Integer> receivedChunks) {
+        this.uploadId = uploadId;
+        this.filename = filename;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.receivedChunks = receivedChunks;
+    }
+
+    // Manual getters and setters for Lombok compatibility
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public List<Integer> getReceivedChunks() {
+        return receivedChunks;
+    }
+
+    public void setReceivedChunks(List<Integer> receivedChunks) {
+        this.receivedChunks = receivedChunks;
+    }
+}
@@ -0,0 +1,23 @@
+package com.citynote.dto;
+
+public class ChunkedUploadRequestDTO {
+    private String filename;
+    private long size;
+
+    // Manual getters and setters for Lombok compatibility
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+}
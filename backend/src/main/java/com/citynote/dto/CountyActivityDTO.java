@@ -0,0 +1,53 @@
+package com.citynote.dto;
+
+// Column-oriented activity summary of every county with events: entry i of each array
+// describes countyIds[i]. latestUpdates holds epoch seconds (UTC), 0 when unknown.
+public class CountyActivityDTO {
+    private int[] countyIds;
+    private long[] eventCounts;
+    private long[] totalLikes;
+    private long[] latestUpdates;
+
+    public CountyActivityDTO() {
+    }
+
+    public CountyActivityDTO(int[] countyIds, long[] eventCounts, long[] totalLikes, long[] latestUpdates) {
+        this.countyIds = countyIds;
+        this.eventCounts = eventCounts;
+        this.totalLikes = totalLikes;
+        this.latestUpdates = latestUpdates;
+    }
+
+    // Manual getters and setters for Lombok compatibility
+    public int[] getCountyIds() {
+        return countyIds;
+    }
+
+    public void setCountyIds(int[] countyIds) {
+        this.countyIds = countyIds;
+    }
+
+    public long[] getEventCounts() {
+        return eventCounts;
+    }
+
+    public void setEventCounts(long[] eventCounts) {
+        this.eventCounts = eventCounts;
+    }
+
+    public long[] getTotalLikes() {
+        return totalLikes;
+    }
+
+    public void setTotalLikes(long[] totalLikes) {
+        this.totalLikes = totalLikes;
+    }
+
+    public long[] getLatestUpdates() {
+        return latestUpdates;
+    }
+
+    public void setLatestUpdates(long[] latestUpdates) {
+        this.latestUpdates = latestUpdates;
+    }
+}
@@ -12,6 +12,8 @@ public class EventResponseDTO {
     private String date;
     private String county;
     private String[] pictureLinks;
+    // one entry per picture link, same order
+    private PictureMetaDTO[] pictureMeta;
     private String videoLink;
     private EventType eventType;
     private int likes;
@@ -68,6 +70,14 @@ public class EventResponseDTO {
         this.pictureLinks = pictureLinks;
     }
 
+    public PictureMetaDTO[] getPictureMeta() {
+        return pictureMeta;
+    }
+
+    public void setPictureMeta(PictureMetaDTO[] pictureMeta) {
+        this.pictureMeta = pictureMeta;
+    }
+
     public String getVideoLink() {
         return videoLink;
     }
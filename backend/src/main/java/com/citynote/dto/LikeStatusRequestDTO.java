@@ -0,0 +1,16 @@
+package com.citynote.dto;
+
+import java.util.List;
+
+public class LikeStatusRequestDTO {
+    private List<Integer> eventIds;
+
+    // Manual getters and setters for Lombok compatibility
+    public List<Integer> getEventIds() {
+        return eventIds;
+    }
+
+    public void setEventIds(List<Integer> eventIds) {
+        this.eventIds = eventIds;
+    }
+}
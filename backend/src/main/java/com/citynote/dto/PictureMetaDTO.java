@@ -0,0 +1,75 @@
+package com.citynote.dto;
+
+// Layout metadata of one picture of an event, in the order of pictureLinks. width, height,
+// mimeType and blurHash are null for pictures stored before they were recorded or that
+// could not be decoded; size is 0 when unknown.
+public class PictureMetaDTO {
+    private String filename;
+    private Integer width;
+    private Integer height;
+    private long size;
+    private String mimeType;
+    private String blurHash;
+
+    public PictureMetaDTO() {
+    }
+
+    public PictureMetaDTO(String filename, Integer width, Integer height, long size, String mimeType,
+                          String blurHash) {
+        this.filename = filename;
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.blurHash = blurHash;
+    }
+
+    // Manual getters and setters for Lombok compatibility
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    public void setBlurHash(String blurHash) {
+        this.blurHash = blurHash;
+    }
+}
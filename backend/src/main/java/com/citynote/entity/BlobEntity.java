@@ -23,6 +23,19 @@ public class BlobEntity {
     @JoinColumn(name = "event_id", updatable = false)
     private EventEntity event;
 
+    // copied from the stored file when the picture is attached, so the feed reads it without a join
+    private Integer width;
+
+    private Integer height;
+
+    private Long byteSize;
+
+    @Column(length = 32)
+    private String mimeType;
+
+    @Column(length = 64)
+    private String blurHash;
+
     // Manual getters and setters for Lombok compatibility
     public int getId() {
         return id;
@@ -55,4 +68,44 @@ public class BlobEntity {
     public void setEvent(EventEntity event) {
         this.event = event;
     }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Long getByteSize() {
+        return byteSize;
+    }
+
+    public void setByteSize(Long byteSize) {
+        this.byteSize = byteSize;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    public void setBlurHash(String blurHash) {
+        this.blurHash = blurHash;
+    }
 }
@@ -0,0 +1,72 @@
+package com.citynote.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A released upload waiting for the background worker to unlink it. Written in the same
+ * transaction that dropped the file's last reference, so the deletion survives a crash
+ * and never happens for a transaction that rolled back.
+ */
+@Entity
+@Table(name = "pending_file_deletions")
+public class PendingFileDeletionEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "pending_file_deletion_id")
+    private long id;
+
+    @Column(nullable = false, updatable = false)
+    private String filename;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptDate;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createDate;
+
+    // Manual getters and setters for Lombok compatibility
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    public void setNextAttemptDate(LocalDateTime nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+
+    public LocalDateTime getCreateDate() {
+        return createDate;
+    }
+
+    public void setCreateDate(LocalDateTime createDate) {
+        this.createDate = createDate;
+    }
+}
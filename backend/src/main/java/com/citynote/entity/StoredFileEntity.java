@@ -0,0 +1,149 @@
+package com.citynote.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stored upload, shared by every picture (BlobEntity) with the same bytes.
+ * The file on disk is named {@code <sha256 hex><extension>}.
+ */
+@Entity
+@Table(name = "stored_files")
+public class StoredFileEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "stored_file_id")
+    private int id;
+
+    @Column(nullable = false, unique = true, updatable = false, length = 80)
+    private String filename;
+
+    @Column(nullable = false, updatable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false, updatable = false)
+    private long size;
+
+    // number of blobs pointing at this file; 0 for uploads not attached to a note yet
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createDate;
+
+    // an unreferenced file uploaded recently may still be about to be attached
+    @Column(nullable = false)
+    private LocalDateTime lastUploadDate;
+
+    // image metadata read once per content; null when it could not be read
+    private Integer width;
+
+    private Integer height;
+
+    @Column(length = 32)
+    private String mimeType;
+
+    @Column(length = 64)
+    private String blurHash;
+
+    // dHash for near-duplicate detection: null until computed, 0 when there is nothing to compare
+    private Long perceptualHash;
+
+    // Manual getters and setters for Lombok compatibility
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreateDate() {
+        return createDate;
+    }
+
+    public void setCreateDate(LocalDateTime createDate) {
+        this.createDate = createDate;
+    }
+
+    public LocalDateTime getLastUploadDate() {
+        return lastUploadDate;
+    }
+
+    public void setLastUploadDate(LocalDateTime lastUploadDate) {
+        this.lastUploadDate = lastUploadDate;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    public void setBlurHash(String blurHash) {
+        this.blurHash = blurHash;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+}
@@ -2,5 +2,6 @@ package com.citynote.entity.enums;
 
 public enum EventType {
     TEXT,
-    IMAGE
+    IMAGE,
+    VIDEO
 }
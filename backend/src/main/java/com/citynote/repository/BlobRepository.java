@@ -2,11 +2,14 @@ package com.citynote.repository;
 
 import com.citynote.entity.BlobEntity;
 import com.citynote.entity.EventEntity;
+import com.citynote.repository.projection.BlobLinkRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,4 +23,23 @@ public interface BlobRepository extends JpaRepository<BlobEntity, Integer> {
     @Modifying
     @Query("DELETE FROM BlobEntity b WHERE b.event.id = :eventId")
     void deleteByEventId(@Param("eventId") int eventId);
+
+    // picture links of a whole feed page in one round trip
+    @Query("""
+            SELECT new com.citynote.repository.projection.BlobLinkRow(
+                b.event.id, b.filename, b.inPlaceOrder, b.width, b.height, b.byteSize, b.mimeType, b.blurHash)
+            FROM BlobEntity b
+            WHERE b.event.id IN :eventIds
+            ORDER BY b.event.id, b.inPlaceOrder
+            """)
+    List<BlobLinkRow> findLinkRowsByEventIds(@Param("eventIds") Collection<Integer> eventIds);
+
+    boolean existsByFilename(String filename);
+
+    // keyset pages of linked file names in name order, for merge-joining against a storage listing
+    @Query("SELECT DISTINCT b.filename FROM BlobEntity b WHERE b.filename >= :from ORDER BY b.filename")
+    List<String> findFilenamesFrom(@Param("from") String from, Pageable pageable);
+
+    @Query("SELECT DISTINCT b.filename FROM BlobEntity b WHERE b.filename > :after ORDER BY b.filename")
+    List<String> findFilenamesAfter(@Param("after") String after, Pageable pageable);
 }
@@ -2,6 +2,7 @@ package com.citynote.repository;
 
 import com.citynote.entity.CountyEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,4 +13,7 @@ public interface CountyRepository extends JpaRepository<CountyEntity, Integer> {
     Optional<CountyEntity> findByCountyNameEqualsIgnoreCase(String countyName);
 
     List<CountyEntity> findByCountyStateEqualsIgnoreCase(String state);
+
+    @Query("SELECT c.id FROM CountyEntity c ORDER BY c.id")
+    List<Integer> findAllIds();
 }
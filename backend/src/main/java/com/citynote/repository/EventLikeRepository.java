@@ -2,9 +2,11 @@ package com.citynote.repository;
 
 import com.citynote.entity.EventLikeEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface EventLikeRepository extends JpaRepository<EventLikeEntity, Integer> {
@@ -14,4 +16,13 @@ public interface EventLikeRepository extends JpaRepository<EventLikeEntity, Inte
     Optional<EventLikeEntity> findByEventIdAndUserProfileId(@Param("eventId") int eventId, @Param("userProfileId") int userProfileId);
     
     boolean existsByEventIdAndUserProfileId(int eventId, int userProfileId);
+
+    // every event the profile likes, to build its like-status bitmap
+    @Query("SELECT el.event.id FROM EventLikeEntity el WHERE el.userProfile.id = :userProfileId")
+    List<Integer> findEventIdsByUserProfileId(@Param("userProfileId") int userProfileId);
+
+    // bulk delete without loading the like; returns the number of rows removed (0 or 1)
+    @Modifying
+    @Query("DELETE FROM EventLikeEntity el WHERE el.event.id = :eventId AND el.userProfile.id = :userProfileId")
+    int deleteByEventIdAndUserProfileId(@Param("eventId") int eventId, @Param("userProfileId") int userProfileId);
 }
@@ -1,11 +1,19 @@
 package com.citynote.repository;
 
 import com.citynote.entity.EventEntity;
+import com.citynote.repository.projection.CountyActivityRow;
+import com.citynote.repository.projection.EventCountyRow;
+import com.citynote.repository.projection.EventFeedRow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface EventRepository extends JpaRepository<EventEntity, Integer> {
@@ -23,6 +31,115 @@ public interface EventRepository extends JpaRepository<EventEntity, Integer> {
 
     Page<EventEntity> findByCounty_CountyStateAndUserProfile_Id(String stateName, int userProfileId, Pageable pageable);
 
+    @Query("SELECT e.county.id FROM EventEntity e WHERE e.id = :eventId")
+    Optional<Integer> findCountyIdById(@Param("eventId") int eventId);
+
+    @Query("SELECT e.likes FROM EventEntity e WHERE e.id = :eventId")
+    Optional<Integer> findLikesById(@Param("eventId") int eventId);
+
+    // single-statement counter change, no read-modify-write of the entity; never drops below zero
+    @Modifying
+    @Query("UPDATE EventEntity e SET e.likes = e.likes + :delta WHERE e.id = :eventId AND e.likes + :delta >= 0")
+    int adjustLikes(@Param("eventId") int eventId, @Param("delta") int delta);
+
     Page<EventEntity> findByLastUpdateDateAfter(LocalDateTime lastUpdateDateAfter, Pageable pageable);
 
+    // county feed read model: event + county + author in one joined query, newest first
+    @Query(value = """
+            SELECT new com.citynote.repository.projection.EventFeedRow(
+                e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                c.id, c.countyName, u.username, u.firstName, u.lastName)
+            FROM EventEntity e
+            JOIN e.county c
+            LEFT JOIN e.userProfile up
+            LEFT JOIN up.user u
+            WHERE c.id = :countyId
+            ORDER BY e.lastUpdateDate DESC, e.id DESC
+            """,
+            countQuery = "SELECT COUNT(e) FROM EventEntity e WHERE e.county.id = :countyId")
+    Page<EventFeedRow> findFeedRowsByCountyId(@Param("countyId") int countyId, Pageable pageable);
+
+    // keyset (cursor) finders: List return type, so Spring Data issues no COUNT query.
+    // Callers pass PageRequest.of(0, limit) only to bound the result.
+    @Query("""
+            SELECT new com.citynote.repository.projection.EventFeedRow(
+                e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                c.id, c.countyName, u.username, u.firstName, u.lastName)
+            FROM EventEntity e
+            JOIN e.county c
+            LEFT JOIN e.userProfile up
+            LEFT JOIN up.user u
+            WHERE c.id = :countyId
+            ORDER BY e.lastUpdateDate DESC, e.id DESC
+            """)
+    List<EventFeedRow> findFeedRowsByCountyIdFirst(@Param("countyId") int countyId, Pageable limit);
+
+    @Query("""
+            SELECT new com.citynote.repository.projection.EventFeedRow(
+                e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                c.id, c.countyName, u.username, u.firstName, u.lastName)
+            FROM EventEntity e
+            JOIN e.county c
+            LEFT JOIN e.userProfile up
+            LEFT JOIN up.user u
+            WHERE c.id = :countyId
+              AND (e.lastUpdateDate < :lastUpdateDate
+                   OR (e.lastUpdateDate = :lastUpdateDate AND e.id < :eventId))
+            ORDER BY e.lastUpdateDate DESC, e.id DESC
+            """)
+    List<EventFeedRow> findFeedRowsByCountyIdBefore(@Param("countyId") int countyId,
+                                                    @Param("lastUpdateDate") LocalDateTime lastUpdateDate,
+                                                    @Param("eventId") int eventId,
+                                                    Pageable limit);
+
+    // per-county activity (event count, likes, latest update) for a batch of counties
+    @Query("""
+            SELECT new com.citynote.repository.projection.CountyActivityRow(
+                e.county.id, COUNT(e), SUM(e.likes), MAX(e.lastUpdateDate))
+            FROM EventEntity e
+            WHERE e.county.id IN :countyIds
+            GROUP BY e.county.id
+            """)
+    List<CountyActivityRow> summarizeByCountyIds(@Param("countyIds") Collection<Integer> countyIds);
+
+    // which of the given events belong to a batch of counties
+    @Query("""
+            SELECT new com.citynote.repository.projection.EventCountyRow(e.id, e.county.id)
+            FROM EventEntity e
+            WHERE e.id IN :eventIds AND e.county.id IN :countyIds
+            """)
+    List<EventCountyRow> findCountiesOfEvents(@Param("eventIds") Collection<Integer> eventIds,
+                                              @Param("countyIds") Collection<Integer> countyIds);
+
+    @Query("""
+            SELECT new com.citynote.repository.projection.EventFeedRow(
+                e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                c.id, c.countyName, u.username, u.firstName, u.lastName)
+            FROM EventEntity e
+            JOIN e.county c
+            JOIN e.userProfile up
+            LEFT JOIN up.user u
+            WHERE up.id = :userProfileId
+            ORDER BY e.lastUpdateDate DESC, e.id DESC
+            """)
+    List<EventFeedRow> findFeedRowsByUserProfileIdFirst(@Param("userProfileId") int userProfileId, Pageable limit);
+
+    @Query("""
+            SELECT new com.citynote.repository.projection.EventFeedRow(
+                e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                c.id, c.countyName, u.username, u.firstName, u.lastName)
+            FROM EventEntity e
+            JOIN e.county c
+            JOIN e.userProfile up
+            LEFT JOIN up.user u
+            WHERE up.id = :userProfileId
+              AND (e.lastUpdateDate < :lastUpdateDate
+                   OR (e.lastUpdateDate = :lastUpdateDate AND e.id < :eventId))
+            ORDER BY e.lastUpdateDate DESC, e.id DESC
+            """)
+    List<EventFeedRow> findFeedRowsByUserProfileIdBefore(@Param("userProfileId") int userProfileId,
+                                                         @Param("lastUpdateDate") LocalDateTime lastUpdateDate,
+                                                         @Param("eventId") int eventId,
+                                                         Pageable limit);
+
 }
@@ -0,0 +1,23 @@
+package com.citynote.repository;
+
+import com.citynote.entity.PendingFileDeletionEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface PendingFileDeletionRepository extends JpaRepository<PendingFileDeletionEntity, Long> {
+    // due deletions, oldest first; rows waiting out a retry backoff are skipped
+    List<PendingFileDeletionEntity> findByNextAttemptDateLessThanEqualOrderByIdAsc(LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PendingFileDeletionEntity p SET p.attempts = :attempts, p.nextAttemptDate = :nextAttemptDate WHERE p.id = :id")
+    int scheduleRetry(@Param("id") long id, @Param("attempts") int attempts,
+                      @Param("nextAttemptDate") LocalDateTime nextAttemptDate);
+}
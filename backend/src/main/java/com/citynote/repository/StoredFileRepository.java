@@ -0,0 +1,54 @@
+package com.citynote.repository;
+
+import com.citynote.entity.StoredFileEntity;
+import com.citynote.repository.projection.StoredFileHashRow;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StoredFileRepository extends JpaRepository<StoredFileEntity, Integer> {
+    Optional<StoredFileEntity> findByFilename(String filename);
+
+    List<StoredFileEntity> findByFilenameIn(Collection<String> filenames);
+
+    @Query("SELECT s.mimeType FROM StoredFileEntity s WHERE s.filename = :filename")
+    Optional<String> findMimeTypeByFilename(@Param("filename") String filename);
+
+    // keyset pages of the hashes worth indexing, for rebuilding the near-duplicate index
+    @Query("""
+            SELECT new com.citynote.repository.projection.StoredFileHashRow(s.id, s.filename, s.perceptualHash)
+            FROM StoredFileEntity s
+            WHERE s.id > :afterId AND s.perceptualHash IS NOT NULL AND s.perceptualHash <> 0
+            ORDER BY s.id
+            """)
+    List<StoredFileHashRow> findHashesAfter(@Param("afterId") int afterId, Pageable pageable);
+
+    // files stored before perceptual hashing, in id order
+    @Query("SELECT s FROM StoredFileEntity s WHERE s.id > :afterId AND s.perceptualHash IS NULL ORDER BY s.id")
+    List<StoredFileEntity> findUnhashedAfter(@Param("afterId") int afterId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE StoredFileEntity s SET s.perceptualHash = :hash WHERE s.filename = :filename AND s.perceptualHash IS NULL")
+    int recordPerceptualHash(@Param("filename") String filename, @Param("hash") long hash);
+
+    // serializes uploads and unlinks of the same content
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM StoredFileEntity s WHERE s.filename = :filename")
+    Optional<StoredFileEntity> lockByFilename(@Param("filename") String filename);
+
+    @Modifying
+    @Query("UPDATE StoredFileEntity s SET s.refCount = s.refCount + 1 WHERE s.filename = :filename")
+    int incrementRefCount(@Param("filename") String filename);
+
+    @Modifying
+    @Query("UPDATE StoredFileEntity s SET s.refCount = s.refCount - 1 WHERE s.filename = :filename AND s.refCount > 0")
+    int decrementRefCount(@Param("filename") String filename);
+}
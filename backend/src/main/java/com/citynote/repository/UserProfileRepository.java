@@ -11,4 +11,7 @@ public interface UserProfileRepository extends JpaRepository<UserProfile, Intege
     
     @Query("SELECT up FROM UserProfile up WHERE up.user.username = :username")
     Optional<UserProfile> findByUsername(@Param("username") String username);
+
+    @Query("SELECT up.id FROM UserProfile up WHERE up.user.id = :userId")
+    Optional<Integer> findIdByUserId(@Param("userId") Long userId);
 }
@@ -0,0 +1,16 @@
+package com.citynote.repository.projection;
+
+/**
+ * Picture link of one event and its layout metadata, loaded for a whole feed page with a
+ * single IN query. The metadata columns are null for pictures attached before it was recorded.
+ */
+public record BlobLinkRow(
+        int eventId,
+        String filename,
+        int inPlaceOrder,
+        Integer width,
+        Integer height,
+        Long byteSize,
+        String mimeType,
+        String blurHash) {
+}
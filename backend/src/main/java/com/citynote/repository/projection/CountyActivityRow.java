@@ -0,0 +1,13 @@
+package com.citynote.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated activity of one county, as computed by the summary rebuild query.
+ */
+public record CountyActivityRow(
+        int countyId,
+        long eventCount,
+        long totalLikes,
+        LocalDateTime latestUpdate) {
+}
@@ -0,0 +1,9 @@
+package com.citynote.repository.projection;
+
+/**
+ * An event id with the county it belongs to.
+ */
+public record EventCountyRow(
+        int eventId,
+        int countyId) {
+}
@@ -0,0 +1,24 @@
+package com.citynote.repository.projection;
+
+import com.citynote.entity.enums.EventType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat read model of one feed entry: the event joined with its county and author.
+ * Built by JPQL constructor expressions so a feed page never hydrates
+ * {@link com.citynote.entity.EventEntity} graphs.
+ */
+public record EventFeedRow(
+        int id,
+        String title,
+        String content,
+        EventType eventType,
+        int likes,
+        LocalDateTime lastUpdateDate,
+        int countyId,
+        String countyName,
+        String authorUsername,
+        String authorFirstName,
+        String authorLastName) {
+}
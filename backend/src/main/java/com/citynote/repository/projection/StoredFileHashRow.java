@@ -0,0 +1,10 @@
+package com.citynote.repository.projection;
+
+/**
+ * Perceptual hash of one stored file, read in id order to rebuild the near-duplicate index.
+ */
+public record StoredFileHashRow(
+        int id,
+        String filename,
+        long perceptualHash) {
+}
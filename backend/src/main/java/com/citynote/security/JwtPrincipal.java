@@ -0,0 +1,32 @@
+package com.citynote.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Optional;
+
+/**
+ * Principal built from verified JWT claims, so authenticated requests carry the
+ * user and profile ids without loading the user from the database.
+ * {@link Authentication#getName()} still returns the username.
+ */
+public record JwtPrincipal(String username, Long userId, int profileId) implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    /**
+     * The principal of the current request, if it was authenticated from a token carrying ids.
+     */
+    public static Optional<JwtPrincipal> current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return Optional.of(principal);
+        }
+        return Optional.empty();
+    }
+}
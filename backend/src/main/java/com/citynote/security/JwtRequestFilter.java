@@ -4,7 +4,11 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -13,11 +17,19 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 import org.springframework.lang.NonNull;
 
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
+    // not "logger": that would hide the one GenericFilterBean declares
+    private static final Logger log = LoggerFactory.getLogger(JwtRequestFilter.class);
+
+    // same authorities CustomUserDetailsService grants
+    private static final List<GrantedAuthority> USER_AUTHORITIES = AuthorityUtils.createAuthorityList("USER");
+
     private final UserDetailsService userDetailsService;
     private final JwtTokenUtil jwtTokenUtil;
 
@@ -79,32 +91,41 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         // "present" : "missing"));
 
         String username = null;
-        String jwt = null;
+        Optional<JwtTokenUtil.VerifiedToken> verified = Optional.empty();
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
-            username = jwtTokenUtil.getUsernameFromToken(jwt);
-            // System.out.println("Extracted username from token: " + username);
+            // one parse (or a cache hit) covers signature, expiry and claims
+            verified = jwtTokenUtil.verify(authorizationHeader.substring(7));
+            username = verified.map(JwtTokenUtil.VerifiedToken::username).orElse(null);
+            if (verified.isEmpty()) {
+                log.debug("Invalid or expired JWT token");
+            }
         }
 
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-
-                if (jwtTokenUtil.validateToken(jwt, userDetails)) {
+                // tokens carrying id claims are trusted once verified, without a user lookup
+                Optional<JwtPrincipal> principal = verified.get().principal();
+                if (principal.isPresent()) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
+                            principal.get(), null, USER_AUTHORITIES);
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
-                    System.out.println("[JWT Filter] Authentication set for user: " + username);
+                    log.trace("Authentication set from token claims for user {}", username);
                 } else {
-                    System.out.println("[JWT Filter] Invalid JWT token for user: " + username);
+                    // older tokens without id claims, already verified above
+                    UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                            userDetails, null, userDetails.getAuthorities());
+                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                    log.trace("Authentication set for user {}", username);
                 }
             } catch (Exception e) {
-                System.out.println("[JWT Filter] Error processing JWT token: " + e.getMessage());
+                log.debug("Could not authenticate user {} from JWT token", username, e);
             }
         } else if (username == null) {
-            System.out.println("[JWT Filter] No JWT token found in request");
+            log.trace("No JWT token found in request");
         }
 
         chain.doFilter(request, response);
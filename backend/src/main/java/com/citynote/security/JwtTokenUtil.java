@@ -1,31 +1,100 @@
 package com.citynote.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+/**
+ * Issues and verifies the HS256 bearer tokens.
+ * <p>
+ * The signing key and parser are built once. {@link #verify(String)} parses a token a
+ * single time and remembers the result in a bounded cache keyed by the token's SHA-256
+ * digest (the token itself is never retained); each entry expires at the token's
+ * {@code exp}, so a cached token is never accepted after it would fail verification.
+ */
 @Component
 public class JwtTokenUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    static final String USER_ID_CLAIM = "uid";
+    static final String PROFILE_ID_CLAIM = "pid";
 
-    @Value("${jwt.expiration}")
-    private Long expiration;
+    /**
+     * Result of a successful verification. {@code userId} and {@code profileId} are
+     * null for tokens issued without id claims.
+     */
+    public record VerifiedToken(String username, Long userId, Integer profileId, Date expiration) {
 
-    private Key getSigningKey() {
-        byte[] keyBytes = secret.getBytes();
-        return Keys.hmacShaKeyFor(keyBytes);
+        public Optional<JwtPrincipal> principal() {
+            if (userId == null || profileId == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new JwtPrincipal(username, userId, profileId));
+        }
+    }
+
+    private final Long expiration;
+    private final Key signingKey;
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JwtTokenUtil(
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.expiration}") Long expiration,
+            @Value("${jwt.verified-cache.max-entries:10000}") long maxVerifiedTokens,
+            MeterRegistry meterRegistry) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        // JwtParser is immutable and thread-safe
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxVerifiedTokens)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String digest, VerifiedToken token, long currentTime) {
+                        long millisLeft = token.expiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisLeft));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String digest, VerifiedToken token, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String digest, VerifiedToken token, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwtVerified");
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -33,19 +102,58 @@ public class JwtTokenUtil {
         return createToken(claims, userDetails.getUsername());
     }
 
+    // Embeds the ids so requests can be authenticated from the token alone (see JwtPrincipal)
+    public String generateToken(UserDetails userDetails, Long userId, int profileId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, userId);
+        claims.put(PROFILE_ID_CLAIM, profileId);
+        return createToken(claims, userDetails.getUsername());
+    }
+
     private String createToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration * 1000))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Verifies signature and expiry with a single parse, or answers from the cache of
+     * already verified tokens. Empty for malformed, forged or expired tokens.
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<VerifiedToken> verified = parse(token);
+        // tokens without exp would never expire from the cache, verify those every time
+        verified.filter(result -> result.expiration() != null)
+                .ifPresent(result -> verifiedTokens.put(digest, result));
+        return verified;
+    }
+
+    /**
+     * Single parse without the cache; also used to compare both paths in benchmarks.
+     */
+    Optional<VerifiedToken> parse(String token) {
+        try {
+            // the parser rejects expired tokens itself
+            return Optional.of(toVerifiedToken(parser.parseClaimsJws(token).getBody()));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return verify(token)
+                .map(verified -> verified.username().equals(userDetails.getUsername()))
+                .orElse(false);
     }
 
     public String getUsernameFromToken(String token) {
@@ -62,15 +170,26 @@ public class JwtTokenUtil {
     }
 
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    private static VerifiedToken toVerifiedToken(Claims claims) {
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        Number profileId = claims.get(PROFILE_ID_CLAIM, Number.class);
+        return new VerifiedToken(
+                claims.getSubject(),
+                userId != null ? userId.longValue() : null,
+                profileId != null ? profileId.intValue() : null,
+                claims.getExpiration());
     }
 
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    private static String digest(String token) {
+        try {
+            // MessageDigest instances are not thread-safe, getInstance is cheap
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
-} 
\ No newline at end of file
+}
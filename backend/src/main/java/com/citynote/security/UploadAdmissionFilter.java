@@ -0,0 +1,112 @@
+package com.citynote.security;
+
+import com.citynote.controller.FileUploadController;
+import com.citynote.service.impl.UploadAdmissionController;
+import com.citynote.service.impl.UploadAdmissionController.Admission;
+import com.citynote.service.impl.UploadAdmissionController.Rejection;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Runs uploads past the {@link UploadAdmissionController} before anything reads their body.
+ * Turned away uploads get a 429 or 503 with {@code Retry-After}, and the connection is
+ * closed so the container does not read the body it will not use.
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadAdmissionFilter.class);
+
+    private final UploadAdmissionController uploadAdmissionController;
+    private final JwtTokenUtil jwtTokenUtil;
+
+    public UploadAdmissionFilter(UploadAdmissionController uploadAdmissionController, JwtTokenUtil jwtTokenUtil) {
+        this.uploadAdmissionController = uploadAdmissionController;
+        this.jwtTokenUtil = jwtTokenUtil;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = path(request);
+        String method = request.getMethod();
+        boolean upload = (method.equals("POST") && (path.equals("/upload/image") || path.equals("/upload/image/stream")
+                || path.equals("/upload/video/stream")))
+                || (method.equals("PUT") && path.startsWith("/upload/chunked/") && path.contains("/chunks/"));
+        return !upload;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain chain) throws ServletException, IOException {
+        long length = request.getContentLengthLong();
+        Admission admission = uploadAdmissionController.admit(request.getRemoteAddr(), user(request),
+                length >= 0 ? length : maxRequestSize(request));
+        if (!admission.admitted()) {
+            // counted by the admission controller; logged only when debugging
+            log.debug("Rejected {} {} from {}: {}", request.getMethod(),
+                    request.getRequestURI(), request.getRemoteAddr(), admission.rejection());
+            reject(response, admission);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            uploadAdmissionController.release();
+        }
+    }
+
+    // what the endpoint accepts at most, charged when a request does not say (chunked encoding);
+    // chunks belong to uploads of at most an image's size
+    private static long maxRequestSize(HttpServletRequest request) {
+        return path(request).equals("/upload/video/stream")
+                ? FileUploadController.MAX_VIDEO_REQUEST_SIZE
+                : FileUploadController.MAX_REQUEST_SIZE;
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    // the authenticated user, or the one named by a valid token on endpoints that skip authentication
+    private Optional<String> user(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()) {
+            return Optional.of(authentication.getName());
+        }
+        String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+            return jwtTokenUtil.verify(authorizationHeader.substring(7)).map(JwtTokenUtil.VerifiedToken::username);
+        }
+        return Optional.empty();
+    }
+
+    private static void reject(HttpServletResponse response, Admission admission) throws IOException {
+        boolean rate = admission.rejection() == Rejection.RATE;
+        response.setStatus(rate ? HttpStatus.TOO_MANY_REQUESTS.value() : HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()));
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(rate
+                ? "{\"error\":\"Too many uploads, try again later\"}"
+                : "{\"error\":\"Server is busy with other uploads, try again later\"}");
+    }
+}
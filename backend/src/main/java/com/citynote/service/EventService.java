@@ -1,11 +1,15 @@
 package com.citynote.service;
 
+import com.citynote.dto.CountyActivityDTO;
+import com.citynote.dto.CursorPageDTO;
 import com.citynote.dto.EventResponseDTO;
 import com.citynote.dto.EventRequestDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -21,6 +25,20 @@ public interface EventService {
     // a list of current user's posted events
     Page<EventResponseDTO> getPagesOfCurrentUserEvents(Pageable pageable);
 
+    // keyset (cursor) variants of the feeds above, newest first and without a count query;
+    // a blank cursor starts from the newest event
+    CursorPageDTO<EventResponseDTO> getCursorPageOfEventsByCounty(int countyId, String cursor, int size);
+
+    CursorPageDTO<EventResponseDTO> getCursorPageOfUserPostedEvents(Long userId, String cursor, int size);
+
+    CursorPageDTO<EventResponseDTO> getCursorPageOfCurrentUserEvents(String cursor, int size);
+
+    // newest events across a set of counties (map viewport) as one time-ordered cursor slice
+    CursorPageDTO<EventResponseDTO> getRecentEventsAcrossCounties(Collection<Integer> countyIds, String cursor, int limit);
+
+    // event count, total likes and latest update of every active county, for map shading
+    CountyActivityDTO getCountyActivity();
+
     // return new event's ID
     int postEvent(EventRequestDTO eventRequestDTO);
 
@@ -33,6 +51,9 @@ public interface EventService {
     // toggle like for an event (like/unlike)
     Boolean toggleEventLike(int eventId);
 
+    // whether the current viewer likes each event (all false for anonymous viewers)
+    Map<Integer, Boolean> getLikeStatus(Collection<Integer> eventIds);
+
     // increment likes count for an event (for backward compatibility)
     Boolean incrementEventLikes(int eventId);
 
@@ -0,0 +1,78 @@
+package com.citynote.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * The bytes of one stored upload, as handed out by {@link UploadStorage#open}: a file of its
+ * own, or a region of a larger file. Stored uploads are immutable, so size and modification
+ * time identify the content.
+ */
+public interface StoredObject {
+
+    long size();
+
+    Instant lastModified();
+
+    // set when the object is a whole file, which the servlet container can send by itself
+    Optional<Path> file();
+
+    // writes up to count bytes starting at position; returns the bytes written
+    long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+    InputStream openStream() throws IOException;
+
+    /**
+     * A regular file as a stored object, or empty if there is no such file.
+     */
+    static Optional<StoredObject> ofFile(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        return Optional.of(new FileObject(file, attributes.size(), attributes.lastModifiedTime().toInstant()));
+    }
+
+    record FileObject(Path path, long size, Instant lastModified) implements StoredObject {
+
+        @Override
+        public Optional<Path> file() {
+            return Optional.of(path);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                long sent = 0;
+                while (sent < count) {
+                    long transferred = source.transferTo(position + sent, count - sent, target);
+                    if (transferred <= 0) {
+                        // file shrank underneath us; the client sees a short body
+                        break;
+                    }
+                    sent += transferred;
+                }
+                return sent;
+            }
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.citynote.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Where uploaded files (originals and their renditions) live, by name.
+ * Names are flat, e.g. {@code <sha256>.jpg}; how they map to storage is up to the backend,
+ * chosen with {@code file.storage.backend}.
+ */
+public interface UploadStorage {
+
+    record Entry(String name, long size, Instant lastModified) {
+    }
+
+    // a new, empty file to write an upload into before it is stored under its final name
+    Path createTempFile() throws IOException;
+
+    // moves a staged file in under the name; false (staged file left alone) if the name is already stored
+    boolean store(String name, Path staged) throws IOException;
+
+    // the stored file's bytes, empty if there is none
+    Optional<StoredObject> open(String name) throws IOException;
+
+    boolean exists(String name) throws IOException;
+
+    // true if a file was removed
+    boolean delete(String name) throws IOException;
+
+    // removes temp files last written before the cutoff (uploads abandoned or cut off by a restart)
+    int deleteStaleTempFiles(Instant cutoff) throws IOException;
+
+    // every stored file (no temp files), listed lazily and in ascending name order within each part
+    // of the backend's layout; listing errors surface as UncheckedIOException
+    Iterator<Entry> list() throws IOException;
+
+    // plain file names only: no separators, no "." or ".." and no hidden names
+    static boolean isValidName(String name) {
+        return name != null
+                && !name.isEmpty()
+                && !name.startsWith(".")
+                && name.indexOf('/') < 0
+                && name.indexOf('\\') < 0
+                && name.indexOf('\0') < 0;
+    }
+}
@@ -9,6 +9,7 @@ public interface UserService {
     Optional<User> getUserById(Long id);
     Optional<User> getUserByUsername(String username);
     Optional<User> getUserByEmail(String email);
+    Optional<Integer> getProfileIdByUserId(Long userId);
     List<User> getAllUsers();
     User updateUser(User user);
     void deleteUser(Long id);
@@ -0,0 +1,157 @@
+package com.citynote.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree of 64-bit hashes under Hamming distance, each hash carrying the
+ * names of the files that have it. A search within distance d only descends into children
+ * whose edge distance is within d of the node's own distance (triangle inequality), so a
+ * tight threshold visits a small fraction of the tree.
+ * <p>
+ * Not thread-safe. Removing a name leaves its node in place (a node without names is
+ * skipped by searches), since detaching it would mean re-inserting its whole subtree.
+ */
+final class BkTree {
+
+    record Match(String name, int distance) {
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final long hash;
+        final List<String> names = new ArrayList<>(1);
+        // children by edge distance, in insertion order; few per node
+        byte[] childDistances = new byte[0];
+        Node[] children = NO_CHILDREN;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < children.length; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(int distance, long hash) {
+            Node child = new Node(hash);
+            int count = children.length;
+            childDistances = Arrays.copyOf(childDistances, count + 1);
+            children = Arrays.copyOf(children, count + 1);
+            childDistances[count] = (byte) distance;
+            children[count] = child;
+            return child;
+        }
+    }
+
+    private final Map<String, Long> hashes = new HashMap<>();
+    private Node root;
+    private int nodes;
+
+    /**
+     * Indexes the name under the hash, replacing whatever hash it had before.
+     */
+    void add(String name, long hash) {
+        Long previous = hashes.put(name, hash);
+        if (previous != null) {
+            if (previous == hash) {
+                return;
+            }
+            detach(name, previous);
+        }
+        if (root == null) {
+            root = new Node(hash);
+            nodes++;
+            root.names.add(name);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                node.names.add(name);
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, hash).names.add(name);
+                nodes++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    void remove(String name) {
+        Long hash = hashes.remove(name);
+        if (hash != null) {
+            detach(name, hash);
+        }
+    }
+
+    /**
+     * Every indexed name whose hash is within {@code maxDistance} of the given one,
+     * closest first.
+     */
+    List<Match> search(long hash, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance <= maxDistance) {
+                for (String name : node.names) {
+                    matches.add(new Match(name, distance));
+                }
+            }
+            for (int i = 0; i < node.children.length; i++) {
+                if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        matches.sort((a, b) -> a.distance() != b.distance()
+                ? Integer.compare(a.distance(), b.distance())
+                : a.name().compareTo(b.name()));
+        return matches;
+    }
+
+    Long hashOf(String name) {
+        return hashes.get(name);
+    }
+
+    int size() {
+        return hashes.size();
+    }
+
+    int nodeCount() {
+        return nodes;
+    }
+
+    private void detach(String name, long hash) {
+        Node node = root;
+        while (node != null) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                node.names.remove(name);
+                return;
+            }
+            node = node.child(distance);
+        }
+    }
+}
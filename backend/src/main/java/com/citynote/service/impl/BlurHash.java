@@ -0,0 +1,114 @@
+package com.citynote.service.impl;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * BlurHash encoder (https://blurha.sh): an image reduced to a few DCT components and
+ * written as a short base-83 string, which clients decode into a blurred placeholder.
+ */
+final class BlurHash {
+
+    private static final String DIGITS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {
+    }
+
+    /**
+     * Encodes the image with {@code xComponents} by {@code yComponents} components (1 to 9 each).
+     * Callers pass a small image: the cost grows with pixels times components.
+     */
+    static String encode(BufferedImage image, int xComponents, int yComponents) {
+        if (xComponents < 1 || xComponents > 9 || yComponents < 1 || yComponents > 9) {
+            throw new IllegalArgumentException("BlurHash components must be between 1 and 9");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        double[] linear = new double[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            linear[i * 3] = srgbToLinear((pixels[i] >> 16) & 0xff);
+            linear[i * 3 + 1] = srgbToLinear((pixels[i] >> 8) & 0xff);
+            linear[i * 3 + 2] = srgbToLinear(pixels[i] & 0xff);
+        }
+
+        double[][] factors = new double[xComponents * yComponents][];
+        for (int j = 0; j < yComponents; j++) {
+            for (int i = 0; i < xComponents; i++) {
+                double normalisation = (i == 0 && j == 0) ? 1 : 2;
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                for (int y = 0; y < height; y++) {
+                    double basisY = Math.cos(Math.PI * j * y / height);
+                    for (int x = 0; x < width; x++) {
+                        double basis = Math.cos(Math.PI * i * x / width) * basisY;
+                        int offset = (y * width + x) * 3;
+                        r += basis * linear[offset];
+                        g += basis * linear[offset + 1];
+                        b += basis * linear[offset + 2];
+                    }
+                }
+                double scale = normalisation / (width * height);
+                factors[j * xComponents + i] = new double[]{r * scale, g * scale, b * scale};
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        appendBase83(hash, (xComponents - 1) + (yComponents - 1) * 9, 1);
+        double maximumValue;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantisedMaximum = clamp((int) Math.floor(actualMaximum * 166 - 0.5), 0, 82);
+            maximumValue = (quantisedMaximum + 1) / 166.0;
+            appendBase83(hash, quantisedMaximum, 1);
+        } else {
+            maximumValue = 1;
+            appendBase83(hash, 0, 1);
+        }
+
+        double[] dc = factors[0];
+        appendBase83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            int value = quantiseAc(ac[0], maximumValue) * 19 * 19
+                    + quantiseAc(ac[1], maximumValue) * 19
+                    + quantiseAc(ac[2], maximumValue);
+            appendBase83(hash, value, 2);
+        }
+        return hash.toString();
+    }
+
+    private static int quantiseAc(double value, double maximumValue) {
+        double scaled = value / maximumValue;
+        return clamp((int) Math.floor(Math.signum(scaled) * Math.sqrt(Math.abs(scaled)) * 9 + 9.5), 0, 18);
+    }
+
+    private static double srgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void appendBase83(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(DIGITS.charAt(digit));
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
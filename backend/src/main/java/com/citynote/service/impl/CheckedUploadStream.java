@@ -0,0 +1,86 @@
+package com.citynote.service.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Upload content checked while it streams: reading fails with an
+ * {@link UploadRejectedException} as soon as more than {@code maxBytes} have arrived, or
+ * once the first {@code signatureLength} bytes show the content is not what its extension
+ * claims. Only the signature is kept in memory.
+ */
+public abstract class CheckedUploadStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private final byte[] signature;
+    private long count;
+    private boolean verified;
+
+    protected CheckedUploadStream(InputStream in, int signatureLength, long maxBytes) {
+        super(in);
+        this.signature = new byte[signatureLength];
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n == -1) {
+            if (!verified) {
+                // shorter than a signature
+                verify();
+            }
+            return -1;
+        }
+        if (count < signature.length) {
+            System.arraycopy(b, off, signature, (int) count, (int) Math.min(n, signature.length - count));
+        }
+        count += n;
+        if (count > maxBytes) {
+            throw new UploadRejectedException("File size exceeds " + (maxBytes / (1024 * 1024)) + "MB limit");
+        }
+        if (!verified && count >= signature.length) {
+            verify();
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes still count towards the limit
+        byte[] scratch = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Rejects the content unless its first {@code length} bytes (fewer than the signature
+     * length only for shorter content) are what the upload claims to be.
+     */
+    protected abstract void checkSignature(byte[] signature, int length) throws UploadRejectedException;
+
+    private void verify() throws UploadRejectedException {
+        verified = true;
+        checkSignature(signature, (int) Math.min(count, signature.length));
+    }
+}
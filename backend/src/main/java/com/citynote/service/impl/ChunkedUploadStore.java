@@ -0,0 +1,372 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.ChunkedUploadDTO;
+import com.citynote.service.UploadStorage;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads sent in fixed-size chunks, for clients on connections that drop.
+ * <p>
+ * An upload is a file in the storage's staging area, preallocated to its final size.
+ * Each chunk is written at its own offset with positional {@link FileChannel} writes, so
+ * chunks can arrive in any order, in parallel, or again after a failed attempt; only
+ * chunks written completely are counted as received. Completing the upload hands the
+ * file to the {@link ContentAddressedStore} without copying it.
+ * <p>
+ * Uploads are kept in memory: after a restart clients start over, and the abandoned
+ * staging files are removed with the other expired ones by {@link #collectExpired()}.
+ * Each upload reserves its whole size on disk, so besides the overall limit
+ * ({@code max-uploads}) every client (a user, or an address when anonymous) may only
+ * have {@code max-uploads-per-client} uploads open at once.
+ */
+@Component
+public class ChunkedUploadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadStore.class);
+
+    static final long MAX_FILE_SIZE = 50 * 1024 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final UploadStorage uploadStorage;
+    private final ContentAddressedStore contentAddressedStore;
+    private final int chunkSize;
+    private final Duration expiry;
+    private final int maxUploads;
+    private final int maxUploadsPerClient;
+    private final Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    // guarded by itself; counts reservations as well, so concurrent initiates cannot overshoot
+    private final Map<String, Integer> openByClient = new HashMap<>();
+    private int open;
+
+    public ChunkedUploadStore(
+            UploadStorage uploadStorage,
+            ContentAddressedStore contentAddressedStore,
+            @Value("${file.upload.chunked.chunk-size-kb:1024}") int chunkSizeKb,
+            @Value("${file.upload.chunked.expiry-minutes:1440}") long expiryMinutes,
+            @Value("${file.upload.chunked.max-uploads:200}") int maxUploads,
+            @Value("${file.upload.chunked.max-uploads-per-client:10}") int maxUploadsPerClient) {
+        this.uploadStorage = uploadStorage;
+        this.contentAddressedStore = contentAddressedStore;
+        this.chunkSize = chunkSizeKb * 1024;
+        this.expiry = Duration.ofMinutes(expiryMinutes);
+        this.maxUploads = maxUploads;
+        this.maxUploadsPerClient = maxUploadsPerClient;
+    }
+
+    /**
+     * Starts an upload of {@code size} bytes for {@code client}.
+     *
+     * @throws UploadRejectedException if the file is not an accepted image or too large
+     * @throws IllegalStateException   if too many uploads are in progress, overall or for the client
+     */
+    public ChunkedUploadDTO initiate(String filename, long size, String client) throws IOException {
+        if (filename == null || filename.isEmpty()) {
+            throw new UploadRejectedException("Invalid filename");
+        }
+        String extension = filename.lastIndexOf('.') != -1 ? filename.substring(filename.lastIndexOf('.')) : "";
+        ImageFormat format = ImageFormat.fromExtension(extension).orElseThrow(() -> new UploadRejectedException(
+                "Only image files are allowed (jpg, jpeg, png, gif, webp, heic, heif)"));
+        if (size <= 0 || size > MAX_FILE_SIZE) {
+            throw new UploadRejectedException("File size must be between 1 byte and 50MB");
+        }
+        reserve(client);
+
+        Path file = null;
+        try {
+            file = uploadStorage.createTempFile();
+            try (RandomAccessFile preallocated = new RandomAccessFile(file.toFile(), "rw")) {
+                preallocated.setLength(size);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            unreserve(client);
+            throw e;
+        }
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        ChunkedUpload upload = new ChunkedUpload(UUID.randomUUID().toString(), filename, extension, format,
+                size, chunkCount, file, client);
+        uploads.put(upload.id, upload);
+        return upload.toDto(chunkSize);
+    }
+
+    private void reserve(String client) {
+        synchronized (openByClient) {
+            if (open >= maxUploads) {
+                throw new IllegalStateException("Too many uploads in progress, please retry later");
+            }
+            if (openByClient.getOrDefault(client, 0) >= maxUploadsPerClient) {
+                throw new IllegalStateException("Too many of your uploads are in progress, "
+                        + "please finish or abort one first");
+            }
+            openByClient.merge(client, 1, Integer::sum);
+            open++;
+        }
+    }
+
+    private void unreserve(String client) {
+        synchronized (openByClient) {
+            openByClient.computeIfPresent(client, (key, count) -> count > 1 ? count - 1 : null);
+            open--;
+        }
+    }
+
+    // the upload's reservation is given back by whoever removes it from the map
+    private boolean remove(ChunkedUpload upload) {
+        if (uploads.remove(upload.id, upload)) {
+            unreserve(upload.client);
+            return true;
+        }
+        return false;
+    }
+
+    public Optional<ChunkedUploadDTO> status(String uploadId) {
+        return find(uploadId).map(upload -> upload.toDto(chunkSize));
+    }
+
+    /**
+     * Writes chunk {@code index}, which must start at {@code offset} and be exactly one chunk
+     * long (the last one: the rest of the file). Empty if the upload does not exist.
+     *
+     * @throws UploadRejectedException if offset or length are wrong, or chunk 0 does not
+     *                                 start with the signature of the announced format
+     * @throws IllegalStateException   if the upload is being completed
+     */
+    public Optional<ChunkedUploadDTO> writeChunk(String uploadId, int index, long offset, InputStream body)
+            throws IOException {
+        Optional<ChunkedUpload> found = find(uploadId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        ChunkedUpload upload = found.get();
+        if (index < 0 || index >= upload.chunkCount) {
+            throw new UploadRejectedException("Chunk index must be between 0 and " + (upload.chunkCount - 1));
+        }
+        if (offset != (long) index * chunkSize) {
+            throw new UploadRejectedException("Chunk " + index + " starts at offset " + (long) index * chunkSize);
+        }
+        long length = Math.min(chunkSize, upload.size - offset);
+
+        upload.beginWrite();
+        boolean written = false;
+        try {
+            // the signature is checked while the first chunk streams in, not at the end
+            InputStream content = index == 0 ? new ImageUploadStream(body, upload.format, Long.MAX_VALUE) : body;
+            writeAt(upload.file, offset, length, content);
+            written = true;
+        } finally {
+            upload.endWrite(index, written);
+        }
+        return Optional.of(upload.toDto(chunkSize));
+    }
+
+    private static void writeAt(Path file, long offset, long length, InputStream content) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        try (ReadableByteChannel source = Channels.newChannel(content);
+             FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long position = offset;
+            long end = offset + length;
+            while (true) {
+                // one byte more than still expected, to notice an over-long chunk
+                buffer.limit((int) Math.min(buffer.capacity(), end - position + 1));
+                int read = source.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                if (position + buffer.position() > end) {
+                    throw new UploadRejectedException("Chunk is longer than " + length + " bytes");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += target.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            if (position != end) {
+                throw new UploadRejectedException("Chunk ended after " + (position - offset) + " of " + length + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Stores the assembled file once every chunk has arrived. Empty if the upload does not exist.
+     *
+     * @throws IllegalStateException if chunks are missing or still being written
+     */
+    public Optional<StoredUpload> complete(String uploadId) throws IOException {
+        Optional<ChunkedUpload> found = find(uploadId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        ChunkedUpload upload = found.get();
+        upload.beginComplete();
+        try {
+            return Optional.of(contentAddressedStore.adopt(upload.file, upload.extension));
+        } finally {
+            // adopt() consumed the staging file, successful or not
+            remove(upload);
+        }
+    }
+
+    /**
+     * Drops the upload and its staging file. False if the upload does not exist.
+     *
+     * @throws IllegalStateException if the upload is being completed, which reads the file
+     */
+    public boolean abort(String uploadId) throws IOException {
+        Optional<ChunkedUpload> found = find(uploadId);
+        if (found.isEmpty()) {
+            return false;
+        }
+        ChunkedUpload upload = found.get();
+        upload.beginAbort();
+        remove(upload);
+        Files.deleteIfExists(upload.file);
+        return true;
+    }
+
+    /**
+     * Drops uploads that received no chunk for {@code file.upload.chunked.expiry-minutes},
+     * and staging files left behind by uploads the application no longer knows about.
+     */
+    @Scheduled(fixedDelayString = "${file.upload.chunked.gc-interval-ms:60000}")
+    public void collectExpired() {
+        collectExpired(Instant.now());
+    }
+
+    void collectExpired(Instant now) {
+        Instant cutoff = now.minus(expiry);
+        int expired = 0;
+        for (ChunkedUpload upload : uploads.values()) {
+            if (upload.expireIfIdleSince(cutoff) && remove(upload)) {
+                expired++;
+                try {
+                    Files.deleteIfExists(upload.file);
+                } catch (IOException e) {
+                    logger.warn("Could not delete expired upload {}", upload.file, e);
+                }
+            }
+        }
+        try {
+            // files of uploads lost in a restart; the extra margin keeps clear of live uploads,
+            // whose files are written no later than their last activity
+            int stale = uploadStorage.deleteStaleTempFiles(cutoff.minus(expiry));
+            if (expired > 0 || stale > 0) {
+                logger.info("Collected {} expired chunked uploads and {} stale staging files", expired, stale);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not collect stale staging files", e);
+        }
+    }
+
+    private Optional<ChunkedUpload> find(String uploadId) {
+        return Optional.ofNullable(uploadId != null ? uploads.get(uploadId) : null);
+    }
+
+    private static final class ChunkedUpload {
+
+        private final String id;
+        private final String filename;
+        private final String extension;
+        private final ImageFormat format;
+        private final long size;
+        private final int chunkCount;
+        private final Path file;
+        private final String client;
+
+        // guarded by this
+        private final BitSet received = new BitSet();
+        private int activeWrites;
+        private boolean closed;
+        private Instant lastActivity = Instant.now();
+
+        ChunkedUpload(String id, String filename, String extension, ImageFormat format, long size,
+                      int chunkCount, Path file, String client) {
+            this.id = id;
+            this.filename = filename;
+            this.extension = extension;
+            this.format = format;
+            this.size = size;
+            this.chunkCount = chunkCount;
+            this.file = file;
+            this.client = client;
+        }
+
+        synchronized void beginWrite() {
+            if (closed) {
+                throw new IllegalStateException("Upload is already being completed");
+            }
+            activeWrites++;
+        }
+
+        synchronized void endWrite(int index, boolean written) {
+            activeWrites--;
+            lastActivity = Instant.now();
+            if (written) {
+                received.set(index);
+            } else {
+                // a failed rewrite may have clobbered an earlier good copy
+                received.clear(index);
+            }
+        }
+
+        synchronized void beginComplete() {
+            if (closed) {
+                throw new IllegalStateException("Upload is already being completed");
+            }
+            if (activeWrites > 0) {
+                throw new IllegalStateException("Chunks are still being written");
+            }
+            if (received.cardinality() < chunkCount) {
+                throw new IllegalStateException("Missing " + (chunkCount - received.cardinality()) + " of "
+                        + chunkCount + " chunks");
+            }
+            closed = true;
+        }
+
+        synchronized void beginAbort() {
+            if (closed) {
+                throw new IllegalStateException("Upload is already being completed");
+            }
+            closed = true;
+        }
+
+        // idle uploads are closed to writers before their file is deleted
+        synchronized boolean expireIfIdleSince(Instant cutoff) {
+            if (closed || activeWrites > 0 || !lastActivity.isBefore(cutoff)) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        synchronized ChunkedUploadDTO toDto(int chunkSize) {
+            return new ChunkedUploadDTO(id, filename, size, chunkSize, chunkCount, received.stream().boxed().toList());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.StoredFileEntity;
+import com.citynote.repository.StoredFileRepository;
+import com.citynote.service.UploadStorage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Upload storage keyed by content: a file is stored once as {@code <sha256><ext>} however
+ * many notes use it, with a reference count kept in {@code stored_files}.
+ * <p>
+ * The hash is computed while the upload streams to a temp file next to its final
+ * location, which is then moved into place unless identical content is already stored.
+ * Blobs take and drop references inside the transaction that writes them
+ * ({@link #retain}, {@link #release}); after commit {@link #discard} (run by the
+ * {@link FileDeletionQueue}) unlinks files nobody references any more. The file is moved
+ * into the storage backend before its row is locked, so a slow transfer holds neither a
+ * connection nor the lock; registering the upload and unlinking then lock the row, and
+ * registering checks the file is still there, so one never hands out a file the other
+ * has just removed.
+ * <p>
+ * An unreferenced file uploaded within {@code file.dedup.unclaimed-grace-minutes} is kept:
+ * its uploader (or another user uploading the same photo) may be about to attach it.
+ * Files from before content addressing (UUID names, no row) keep their old behavior and
+ * are unlinked as soon as they are released.
+ */
+@Component
+public class ContentAddressedStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentAddressedStore.class);
+
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{64}(\\.[A-Za-z0-9]+)?");
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    public record StoredUpload(String filename, boolean created, ImageMetadata metadata) {
+        public StoredUpload(String filename, boolean created) {
+            this(filename, created, null);
+        }
+    }
+
+    private final UploadStorage uploadStorage;
+    private final StoredFileRepository storedFileRepository;
+    private final ImageRenditionWorker imageRenditionWorker;
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration unclaimedGrace;
+    // a content's type never changes, so image requests look it up once
+    private final Cache<String, String> mimeTypes = Caffeine.newBuilder().maximumSize(10_000).build();
+
+    public ContentAddressedStore(
+            UploadStorage uploadStorage,
+            StoredFileRepository storedFileRepository,
+            ImageRenditionWorker imageRenditionWorker,
+            PerceptualHashIndex perceptualHashIndex,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.dedup.unclaimed-grace-minutes:60}") long unclaimedGraceMinutes) {
+        this.uploadStorage = uploadStorage;
+        this.storedFileRepository = storedFileRepository;
+        this.imageRenditionWorker = imageRenditionWorker;
+        this.perceptualHashIndex = perceptualHashIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.unclaimedGrace = Duration.ofMinutes(unclaimedGraceMinutes);
+    }
+
+    /**
+     * Streams the upload to disk while hashing it and returns its content-addressed name;
+     * {@code created} is false when identical content was already stored.
+     */
+    public StoredUpload store(InputStream content, String extension) throws IOException {
+        Path temp = uploadStorage.createTempFile();
+        try {
+            MessageDigest sha256 = sha256();
+            long size = 0;
+            // channel to channel through the JDK's small transfer buffer, whatever the upload's size
+            try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(content, sha256));
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long transferred;
+                while ((transferred = target.transferFrom(source, size, TRANSFER_CHUNK)) > 0) {
+                    size += transferred;
+                }
+            }
+            return commit(temp, HexFormat.of().formatHex(sha256.digest()), size, extension);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores a file that is already complete in the staging area of the upload storage
+     * (e.g. an assembled chunked upload): it is hashed in place and renamed, not copied.
+     * The staged file is gone afterwards either way.
+     */
+    public StoredUpload adopt(Path staged, String extension) throws IOException {
+        try {
+            MessageDigest sha256 = sha256();
+            long size = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+            try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) != -1) {
+                    buffer.flip();
+                    sha256.update(buffer);
+                    buffer.clear();
+                    size += read;
+                }
+            }
+            return commit(staged, HexFormat.of().formatHex(sha256.digest()), size, extension);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    private StoredUpload commit(Path temp, String contentHash, long size, String extension) throws IOException {
+        String filename = contentHash + extension.toLowerCase(Locale.ROOT);
+        // read outside the row lock; identical content has identical metadata, so it is read once
+        ImageMetadata metadata = storedFileRepository.findByFilename(filename)
+                .filter(existing -> existing.getMimeType() != null && existing.getPerceptualHash() != null)
+                .map(ContentAddressedStore::metadataOf)
+                .orElseGet(() -> ImageMetadataReader.read(temp, size));
+        // the transfer (a multipart upload on S3) happens before any row lock or pooled connection
+        // is taken: the name is the content's hash, so whoever stores it first stores the same bytes
+        boolean created = uploadStorage.store(filename, temp);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(
+                        status -> register(filename, contentHash, size, metadata));
+                perceptualHashIndex.add(filename, PerceptualHashIndex.hashOf(metadata));
+                return new StoredUpload(filename, created, metadata);
+            } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
+                // first upload of this content raced another one; the row exists now
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private void register(String filename, String contentHash, long size, ImageMetadata metadata) {
+        LocalDateTime now = LocalDateTime.now();
+        StoredFileEntity storedFile = storedFileRepository.lockByFilename(filename).orElse(null);
+        if (storedFile == null) {
+            storedFile = new StoredFileEntity();
+            storedFile.setFilename(filename);
+            storedFile.setContentHash(contentHash);
+            storedFile.setSize(size);
+            storedFile.setCreateDate(now);
+        }
+        if (storedFile.getMimeType() == null) {
+            storedFile.setWidth(metadata.width());
+            storedFile.setHeight(metadata.height());
+            storedFile.setMimeType(metadata.mimeType());
+            storedFile.setBlurHash(metadata.blurHash());
+        }
+        if (storedFile.getPerceptualHash() == null) {
+            storedFile.setPerceptualHash(PerceptualHashIndex.hashOf(metadata));
+        }
+        storedFile.setLastUploadDate(now);
+        storedFileRepository.saveAndFlush(storedFile);
+
+        // discard unlinks under this lock; if it got to the file between the store and here,
+        // the row is rolled back and the client uploads again
+        boolean stored;
+        try {
+            stored = uploadStorage.exists(filename);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!stored) {
+            throw new UncheckedIOException(new IOException(
+                    "Upload " + filename + " was removed while being stored, please upload it again"));
+        }
+    }
+
+    /**
+     * Counts a new blob pointing at {@code filename}; joins the caller's transaction.
+     *
+     * @throws IllegalArgumentException if the content was unlinked in the meantime
+     */
+    public void retain(String filename) {
+        if (isContentAddressed(filename) && storedFileRepository.incrementRefCount(filename) == 0) {
+            throw new IllegalArgumentException("Picture " + filename + " is no longer stored, please upload it again");
+        }
+    }
+
+    /**
+     * Image metadata of the given stored files, by file name. Files from before content
+     * addressing, or stored before metadata was recorded, are missing from the map.
+     */
+    public Map<String, ImageMetadata> metadata(Collection<String> filenames) {
+        Map<String, ImageMetadata> metadata = new HashMap<>();
+        if (filenames.isEmpty()) {
+            return metadata;
+        }
+        for (StoredFileEntity storedFile : storedFileRepository.findByFilenameIn(filenames)) {
+            if (storedFile.getMimeType() != null) {
+                metadata.put(storedFile.getFilename(), metadataOf(storedFile));
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * The type sniffed from the file's signature when it was stored; empty for files from
+     * before content addressing or stored before metadata was recorded.
+     */
+    public Optional<String> mimeType(String filename) {
+        if (!isContentAddressed(filename)) {
+            return Optional.empty();
+        }
+        String cached = mimeTypes.getIfPresent(filename);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<String> mimeType = storedFileRepository.findMimeTypeByFilename(filename);
+        mimeType.ifPresent(type -> mimeTypes.put(filename, type));
+        return mimeType;
+    }
+
+    /**
+     * Drops the reference of a deleted blob; joins the caller's transaction. The file
+     * itself is only unlinked by {@link #discard}, once that transaction has committed.
+     */
+    public void release(String filename) {
+        if (isContentAddressed(filename)) {
+            storedFileRepository.decrementRefCount(filename);
+        }
+    }
+
+    /**
+     * Unlinks the file if nothing references it (or if it predates content addressing).
+     *
+     * @return false if the file should have been removed but could not be
+     */
+    public boolean discard(String filename) {
+        if (!UploadStorage.isValidName(filename)) {
+            return false;
+        }
+        if (!isContentAddressed(filename)) {
+            return unlink(filename);
+        }
+        LocalDateTime claimCutoff = LocalDateTime.now().minus(unclaimedGrace);
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            StoredFileEntity storedFile = storedFileRepository.lockByFilename(filename).orElse(null);
+            if (storedFile == null) {
+                return unlink(filename);
+            }
+            if (storedFile.getRefCount() > 0 || storedFile.getLastUploadDate().isAfter(claimCutoff)) {
+                return true;
+            }
+            storedFileRepository.delete(storedFile);
+            perceptualHashIndex.remove(filename);
+            mimeTypes.invalidate(filename);
+            // still holding the row lock, so no upload of this content can hand the file out now
+            return unlink(filename);
+        }));
+    }
+
+    private boolean unlink(String filename) {
+        try {
+            uploadStorage.delete(filename);
+            imageRenditionWorker.deleteRenditions(filename);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Could not delete {}", filename, e);
+            return false;
+        }
+    }
+
+    private static ImageMetadata metadataOf(StoredFileEntity storedFile) {
+        return new ImageMetadata(storedFile.getWidth(), storedFile.getHeight(), storedFile.getSize(),
+                storedFile.getMimeType(), storedFile.getBlurHash(), storedFile.getPerceptualHash());
+    }
+
+    static boolean isContentAddressed(String filename) {
+        return filename != null && CONTENT_ADDRESSED_NAME.matcher(filename).matches();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.CountyActivityDTO;
+import com.citynote.repository.CountyRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.projection.CountyActivityRow;
+import com.citynote.repository.projection.EventCountyRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory activity summary (event count, total likes, latest update) per county,
+ * used to shade the map without touching the events table.
+ * <p>
+ * The store is filled at startup by a batched GROUP BY over the county ids and then
+ * kept current by the event write paths, which call the mutators after commit (see
+ * {@link TransactionHooks}). Each county's summary is an immutable value replaced
+ * atomically, so readers never see a half-applied update.
+ * <p>
+ * Writes committed while their county's batch is being rebuilt may be counted twice
+ * or missed; the overlay is a shading hint and the next delete or rebuild of that
+ * county resynchronizes it.
+ */
+@Component
+public class CountyActivityStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountyActivityStore.class);
+
+    record Summary(long eventCount, long totalLikes, LocalDateTime latestUpdate) {
+
+        static final Summary EMPTY = new Summary(0, 0, null);
+
+        Summary plusEvent(LocalDateTime updatedAt) {
+            return new Summary(eventCount + 1, totalLikes, latest(latestUpdate, updatedAt));
+        }
+
+        Summary touched(LocalDateTime updatedAt) {
+            return new Summary(eventCount, totalLikes, latest(latestUpdate, updatedAt));
+        }
+
+        Summary plusLikes(long delta) {
+            return new Summary(eventCount, Math.max(0, totalLikes + delta), latestUpdate);
+        }
+
+        private static LocalDateTime latest(LocalDateTime current, LocalDateTime candidate) {
+            if (current == null) {
+                return candidate;
+            }
+            return candidate != null && candidate.isAfter(current) ? candidate : current;
+        }
+    }
+
+    private final EventRepository eventRepository;
+    private final CountyRepository countyRepository;
+    private final LikeCounterBuffer likeCounterBuffer;
+    private final int rebuildBatchSize;
+    private final Map<Integer, Summary> summaries = new ConcurrentHashMap<>();
+
+    // until the startup rebuild has finished, only counties already loaded are updated
+    private volatile boolean ready;
+
+    public CountyActivityStore(
+            EventRepository eventRepository,
+            CountyRepository countyRepository,
+            LikeCounterBuffer likeCounterBuffer,
+            @Value("${event.county-activity.rebuild-batch-size:500}") int rebuildBatchSize) {
+        this.eventRepository = eventRepository;
+        this.countyRepository = countyRepository;
+        this.likeCounterBuffer = likeCounterBuffer;
+        this.rebuildBatchSize = rebuildBatchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        List<Integer> countyIds = countyRepository.findAllIds();
+        for (int from = 0; from < countyIds.size(); from += rebuildBatchSize) {
+            loadBatch(countyIds.subList(from, Math.min(from + rebuildBatchSize, countyIds.size())));
+        }
+        ready = true;
+        logger.info("County activity rebuilt for {} counties in {} ms",
+                countyIds.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public void recordPost(int countyId, LocalDateTime createdAt) {
+        apply(countyId, summary -> summary.plusEvent(createdAt));
+    }
+
+    public void recordUpdate(int countyId, LocalDateTime updatedAt) {
+        apply(countyId, summary -> summary.touched(updatedAt));
+    }
+
+    public void recordLikes(int countyId, int delta) {
+        apply(countyId, summary -> summary.plusLikes(delta));
+    }
+
+    /**
+     * A delete may remove the newest event of the county, which cannot be undone
+     * incrementally, so the county is re-summarized with one indexed query.
+     */
+    public void recordDelete(int countyId) {
+        loadBatch(List.of(countyId));
+    }
+
+    public CountyActivityDTO snapshot() {
+        List<Map.Entry<Integer, Summary>> active = new ArrayList<>(summaries.size());
+        for (Map.Entry<Integer, Summary> entry : summaries.entrySet()) {
+            if (entry.getValue().eventCount() > 0) {
+                active.add(entry);
+            }
+        }
+        active.sort(Map.Entry.comparingByKey());
+
+        int n = active.size();
+        int[] countyIds = new int[n];
+        long[] eventCounts = new long[n];
+        long[] totalLikes = new long[n];
+        long[] latestUpdates = new long[n];
+        for (int i = 0; i < n; i++) {
+            Summary summary = active.get(i).getValue();
+            countyIds[i] = active.get(i).getKey();
+            eventCounts[i] = summary.eventCount();
+            totalLikes[i] = summary.totalLikes();
+            latestUpdates[i] = summary.latestUpdate() != null
+                    ? summary.latestUpdate().toEpochSecond(ZoneOffset.UTC)
+                    : 0L;
+        }
+        return new CountyActivityDTO(countyIds, eventCounts, totalLikes, latestUpdates);
+    }
+
+    Summary get(int countyId) {
+        return summaries.get(countyId);
+    }
+
+    private void apply(int countyId, UnaryOperator<Summary> update) {
+        if (ready) {
+            summaries.compute(countyId, (id, summary) -> update.apply(summary != null ? summary : Summary.EMPTY));
+        } else {
+            summaries.computeIfPresent(countyId, (id, summary) -> update.apply(summary));
+        }
+    }
+
+    private void loadBatch(List<Integer> countyIds) {
+        // likes still buffered (event.likes.mode=coalesced) are already in the overlay but not
+        // in events.likes, and no later write would add them back
+        Map<Integer, Summary> loaded = likeCounterBuffer.withPendingDeltas(
+                pendingDeltas -> summarize(countyIds, pendingDeltas));
+        // counties without events are stored too, so later writes to them are tracked
+        for (Integer countyId : countyIds) {
+            summaries.put(countyId, loaded.getOrDefault(countyId, Summary.EMPTY));
+        }
+    }
+
+    private Map<Integer, Summary> summarize(List<Integer> countyIds, Map<Integer, Long> pendingDeltas) {
+        Map<Integer, Summary> loaded = new HashMap<>(countyIds.size() * 2);
+        for (CountyActivityRow row : eventRepository.summarizeByCountyIds(countyIds)) {
+            loaded.put(row.countyId(), new Summary(row.eventCount(), row.totalLikes(), row.latestUpdate()));
+        }
+        List<Integer> eventIds = new ArrayList<>(pendingDeltas.keySet());
+        for (int from = 0; from < eventIds.size(); from += rebuildBatchSize) {
+            List<Integer> batch = eventIds.subList(from, Math.min(from + rebuildBatchSize, eventIds.size()));
+            for (EventCountyRow row : eventRepository.findCountiesOfEvents(batch, countyIds)) {
+                loaded.computeIfPresent(row.countyId(),
+                        (id, summary) -> summary.plusLikes(pendingDeltas.get(row.eventId())));
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,120 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.CountyEntity;
+import com.citynote.repository.CountyRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable in-memory dictionary of all counties, loaded once at startup.
+ * <p>
+ * County rows never change after insert ({@code updatable = false} on every column),
+ * so write paths resolve counties here instead of issuing {@code findById} round trips.
+ * Lookups are indexed by id, by the normalized 5-digit FIPS code (county ids are FIPS
+ * codes, so {@code 6085} and {@code "06085"} name the same county), by {@code countyKey},
+ * and case-insensitively by name and state.
+ * <p>
+ * Counties are only inserted by the seed script, so the directory is never refreshed: an
+ * id missing here is unknown, and looking it up costs no database round trip.
+ */
+@Component
+public class CountyDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountyDirectory.class);
+
+    private static final class Snapshot {
+        final Map<Integer, CountyEntity> byId;
+        final Map<String, CountyEntity> byFips;
+        final Map<String, CountyEntity> byKey;
+        final Map<String, List<CountyEntity>> byName;
+        final Map<String, List<CountyEntity>> byState;
+
+        Snapshot(Collection<CountyEntity> counties) {
+            Map<Integer, CountyEntity> ids = new HashMap<>(counties.size() * 2);
+            Map<String, CountyEntity> fips = new HashMap<>(counties.size() * 2);
+            Map<String, CountyEntity> keys = new HashMap<>(counties.size() * 2);
+            Map<String, List<CountyEntity>> names = new HashMap<>();
+            Map<String, List<CountyEntity>> states = new HashMap<>();
+            for (CountyEntity county : counties) {
+                ids.put(county.getId(), county);
+                fips.put(toFips(county.getId()), county);
+                keys.put(county.getCountyKey(), county);
+                names.computeIfAbsent(normalize(county.getCountyName()), n -> new ArrayList<>()).add(county);
+                states.computeIfAbsent(normalize(county.getCountyState()), s -> new ArrayList<>()).add(county);
+            }
+            this.byId = Map.copyOf(ids);
+            this.byFips = Map.copyOf(fips);
+            this.byKey = Map.copyOf(keys);
+            this.byName = copyOfGroups(names);
+            this.byState = copyOfGroups(states);
+        }
+
+        private static Map<String, List<CountyEntity>> copyOfGroups(Map<String, List<CountyEntity>> groups) {
+            Map<String, List<CountyEntity>> copy = new HashMap<>(groups.size() * 2);
+            groups.forEach((key, counties) -> copy.put(key, List.copyOf(counties)));
+            return Map.copyOf(copy);
+        }
+    }
+
+    private final CountyRepository countyRepository;
+    private volatile Snapshot snapshot = new Snapshot(List.of());
+
+    public CountyDirectory(CountyRepository countyRepository) {
+        this.countyRepository = countyRepository;
+    }
+
+    @PostConstruct
+    void load() {
+        List<CountyEntity> counties = countyRepository.findAll();
+        snapshot = new Snapshot(counties);
+        logger.info("Loaded {} counties into the county directory", counties.size());
+    }
+
+    public Optional<CountyEntity> findById(int id) {
+        return Optional.ofNullable(snapshot.byId.get(id));
+    }
+
+    /**
+     * Resolves a FIPS code with or without its leading zeros ("6085", "06085").
+     */
+    public Optional<CountyEntity> findByFips(String fips) {
+        if (fips == null || fips.isBlank() || fips.length() > 5) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot.byFips.get("00000".substring(fips.length()) + fips));
+    }
+
+    public Optional<CountyEntity> findByCountyKey(String countyKey) {
+        return Optional.ofNullable(snapshot.byKey.get(countyKey));
+    }
+
+    public List<CountyEntity> findByName(String countyName) {
+        return snapshot.byName.getOrDefault(normalize(countyName), List.of());
+    }
+
+    public List<CountyEntity> findByState(String state) {
+        return snapshot.byState.getOrDefault(normalize(state), List.of());
+    }
+
+    public int size() {
+        return snapshot.byId.size();
+    }
+
+    static String toFips(int countyId) {
+        return String.format("%05d", countyId);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,179 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.EventResponseDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of the first pages of each county feed.
+ * <p>
+ * Entries are bounded by Caffeine's W-TinyLFU policy and indexed per county, so a
+ * write only drops (or patches) the pages of the county it touched. Hit, miss and
+ * eviction counters are published as {@code cache.*} meters tagged {@code cache=countyFeed}.
+ * Every page also expires {@code event.feed.cache.ttl-seconds} after it was loaded, which
+ * bounds how long a like count lost to racing patches can be served.
+ * <p>
+ * Write paths must call the mutators after their transaction commits (see
+ * {@link TransactionHooks}); a load racing with an invalidation is removed by it,
+ * because Caffeine serializes removal of a key behind its in-flight load.
+ */
+@Component
+public class CountyFeedCache {
+
+    record PageKey(int countyId, int page, int size) {
+    }
+
+    private final int maxCachedPages;
+    private final int maxPageSize;
+    private final Cache<PageKey, Page<EventResponseDTO>> pages;
+    private final Map<Integer, Set<PageKey>> keysByCounty = new ConcurrentHashMap<>();
+
+    public CountyFeedCache(
+            @Value("${event.feed.cache.max-pages:3}") int maxCachedPages,
+            @Value("${event.feed.cache.max-page-size:50}") int maxPageSize,
+            @Value("${event.feed.cache.max-entries:5000}") long maxEntries,
+            @Value("${event.feed.cache.ttl-seconds:60}") long ttlSeconds,
+            MeterRegistry meterRegistry) {
+        this.maxCachedPages = maxCachedPages;
+        this.maxPageSize = maxPageSize;
+        long ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                // counted from the load: patching a page keeps its remaining time
+                .expireAfter(new Expiry<PageKey, Page<EventResponseDTO>>() {
+                    @Override
+                    public long expireAfterCreate(PageKey key, Page<EventResponseDTO> page, long currentTime) {
+                        return ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(PageKey key, Page<EventResponseDTO> page,
+                                                  long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(PageKey key, Page<EventResponseDTO> page,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                // runs atomically with the eviction, keeps the county index exact
+                .evictionListener((PageKey key, Page<EventResponseDTO> page, RemovalCause cause) -> {
+                    if (key != null) {
+                        unindex(key);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "countyFeed");
+    }
+
+    public Page<EventResponseDTO> get(int countyId, Pageable pageable,
+                                      Function<Pageable, Page<EventResponseDTO>> loader) {
+        if (!isCacheable(pageable)) {
+            return loader.apply(pageable);
+        }
+        PageKey key = new PageKey(countyId, pageable.getPageNumber(), pageable.getPageSize());
+        return pages.get(key, k -> {
+            // add under the map's lock so a concurrent unindex cannot drop the set we add to
+            keysByCounty.compute(k.countyId(), (id, keys) -> {
+                Set<PageKey> indexed = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                indexed.add(k);
+                return indexed;
+            });
+            return loader.apply(pageable);
+        });
+    }
+
+    /**
+     * Drops every cached page of the county; used when events are added, removed or reordered.
+     */
+    public void evictCounty(int countyId) {
+        Set<PageKey> keys = keysByCounty.remove(countyId);
+        if (keys != null) {
+            pages.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Sets the like count of one event in the cached pages of its county. The count is
+     * absolute, so a page loaded after the like committed (or a load the patch waited
+     * behind) is not counted twice.
+     */
+    public void setLikes(int countyId, int eventId, int likes) {
+        Set<PageKey> keys = keysByCounty.get(countyId);
+        if (keys == null) {
+            return;
+        }
+        for (PageKey key : keys) {
+            pages.asMap().computeIfPresent(key, (k, page) -> withLikes(page, eventId, likes));
+        }
+    }
+
+    private boolean isCacheable(Pageable pageable) {
+        return pageable.isPaged()
+                && pageable.getSort().isUnsorted()
+                && pageable.getPageNumber() < maxCachedPages
+                && pageable.getPageSize() <= maxPageSize;
+    }
+
+    private void unindex(PageKey key) {
+        keysByCounty.computeIfPresent(key.countyId(), (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    // cached pages are shared with concurrent readers, so patch a copy
+    private static Page<EventResponseDTO> withLikes(Page<EventResponseDTO> page, int eventId, int likes) {
+        boolean found = false;
+        List<EventResponseDTO> content = new ArrayList<>(page.getContent().size());
+        for (EventResponseDTO event : page.getContent()) {
+            if (event.getId() == eventId && event.getLikes() != likes) {
+                EventResponseDTO patched = copyOf(event);
+                patched.setLikes(Math.max(0, likes));
+                content.add(patched);
+                found = true;
+            } else {
+                content.add(event);
+            }
+        }
+        return found ? new PageImpl<>(content, page.getPageable(), page.getTotalElements()) : page;
+    }
+
+    private static EventResponseDTO copyOf(EventResponseDTO source) {
+        EventResponseDTO copy = new EventResponseDTO();
+        copy.setId(source.getId());
+        copy.setTitle(source.getTitle());
+        copy.setContent(source.getContent());
+        copy.setDate(source.getDate());
+        copy.setCounty(source.getCounty());
+        copy.setPictureLinks(source.getPictureLinks());
+        copy.setPictureMeta(source.getPictureMeta());
+        copy.setVideoLink(source.getVideoLink());
+        copy.setEventType(source.getEventType());
+        copy.setLikes(source.getLikes());
+        copy.setAuthorUsername(source.getAuthorUsername());
+        copy.setAuthorFirstName(source.getAuthorFirstName());
+        copy.setAuthorLastName(source.getAuthorLastName());
+        return copy;
+    }
+}
@@ -0,0 +1,48 @@
+package com.citynote.service.impl;
+
+import com.citynote.repository.projection.EventFeedRow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in a newest-first feed, ordered by (last_update_date DESC, event_id DESC).
+ * Clients only ever see the encoded, opaque form.
+ */
+record EventCursor(LocalDateTime lastUpdateDate, int eventId) {
+
+    private static final char SEPARATOR = '|';
+
+    static EventCursor after(EventFeedRow row) {
+        return new EventCursor(row.lastUpdateDate(), row.id());
+    }
+
+    String encode() {
+        String raw = lastUpdateDate.toString() + SEPARATOR + eventId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return null for a blank cursor (first slice)
+     * @throws IllegalArgumentException if the cursor was not produced by {@link #encode()}
+     */
+    static EventCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new EventCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.CursorPageDTO;
+import com.citynote.dto.EventResponseDTO;
+import com.citynote.dto.PictureMetaDTO;
+import com.citynote.entity.enums.EventType;
+import com.citynote.repository.BlobRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.projection.BlobLinkRow;
+import com.citynote.repository.projection.EventFeedRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Read path for event feeds built from projections instead of entity graphs.
+ * A page costs one joined query for the rows, the page count query, and one
+ * IN query for the picture links, independent of the page size. Cursor slices
+ * skip the count query altogether.
+ */
+@Component
+public class EventFeedReader {
+
+    // same order as the feed queries: last_update_date DESC, event_id DESC
+    static final Comparator<EventFeedRow> NEWEST_FIRST = Comparator
+            .comparing(EventFeedRow::lastUpdateDate, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(EventFeedRow::id, Comparator.reverseOrder());
+
+    private final EventRepository eventRepository;
+    private final BlobRepository blobRepository;
+    private final LikeCounterBuffer likeCounterBuffer;
+    private final int viewportCountyBatchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public EventFeedReader(
+            EventRepository eventRepository,
+            BlobRepository blobRepository,
+            LikeCounterBuffer likeCounterBuffer,
+            @Value("${event.viewport.county-batch-size:100}") int viewportCountyBatchSize) {
+        this.eventRepository = eventRepository;
+        this.blobRepository = blobRepository;
+        this.likeCounterBuffer = likeCounterBuffer;
+        this.viewportCountyBatchSize = viewportCountyBatchSize;
+    }
+
+    @Transactional(readOnly = true)
+    public Page<EventResponseDTO> readCountyPage(int countyId, Pageable pageable) {
+        Page<EventFeedRow> rows = eventRepository.findFeedRowsByCountyId(countyId, pageable);
+        Map<Integer, List<BlobLinkRow>> pictureLinks = loadPictureLinks(rows.getContent());
+        return rows.map(row -> toDTO(row, pictureLinks));
+    }
+
+    /**
+     * Keyset slice of a county feed: no OFFSET scan and no COUNT query.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<EventResponseDTO> readCountySlice(int countyId, String cursor, int size) {
+        EventCursor after = EventCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<EventFeedRow> rows = after == null
+                ? eventRepository.findFeedRowsByCountyIdFirst(countyId, limit)
+                : eventRepository.findFeedRowsByCountyIdBefore(countyId, after.lastUpdateDate(), after.eventId(), limit);
+        return toSlice(rows, size);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPageDTO<EventResponseDTO> readUserSlice(int userProfileId, String cursor, int size) {
+        EventCursor after = EventCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<EventFeedRow> rows = after == null
+                ? eventRepository.findFeedRowsByUserProfileIdFirst(userProfileId, limit)
+                : eventRepository.findFeedRowsByUserProfileIdBefore(userProfileId, after.lastUpdateDate(), after.eventId(), limit);
+        return toSlice(rows, size);
+    }
+
+    /**
+     * Newest events across many counties as one time-ordered stream.
+     * Each county is read through its own keyset query over the county feed index, which
+     * stops after {@code limit + 1} rows; a batch of counties goes out as one UNION ALL
+     * statement of those queries. The per-county runs are k-way merged until the slice is full.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<EventResponseDTO> readViewport(Collection<Integer> countyIds, String cursor, int limit) {
+        EventCursor after = EventCursor.decode(cursor);
+        List<Integer> ids = countyIds.stream().distinct().sorted().toList();
+
+        Map<Integer, List<EventFeedRow>> byCounty = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += viewportCountyBatchSize) {
+            List<Integer> batch = ids.subList(from, Math.min(from + viewportCountyBatchSize, ids.size()));
+            for (EventFeedRow row : findNewestPerCounty(batch, after, limit + 1)) {
+                byCounty.computeIfAbsent(row.countyId(), id -> new ArrayList<>()).add(row);
+            }
+        }
+        List<Iterator<EventFeedRow>> runs = new ArrayList<>(byCounty.size());
+        for (List<EventFeedRow> run : byCounty.values()) {
+            // UNION ALL does not promise to keep each operand's order
+            run.sort(NEWEST_FIRST);
+            runs.add(run.iterator());
+        }
+        return toSlice(mergeNewestFirst(runs, limit + 1), limit);
+    }
+
+    // (SELECT .. WHERE county = :c0 .. ORDER BY .. LIMIT :limit) UNION ALL (.. :c1 ..) ..
+    private List<EventFeedRow> findNewestPerCounty(List<Integer> countyIds, EventCursor after, int limit) {
+        StringBuilder hql = new StringBuilder();
+        for (int i = 0; i < countyIds.size(); i++) {
+            if (i > 0) {
+                hql.append(" UNION ALL ");
+            }
+            hql.append("""
+                    (SELECT e.id, e.title, e.content, e.eventType, e.likes, e.lastUpdateDate,
+                        c.id, c.countyName, u.username, u.firstName, u.lastName
+                    FROM EventEntity e
+                    JOIN e.county c
+                    LEFT JOIN e.userProfile up
+                    LEFT JOIN up.user u
+                    WHERE e.county.id = :county""").append(i);
+            if (after != null) {
+                hql.append("""
+
+                          AND (e.lastUpdateDate < :lastUpdateDate
+                               OR (e.lastUpdateDate = :lastUpdateDate AND e.id < :eventId))""");
+            }
+            hql.append("""
+
+                    ORDER BY e.lastUpdateDate DESC, e.id DESC
+                    LIMIT :limit)""");
+        }
+
+        TypedQuery<Object[]> query = entityManager.createQuery(hql.toString(), Object[].class);
+        for (int i = 0; i < countyIds.size(); i++) {
+            query.setParameter("county" + i, countyIds.get(i));
+        }
+        if (after != null) {
+            query.setParameter("lastUpdateDate", after.lastUpdateDate());
+            query.setParameter("eventId", after.eventId());
+        }
+        query.setParameter("limit", limit);
+
+        List<EventFeedRow> rows = new ArrayList<>();
+        for (Object[] row : query.getResultList()) {
+            rows.add(new EventFeedRow((Integer) row[0], (String) row[1], (String) row[2], (EventType) row[3],
+                    (Integer) row[4], (LocalDateTime) row[5], (Integer) row[6], (String) row[7],
+                    (String) row[8], (String) row[9], (String) row[10]));
+        }
+        return rows;
+    }
+
+    /**
+     * K-way merge of runs that are each sorted {@link #NEWEST_FIRST}, stopping after {@code limit} rows.
+     */
+    static List<EventFeedRow> mergeNewestFirst(List<Iterator<EventFeedRow>> runs, int limit) {
+        record Head(EventFeedRow row, Iterator<EventFeedRow> rest) {
+        }
+
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.comparing(Head::row, NEWEST_FIRST));
+        for (Iterator<EventFeedRow> run : runs) {
+            if (run.hasNext()) {
+                heads.add(new Head(run.next(), run));
+            }
+        }
+
+        List<EventFeedRow> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            merged.add(head.row());
+            if (head.rest().hasNext()) {
+                heads.add(new Head(head.rest().next(), head.rest()));
+            }
+        }
+        return merged;
+    }
+
+    // rows were fetched with one extra element to learn whether another slice exists
+    private CursorPageDTO<EventResponseDTO> toSlice(List<EventFeedRow> rows, int size) {
+        boolean hasNext = rows.size() > size;
+        List<EventFeedRow> slice = hasNext ? rows.subList(0, size) : rows;
+
+        String nextCursor = null;
+        if (hasNext) {
+            EventFeedRow last = slice.get(slice.size() - 1);
+            // rows without last_update_date cannot be positioned, they end the feed
+            if (last.lastUpdateDate() != null) {
+                nextCursor = EventCursor.after(last).encode();
+            }
+        }
+        return new CursorPageDTO<>(toDTOs(slice), nextCursor, size);
+    }
+
+    /**
+     * Converts already loaded rows, fetching the picture links of all of them at once.
+     */
+    List<EventResponseDTO> toDTOs(List<EventFeedRow> rows) {
+        Map<Integer, List<BlobLinkRow>> pictureLinks = loadPictureLinks(rows);
+        List<EventResponseDTO> dtos = new ArrayList<>(rows.size());
+        for (EventFeedRow row : rows) {
+            dtos.add(toDTO(row, pictureLinks));
+        }
+        return dtos;
+    }
+
+    private Map<Integer, List<BlobLinkRow>> loadPictureLinks(List<EventFeedRow> rows) {
+        List<Integer> imageEventIds = rows.stream()
+                .filter(row -> row.eventType() == EventType.IMAGE || row.eventType() == EventType.VIDEO)
+                .map(EventFeedRow::id)
+                .toList();
+        if (imageEventIds.isEmpty()) {
+            return Map.of();
+        }
+
+        // rows arrive ordered by event id and in_place_order
+        Map<Integer, List<BlobLinkRow>> grouped = new HashMap<>();
+        for (BlobLinkRow link : blobRepository.findLinkRowsByEventIds(imageEventIds)) {
+            grouped.computeIfAbsent(link.eventId(), id -> new ArrayList<>()).add(link);
+        }
+        return grouped;
+    }
+
+    private EventResponseDTO toDTO(EventFeedRow row, Map<Integer, List<BlobLinkRow>> pictureLinks) {
+        EventResponseDTO dto = new EventResponseDTO();
+        dto.setId(row.id());
+        dto.setTitle(row.title());
+        dto.setContent(row.content());
+        dto.setCounty(row.countyName() != null ? row.countyName() : "Unknown County");
+        dto.setDate(row.lastUpdateDate() != null ? row.lastUpdateDate().toString() : null);
+        // likes not yet flushed when counters are coalesced
+        dto.setLikes((int) (row.likes() + likeCounterBuffer.pendingDelta(row.id())));
+
+        if (row.authorUsername() != null) {
+            dto.setAuthorUsername(row.authorUsername());
+            dto.setAuthorFirstName(row.authorFirstName());
+            dto.setAuthorLastName(row.authorLastName());
+        } else {
+            dto.setAuthorUsername("Unknown User");
+            dto.setAuthorFirstName("");
+            dto.setAuthorLastName("");
+        }
+
+        List<BlobLinkRow> links = pictureLinks.getOrDefault(row.id(), List.of());
+        // a video note's clip is at order 0, ahead of its poster
+        String videoLink = "";
+        if (!links.isEmpty() && links.get(0).inPlaceOrder() == 0) {
+            videoLink = links.get(0).filename();
+            links = links.subList(1, links.size());
+        }
+        String[] filenames = new String[links.size()];
+        PictureMetaDTO[] meta = new PictureMetaDTO[links.size()];
+        for (int i = 0; i < links.size(); i++) {
+            BlobLinkRow link = links.get(i);
+            filenames[i] = link.filename();
+            meta[i] = new PictureMetaDTO(link.filename(), link.width(), link.height(),
+                    link.byteSize() != null ? link.byteSize() : 0, link.mimeType(), link.blurHash());
+        }
+        dto.setPictureLinks(filenames);
+        dto.setPictureMeta(meta);
+        dto.setVideoLink(videoLink);
+
+        dto.setEventType(row.eventType());
+        return dto;
+    }
+}
@@ -0,0 +1,113 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.EventLikeEntity;
+import com.citynote.repository.EventLikeRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.UserProfileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Toggles a like without reading or rewriting the event row.
+ * <p>
+ * Each attempt is its own short transaction: delete the viewer's like, and if there was
+ * none insert it; then move {@code events.likes} by one in a single UPDATE. Concurrent
+ * toggles of the same pair collide on the {@code (event_id, user_id)} unique key, and
+ * toggles of a hot event may deadlock in the database; both roll the attempt back and
+ * it is retried a bounded number of times.
+ * <p>
+ * With {@code event.likes.mode=coalesced} the counter UPDATE is replaced by a delta in
+ * {@link LikeCounterBuffer}, applied after the membership change commits.
+ */
+@Component
+public class EventLikeWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLikeWriter.class);
+
+    private final EventRepository eventRepository;
+    private final EventLikeRepository eventLikeRepository;
+    private final UserProfileRepository userProfileRepository;
+    private final LikeCounterBuffer likeCounterBuffer;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final boolean coalesced;
+
+    public EventLikeWriter(
+            EventRepository eventRepository,
+            EventLikeRepository eventLikeRepository,
+            UserProfileRepository userProfileRepository,
+            LikeCounterBuffer likeCounterBuffer,
+            PlatformTransactionManager transactionManager,
+            @Value("${event.likes.max-attempts:5}") int maxAttempts,
+            @Value("${event.likes.mode:atomic}") String mode) {
+        this.eventRepository = eventRepository;
+        this.eventLikeRepository = eventLikeRepository;
+        this.userProfileRepository = userProfileRepository;
+        this.likeCounterBuffer = likeCounterBuffer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a retry needs a transaction of its own, never the caller's (already rolled back) one
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = maxAttempts;
+        this.coalesced = "coalesced".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * @return true if the event is liked by the profile afterwards, false if unliked
+     */
+    public boolean toggle(int eventId, int userProfileId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transactionTemplate.execute(status -> toggleOnce(eventId, userProfileId)));
+            } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.debug("Like toggle on event {} conflicted (attempt {}): {}", eventId, attempt, e.getMessage());
+                backOff(attempt);
+            }
+        }
+    }
+
+    private boolean toggleOnce(int eventId, int userProfileId) {
+        if (eventLikeRepository.deleteByEventIdAndUserProfileId(eventId, userProfileId) > 0) {
+            adjustLikes(eventId, -1);
+            return false;
+        }
+
+        EventLikeEntity like = new EventLikeEntity();
+        like.setEvent(eventRepository.getReferenceById(eventId));
+        like.setUserProfile(userProfileRepository.getReferenceById(userProfileId));
+        // flush now so a duplicate surfaces here, inside the retry loop
+        eventLikeRepository.saveAndFlush(like);
+        adjustLikes(eventId, 1);
+        return true;
+    }
+
+    // membership above is always exact; only the counter may be deferred
+    private void adjustLikes(int eventId, int delta) {
+        if (coalesced) {
+            TransactionHooks.afterCommit(() -> likeCounterBuffer.add(eventId, delta));
+        } else {
+            eventRepository.adjustLikes(eventId, delta);
+        }
+    }
+
+    // short randomized pause so colliding toggles do not retry in lockstep
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying like toggle", e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.PendingFileDeletionEntity;
+import com.citynote.repository.PendingFileDeletionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Durable queue of released uploads to unlink, so requests that drop pictures never wait
+ * on (or fail because of) disk I/O.
+ * <p>
+ * {@link #enqueue} writes {@code pending_file_deletions} rows in the caller's transaction:
+ * a rollback leaves the files alone, a commit guarantees they are looked at even across a
+ * crash. Right after commit a worker thread is woken to drain the queue in batches; a
+ * scheduled poll picks up anything left over. Each file goes through
+ * {@link ContentAddressedStore#discard}, which keeps it if it is referenced again; failed
+ * deletions are retried with exponential backoff, up to {@code file.deletions.max-attempts}.
+ */
+@Component
+public class FileDeletionQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileDeletionQueue.class);
+
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    private final PendingFileDeletionRepository pendingFileDeletionRepository;
+    private final ContentAddressedStore contentAddressedStore;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final ExecutorService worker;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private final Counter completed;
+    private final Counter retried;
+    private final Counter abandoned;
+
+    public FileDeletionQueue(
+            PendingFileDeletionRepository pendingFileDeletionRepository,
+            ContentAddressedStore contentAddressedStore,
+            @Value("${file.deletions.batch-size:100}") int batchSize,
+            @Value("${file.deletions.max-attempts:10}") int maxAttempts,
+            @Value("${file.deletions.retry-backoff-ms:5000}") long retryBackoffMs,
+            MeterRegistry meterRegistry) {
+        this.pendingFileDeletionRepository = pendingFileDeletionRepository;
+        this.contentAddressedStore = contentAddressedStore;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMs);
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.completed = Counter.builder("file.deletions.completed")
+                .description("Queued file deletions done (or found unnecessary)")
+                .register(meterRegistry);
+        this.retried = Counter.builder("file.deletions.retried")
+                .description("Queued file deletions that failed and were rescheduled")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder("file.deletions.abandoned")
+                .description("Queued file deletions given up after the last attempt")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues files released in the current transaction; they are unlinked in the background
+     * once it commits. Joins the caller's transaction.
+     */
+    public void enqueue(Collection<String> filenames) {
+        if (filenames.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingFileDeletionEntity> deletions = filenames.stream()
+                .distinct()
+                .map(filename -> {
+                    PendingFileDeletionEntity deletion = new PendingFileDeletionEntity();
+                    deletion.setFilename(filename);
+                    deletion.setNextAttemptDate(now);
+                    deletion.setCreateDate(now);
+                    return deletion;
+                })
+                .toList();
+        pendingFileDeletionRepository.saveAll(deletions);
+        TransactionHooks.afterCommit(this::wakeUp);
+    }
+
+    void wakeUp() {
+        // one queued drain covers every commit that happens before it starts
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                worker.execute(() -> {
+                    wakeUpPending.set(false);
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down; the rows wait for the next poll
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.deletions.poll-interval-ms:10000}")
+    public synchronized void drain() {
+        try {
+            while (drainBatch() == batchSize) {
+                // full batch, there may be more due
+            }
+        } catch (RuntimeException e) {
+            logger.warn("File deletion batch failed, retrying on the next poll", e);
+        }
+    }
+
+    // processes one batch of due deletions and returns its size
+    int drainBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingFileDeletionEntity> due = pendingFileDeletionRepository
+                .findByNextAttemptDateLessThanEqualOrderByIdAsc(now, PageRequest.of(0, batchSize));
+        List<Long> finished = new ArrayList<>();
+        for (PendingFileDeletionEntity deletion : due) {
+            boolean done;
+            try {
+                done = contentAddressedStore.discard(deletion.getFilename());
+            } catch (RuntimeException e) {
+                logger.warn("Could not delete {}", deletion.getFilename(), e);
+                done = false;
+            }
+
+            int attempts = deletion.getAttempts() + 1;
+            if (done) {
+                completed.increment();
+                finished.add(deletion.getId());
+            } else if (attempts >= maxAttempts) {
+                logger.error("Giving up deleting {} after {} attempts", deletion.getFilename(), attempts);
+                abandoned.increment();
+                finished.add(deletion.getId());
+            } else {
+                retried.increment();
+                pendingFileDeletionRepository.scheduleRetry(deletion.getId(), attempts, now.plus(backoff(attempts)));
+            }
+        }
+        if (!finished.isEmpty()) {
+            pendingFileDeletionRepository.deleteAllByIdInBatch(finished);
+        }
+        return due.size();
+    }
+
+    Duration backoff(int attempts) {
+        Duration backoff = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        worker.shutdownNow();
+    }
+}
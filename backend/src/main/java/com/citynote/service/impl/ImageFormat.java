@@ -0,0 +1,86 @@
+package com.citynote.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Image formats accepted for upload, recognised both by file extension and by the
+ * signature ("magic bytes") at the start of the content.
+ */
+public enum ImageFormat {
+
+    JPEG("image/jpeg", ".jpg", ".jpeg"),
+    PNG("image/png", ".png"),
+    GIF("image/gif", ".gif"),
+    WEBP("image/webp", ".webp"),
+    HEIF("image/heif", ".heic", ".heif");
+
+    /**
+     * Leading bytes needed to recognise any of the formats.
+     */
+    public static final int SIGNATURE_LENGTH = 12;
+
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // ISO base media file brands used by HEIC/HEIF stills and sequences
+    private static final Set<String> HEIF_BRANDS = Set.of(
+            "heic", "heix", "hevc", "hevx", "heim", "heis", "hevm", "hevs", "mif1", "msf1");
+
+    private final String mimeType;
+    private final String[] extensions;
+
+    ImageFormat(String mimeType, String... extensions) {
+        this.mimeType = mimeType;
+        this.extensions = extensions;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    // the usual extension, for content that arrives without a file name
+    public String extension() {
+        return extensions[0];
+    }
+
+    public static Optional<ImageFormat> fromExtension(String extension) {
+        String lowerExtension = extension.toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+                .filter(format -> Arrays.asList(format.extensions).contains(lowerExtension))
+                .findFirst();
+    }
+
+    /**
+     * Recognises the format from the first {@code length} bytes of {@code head}.
+     */
+    public static Optional<ImageFormat> sniff(byte[] head, int length) {
+        if (startsWith(head, length, JPEG_SIGNATURE)) {
+            return Optional.of(JPEG);
+        }
+        if (startsWith(head, length, PNG_SIGNATURE)) {
+            return Optional.of(PNG);
+        }
+        if (ascii(head, length, 0, 6).equals("GIF87a") || ascii(head, length, 0, 6).equals("GIF89a")) {
+            return Optional.of(GIF);
+        }
+        if (ascii(head, length, 0, 4).equals("RIFF") && ascii(head, length, 8, 4).equals("WEBP")) {
+            return Optional.of(WEBP);
+        }
+        if (ascii(head, length, 4, 4).equals("ftyp") && HEIF_BRANDS.contains(ascii(head, length, 8, 4))) {
+            return Optional.of(HEIF);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] signature) {
+        return length >= signature.length
+                && Arrays.equals(head, 0, signature.length, signature, 0, signature.length);
+    }
+
+    private static String ascii(byte[] head, int length, int offset, int count) {
+        return length >= offset + count ? new String(head, offset, count, StandardCharsets.ISO_8859_1) : "";
+    }
+}
@@ -0,0 +1,14 @@
+package com.citynote.service.impl;
+
+/**
+ * What a client needs to lay out a picture before downloading it. Width and height are as
+ * displayed (EXIF orientation applied); they and the placeholder are null for formats the
+ * server cannot decode (HEIC) or content that is not a readable image.
+ *
+ * @param mimeType        from the content's signature, not its extension
+ * @param blurHash        a BlurHash placeholder of a few dozen characters
+ * @param perceptualHash  {@link PerceptualHash} for near-duplicate detection; not sent to clients
+ */
+public record ImageMetadata(Integer width, Integer height, long size, String mimeType, String blurHash,
+                            Long perceptualHash) {
+}
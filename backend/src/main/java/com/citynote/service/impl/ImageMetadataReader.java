@@ -0,0 +1,195 @@
+package com.citynote.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Reads {@link ImageMetadata} from an uploaded file. Dimensions come from the image header;
+ * the placeholder and the perceptual hash are computed from a copy decoded with source
+ * subsampling, so reading a large photo costs a small raster, not the full image. Videos
+ * get their type, and for MP4/QuickTime their displayed size, from the container alone.
+ */
+final class ImageMetadataReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageMetadataReader.class);
+
+    // longest side the placeholder is computed from, give or take the subsampling
+    private static final int PLACEHOLDER_SOURCE_SIZE = 64;
+    // EXIF is in the first APP1 segment, near the start of the file
+    private static final int EXIF_SEARCH_LENGTH = 128 * 1024;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ImageMetadataReader() {
+    }
+
+    /**
+     * Never fails: whatever cannot be read is left null.
+     */
+    static ImageMetadata read(Path file, long size) {
+        byte[] head = new byte[ImageFormat.SIGNATURE_LENGTH];
+        int headLength;
+        try (InputStream in = Files.newInputStream(file)) {
+            headLength = in.readNBytes(head, 0, head.length);
+        } catch (IOException e) {
+            logger.warn("Could not read {}", file, e);
+            return new ImageMetadata(null, null, size, null, null, null);
+        }
+        Optional<ImageFormat> format = ImageFormat.sniff(head, headLength);
+        if (format.isEmpty()) {
+            return readVideo(file, size, head, headLength);
+        }
+        String mimeType = format.get().mimeType();
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return new ImageMetadata(null, null, size, mimeType, null, null);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int orientation = format.orElse(null) == ImageFormat.JPEG ? exifOrientation(file) : 1;
+                boolean transposed = orientation >= 5;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / PLACEHOLDER_SOURCE_SIZE);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage small = orient(reader.read(0, param), orientation);
+                boolean landscape = small.getWidth() >= small.getHeight();
+                String blurHash = BlurHash.encode(small, landscape ? 4 : 3, landscape ? 3 : 4);
+
+                return new ImageMetadata(transposed ? height : width, transposed ? width : height, size, mimeType,
+                        blurHash, PerceptualHash.dHash(small));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read image metadata of {}", file, e);
+            return new ImageMetadata(null, null, size, mimeType, null, null);
+        }
+    }
+
+    // type and size of a video upload; nothing is decoded
+    private static ImageMetadata readVideo(Path file, long size, byte[] head, int headLength) {
+        Optional<VideoFormat> format = VideoFormat.sniff(head, headLength);
+        if (format.isEmpty()) {
+            return new ImageMetadata(null, null, size, null, null, null);
+        }
+        String mimeType = format.get().mimeType();
+        if (format.get() == VideoFormat.WEBM) {
+            return new ImageMetadata(null, null, size, mimeType, null, null);
+        }
+        try {
+            Mp4Inspector.Mp4Info info = Mp4Inspector.inspect(file, size);
+            return new ImageMetadata(info.width(), info.height(), size, mimeType, null, null);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read video metadata of {}", file, e);
+            return new ImageMetadata(null, null, size, mimeType, null, null);
+        }
+    }
+
+    /**
+     * The EXIF orientation of a JPEG (1 to 8, 1 being upright), 1 if it has none.
+     */
+    static int exifOrientation(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return exifOrientation(in);
+        }
+    }
+
+    /**
+     * The EXIF orientation of the JPEG the stream starts with; reads at most the EXIF
+     * search window and leaves closing the stream to the caller.
+     */
+    static int exifOrientation(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(EXIF_SEARCH_LENGTH);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int position = 2;
+        while (position + 4 <= bytes.length && (bytes[position] & 0xff) == 0xff) {
+            int marker = bytes[position + 1] & 0xff;
+            int length = buffer.getShort(position + 2) & 0xffff;
+            // start of scan: no more metadata segments
+            if (marker == 0xda) {
+                break;
+            }
+            int segment = position + 4;
+            if (marker == 0xe1 && segment + 14 <= bytes.length
+                    && new String(bytes, segment, 4, StandardCharsets.ISO_8859_1).equals("Exif")) {
+                return tiffOrientation(buffer, segment + 6, Math.min(bytes.length, position + 2 + length));
+            }
+            position += 2 + length;
+        }
+        return 1;
+    }
+
+    // reads tag 0x0112 of IFD0 in the TIFF structure at tiff
+    private static int tiffOrientation(ByteBuffer buffer, int tiff, int end) {
+        ByteBuffer view = buffer.duplicate();
+        view.order(buffer.get(tiff) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff + view.getInt(tiff + 4);
+        if (ifd < tiff || ifd + 2 > end) {
+            return 1;
+        }
+        int entries = view.getShort(ifd) & 0xffff;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if ((view.getShort(entry) & 0xffff) == ORIENTATION_TAG) {
+                int orientation = view.getShort(entry + 8) & 0xffff;
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    // the image as displayed for an EXIF orientation; quarter turns and mirrors map pixels
+    // one to one, so nearest neighbour keeps them exact
+    static BufferedImage orient(BufferedImage source, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return source;
+        }
+        int w = source.getWidth();
+        int h = source.getHeight();
+        boolean transposed = orientation >= 5;
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);
+        };
+        BufferedImage oriented = new BufferedImage(transposed ? h : w, transposed ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+}
@@ -0,0 +1,277 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Renders downscaled JPEG renditions of uploaded images (stored as {@code <name>.w160.jpg}
+ * for {@code <name>.<ext>}) so note cards do not download originals of up to 50MB.
+ * <p>
+ * Work runs on a small fixed pool with a bounded queue; when the queue is full the upload
+ * simply gets no renditions and readers keep getting the original. A rendition is only
+ * stored (atomic rename) once it is complete, so its existence means it is ready.
+ * Originals are decoded with source subsampling, which keeps memory close to the size of
+ * the largest rendition instead of the full image, and turned upright by their EXIF
+ * orientation before scaling.
+ */
+@Component
+public class ImageRenditionWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRenditionWorker.class);
+
+    private static final float JPEG_QUALITY = 0.82f;
+    private static final Pattern RENDITION_NAME = Pattern.compile(".+\\.w\\d+\\.jpg");
+
+    private final UploadStorage uploadStorage;
+    private final int[] widths;
+    private final long maxDecodedPixels;
+    private final ThreadPoolExecutor executor;
+    private final Timer renderTimer;
+    private final Counter rejected;
+    private final Counter failed;
+
+    public ImageRenditionWorker(
+            UploadStorage uploadStorage,
+            @Value("${file.renditions.widths:160,480,1280}") int[] widths,
+            @Value("${file.renditions.workers:2}") int workers,
+            @Value("${file.renditions.queue-capacity:100}") int queueCapacity,
+            @Value("${file.renditions.max-decoded-pixels:40000000}") long maxDecodedPixels,
+            MeterRegistry meterRegistry) {
+        this.uploadStorage = uploadStorage;
+        this.widths = Arrays.stream(widths).distinct().sorted().toArray();
+        this.maxDecodedPixels = maxDecodedPixels;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-rendition-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Gauge.builder("file.renditions.queue", executor, pool -> pool.getQueue().size())
+                .description("Uploads waiting for renditions")
+                .register(meterRegistry);
+        this.renderTimer = Timer.builder("file.renditions.render")
+                .description("Time to render all renditions of one upload")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("file.renditions.rejected")
+                .description("Uploads skipped because the rendition queue was full")
+                .register(meterRegistry);
+        this.failed = Counter.builder("file.renditions.failed")
+                .description("Uploads whose renditions could not be rendered")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues rendering for a stored original; never blocks the caller.
+     */
+    public void submit(String filename) {
+        try {
+            executor.execute(() -> renderTimer.record(() -> render(filename)));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+        }
+    }
+
+    /**
+     * The smallest ready rendition at least {@code requestedWidth} wide, or empty to
+     * serve the original (no width asked, wider than every rendition, or not ready yet).
+     */
+    public Optional<StoredObject> select(String filename, Integer requestedWidth) throws IOException {
+        if (requestedWidth == null || requestedWidth <= 0) {
+            return Optional.empty();
+        }
+        for (int width : widths) {
+            if (width >= requestedWidth) {
+                return uploadStorage.open(renditionName(filename, width));
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void deleteRenditions(String filename) {
+        for (int width : widths) {
+            try {
+                uploadStorage.delete(renditionName(filename, width));
+            } catch (IOException e) {
+                logger.warn("Could not delete rendition {} of {}", width, filename, e);
+            }
+        }
+    }
+
+    static String renditionName(String filename, int width) {
+        int dot = filename.lastIndexOf('.');
+        String base = dot > 0 ? filename.substring(0, dot) : filename;
+        return base + ".w" + width + ".jpg";
+    }
+
+    // renditions live and die with their original
+    static boolean isRendition(String name) {
+        return RENDITION_NAME.matcher(name).matches();
+    }
+
+    void render(String filename) {
+        try (ImageInputStream input = openImage(filename)) {
+            if (input == null) {
+                return;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                // no decoder for this format (e.g. HEIC), keep serving the original
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // widths are of the image as displayed, which phones often store turned
+                int orientation = "jpeg".equalsIgnoreCase(reader.getFormatName()) ? exifOrientation(filename) : 1;
+                boolean transposed = orientation >= 5;
+                int displayedWidth = transposed ? reader.getHeight(0) : reader.getWidth(0);
+                int displayedHeight = transposed ? reader.getWidth(0) : reader.getHeight(0);
+                int[] targets = Arrays.stream(widths).filter(width -> width < displayedWidth).toArray();
+                if (targets.length == 0) {
+                    return;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = subsampling(displayedWidth, displayedHeight, targets[targets.length - 1]);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = ImageMetadataReader.orient(reader.read(0, param), orientation);
+
+                // largest first, each rendition scaled down from the previous one
+                for (int i = targets.length - 1; i >= 0; i--) {
+                    image = scaleToWidth(image, targets[i]);
+                    writeJpeg(image, renditionName(filename, targets[i]));
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            logger.warn("Could not render renditions of {}", filename, e);
+        }
+    }
+
+    // null if the original was deleted before its turn came
+    private ImageInputStream openImage(String filename) throws IOException {
+        Optional<StoredObject> stored = uploadStorage.open(filename);
+        if (stored.isEmpty()) {
+            return null;
+        }
+        Optional<Path> file = stored.get().file();
+        if (file.isPresent()) {
+            return ImageIO.createImageInputStream(file.get().toFile());
+        }
+        // regions of a pack file are read through memory, not a temp-file cache
+        return new MemoryCacheImageInputStream(stored.get().openStream());
+    }
+
+    private int exifOrientation(String filename) throws IOException {
+        Optional<StoredObject> stored = uploadStorage.open(filename);
+        if (stored.isEmpty()) {
+            return 1;
+        }
+        try (InputStream in = stored.get().openStream()) {
+            return ImageMetadataReader.exifOrientation(in);
+        }
+    }
+
+    // keep at least twice the largest rendition's width, then shrink further if the
+    // decoded image would still exceed the pixel budget (very tall images)
+    int subsampling(int sourceWidth, int sourceHeight, int largestTarget) {
+        int factor = Math.max(1, sourceWidth / (largestTarget * 2));
+        while ((long) (sourceWidth / factor) * (sourceHeight / factor) > maxDecodedPixels
+                && sourceWidth / (factor + 1) >= largestTarget) {
+            factor++;
+        }
+        return factor;
+    }
+
+    // repeated halving with bilinear filtering approximates an area average
+    static BufferedImage scaleToWidth(BufferedImage source, int targetWidth) {
+        int targetHeight = Math.max(1, Math.round((float) source.getHeight() * targetWidth / source.getWidth()));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                // transparent pixels become white instead of black in the JPEG
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, String name) throws IOException {
+        Path temp = uploadStorage.createTempFile();
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            uploadStorage.store(name, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
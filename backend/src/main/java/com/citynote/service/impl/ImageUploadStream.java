@@ -0,0 +1,26 @@
+package com.citynote.service.impl;
+
+import java.io.InputStream;
+
+/**
+ * An image upload checked while it streams: the first {@link ImageFormat#SIGNATURE_LENGTH}
+ * bytes must be the image format its extension claims.
+ */
+public class ImageUploadStream extends CheckedUploadStream {
+
+    private final ImageFormat expectedFormat;
+
+    public ImageUploadStream(InputStream in, ImageFormat expectedFormat, long maxBytes) {
+        super(in, ImageFormat.SIGNATURE_LENGTH, maxBytes);
+        this.expectedFormat = expectedFormat;
+    }
+
+    @Override
+    protected void checkSignature(byte[] signature, int length) throws UploadRejectedException {
+        ImageFormat actual = ImageFormat.sniff(signature, length)
+                .orElseThrow(() -> new UploadRejectedException("File content is not a supported image"));
+        if (actual != expectedFormat) {
+            throw new UploadRejectedException("File content is " + actual + ", which does not match its extension");
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.citynote.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces like count changes in memory and writes them to {@code events.likes}
+ * on a short interval, used when {@code event.likes.mode=coalesced}.
+ * <p>
+ * Each event has a {@link LongAdder}, so concurrent likes on a viral note never contend
+ * on one lock or database row. A flush drains every counter and applies the deltas with
+ * one UPDATE per batch of events. Until it commits, readers add {@link #pendingDelta(int)}
+ * to the stored count; a reader that must not see a flush commit between reading the
+ * table and the delta goes through {@link #withPendingDelta}.
+ * <p>
+ * Counters of events that stayed idle for a whole interval are retired from the map and
+ * drained once more on the next flush, which picks up a like that raced the removal.
+ */
+@Component
+public class LikeCounterBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeCounterBuffer.class);
+
+    private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    private final TransactionTemplate transactionTemplate;
+    private final int flushBatchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // guards the hand-over between counters, retired and inFlight, so readers see every like exactly once
+    private final Object countersLock = new Object();
+    private Map<Integer, LongAdder> retired = Map.of();
+    // drained but not yet committed
+    private Map<Integer, Long> inFlight = Map.of();
+    // odd while a flush is writing inFlight
+    private long flushGeneration;
+
+    public LikeCounterBuffer(
+            PlatformTransactionManager transactionManager,
+            @Value("${event.likes.flush-batch-size:200}") int flushBatchSize) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public void add(int eventId, long delta) {
+        pending.computeIfAbsent(eventId, id -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Likes not yet written to the events row.
+     */
+    public long pendingDelta(int eventId) {
+        synchronized (countersLock) {
+            long delta = sum(pending.get(eventId)) + sum(retired.get(eventId));
+            return delta + inFlight.getOrDefault(eventId, 0L);
+        }
+    }
+
+    /**
+     * The stored like count of one event plus its pending likes, with no flush committing
+     * between the two reads; empty if {@code storedLikes} finds no event.
+     */
+    public Optional<Long> withPendingDelta(int eventId, Supplier<Optional<Integer>> storedLikes) {
+        long generation;
+        long delta;
+        synchronized (countersLock) {
+            generation = flushGeneration;
+            delta = pendingDelta(eventId);
+        }
+        if (generation % 2 == 0) {
+            Optional<Integer> likes = storedLikes.get();
+            synchronized (countersLock) {
+                if (flushGeneration == generation) {
+                    return likes.map(stored -> stored + delta);
+                }
+            }
+        }
+        // a flush wrote around the read; read again with flushes held off
+        synchronized (this) {
+            return storedLikes.get().map(stored -> stored + pendingDelta(eventId));
+        }
+    }
+
+    /**
+     * Runs {@code read} between two flushes with the likes not written to the events rows
+     * at that point, so what it reads from the table plus those deltas is the whole count.
+     */
+    public synchronized <T> T withPendingDeltas(Function<Map<Integer, Long>, T> read) {
+        Map<Integer, Long> deltas = new HashMap<>();
+        synchronized (countersLock) {
+            retired.forEach((eventId, adder) -> addPending(eventId, sum(adder), deltas));
+            pending.forEach((eventId, adder) -> addPending(eventId, sum(adder), deltas));
+        }
+        return read.apply(deltas);
+    }
+
+    @Scheduled(fixedDelayString = "${event.likes.flush-interval-ms:500}")
+    public synchronized void flush() {
+        Map<Integer, Long> drained = new HashMap<>();
+        synchronized (countersLock) {
+            List<Map.Entry<LongAdder, Long>> taken = new ArrayList<>();
+            retired.forEach((eventId, adder) -> take(eventId, adder, drained, taken));
+            Map<Integer, LongAdder> idle = new HashMap<>();
+            pending.forEach((eventId, adder) -> {
+                if (!take(eventId, adder, drained, taken)) {
+                    idle.put(eventId, adder);
+                }
+            });
+
+            // published before the counters give the likes up, so readers never miss them
+            inFlight = drained;
+            if (!drained.isEmpty()) {
+                flushGeneration++;
+            }
+            // subtract what was read instead of resetting, so concurrent adds are kept
+            taken.forEach(counter -> counter.getKey().add(-counter.getValue()));
+
+            Map<Integer, LongAdder> nowRetired = new HashMap<>();
+            idle.forEach((eventId, adder) -> {
+                if (pending.remove(eventId, adder)) {
+                    nowRetired.put(eventId, adder);
+                }
+            });
+            retired = nowRetired;
+        }
+
+        if (drained.isEmpty()) {
+            return;
+        }
+        boolean written = false;
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeDeltas(drained));
+            written = true;
+        } catch (RuntimeException e) {
+            logger.warn("Flushing like counters of {} events failed, will retry: {}", drained.size(), e.getMessage());
+        } finally {
+            synchronized (countersLock) {
+                if (!written) {
+                    // keep the deltas for the next flush
+                    drained.forEach(this::add);
+                }
+                inFlight = Map.of();
+                flushGeneration++;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder != null ? adder.sum() : 0;
+    }
+
+    private static void addPending(int eventId, long delta, Map<Integer, Long> deltas) {
+        if (delta != 0) {
+            deltas.merge(eventId, delta, Long::sum);
+        }
+    }
+
+    // records the counter's value in drained; false if it had nothing pending
+    private static boolean take(int eventId, LongAdder adder, Map<Integer, Long> drained,
+                                List<Map.Entry<LongAdder, Long>> taken) {
+        long delta = adder.sum();
+        if (delta == 0) {
+            return false;
+        }
+        drained.merge(eventId, delta, Long::sum);
+        taken.add(Map.entry(adder, delta));
+        return true;
+    }
+
+    private void writeDeltas(Map<Integer, Long> deltas) {
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>(deltas.entrySet());
+        for (int from = 0; from < entries.size(); from += flushBatchSize) {
+            List<Map.Entry<Integer, Long>> batch = entries.subList(from, Math.min(from + flushBatchSize, entries.size()));
+
+            // UPDATE ... SET likes = CASE id WHEN :id0 THEN max(likes + :d0, 0) ... END WHERE id IN (...),
+            // floored at zero like EventRepository.adjustLikes
+            StringBuilder jpql = new StringBuilder("UPDATE EventEntity e SET e.likes = CASE e.id");
+            for (int i = 0; i < batch.size(); i++) {
+                jpql.append(" WHEN :id").append(i)
+                        .append(" THEN CASE WHEN e.likes + :d").append(i).append(" < 0 THEN 0")
+                        .append(" ELSE e.likes + :d").append(i).append(" END");
+            }
+            jpql.append(" ELSE e.likes END WHERE e.id IN :ids");
+
+            Query update = entityManager.createQuery(jpql.toString());
+            List<Integer> ids = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                update.setParameter("id" + i, batch.get(i).getKey());
+                update.setParameter("d" + i, Math.toIntExact(batch.get(i).getValue()));
+                ids.add(batch.get(i).getKey());
+            }
+            update.setParameter("ids", ids);
+            update.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.citynote.service.impl;
+
+import com.citynote.repository.EventLikeRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-viewer set of liked event ids as a compressed (Roaring) bitmap, so the like
+ * status of a whole list of notes is answered without one query per note.
+ * <p>
+ * A viewer's bitmap is built from {@code event_likes} on first access and patched by
+ * like toggles after they commit. Published bitmaps are never mutated: a patch installs
+ * a modified copy, so readers need no locking. A patch does not trust the toggle's
+ * result but reads the committed row under the viewer's entry lock: patches of a double
+ * tap may run in either order, and whichever runs last still sees the last commit.
+ * Entries also expire after {@code event.likes.status-cache.ttl-minutes}.
+ */
+@Component
+public class LikeStatusIndex {
+
+    private final EventLikeRepository eventLikeRepository;
+    private final Cache<Integer, RoaringBitmap> likedByProfile;
+
+    public LikeStatusIndex(
+            EventLikeRepository eventLikeRepository,
+            @Value("${event.likes.status-cache.max-profiles:50000}") long maxProfiles,
+            @Value("${event.likes.status-cache.ttl-minutes:30}") long ttlMinutes,
+            MeterRegistry meterRegistry) {
+        this.eventLikeRepository = eventLikeRepository;
+        this.likedByProfile = Caffeine.newBuilder()
+                .maximumSize(maxProfiles)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, likedByProfile, "likeStatus");
+    }
+
+    /**
+     * Like status of each requested event for the profile, in request order.
+     */
+    public Map<Integer, Boolean> likeStatus(int userProfileId, Collection<Integer> eventIds) {
+        RoaringBitmap liked = likedByProfile.get(userProfileId, this::load);
+        Map<Integer, Boolean> status = new LinkedHashMap<>(eventIds.size() * 2);
+        for (Integer eventId : eventIds) {
+            status.put(eventId, liked.contains(eventId));
+        }
+        return status;
+    }
+
+    /**
+     * Brings one event of a loaded profile in line with {@code event_likes}; call it after
+     * the toggle committed. Profiles that are not loaded are left to the lazy load.
+     */
+    public void refresh(int userProfileId, int eventId) {
+        likedByProfile.asMap().computeIfPresent(userProfileId, (id, current) -> {
+            // read under the entry lock, so a patch that runs later never reads an older state
+            boolean liked = eventLikeRepository.existsByEventIdAndUserProfileId(eventId, userProfileId);
+            if (current.contains(eventId) == liked) {
+                return current;
+            }
+            RoaringBitmap updated = current.clone();
+            if (liked) {
+                updated.add(eventId);
+            } else {
+                updated.remove(eventId);
+            }
+            return updated;
+        });
+    }
+
+    private RoaringBitmap load(int userProfileId) {
+        RoaringBitmap liked = new RoaringBitmap();
+        for (Integer eventId : eventLikeRepository.findEventIdsByUserProfileId(userProfileId)) {
+            liked.add(eventId);
+        }
+        liked.runOptimize();
+        return liked;
+    }
+}
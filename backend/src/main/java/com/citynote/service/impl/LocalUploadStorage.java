@@ -0,0 +1,301 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Upload directory with a two-level sharded layout: {@code ab/cd/<name>}, so no single
+ * directory grows past a few thousand entries.
+ * <p>
+ * The shard comes from the part of the name before its first dot, so a picture and its
+ * renditions ({@code <base>.w160.jpg}) share a directory. Names starting with four hex
+ * digits (content hashes, UUIDs) use them directly; anything else is hashed first.
+ * <p>
+ * Files from the old flat layout stay readable until {@link #migrateFlatFiles(int)} has
+ * moved them. Files are placed by hard-linking them under their final name and then
+ * unlinking the old one: unlike a rename, the link fails instead of replacing a file that
+ * is already there, and the file is never missing from both places.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalUploadStorage implements UploadStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalUploadStorage.class);
+
+    static final String STAGING_DIR = ".staging";
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-fA-F]{4}");
+    private static final Pattern SHARD_DIRECTORY = Pattern.compile("[0-9a-f]{2}");
+
+    private final Path root;
+    private final UploadStaging staging;
+
+    public LocalUploadStorage(@Value("${file.upload.path:uploads/}") String uploadPath) {
+        this.root = Paths.get(System.getProperty("user.dir"), uploadPath).toAbsolutePath().normalize();
+        this.staging = new UploadStaging(root.resolve(STAGING_DIR));
+    }
+
+    @Override
+    public Path createTempFile() throws IOException {
+        return staging.createTempFile();
+    }
+
+    @Override
+    public boolean store(String name, Path staged) throws IOException {
+        requireValidName(name);
+        if (resolve(name).isPresent()) {
+            return false;
+        }
+        Path target = shardedPath(name);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, staged);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        Files.delete(staged);
+        return true;
+    }
+
+    @Override
+    public Optional<StoredObject> open(String name) throws IOException {
+        if (!UploadStorage.isValidName(name)) {
+            return Optional.empty();
+        }
+        // sharded again last: the migration may have moved the file while we looked
+        for (Path candidate : List.of(shardedPath(name), root.resolve(name), shardedPath(name))) {
+            Optional<StoredObject> object = StoredObject.ofFile(candidate);
+            if (object.isPresent()) {
+                return object;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return resolve(name).isPresent();
+    }
+
+    // local path of a stored file, empty if there is none
+    public Optional<Path> resolve(String name) {
+        if (!UploadStorage.isValidName(name)) {
+            return Optional.empty();
+        }
+        Path sharded = shardedPath(name);
+        if (Files.isRegularFile(sharded)) {
+            return Optional.of(sharded);
+        }
+        // not migrated yet
+        Path flat = root.resolve(name);
+        return Files.isRegularFile(flat) ? Optional.of(flat) : Optional.empty();
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        requireValidName(name);
+        // flat first: a concurrent migration only ever moves flat -> sharded
+        boolean deleted = Files.deleteIfExists(root.resolve(name));
+        return Files.deleteIfExists(shardedPath(name)) || deleted;
+    }
+
+    @Override
+    public int deleteStaleTempFiles(Instant cutoff) throws IOException {
+        return staging.deleteStale(cutoff);
+    }
+
+    /**
+     * Moves up to {@code limit} files from the flat layout into their shards.
+     *
+     * @return files moved; fewer than {@code limit} means the flat layout is empty
+     */
+    public int migrateFlatFiles(int limit) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int moved = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (Path flat : entries) {
+                if (moved >= limit) {
+                    break;
+                }
+                String name = flat.getFileName().toString();
+                // in-progress writes (renditions, older upload temp files) are left to finish
+                if (!isStoredName(name)) {
+                    continue;
+                }
+                if (migrate(flat, shardedPath(name))) {
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Files not migrated yet come first, then shard by shard; names are in order within each of
+     * those parts. Only one directory's listing is held in memory at a time.
+     */
+    @Override
+    public Iterator<Entry> list() throws IOException {
+        return new LayoutIterator();
+    }
+
+    private final class LayoutIterator implements Iterator<Entry> {
+
+        // shard directories still to visit, in order
+        private final Deque<Path> pending = new ArrayDeque<>();
+        private Iterator<Entry> current;
+
+        LayoutIterator() throws IOException {
+            current = storedFiles(root).iterator();
+            pending.addAll(shardDirectories(root));
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (!current.hasNext() && !pending.isEmpty()) {
+                    Path directory = pending.removeFirst();
+                    if (directory.getParent().equals(root)) {
+                        List<Path> children = shardDirectories(directory);
+                        for (int i = children.size() - 1; i >= 0; i--) {
+                            pending.addFirst(children.get(i));
+                        }
+                    } else {
+                        current = storedFiles(directory).iterator();
+                    }
+                }
+                return current.hasNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    private static List<Path> shardDirectories(Path directory) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                path -> SHARD_DIRECTORY.matcher(path.getFileName().toString()).matches() && Files.isDirectory(path))) {
+            entries.forEach(shards::add);
+        } catch (NoSuchFileException e) {
+            // no uploads yet, or the directory went away while we were listing
+            return List.of();
+        }
+        shards.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return shards;
+    }
+
+    private static List<Entry> storedFiles(Path directory) throws IOException {
+        List<Entry> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path path : entries) {
+                String name = path.getFileName().toString();
+                if (!isStoredName(name)) {
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        files.add(new Entry(name, attributes.size(), attributes.lastModifiedTime().toInstant()));
+                    }
+                } catch (NoSuchFileException e) {
+                    // deleted while we were listing
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        files.sort(Comparator.comparing(Entry::name));
+        return files;
+    }
+
+    private static boolean isStoredName(String name) {
+        return UploadStorage.isValidName(name) && !name.endsWith(".tmp") && !name.endsWith(".part");
+    }
+
+    private boolean migrate(Path flat, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, flat);
+            Files.deleteIfExists(flat);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // same name stored in both layouts: names are content hashes or UUIDs, keep one copy
+            if (Files.size(flat) == Files.size(target)) {
+                Files.deleteIfExists(flat);
+                return true;
+            }
+            logger.warn("Not migrating {}: {} exists with a different size", flat, target);
+            return false;
+        } catch (NoSuchFileException e) {
+            // deleted while we were listing
+            return false;
+        }
+    }
+
+    Path shardedPath(String name) {
+        String shard = shard(name);
+        return root.resolve(shard.substring(0, 2)).resolve(shard.substring(2, 4)).resolve(name);
+    }
+
+    static String shard(String name) {
+        int dot = name.indexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        if (HEX_PREFIX.matcher(base).find()) {
+            return base.substring(0, 4).toLowerCase();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(base.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    Path root() {
+        return root;
+    }
+
+    private static void requireValidName(String name) {
+        if (!UploadStorage.isValidName(name)) {
+            throw new IllegalArgumentException("Invalid upload name: " + name);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads what the server can learn about an MP4/QuickTime video without decoding it: the
+ * displayed size of the video track, the duration, and cover art embedded by the
+ * recorder or editor ({@code moov/udta/meta/ilst/covr}). Only box headers and the
+ * {@code moov} box are read, never the media data, so this costs a few small reads
+ * wherever the {@code moov} box sits in the file.
+ */
+final class Mp4Inspector {
+
+    record Mp4Info(Integer width, Integer height, Long durationMillis, byte[] coverArt) {
+    }
+
+    /**
+     * Up to {@code count} bytes at {@code position}; fewer only at the end of the content.
+     */
+    @FunctionalInterface
+    interface RangeReader {
+        byte[] read(long position, int count) throws IOException;
+    }
+
+    private static final Mp4Info NOTHING = new Mp4Info(null, null, null, null);
+    // the moov box of a short clip is a few hundred KB at most
+    private static final int MAX_MOOV_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_TOP_LEVEL_BOXES = 64;
+    private static final int MATRIX_LENGTH = 36;
+
+    private Mp4Inspector() {
+    }
+
+    static Mp4Info inspect(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return inspect((position, count) -> {
+                ByteBuffer buffer = ByteBuffer.allocate(count);
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // keep reading until full or at the end
+                }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }, size);
+        }
+    }
+
+    static Mp4Info inspect(StoredObject object) throws IOException {
+        return inspect((position, count) -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(count);
+            object.transferTo(position, count, Channels.newChannel(out));
+            return out.toByteArray();
+        }, object.size());
+    }
+
+    static Mp4Info inspect(RangeReader reader, long size) throws IOException {
+        long position = 0;
+        for (int i = 0; i < MAX_TOP_LEVEL_BOXES && position + 8 <= size; i++) {
+            byte[] header = reader.read(position, 16);
+            if (header.length < 8) {
+                break;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            long boxSize = buffer.getInt(0) & 0xffffffffL;
+            String type = type(buffer, 4);
+            int headerLength = 8;
+            if (boxSize == 1) {
+                if (header.length < 16) {
+                    break;
+                }
+                boxSize = buffer.getLong(8);
+                headerLength = 16;
+            } else if (boxSize == 0) {
+                // extends to the end of the file
+                boxSize = size - position;
+            }
+            // a size running past the end would also overflow the position
+            if (boxSize < headerLength || boxSize > size - position) {
+                break;
+            }
+            if (type.equals("moov")) {
+                long contentSize = boxSize - headerLength;
+                if (contentSize > MAX_MOOV_SIZE) {
+                    break;
+                }
+                byte[] moov = reader.read(position + headerLength, (int) contentSize);
+                if (moov.length < contentSize) {
+                    // the upload was cut short
+                    return NOTHING;
+                }
+                try {
+                    return parseMoov(ByteBuffer.wrap(moov));
+                } catch (IndexOutOfBoundsException e) {
+                    // truncated or malformed box
+                    return NOTHING;
+                }
+            }
+            position += boxSize;
+        }
+        return NOTHING;
+    }
+
+    private static Mp4Info parseMoov(ByteBuffer moov) {
+        Integer width = null;
+        Integer height = null;
+        Long durationMillis = null;
+        byte[] coverArt = null;
+        for (int box = 0; box + 8 <= moov.limit(); box = next(moov, box)) {
+            String type = type(moov, box + 4);
+            int content = box + 8;
+            int end = end(moov, box);
+            if (type.equals("mvhd")) {
+                durationMillis = duration(moov, content);
+            } else if (type.equals("trak") && width == null) {
+                int tkhd = child(moov, content, end, "tkhd");
+                if (tkhd >= 0) {
+                    int[] size = displayedSize(moov, tkhd + 8, end(moov, tkhd));
+                    // audio tracks have no size
+                    if (size != null && size[0] > 0 && size[1] > 0) {
+                        width = size[0];
+                        height = size[1];
+                    }
+                }
+            } else if (type.equals("udta")) {
+                coverArt = coverArt(moov, content, end);
+            }
+        }
+        return new Mp4Info(width, height, durationMillis, coverArt);
+    }
+
+    private static Long duration(ByteBuffer moov, int content) {
+        int version = moov.get(content);
+        long timescale;
+        long duration;
+        if (version == 1) {
+            timescale = moov.getInt(content + 20) & 0xffffffffL;
+            duration = moov.getLong(content + 24);
+        } else {
+            timescale = moov.getInt(content + 12) & 0xffffffffL;
+            duration = moov.getInt(content + 16) & 0xffffffffL;
+        }
+        return timescale > 0 && duration >= 0 ? duration * 1000 / timescale : null;
+    }
+
+    // width and height as displayed, after the track matrix (phones record portrait clips rotated)
+    private static int[] displayedSize(ByteBuffer moov, int content, int end) {
+        int matrix = end - 8 - MATRIX_LENGTH;
+        if (matrix < content) {
+            return null;
+        }
+        int width = moov.getInt(end - 8) >>> 16;
+        int height = moov.getInt(end - 4) >>> 16;
+        // a and d of the matrix are 0 for a quarter turn
+        boolean quarterTurn = moov.getInt(matrix) == 0 && moov.getInt(matrix + 16) == 0;
+        return quarterTurn ? new int[]{height, width} : new int[]{width, height};
+    }
+
+    private static byte[] coverArt(ByteBuffer moov, int content, int end) {
+        int meta = child(moov, content, end, "meta");
+        if (meta < 0) {
+            return null;
+        }
+        int metaContent = meta + 8;
+        // an ISO full box (version and flags first) in MP4, a plain box in QuickTime
+        if (!type(moov, metaContent + 4).equals("hdlr")) {
+            metaContent += 4;
+        }
+        int ilst = child(moov, metaContent, end(moov, meta), "ilst");
+        if (ilst < 0) {
+            return null;
+        }
+        int covr = child(moov, ilst + 8, end(moov, ilst), "covr");
+        if (covr < 0) {
+            return null;
+        }
+        int data = child(moov, covr + 8, end(moov, covr), "data");
+        if (data < 0) {
+            return null;
+        }
+        // type indicator and locale come before the image
+        int image = data + 16;
+        int dataEnd = end(moov, data);
+        return image < dataEnd ? Arrays.copyOfRange(moov.array(), image, dataEnd) : null;
+    }
+
+    // offset of the first child box of that type between content and end, -1 if there is none
+    private static int child(ByteBuffer moov, int content, int end, String type) {
+        for (int box = content; box + 8 <= end; box = next(moov, box)) {
+            if (type(moov, box + 4).equals(type)) {
+                return box;
+            }
+        }
+        return -1;
+    }
+
+    private static int end(ByteBuffer moov, int box) {
+        long size = moov.getInt(box) & 0xffffffffL;
+        // boxes inside moov are small; a size that does not fit ends the walk
+        return size < 8 || box + size > moov.limit() ? moov.limit() : (int) (box + size);
+    }
+
+    private static int next(ByteBuffer moov, int box) {
+        long size = moov.getInt(box) & 0xffffffffL;
+        return size < 8 ? moov.limit() : (int) Math.min(moov.limit(), box + size);
+    }
+
+    private static String type(ByteBuffer buffer, int offset) {
+        if (offset + 4 > buffer.limit()) {
+            return "";
+        }
+        return new String(buffer.array(), offset, 4, StandardCharsets.ISO_8859_1);
+    }
+}
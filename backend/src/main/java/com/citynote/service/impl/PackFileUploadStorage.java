@@ -0,0 +1,586 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Upload storage for many small files: uploads are appended to large pack files
+ * ({@code pack-000001.dat}, ...) instead of getting a file, and an inode, each, in the
+ * manner of Haystack. An in-memory index maps every name to the offset and length of its
+ * bytes, and reads are served from memory-mapped regions of the packs, so serving an image
+ * costs no file system lookup.
+ * <p>
+ * A record is a header (with a deleted flag), the name, the bytes and an end marker. On
+ * startup the index is rebuilt by scanning the packs; a record cut off by a crash at the end
+ * of the last pack is truncated away. A record is forced to disk before it is indexed, so an
+ * upload acknowledged (and referenced from the database) survives a crash; the index itself
+ * lives only in memory. Deleting flips the flag in place, and {@link #compact()}
+ * later copies the live records of mostly-deleted packs into the current pack and removes
+ * the old file.
+ * <p>
+ * Only reserving a record's space and writing its header happen under the append lock; the
+ * bytes are copied and forced outside it, so one large upload does not hold up the others.
+ * Headers are written in pack order, so forcing a later record also makes the headers before
+ * it durable: a record that never completed but has others after it is skipped as dead.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.backend", havingValue = "pack")
+public class PackFileUploadStorage implements UploadStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackFileUploadStorage.class);
+
+    private static final int RECORD_MAGIC = 0x434e504b;
+    private static final int END_MAGIC = 0x454e4421;
+    private static final byte LIVE = 0;
+    private static final byte DELETED = 1;
+    // magic, flags, name length, data length, last modified
+    private static final int HEADER_SIZE = 4 + 1 + 2 + 4 + 8;
+    private static final int FLAGS_OFFSET = 4;
+    private static final int TRAILER_SIZE = 4;
+    private static final Pattern PACK_NAME = Pattern.compile("pack-(\\d{6})\\.dat");
+    // records appended since the current pack was last mapped are read with plain reads until
+    // this much has piled up, so the growing pack is not remapped for every new upload
+    private static final long REMAP_STEP = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final UploadStaging staging;
+    private final long maxPackSize;
+    private final double compactionThreshold;
+    private final ConcurrentSkipListMap<String, Location> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, Pack> packs = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    // names being written outside the append lock, not indexed yet
+    private final Set<String> storing = ConcurrentHashMap.newKeySet();
+    private Pack current;
+
+    public PackFileUploadStorage(
+            @Value("${file.storage.pack.path:packs/}") String packPath,
+            @Value("${file.storage.pack.max-pack-mb:1024}") long maxPackMb,
+            @Value("${file.storage.pack.compaction-threshold:0.5}") double compactionThreshold) {
+        this.directory = Paths.get(System.getProperty("user.dir"), packPath).toAbsolutePath().normalize();
+        this.staging = new UploadStaging(directory.resolve(LocalUploadStorage.STAGING_DIR));
+        // regions are mapped with int offsets
+        this.maxPackSize = Math.min(maxPackMb * 1024 * 1024, Integer.MAX_VALUE);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @PostConstruct
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "pack-*.dat")) {
+            for (Path path : entries) {
+                Matcher matcher = PACK_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Integer.parseInt(matcher.group(1)), path);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            Pack pack = new Pack(file.getKey(), file.getValue());
+            scan(pack, file.getKey().equals(files.lastKey()));
+            packs.put(pack.id, pack);
+        }
+        synchronized (appendLock) {
+            current = packs.isEmpty() ? newPack(1) : packs.lastEntry().getValue();
+        }
+        logger.info("Loaded {} uploads from {} pack files in {}", index.size(), packs.size(), directory);
+    }
+
+    // rebuilds the index entries of one pack
+    private void scan(Pack pack, boolean last) throws IOException {
+        long fileSize = pack.channel.size();
+        ByteBuffer view = pack.channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE));
+        long position = 0;
+        for (Record record = readRecord(pack, view, 0); record != null; record = readRecord(pack, view, position)) {
+            Location location = record.location();
+            if (record.flags() == LIVE) {
+                Location previous = index.put(record.name(), location);
+                if (previous != null) {
+                    // copied by a compaction that was cut off before it removed the old pack
+                    markDeleted(previous);
+                }
+            } else {
+                pack.deadBytes.addAndGet(location.recordLength());
+            }
+            position = location.end();
+        }
+        if (position < fileSize) {
+            if (last) {
+                logger.warn("Truncating {} from {} to {}: incomplete record", pack.path, fileSize, position);
+                pack.channel.truncate(position);
+            } else {
+                logger.error("{} is damaged at {}, the {} bytes after it are not readable", pack.path, position,
+                        fileSize - position);
+            }
+        }
+        pack.size = position;
+    }
+
+    @Override
+    public Path createTempFile() throws IOException {
+        return staging.createTempFile();
+    }
+
+    @Override
+    public boolean store(String name, Path staged) throws IOException {
+        requireValidName(name);
+        long length = Files.size(staged);
+        Location reserved;
+        synchronized (appendLock) {
+            if (index.containsKey(name) || !storing.add(name)) {
+                return false;
+            }
+            try {
+                reserved = reserve(name, length, Instant.now().toEpochMilli());
+            } catch (IOException | RuntimeException e) {
+                storing.remove(name);
+                throw e;
+            }
+        }
+        try {
+            complete(reserved, (target, position) -> {
+                try (FileChannel source = FileChannel.open(staged, StandardOpenOption.READ)) {
+                    long copied = 0;
+                    while (copied < length) {
+                        long transferred = target.transferFrom(source, position + copied, length - copied);
+                        if (transferred <= 0) {
+                            throw new EOFException(staged + " shrank while it was stored");
+                        }
+                        copied += transferred;
+                    }
+                }
+            });
+            index.put(name, reserved);
+        } finally {
+            storing.remove(name);
+        }
+        Files.deleteIfExists(staged);
+        return true;
+    }
+
+    @Override
+    public Optional<StoredObject> open(String name) throws IOException {
+        if (!UploadStorage.isValidName(name)) {
+            return Optional.empty();
+        }
+        // a second lookup covers a pack retired by compaction between the lookup and the read
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Location location = index.get(name);
+            if (location == null) {
+                return Optional.empty();
+            }
+            try {
+                ByteBuffer bytes = location.pack().region(location.dataOffset(), location.length());
+                return Optional.of(new PackedObject(bytes, Instant.ofEpochMilli(location.lastModified())));
+            } catch (ClosedChannelException e) {
+                // moved to another pack
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return UploadStorage.isValidName(name) && index.containsKey(name);
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        requireValidName(name);
+        Location location = index.remove(name);
+        if (location == null) {
+            return false;
+        }
+        try {
+            markDeleted(location);
+        } catch (IOException e) {
+            // the flag is what survives a restart, so the upload is not deleted yet
+            index.putIfAbsent(name, location);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public int deleteStaleTempFiles(Instant cutoff) throws IOException {
+        return staging.deleteStale(cutoff);
+    }
+
+    /**
+     * The index in name order; uploads stored or deleted while iterating may or may not show.
+     */
+    @Override
+    public Iterator<Entry> list() {
+        Iterator<Map.Entry<String, Location>> entries = index.entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                Map.Entry<String, Location> entry = entries.next();
+                Location location = entry.getValue();
+                return new Entry(entry.getKey(), location.length(), Instant.ofEpochMilli(location.lastModified()));
+            }
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.pack.compaction-interval-ms:600000}")
+    public void compact() {
+        for (Pack pack : packs.values()) {
+            boolean writable;
+            synchronized (appendLock) {
+                // no new writers once the pack is not current, so a zero count stays zero
+                writable = pack == current || pack.writers.get() > 0;
+            }
+            if (writable || pack.size == 0 || (double) pack.deadBytes.get() / pack.size < compactionThreshold) {
+                continue;
+            }
+            try {
+                long reclaimed = compact(pack);
+                logger.info("Compacted {}, {} bytes reclaimed", pack.path, reclaimed);
+            } catch (IOException e) {
+                // the pack stays as it is, with its live records intact
+                logger.warn("Could not compact {}", pack.path, e);
+            }
+        }
+    }
+
+    /**
+     * Copies the live records of a full pack into the current one and removes it.
+     *
+     * @return bytes reclaimed
+     */
+    synchronized long compact(Pack pack) throws IOException {
+        ByteBuffer view = pack.region(0, (int) pack.size);
+        long copied = 0;
+        long position = 0;
+        for (Record record = readRecord(pack, view, 0); record != null; record = readRecord(pack, view, position)) {
+            Location location = record.location();
+            position = location.end();
+            if (record.flags() != LIVE || !location.equals(index.get(record.name()))) {
+                continue;
+            }
+            ByteBuffer bytes = view.slice((int) location.dataOffset(), location.length());
+            Location moved;
+            synchronized (appendLock) {
+                moved = reserve(record.name(), location.length(), location.lastModified());
+            }
+            complete(moved, (target, at) -> writeFully(target, bytes.duplicate(), at));
+            if (!index.replace(record.name(), location, moved)) {
+                // deleted while it was being copied
+                markDeleted(moved);
+            }
+            copied += location.recordLength();
+        }
+        packs.remove(pack.id);
+        pack.channel.close();
+        Files.deleteIfExists(pack.path);
+        return pack.size - copied;
+    }
+
+    Pack pack(int id) {
+        return packs.get(id);
+    }
+
+    int packCount() {
+        return packs.size();
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        for (Pack pack : packs.values()) {
+            pack.channel.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(FileChannel target, long position) throws IOException;
+    }
+
+    // claims the space of a record at the end of the current pack and writes its header;
+    // callers hold appendLock and must complete the record
+    private Location reserve(String name, long length, long lastModified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long recordLength = HEADER_SIZE + nameBytes.length + length + TRAILER_SIZE;
+        if (nameBytes.length > 0xffff || recordLength > maxPackSize) {
+            throw new IOException("Upload " + name + " is too large for a pack file");
+        }
+        if (current.size > 0 && current.size + recordLength > maxPackSize) {
+            current = newPack(current.id + 1);
+        }
+        Pack pack = current;
+        long offset = pack.size;
+        long dataOffset = offset + HEADER_SIZE + nameBytes.length;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + nameBytes.length)
+                .putInt(RECORD_MAGIC)
+                .put(LIVE)
+                .putShort((short) nameBytes.length)
+                .putInt((int) length)
+                .putLong(lastModified)
+                .put(nameBytes)
+                .flip();
+        writeFully(pack.channel, header, offset);
+        // a failed header write leaves size alone, so the next record overwrites the partial one
+        pack.size = offset + recordLength;
+        pack.writers.incrementAndGet();
+        return new Location(pack, offset, dataOffset, (int) length, lastModified);
+    }
+
+    // writes the bytes and end marker of a reserved record and forces them to disk
+    private void complete(Location reserved, DataWriter data) throws IOException {
+        Pack pack = reserved.pack();
+        try {
+            data.write(pack.channel, reserved.dataOffset());
+            writeFully(pack.channel, ByteBuffer.allocate(TRAILER_SIZE).putInt(END_MAGIC).flip(),
+                    reserved.dataOffset() + reserved.length());
+            pack.channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            // the space is lost either way; the flag keeps a record that did get written out of the index
+            try {
+                markDeleted(reserved);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            pack.writers.decrementAndGet();
+        }
+    }
+
+    private void markDeleted(Location location) throws IOException {
+        try {
+            writeFully(location.pack().channel, ByteBuffer.wrap(new byte[]{DELETED}),
+                    location.recordOffset() + FLAGS_OFFSET);
+        } catch (ClosedChannelException e) {
+            // the pack was compacted away
+            return;
+        }
+        location.pack().deadBytes.addAndGet(location.recordLength());
+    }
+
+    private Pack newPack(int id) throws IOException {
+        Pack pack = new Pack(id, directory.resolve(String.format("pack-%06d.dat", id)));
+        packs.put(id, pack);
+        forceDirectory();
+        return pack;
+    }
+
+    // makes a new pack's directory entry durable along with its first record
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened for syncing on every platform (e.g. Windows)
+            logger.debug("Could not sync {}: {}", directory, e.toString());
+        }
+    }
+
+    // the complete record at position, or null if there is none; a record that was reserved
+    // but never completed comes back deleted as long as something follows it
+    private static Record readRecord(Pack pack, ByteBuffer view, long position) {
+        if (view.limit() - position < HEADER_SIZE + TRAILER_SIZE) {
+            return null;
+        }
+        int at = (int) position;
+        if (view.getInt(at) != RECORD_MAGIC) {
+            return null;
+        }
+        byte flags = view.get(at + FLAGS_OFFSET);
+        int nameLength = Short.toUnsignedInt(view.getShort(at + 5));
+        int length = view.getInt(at + 7);
+        long lastModified = view.getLong(at + 11);
+        long dataOffset = position + HEADER_SIZE + nameLength;
+        long end = dataOffset + length + TRAILER_SIZE;
+        if ((flags != LIVE && flags != DELETED) || nameLength == 0 || length < 0 || end > view.limit()) {
+            return null;
+        }
+        if (view.getInt((int) end - TRAILER_SIZE) != END_MAGIC) {
+            if (end == view.limit()) {
+                return null;
+            }
+            flags = DELETED;
+        }
+        byte[] name = new byte[nameLength];
+        view.get(at + HEADER_SIZE, name);
+        return new Record(new String(name, StandardCharsets.UTF_8), flags,
+                new Location(pack, position, dataOffset, length, lastModified));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void requireValidName(String name) {
+        if (!UploadStorage.isValidName(name)) {
+            throw new IllegalArgumentException("Invalid upload name: " + name);
+        }
+    }
+
+    private record Record(String name, byte flags, Location location) {
+    }
+
+    private record Location(Pack pack, long recordOffset, long dataOffset, int length, long lastModified) {
+
+        long recordLength() {
+            return dataOffset - recordOffset + length + TRAILER_SIZE;
+        }
+
+        long end() {
+            return recordOffset + recordLength();
+        }
+    }
+
+    static final class Pack {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong deadBytes = new AtomicLong();
+        // records reserved but not completed yet
+        private final AtomicInteger writers = new AtomicInteger();
+        // end of the last reserved record
+        private volatile long size;
+        private volatile MappedByteBuffer mapping;
+
+        private Pack(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        ByteBuffer region(long offset, int length) throws IOException {
+            MappedByteBuffer mapped = mapping;
+            if (mapped != null && offset + length <= mapped.capacity()) {
+                return mapped.slice((int) offset, length);
+            }
+            if (mapped != null && offset >= mapped.capacity() && size - mapped.capacity() < REMAP_STEP) {
+                return read(offset, length);
+            }
+            return remap(offset + length).slice((int) offset, length);
+        }
+
+        private ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, offset + bytes.position()) < 0) {
+                    throw new EOFException(path + " ends before " + (offset + length));
+                }
+            }
+            return bytes.flip();
+        }
+
+        // the current pack grows, so its mapping is renewed once reads go far enough past it;
+        // reserved records may not be written yet, so the mapping ends at the file's end
+        private synchronized MappedByteBuffer remap(long end) throws IOException {
+            if (mapping == null || mapping.capacity() < end) {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, channel.size()));
+            }
+            return mapping;
+        }
+
+        Path path() {
+            return path;
+        }
+
+        long deadBytes() {
+            return deadBytes.get();
+        }
+    }
+
+    private record PackedObject(ByteBuffer bytes, Instant lastModified) implements StoredObject {
+
+        @Override
+        public long size() {
+            return bytes.capacity();
+        }
+
+        @Override
+        public Optional<Path> file() {
+            return Optional.empty();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            int start = (int) Math.min(position, bytes.capacity());
+            int end = (int) Math.min(bytes.capacity(), position + count);
+            ByteBuffer region = bytes.slice(start, end - start);
+            while (region.hasRemaining()) {
+                target.write(region);
+            }
+            return end - start;
+        }
+
+        @Override
+        public InputStream openStream() {
+            ByteBuffer buffer = bytes.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] target, int offset, int length) {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(length, buffer.remaining());
+                    buffer.get(target, offset, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return buffer.remaining();
+                }
+            };
+        }
+    }
+}
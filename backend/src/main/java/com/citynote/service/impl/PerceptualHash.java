@@ -0,0 +1,64 @@
+package com.citynote.service.impl;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash): the image reduced to 9x8 grey cells, one bit per pair of
+ * horizontally adjacent cells telling whether brightness falls from left to right.
+ * Re-encoding, resizing and mild colour or compression changes flip few bits, so the
+ * Hamming distance between two hashes measures how alike the pictures look.
+ */
+final class PerceptualHash {
+
+    // carries nothing to compare (a flat image); such hashes are not indexed
+    static final long NONE = 0L;
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hashes the image as displayed; callers pass a small (subsampled) copy.
+     */
+    static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        // mean luma of each cell, by area so every source pixel counts once
+        double[] cells = new double[COLUMNS * ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            int y0 = row * height / ROWS;
+            int y1 = Math.min(height, Math.max(y0 + 1, (row + 1) * height / ROWS));
+            for (int column = 0; column < COLUMNS; column++) {
+                int x0 = column * width / COLUMNS;
+                int x1 = Math.min(width, Math.max(x0 + 1, (column + 1) * width / COLUMNS));
+                double sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int rgb = pixels[y * width + x];
+                        sum += 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                    }
+                }
+                cells[row * COLUMNS + column] = sum / ((y1 - y0) * (x1 - x0));
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                hash <<= 1;
+                if (cells[row * COLUMNS + column] > cells[row * COLUMNS + column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,236 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.StoredFileEntity;
+import com.citynote.repository.StoredFileRepository;
+import com.citynote.repository.projection.StoredFileHashRow;
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the perceptual hashes of all stored images, answering "which stored
+ * pictures look like this one" within {@code file.dedup.near-duplicate.max-distance} bits
+ * in a BK-tree walk instead of a scan. It catches the same picture re-encoded, resized or
+ * recompressed, which content addressing (exact bytes) cannot.
+ * <p>
+ * Uploads are hashed by {@link ImageMetadataReader} from the copy it decodes anyway, and
+ * added by the {@link ContentAddressedStore} once stored. The index is rebuilt from
+ * {@code stored_files} at startup; files stored before hashing are hashed in the
+ * background, {@code file.dedup.near-duplicate.backfill-batch-size} per interval.
+ */
+@Component
+public final class PerceptualHashIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerceptualHashIndex.class);
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    public record NearDuplicate(String filename, int distance) {
+    }
+
+    private final StoredFileRepository storedFileRepository;
+    private final UploadStorage uploadStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxDistance;
+    private final int maxMatches;
+    private final int backfillBatchSize;
+    private final BkTree tree = new BkTree();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Timer lookupTimer;
+    private final Counter flagged;
+
+    private int backfillAfterId;
+    private volatile boolean backfilled;
+
+    public PerceptualHashIndex(
+            StoredFileRepository storedFileRepository,
+            UploadStorage uploadStorage,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.dedup.near-duplicate.max-distance:10}") int maxDistance,
+            @Value("${file.dedup.near-duplicate.max-matches:20}") int maxMatches,
+            @Value("${file.dedup.near-duplicate.backfill-batch-size:50}") int backfillBatchSize,
+            MeterRegistry meterRegistry) {
+        this.storedFileRepository = storedFileRepository;
+        this.uploadStorage = uploadStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxDistance = maxDistance;
+        this.maxMatches = maxMatches;
+        this.backfillBatchSize = backfillBatchSize;
+
+        Gauge.builder("file.dedup.indexed", this, PerceptualHashIndex::size)
+                .description("Stored images in the near-duplicate index")
+                .register(meterRegistry);
+        this.lookupTimer = Timer.builder("file.dedup.lookup")
+                .description("Time to find the near-duplicates of one upload")
+                .register(meterRegistry);
+        this.flagged = Counter.builder("file.dedup.near-duplicates")
+                .description("Uploads that look like pictures already stored")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.nanoTime();
+        int afterId = 0;
+        List<StoredFileHashRow> page;
+        do {
+            page = storedFileRepository.findHashesAfter(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            for (StoredFileHashRow row : page) {
+                add(row.filename(), row.perceptualHash());
+                afterId = row.id();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        logger.info("Near-duplicate index loaded with {} images in {} ms",
+                size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public void add(String filename, long hash) {
+        if (hash == PerceptualHash.NONE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            tree.add(filename, hash);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String filename) {
+        lock.writeLock().lock();
+        try {
+            tree.remove(filename);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stored pictures that look like the one with the given hash, closest first, leaving
+     * out the file itself; at most {@code file.dedup.near-duplicate.max-matches}.
+     */
+    public List<NearDuplicate> nearDuplicates(String filename, long hash) {
+        if (hash == PerceptualHash.NONE) {
+            return List.of();
+        }
+        List<NearDuplicate> matches = lookupTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                return tree.search(hash, maxDistance).stream()
+                        .filter(match -> !match.name().equals(filename))
+                        .limit(maxMatches)
+                        .map(match -> new NearDuplicate(match.name(), match.distance()))
+                        .toList();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        if (!matches.isEmpty()) {
+            flagged.increment();
+        }
+        return matches;
+    }
+
+    @Scheduled(fixedDelayString = "${file.dedup.near-duplicate.backfill-interval-ms:5000}")
+    public void backfillBatch() {
+        if (backfilled) {
+            return;
+        }
+        try {
+            if (backfill(backfillBatchSize) < backfillBatchSize) {
+                backfilled = true;
+                logger.info("Perceptual hash backfill finished, {} images indexed", size());
+            }
+        } catch (RuntimeException e) {
+            // retried on the next tick
+            logger.warn("Perceptual hash backfill batch failed", e);
+        }
+    }
+
+    /**
+     * Hashes the next stored files that have no hash yet.
+     *
+     * @return files looked at
+     */
+    synchronized int backfill(int batchSize) {
+        List<StoredFileEntity> batch = storedFileRepository.findUnhashedAfter(backfillAfterId, PageRequest.of(0, batchSize));
+        for (StoredFileEntity storedFile : batch) {
+            String filename = storedFile.getFilename();
+            backfillAfterId = storedFile.getId();
+            long hash;
+            try {
+                hash = hashStored(filename);
+            } catch (IOException e) {
+                // left unhashed, tried again after a restart
+                logger.warn("Could not hash {}", filename, e);
+                continue;
+            }
+            // no row updated: the file was unlinked, or an upload of the same content hashed it meanwhile
+            Integer updated = transactionTemplate.execute(status -> storedFileRepository.recordPerceptualHash(filename, hash));
+            if (updated != null && updated > 0) {
+                add(filename, hash);
+            }
+        }
+        return batch.size();
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the hash of a stored file, NONE if it is missing or not an image
+    private long hashStored(String filename) throws IOException {
+        Optional<StoredObject> stored = uploadStorage.open(filename);
+        if (stored.isEmpty()) {
+            return PerceptualHash.NONE;
+        }
+        long size = stored.get().size();
+        Optional<Path> file = stored.get().file();
+        if (file.isPresent()) {
+            return hashOf(ImageMetadataReader.read(file.get(), size));
+        }
+        // a region of a pack or a remote object: the decoder needs a file
+        Path temp = uploadStorage.createTempFile();
+        try {
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                stored.get().transferTo(0, size, target);
+            }
+            return hashOf(ImageMetadataReader.read(temp, size));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // the metadata's hash, NONE for content that could not be hashed
+    public static long hashOf(ImageMetadata metadata) {
+        return metadata.perceptualHash() != null ? metadata.perceptualHash() : PerceptualHash.NONE;
+    }
+}
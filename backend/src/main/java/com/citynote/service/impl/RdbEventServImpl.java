@@ -1,15 +1,18 @@
 package com.citynote.service.impl;
 
 import com.citynote.controller.FileUploadController;
+import com.citynote.dto.CountyActivityDTO;
+import com.citynote.dto.CursorPageDTO;
 import com.citynote.dto.EventRequestDTO;
 import com.citynote.dto.EventResponseDTO;
+import com.citynote.dto.PictureMetaDTO;
 import com.citynote.entity.BlobEntity;
 import com.citynote.entity.CountyEntity;
 import com.citynote.entity.EventEntity;
-import com.citynote.entity.EventLikeEntity;
 import com.citynote.entity.UserProfile;
 import com.citynote.entity.enums.EventType;
 import com.citynote.repository.*;
+import com.citynote.security.JwtPrincipal;
 import com.citynote.service.EventService;
 // import com.citynote.security.JwtTokenUtil;
 // import com.sun.jdi.request.EventRequest;
@@ -17,7 +20,6 @@ import com.citynote.service.EventService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
@@ -26,44 +28,60 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.io.File;
 import java.util.stream.Collectors;
 
 @Service
 @Qualifier("RdbEventServiceImpl")
 public class RdbEventServImpl implements EventService {
 
-    @Value("${file.upload.path:uploads/}")
-    private String uploadPath;
-    private final Path uploadDir;
+    private static final Logger logger = LoggerFactory.getLogger(RdbEventServImpl.class);
 
-//    private static final Logger logger = LoggerFactory.getLogger(FileUploadController.class);
     private final EventRepository eventRepository;
     private final BlobRepository blobRepository;
     private final UserProfileRepository userProfileRepository;
-    private final CountyRepository countyRepository;
-    private final EventLikeRepository eventLikeRepository;
+    private final CountyDirectory countyDirectory;
+    private final EventLikeWriter eventLikeWriter;
+    private final LikeCounterBuffer likeCounterBuffer;
+    private final LikeStatusIndex likeStatusIndex;
+    private final EventFeedReader eventFeedReader;
+    private final CountyFeedCache countyFeedCache;
+    private final CountyActivityStore countyActivityStore;
+    private final ContentAddressedStore contentAddressedStore;
+    private final FileDeletionQueue fileDeletionQueue;
 
     public RdbEventServImpl(
-            @Value("${file.upload.path:uploads/}") String uploadPath,
             EventRepository eventRepository,
             BlobRepository blobRepository,
             UserProfileRepository userProfileRepository,
-            CountyRepository countyRepository,
-            EventLikeRepository eventLikeRepository) {
-        this.uploadDir = Paths.get(System.getProperty("user.dir"), uploadPath).toAbsolutePath();
+            CountyDirectory countyDirectory,
+            EventLikeWriter eventLikeWriter,
+            LikeCounterBuffer likeCounterBuffer,
+            LikeStatusIndex likeStatusIndex,
+            EventFeedReader eventFeedReader,
+            CountyFeedCache countyFeedCache,
+            CountyActivityStore countyActivityStore,
+            ContentAddressedStore contentAddressedStore,
+            FileDeletionQueue fileDeletionQueue) {
         this.eventRepository = eventRepository;
         this.blobRepository = blobRepository;
         this.userProfileRepository = userProfileRepository;
-        this.countyRepository = countyRepository;
-        this.eventLikeRepository = eventLikeRepository;
+        this.countyDirectory = countyDirectory;
+        this.eventLikeWriter = eventLikeWriter;
+        this.likeCounterBuffer = likeCounterBuffer;
+        this.likeStatusIndex = likeStatusIndex;
+        this.eventFeedReader = eventFeedReader;
+        this.countyFeedCache = countyFeedCache;
+        this.countyActivityStore = countyActivityStore;
+        this.contentAddressedStore = contentAddressedStore;
+        this.fileDeletionQueue = fileDeletionQueue;
     }
 
     public Optional<EventResponseDTO> getEventById(int id) {
@@ -72,11 +90,11 @@ public class RdbEventServImpl implements EventService {
                 .map(this::DTOConverter);
     }
 
-    @Transactional
     public Page<EventResponseDTO> getPagesOfEventsByCounty(int countyId, Pageable pageable) {
-        return eventRepository
-                .findByCounty_Id(countyId, pageable)
-                .map(this::DTOConverter);
+        // projection read path, avoids loading blobs/profile/user per event;
+        // the first pages of each county are served from the feed cache
+        return countyFeedCache.get(countyId, pageable,
+                p -> eventFeedReader.readCountyPage(countyId, p));
     }
 
     @Transactional
@@ -90,24 +108,31 @@ public class RdbEventServImpl implements EventService {
 
     @Transactional
     public Page<EventResponseDTO> getPagesOfCurrentUserEvents(Pageable pageable) {
-        // Get current authenticated user
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated() ||
-                "anonymousUser".equals(authentication.getName())) {
-            throw new RuntimeException("Authentication required. Please login first.");
-        }
+        return eventRepository
+                .findByUserProfile_Id(getCurrentUserProfileId(), pageable)
+                .map(this::DTOConverter);
+    }
 
-        String currentUsername = authentication.getName();
+    public CursorPageDTO<EventResponseDTO> getCursorPageOfEventsByCounty(int countyId, String cursor, int size) {
+        return eventFeedReader.readCountySlice(countyId, cursor, size);
+    }
 
-        // Find user profile by username
-        Optional<UserProfile> userProfileOpt = userProfileRepository.findByUsername(currentUsername);
-        if (userProfileOpt.isPresent()) {
-            return eventRepository
-                    .findByUserProfile_Id(userProfileOpt.get().getId(), pageable)
-                    .map(this::DTOConverter);
-        } else {
-            throw new RuntimeException("User profile not found for username: " + currentUsername);
-        }
+    public CursorPageDTO<EventResponseDTO> getCursorPageOfUserPostedEvents(Long userId, String cursor, int size) {
+        // same id mapping as getPagesOfUserPostedEvents
+        return eventFeedReader.readUserSlice(userId.intValue(), cursor, size);
+    }
+
+    public CursorPageDTO<EventResponseDTO> getCursorPageOfCurrentUserEvents(String cursor, int size) {
+        return eventFeedReader.readUserSlice(getCurrentUserProfileId(), cursor, size);
+    }
+
+    public CursorPageDTO<EventResponseDTO> getRecentEventsAcrossCounties(Collection<Integer> countyIds, String cursor,
+                                                                        int limit) {
+        return eventFeedReader.readViewport(countyIds, cursor, limit);
+    }
+
+    public CountyActivityDTO getCountyActivity() {
+        return countyActivityStore.snapshot();
     }
 
     @Transactional
@@ -128,8 +153,8 @@ public class RdbEventServImpl implements EventService {
         String currentUsername = authentication.getName();
         System.out.println("[Event Service] Creating event for user: " + currentUsername);
 
-        // Find user profile by username
-        Optional<UserProfile> userProfileOpt = userProfileRepository.findByUsername(currentUsername);
+        // Find user profile (from the token's profile id, or by username)
+        Optional<UserProfile> userProfileOpt = findCurrentUserProfile(currentUsername);
         if (userProfileOpt.isPresent()) {
             eventEntity.setUserProfile(userProfileOpt.get());
             System.out.println("[Event Service] Found user profile: " + userProfileOpt.get().getId());
@@ -140,7 +165,7 @@ public class RdbEventServImpl implements EventService {
         // Set county - get countyId from EventRequestDTO
         if (eventRequestDTO.getCountyId() != null) {
             // Try to find county with the provided ID first
-            Optional<CountyEntity> countyOpt = countyRepository.findById(eventRequestDTO.getCountyId());
+            Optional<CountyEntity> countyOpt = countyDirectory.findById(eventRequestDTO.getCountyId());
             if (countyOpt.isPresent()) {
                 eventEntity.setCounty(countyOpt.get());
             } else {
@@ -148,7 +173,7 @@ public class RdbEventServImpl implements EventService {
                 // Frontend sends countyId like 6085, but database might have 06085
                 Integer convertedCountyId = convertCountyIdFormat(eventRequestDTO.getCountyId());
                 if (convertedCountyId != null) {
-                    Optional<CountyEntity> convertedCountyOpt = countyRepository.findById(convertedCountyId);
+                    Optional<CountyEntity> convertedCountyOpt = countyDirectory.findById(convertedCountyId);
                     if (convertedCountyOpt.isPresent()) {
                         eventEntity.setCounty(convertedCountyOpt.get());
                     } else {
@@ -165,21 +190,79 @@ public class RdbEventServImpl implements EventService {
             throw new RuntimeException("County ID is required for creating an event");
         }
 
-        if (eventRequestDTO.getPictureLinks().length > 0) {
-            eventEntity.setEventType(EventType.IMAGE);
-            for (int i = 0; i < eventRequestDTO.getPictureLinks().length; i++) {
-                String filename = eventRequestDTO.getPictureLinks()[i];
-                BlobEntity blobEntity = new BlobEntity();
-                blobEntity.setFilename(filename);
-                blobEntity.setInPlaceOrder(i + 1);
-                blobEntity.setEvent(eventEntity);
-                blobRepository.save(blobEntity);
+        attachMedia(eventEntity, eventRequestDTO);
+
+        int countyId = eventEntity.getCounty().getId();
+        LocalDateTime createdAt = eventEntity.getLastUpdateDate();
+        TransactionHooks.afterCommit(() -> {
+            countyFeedCache.evictCounty(countyId);
+            countyActivityStore.recordPost(countyId, createdAt);
+        });
+
+        return eventRepository.save(eventEntity).getId();
+    }
+
+    /**
+     * Sets the event type from the request and links its files. A video note keeps the clip
+     * at order 0 and its poster, if any, as picture 1; pictures otherwise start at 1.
+     *
+     * @throws IllegalArgumentException if the video link is not a video or comes with more
+     *                                  than one picture
+     *
+     * @return the files now linked to the event
+     */
+    private List<String> attachMedia(EventEntity eventEntity, EventRequestDTO eventRequestDTO) {
+        String videoLink = eventRequestDTO.getVideoLink();
+        String[] pictureLinks = eventRequestDTO.getPictureLinks() != null
+                ? eventRequestDTO.getPictureLinks()
+                : new String[0];
+        if (videoLink != null && !videoLink.isBlank()) {
+            int dot = videoLink.lastIndexOf('.');
+            if (dot < 0 || VideoFormat.fromExtension(videoLink.substring(dot)).isEmpty()) {
+                throw new IllegalArgumentException("Not a video file: " + videoLink);
+            }
+            // only the poster goes with a video
+            if (pictureLinks.length > 1) {
+                throw new IllegalArgumentException("A video note takes at most one poster picture, got "
+                        + pictureLinks.length);
             }
+            eventEntity.setEventType(EventType.VIDEO);
+            attachBlob(eventEntity, videoLink, 0, contentAddressedStore.metadata(List.of(videoLink)).get(videoLink));
+            attachPictures(eventEntity, pictureLinks);
+            List<String> attached = new ArrayList<>(Arrays.asList(pictureLinks));
+            attached.add(videoLink);
+            return attached;
+        }
+        if (pictureLinks.length > 0) {
+            eventEntity.setEventType(EventType.IMAGE);
+            attachPictures(eventEntity, pictureLinks);
         } else {
             eventEntity.setEventType(EventType.TEXT);
         }
+        return Arrays.asList(pictureLinks);
+    }
 
-        return eventRepository.save(eventEntity).getId();
+    private void attachPictures(EventEntity eventEntity, String[] pictureLinks) {
+        Map<String, ImageMetadata> metadata = contentAddressedStore.metadata(Arrays.asList(pictureLinks));
+        for (int i = 0; i < pictureLinks.length; i++) {
+            attachBlob(eventEntity, pictureLinks[i], i + 1, metadata.get(pictureLinks[i]));
+        }
+    }
+
+    private void attachBlob(EventEntity eventEntity, String filename, int inPlaceOrder, ImageMetadata metadata) {
+        BlobEntity blobEntity = new BlobEntity();
+        blobEntity.setFilename(filename);
+        blobEntity.setInPlaceOrder(inPlaceOrder);
+        blobEntity.setEvent(eventEntity);
+        if (metadata != null) {
+            blobEntity.setWidth(metadata.width());
+            blobEntity.setHeight(metadata.height());
+            blobEntity.setByteSize(metadata.size());
+            blobEntity.setMimeType(metadata.mimeType());
+            blobEntity.setBlurHash(metadata.blurHash());
+        }
+        blobRepository.save(blobEntity);
+        contentAddressedStore.retain(filename);
     }
 
     @Transactional
@@ -213,105 +296,65 @@ public class RdbEventServImpl implements EventService {
 
         // 使用JPQL直接删除blobs，避免级联问题
         // use JPQL to delete blobs directly, preventing cascade problems
+        List<String> previousFilenames = eventEntity.getBlobs().stream().map(BlobEntity::getFilename).toList();
         blobRepository.deleteByEventId(eventId);
+        previousFilenames.forEach(contentAddressedStore::release);
 
         // Update event type and blobs based on content
-        if (eventRequestDTO.getPictureLinks() != null && eventRequestDTO.getPictureLinks().length > 0) {
-            eventEntity.setEventType(EventType.IMAGE);
-            for (int i = 0; i < eventRequestDTO.getPictureLinks().length; i++) {
-                String filename = eventRequestDTO.getPictureLinks()[i];
-                BlobEntity blobEntity = new BlobEntity();
-                blobEntity.setFilename(filename);
-                blobEntity.setInPlaceOrder(i + 1);
-                blobEntity.setEvent(eventEntity);
-                blobRepository.save(blobEntity);
-            }
-        } else {
-            eventEntity.setEventType(EventType.TEXT);
-        }
+        List<String> keptFilenames = attachMedia(eventEntity, eventRequestDTO);
 
         // 最后再次保存event
         eventRepository.save(eventEntity);
+
+        // files kept by the edit were retained again above; only dropped ones may be unlinked
+        List<String> droppedFilenames = previousFilenames.stream()
+                .filter(filename -> !keptFilenames.contains(filename))
+                .toList();
+        fileDeletionQueue.enqueue(droppedFilenames);
+
+        // last update date moved, so the event jumps to the top of its county feed
+        int countyId = eventEntity.getCounty().getId();
+        LocalDateTime updatedAt = eventEntity.getLastUpdateDate();
+        TransactionHooks.afterCommit(() -> {
+            countyFeedCache.evictCounty(countyId);
+            countyActivityStore.recordUpdate(countyId, updatedAt);
+        });
         return 1;
     }
 
     @Transactional
     public Boolean deleteEvent(int eventId) {
-        System.out.println("[Event Service] Starting deleteEvent for eventId: " + eventId);
-        System.out.println("[Event Service] uploadDir: " + uploadDir);
-        
         // if no related data in DB, there will be no errors
         Optional<EventEntity> eOptional = eventRepository.findById(eventId);
         if (eOptional.isPresent()) {
-            String rootDir = System.getProperty("user.dir");
-            System.out.println("[Event Service] rootDir: " + rootDir);
             EventEntity event = eOptional.get();
             List<BlobEntity> blobs = blobRepository.findBlobEntitiesByEvent(event);
-            System.out.println("[Event Service] Found " + blobs.size() + " blobs to delete");
-            
-            List<String> filenames;
+            List<String> filenames = blobs.stream().map(BlobEntity::getFilename).toList();
 
-            // get the file names
+            // delete the entities in the repository; the files are unlinked in the background
+            // after commit, and only if no other note shares them
             try {
-                filenames = blobs.stream()
-                        .map(s -> {
-                            String filename = s.getFilename();
-                            Path destPath = uploadDir.resolve(filename).toAbsolutePath();
-                            System.out.println("[Event Service] Mapping filename: " + filename + " to path: " + destPath);
-                            return destPath.toString();
-                        })
-                        .toList();
-            } catch (Exception e) {
-                System.err.println("[Event Service] Error mapping filenames: " + e.getMessage());
-                e.printStackTrace();
-                return false;
-            }
-
-            // delete the files
-            try {
-                for (String fullPath : filenames) {
-                    File targetFile = new File(fullPath);
-                    System.out.println("[Event Service] Attempting to delete file: " + fullPath);
-                    System.out.println("[Event Service] File exists: " + targetFile.exists());
-                    System.out.println("[Event Service] File absolute path: " + targetFile.getAbsolutePath());
-                    
-                    if (!targetFile.exists()) {
-                        System.err.println("[Event Service] File does not exist: " + fullPath);
-                        // Don't throw exception, just log and continue
-                        continue;
-                    }
-                    if (targetFile.delete()) {
-                        System.out.println("[Event Service] successfully removed file: " + fullPath);
-                    } else {
-                        System.err.println("[Event Service] Failed to remove file: " + fullPath);
-                        // Don't throw exception, just log and continue
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("[Event Service] Error deleting files: " + e.getMessage());
-                e.printStackTrace();
-                // Don't return false here, continue with entity deletion
-            }
-
-            // delete the entities in the repository
-            try {
-                System.out.println("[Event Service] Deleting blob entities...");
                 blobRepository.deleteAll(blobs);
-                System.out.println("[Event Service] Deleting event entity...");
+                filenames.forEach(contentAddressedStore::release);
+                fileDeletionQueue.enqueue(filenames);
                 eventRepository.delete(event);
-                System.out.println("[Event Service] Event deletion completed successfully");
+                int countyId = event.getCounty().getId();
+                TransactionHooks.afterCommit(() -> {
+                    countyFeedCache.evictCounty(countyId);
+                    countyActivityStore.recordDelete(countyId);
+                });
+                logger.debug("Deleted event {} with {} pictures", eventId, blobs.size());
             } catch (Exception e) {
-                System.err.println("[Event Service] Error deleting entities: " + e.getMessage());
-                e.printStackTrace();
+                logger.error("Could not delete event {}", eventId, e);
                 return false;
             }
             return true;
         }
-        System.out.println("[Event Service] Event not found with id: " + eventId);
+        logger.debug("Event not found with id: {}", eventId);
         return false;
     }
 
-    @Transactional
+    // Not @Transactional: EventLikeWriter runs (and retries) each attempt in its own transaction
     public Boolean toggleEventLike(int eventId) {
         // Get current user
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -320,65 +363,39 @@ public class RdbEventServImpl implements EventService {
         }
 
         String currentUsername = authentication.getName();
-        Optional<UserProfile> userProfileOpt = userProfileRepository.findByUsername(currentUsername);
+        Optional<UserProfile> userProfileOpt = findCurrentUserProfile(currentUsername);
         if (userProfileOpt.isEmpty()) {
             throw new RuntimeException("User profile not found");
         }
 
-        UserProfile userProfile = userProfileOpt.get();
+        int userProfileId = userProfileOpt.get().getId();
 
-        // Check if event exists first
-        Optional<EventEntity> eventOptional = eventRepository.findById(eventId);
-        if (eventOptional.isEmpty()) {
+        // Check if event exists first (the county is needed to patch the caches)
+        Optional<Integer> countyIdOpt = eventRepository.findCountyIdById(eventId);
+        if (countyIdOpt.isEmpty()) {
             return false;
         }
 
-        EventEntity event = eventOptional.get();
-
-        // Use a more robust approach to handle concurrent requests
-        // First, try to find existing like
-        Optional<EventLikeEntity> existingLike = eventLikeRepository.findByEventIdAndUserProfileId(eventId,
-                userProfile.getId());
-
-        if (existingLike.isPresent()) {
-            // User already liked, so unlike
-            EventLikeEntity likeToDelete = existingLike.get();
-            eventLikeRepository.delete(likeToDelete);
+        // insert/delete on event_likes plus one atomic likes = likes +/- 1 update
+        boolean liked = eventLikeWriter.toggle(eventId, userProfileId);
+        patchCachedLikes(countyIdOpt.get(), eventId, liked ? 1 : -1);
+        likeStatusIndex.refresh(userProfileId, eventId);
+        logger.debug("User {} {} event {}", currentUsername, liked ? "liked" : "unliked", eventId);
+        return liked;
+    }
 
-            // Update event likes count atomically
-            event.setLikes(Math.max(0, event.getLikes() - 1));
-            eventRepository.save(event);
-            System.out.println("User " + currentUsername + " unliked event " + eventId);
-            return false; // Return false to indicate unliked
-        } else {
-            // User hasn't liked, so like
-            try {
-                // Create new like
-                EventLikeEntity newLike = new EventLikeEntity();
-                newLike.setEvent(event);
-                newLike.setUserProfile(userProfile);
-                eventLikeRepository.save(newLike);
-
-                // Update event likes count
-                event.setLikes(event.getLikes() + 1);
-                eventRepository.save(event);
-                System.out.println("User " + currentUsername + " liked event " + eventId);
-                return true; // Return true to indicate liked
-            } catch (Exception e) {
-                // Handle potential unique constraint violation
-                System.out.println("Error creating like, might be duplicate: " + e.getMessage());
-                // Check if like was actually created despite the exception
-                Optional<EventLikeEntity> checkLike = eventLikeRepository.findByEventIdAndUserProfileId(eventId,
-                        userProfile.getId());
-                if (checkLike.isPresent()) {
-                    // Like was created, update count
-                    event.setLikes(event.getLikes() + 1);
-                    eventRepository.save(event);
-                    return true;
-                }
-                return false;
+    public Map<Integer, Boolean> getLikeStatus(Collection<Integer> eventIds) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+                "anonymousUser".equals(authentication.getName())) {
+            // anonymous viewers have not liked anything
+            Map<Integer, Boolean> status = new LinkedHashMap<>();
+            for (Integer eventId : eventIds) {
+                status.put(eventId, false);
             }
+            return status;
         }
+        return likeStatusIndex.likeStatus(getCurrentUserProfileId(), eventIds);
     }
 
     @Override
@@ -410,6 +427,14 @@ public class RdbEventServImpl implements EventService {
             EventEntity event = eventOpt.get();
             messageBuilder.append("\n\tFound event: ").append(event.getTitle());
 
+            Optional<JwtPrincipal> principal = JwtPrincipal.current();
+            if (event.getUserProfile() != null && principal.isPresent()) {
+                // compare ids, the owner's profile and user rows are not needed
+                boolean canModify = event.getUserProfile().getId() == principal.get().profileId();
+                logger.debug("Profile {} can modify event {}: {}", principal.get().profileId(), eventId, canModify);
+                return canModify;
+            }
+
             if (event.getUserProfile() != null) {
                 messageBuilder.append("\n\tEvent has user profile: ").append(event.getUserProfile().getId());
                 if (event.getUserProfile().getUser() != null) {
@@ -433,6 +458,46 @@ public class RdbEventServImpl implements EventService {
         return false;
     }
 
+    private void patchCachedLikes(int countyId, int eventId, int delta) {
+        TransactionHooks.afterCommit(() -> {
+            // the committed count rather than the delta: cached pages may already include this like
+            likeCounterBuffer.withPendingDelta(eventId, () -> eventRepository.findLikesById(eventId))
+                    .ifPresent(likes -> countyFeedCache.setLikes(countyId, eventId, likes.intValue()));
+            countyActivityStore.recordLikes(countyId, delta);
+        });
+    }
+
+    private int getCurrentUserProfileId() {
+        // Get current authenticated user
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+                "anonymousUser".equals(authentication.getName())) {
+            throw new RuntimeException("Authentication required. Please login first.");
+        }
+
+        Optional<JwtPrincipal> principal = JwtPrincipal.current();
+        if (principal.isPresent()) {
+            return principal.get().profileId();
+        }
+
+        String currentUsername = authentication.getName();
+
+        // Find user profile by username
+        return userProfileRepository.findByUsername(currentUsername)
+                .map(UserProfile::getId)
+                .orElseThrow(() -> new RuntimeException("User profile not found for username: " + currentUsername));
+    }
+
+    // Tokens issued with id claims carry the profile id, so a reference is enough and no
+    // query runs; older sessions fall back to the lookup by username
+    private Optional<UserProfile> findCurrentUserProfile(String username) {
+        Optional<JwtPrincipal> principal = JwtPrincipal.current();
+        if (principal.isPresent()) {
+            return Optional.of(userProfileRepository.getReferenceById(principal.get().profileId()));
+        }
+        return userProfileRepository.findByUsername(username);
+    }
+
     private EventResponseDTO DTOConverter(EventEntity e) {
         EventResponseDTO eventResponseDTO = new EventResponseDTO();
         eventResponseDTO.setId(e.getId());
@@ -449,7 +514,8 @@ public class RdbEventServImpl implements EventService {
         eventResponseDTO.setCounty(countyName);
 
         eventResponseDTO.setDate(e.getLastUpdateDate().toString());
-        eventResponseDTO.setLikes(e.getLikes());
+        // likes not yet flushed when counters are coalesced
+        eventResponseDTO.setLikes((int) (e.getLikes() + likeCounterBuffer.pendingDelta(e.getId())));
 
         if (e.getUserProfile() != null && e.getUserProfile().getUser() != null) {
             eventResponseDTO.setAuthorUsername(e.getUserProfile().getUser().getUsername());
@@ -461,16 +527,26 @@ public class RdbEventServImpl implements EventService {
             eventResponseDTO.setAuthorLastName("");
         }
 
-        if (e.getEventType() == EventType.IMAGE) {
-            String[] pictureLinks = e.getBlobs()
+        if (e.getEventType() == EventType.IMAGE || e.getEventType() == EventType.VIDEO) {
+            List<BlobEntity> sorted = e.getBlobs()
                     .stream()
                     .sorted((u1, u2) -> u1.getInPlaceOrder() - u2.getInPlaceOrder())
-                    .map(BlobEntity::getFilename)
-                    .toArray(String[]::new);
-            eventResponseDTO.setPictureLinks(pictureLinks);
-            eventResponseDTO.setVideoLink("");
+                    .toList();
+            // a video note's clip is at order 0, ahead of its poster
+            String videoLink = !sorted.isEmpty() && sorted.get(0).getInPlaceOrder() == 0
+                    ? sorted.get(0).getFilename()
+                    : "";
+            List<BlobEntity> blobs = videoLink.isEmpty() ? sorted : sorted.subList(1, sorted.size());
+            eventResponseDTO.setPictureLinks(blobs.stream().map(BlobEntity::getFilename).toArray(String[]::new));
+            eventResponseDTO.setPictureMeta(blobs.stream()
+                    .map(blob -> new PictureMetaDTO(blob.getFilename(), blob.getWidth(), blob.getHeight(),
+                            blob.getByteSize() != null ? blob.getByteSize() : 0, blob.getMimeType(),
+                            blob.getBlurHash()))
+                    .toArray(PictureMetaDTO[]::new));
+            eventResponseDTO.setVideoLink(videoLink);
         } else {
             eventResponseDTO.setPictureLinks(new String[0]);
+            eventResponseDTO.setPictureMeta(new PictureMetaDTO[0]);
             eventResponseDTO.setVideoLink("");
         }
 
@@ -488,43 +564,10 @@ public class RdbEventServImpl implements EventService {
             return null;
         }
 
-        String countyIdStr = countyId.toString();
-
-        // If it's already 5 digits, return as is
-        if (countyIdStr.length() == 5) {
-            return countyId;
-        }
-
-        // If it's 4 digits, try adding leading zero
-        if (countyIdStr.length() == 4) {
-            String convertedStr = "0" + countyIdStr;
-            try {
-                Integer convertedId = Integer.parseInt(convertedStr);
-                // Check if this converted ID exists in the database
-                Optional<CountyEntity> countyOpt = countyRepository.findById(convertedId);
-                if (countyOpt.isPresent()) {
-                    return convertedId;
-                }
-            } catch (NumberFormatException e) {
-                // Ignore and continue to next conversion
-            }
-        }
-
-        // If it's 3 digits, try adding two leading zeros
-        if (countyIdStr.length() == 3) {
-            String convertedStr = "00" + countyIdStr;
-            try {
-                Integer convertedId = Integer.parseInt(convertedStr);
-                // Check if this converted ID exists in the database
-                Optional<CountyEntity> countyOpt = countyRepository.findById(convertedId);
-                if (countyOpt.isPresent()) {
-                    return convertedId;
-                }
-            } catch (NumberFormatException e) {
-                // Ignore and continue to next conversion
-            }
-        }
-
-        return null;
+        // Frontend sends countyId like 6085, the FIPS code is 06085; the directory
+        // resolves both spellings from memory
+        return countyDirectory.findByFips(countyId.toString())
+                .map(CountyEntity::getId)
+                .orElse(null);
     }
 }
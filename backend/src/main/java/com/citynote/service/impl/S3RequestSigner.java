@@ -0,0 +1,142 @@
+package com.citynote.service.impl;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * AWS Signature Version 4 for S3 requests, so the storage backend talks to S3 (or MinIO and
+ * other compatible stores) with the JDK HTTP client alone.
+ */
+final class S3RequestSigner {
+
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    static final String EMPTY_PAYLOAD = sha256Hex(new byte[0]);
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final DateTimeFormatter AMZ_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String region;
+
+    S3RequestSigner(String accessKey, String secretKey, String region) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.region = region;
+    }
+
+    /**
+     * The headers to add to a request: {@code x-amz-date}, {@code x-amz-content-sha256} and
+     * {@code Authorization}. The host header is signed as the HTTP client will send it.
+     *
+     * @param headers the other headers the request carries, all of which are signed
+     */
+    Map<String, String> sign(String method, URI uri, Map<String, String> headers, String payloadHash, Instant now) {
+        String amzDate = AMZ_DATE.format(now);
+        String scope = amzDate.substring(0, 8) + "/" + region + "/s3/aws4_request";
+
+        TreeMap<String, String> canonicalHeaders = new TreeMap<>();
+        headers.forEach((name, value) -> canonicalHeaders.put(name.toLowerCase(Locale.ROOT), value.trim()));
+        canonicalHeaders.put("host", host(uri));
+        canonicalHeaders.put("x-amz-content-sha256", payloadHash);
+        canonicalHeaders.put("x-amz-date", amzDate);
+        String signedHeaders = String.join(";", canonicalHeaders.keySet());
+
+        String canonicalRequest = method + "\n"
+                + (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath()) + "\n"
+                + canonicalQuery(uri.getRawQuery()) + "\n"
+                + canonicalHeaders.entrySet().stream()
+                        .map(header -> header.getKey() + ":" + header.getValue() + "\n")
+                        .collect(Collectors.joining()) + "\n"
+                + signedHeaders + "\n"
+                + payloadHash;
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), amzDate.substring(0, 8));
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+
+        Map<String, String> added = new LinkedHashMap<>();
+        added.put("x-amz-date", amzDate);
+        added.put("x-amz-content-sha256", payloadHash);
+        added.put("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+        return added;
+    }
+
+    /**
+     * Percent-encodes everything but the unreserved characters, as S3 expects in paths
+     * (with {@code keepSlash}) and query parameters.
+     */
+    static String encode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && keepSlash)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return encoded.toString();
+    }
+
+    static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // as the JDK client writes the Host header: the port only when it is not the scheme's default
+    private static String host(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1 || port == ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    // parameters sorted by name; the query string is already encoded
+    private static String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        TreeMap<String, String> parameters = new TreeMap<>();
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            parameters.put(equals < 0 ? parameter : parameter.substring(0, equals),
+                    equals < 0 ? "" : parameter.substring(equals + 1));
+        }
+        return parameters.entrySet().stream()
+                .map(parameter -> parameter.getKey() + "=" + parameter.getValue())
+                .collect(Collectors.joining("&"));
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
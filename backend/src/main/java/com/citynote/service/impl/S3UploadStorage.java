@@ -0,0 +1,536 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Upload storage in an S3 bucket (or any store speaking the S3 API, e.g. MinIO), under
+ * {@code file.storage.s3.prefix}. Requests are signed with {@link S3RequestSigner} and go
+ * through one shared HTTP client, which keeps connections to the endpoint open between
+ * requests.
+ * <p>
+ * Uploads of {@code multipart-threshold-mb} or more are sent as a multipart upload whose
+ * parts go out {@code upload-concurrency} at a time; a failed upload is aborted so no parts
+ * are left behind. Both kinds of write are conditional ({@code If-None-Match: *}), so a name
+ * is never overwritten. Staged files stay on local disk until they are stored.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.backend", havingValue = "s3")
+public class S3UploadStorage implements UploadStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3UploadStorage.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int LIST_PAGE_SIZE = 1000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final HttpClient httpClient;
+    private final S3RequestSigner signer;
+    private final String bucketUrl;
+    private final String prefix;
+    private final UploadStaging staging;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final Duration requestTimeout;
+    private final ExecutorService partUploads;
+
+    public S3UploadStorage(
+            @Value("${file.storage.s3.endpoint}") String endpoint,
+            @Value("${file.storage.s3.region:us-east-1}") String region,
+            @Value("${file.storage.s3.bucket}") String bucket,
+            @Value("${file.storage.s3.access-key}") String accessKey,
+            @Value("${file.storage.s3.secret-key}") String secretKey,
+            @Value("${file.storage.s3.prefix:uploads/}") String prefix,
+            @Value("${file.storage.s3.staging-path:uploads/.staging}") String stagingPath,
+            @Value("${file.storage.s3.multipart-threshold-mb:16}") long multipartThresholdMb,
+            @Value("${file.storage.s3.part-size-mb:8}") long partSizeMb,
+            @Value("${file.storage.s3.upload-concurrency:4}") int uploadConcurrency,
+            @Value("${file.storage.s3.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${file.storage.s3.request-timeout-ms:60000}") long requestTimeoutMs) {
+        // path-style addressing works with S3 as well as with self-hosted stores
+        this.bucketUrl = endpoint.replaceAll("/+$", "") + "/" + S3RequestSigner.encode(bucket, false);
+        this.signer = new S3RequestSigner(accessKey, secretKey, region);
+        this.prefix = prefix;
+        this.staging = new UploadStaging(Paths.get(System.getProperty("user.dir"), stagingPath).toAbsolutePath().normalize());
+        this.multipartThreshold = multipartThresholdMb * 1024 * 1024;
+        this.partSize = partSizeMb * 1024 * 1024;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        AtomicInteger threads = new AtomicInteger();
+        this.partUploads = Executors.newFixedThreadPool(uploadConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "s3-part-upload-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Path createTempFile() throws IOException {
+        return staging.createTempFile();
+    }
+
+    @Override
+    public boolean store(String name, Path staged) throws IOException {
+        requireValidName(name);
+        if (head(name).isPresent()) {
+            return false;
+        }
+        long size = Files.size(staged);
+        boolean stored = size < multipartThreshold ? putObject(name, staged) : multipartUpload(name, staged, size);
+        if (stored) {
+            Files.deleteIfExists(staged);
+        }
+        return stored;
+    }
+
+    @Override
+    public Optional<StoredObject> open(String name) throws IOException {
+        if (!UploadStorage.isValidName(name)) {
+            return Optional.empty();
+        }
+        return head(name).map(StoredObject.class::cast);
+    }
+
+    @Override
+    public boolean exists(String name) throws IOException {
+        return UploadStorage.isValidName(name) && head(name).isPresent();
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        requireValidName(name);
+        // S3 answers a delete the same way whether or not the object was there
+        if (head(name).isEmpty()) {
+            return false;
+        }
+        HttpResponse<byte[]> response = send(request("DELETE", key(name), Map.of()), S3RequestSigner.EMPTY_PAYLOAD,
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofByteArray());
+        expectSuccess(response, "DELETE", name);
+        return true;
+    }
+
+    @Override
+    public int deleteStaleTempFiles(Instant cutoff) throws IOException {
+        return staging.deleteStale(cutoff);
+    }
+
+    /**
+     * The objects under the prefix, a page of {@value #LIST_PAGE_SIZE} at a time, in the
+     * bucket's (binary) key order.
+     */
+    @Override
+    public Iterator<Entry> list() {
+        return new Iterator<>() {
+            private Iterator<Entry> page = Collections.emptyIterator();
+            private String continuationToken;
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !lastPage) {
+                    try {
+                        loadPage();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            private void loadPage() throws IOException {
+                Map<String, String> query = new LinkedHashMap<>();
+                query.put("list-type", "2");
+                query.put("max-keys", String.valueOf(LIST_PAGE_SIZE));
+                query.put("prefix", prefix);
+                if (continuationToken != null) {
+                    query.put("continuation-token", continuationToken);
+                }
+                HttpResponse<byte[]> response = send(request("GET", "", query), S3RequestSigner.EMPTY_PAYLOAD,
+                        HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofByteArray());
+                expectSuccess(response, "list", prefix);
+
+                Element result = parseXml(response.body());
+                List<Entry> entries = new ArrayList<>();
+                NodeList contents = result.getElementsByTagName("Contents");
+                for (int i = 0; i < contents.getLength(); i++) {
+                    Element object = (Element) contents.item(i);
+                    String name = text(object, "Key").substring(prefix.length());
+                    // keys further down the prefix were not written by this storage
+                    if (UploadStorage.isValidName(name)) {
+                        entries.add(new Entry(name, Long.parseLong(text(object, "Size")),
+                                Instant.parse(text(object, "LastModified"))));
+                    }
+                }
+                page = entries.iterator();
+                continuationToken = "true".equals(text(result, "IsTruncated")) ? text(result, "NextContinuationToken") : null;
+                lastPage = continuationToken == null;
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        partUploads.shutdownNow();
+    }
+
+    private Optional<S3Object> head(String name) throws IOException {
+        HttpResponse<Void> response = send(request("HEAD", key(name), Map.of()), S3RequestSigner.EMPTY_PAYLOAD,
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        expectSuccess(response, "HEAD", name);
+        long size = response.headers().firstValueAsLong("Content-Length").orElseThrow(
+                () -> new IOException("HEAD " + name + " returned no Content-Length"));
+        Instant lastModified = response.headers().firstValue("Last-Modified")
+                .map(S3UploadStorage::parseHttpDate)
+                .orElse(Instant.EPOCH);
+        return Optional.of(new S3Object(name, size, lastModified));
+    }
+
+    private boolean putObject(String name, Path staged) throws IOException {
+        HttpResponse<byte[]> response = send(request("PUT", key(name), Map.of()).header("If-None-Match", "*"),
+                S3RequestSigner.UNSIGNED_PAYLOAD, HttpRequest.BodyPublishers.ofFile(staged),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 412) {
+            // stored by someone else since the HEAD
+            return false;
+        }
+        expectSuccess(response, "PUT", name);
+        return true;
+    }
+
+    private boolean multipartUpload(String name, Path staged, long size) throws IOException {
+        HttpResponse<byte[]> created = send(request("POST", key(name), Map.of("uploads", "")),
+                S3RequestSigner.EMPTY_PAYLOAD, HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofByteArray());
+        expectSuccess(created, "CreateMultipartUpload", name);
+        String uploadId = text(parseXml(created.body()), "UploadId");
+        if (uploadId == null) {
+            throw new IOException("CreateMultipartUpload " + name + " returned no UploadId");
+        }
+
+        List<Future<String>> parts = new ArrayList<>();
+        try {
+            for (long offset = 0; offset < size; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long start = offset;
+                int length = (int) Math.min(partSize, size - offset);
+                parts.add(partUploads.submit(() -> uploadPart(name, uploadId, partNumber, staged, start, length)));
+            }
+            List<String> etags = new ArrayList<>();
+            for (Future<String> part : parts) {
+                etags.add(part.get());
+            }
+            if (completeMultipartUpload(name, uploadId, etags)) {
+                return true;
+            }
+        } catch (ExecutionException e) {
+            abort(name, uploadId, parts);
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Uploading a part of " + name + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(name, uploadId, parts);
+            throw new InterruptedIOException("Interrupted while uploading " + name);
+        } catch (IOException | RuntimeException e) {
+            abort(name, uploadId, parts);
+            throw e;
+        }
+        abort(name, uploadId, parts);
+        return false;
+    }
+
+    private String uploadPart(String name, String uploadId, int partNumber, Path staged, long offset, int length)
+            throws IOException {
+        byte[] content = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(staged + " shrank while it was uploaded");
+                }
+            }
+        }
+        Map<String, String> query = new LinkedHashMap<>();
+        query.put("partNumber", String.valueOf(partNumber));
+        query.put("uploadId", uploadId);
+        // parts are in memory anyway, so their hash is signed and checked by the server
+        HttpResponse<byte[]> response = send(request("PUT", key(name), query), S3RequestSigner.sha256Hex(content),
+                HttpRequest.BodyPublishers.ofByteArray(content), HttpResponse.BodyHandlers.ofByteArray());
+        expectSuccess(response, "UploadPart " + partNumber + " of", name);
+        return response.headers().firstValue("ETag").orElseThrow(
+                () -> new IOException("UploadPart " + partNumber + " of " + name + " returned no ETag"));
+    }
+
+    private boolean completeMultipartUpload(String name, String uploadId, List<String> etags) throws IOException {
+        StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i).replace("&", "&amp;").replace("\"", "&quot;"))
+                    .append("</ETag></Part>");
+        }
+        byte[] content = body.append("</CompleteMultipartUpload>").toString().getBytes(StandardCharsets.UTF_8);
+
+        HttpResponse<byte[]> response = send(
+                request("POST", key(name), Map.of("uploadId", uploadId)).header("If-None-Match", "*"),
+                S3RequestSigner.sha256Hex(content), HttpRequest.BodyPublishers.ofByteArray(content),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 412) {
+            return false;
+        }
+        expectSuccess(response, "CompleteMultipartUpload", name);
+        // the request can fail after the 200 went out, the error is then in the body
+        if ("Error".equals(parseXml(response.body()).getTagName())) {
+            throw new IOException("CompleteMultipartUpload " + name + " failed: "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    private void abort(String name, String uploadId, List<Future<String>> parts) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            send(request("DELETE", key(name), Map.of("uploadId", uploadId)), S3RequestSigner.EMPTY_PAYLOAD,
+                    HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            // the parts are left for the bucket's lifecycle rule to remove
+            logger.warn("Could not abort multipart upload {} of {}", uploadId, name, e);
+        }
+    }
+
+    private HttpRequest.Builder request(String method, String key, Map<String, String> query) {
+        String uri = bucketUrl + "/" + S3RequestSigner.encode(key, true);
+        if (!query.isEmpty()) {
+            uri += "?" + query.entrySet().stream()
+                    .map(parameter -> S3RequestSigner.encode(parameter.getKey(), false) + "="
+                            + S3RequestSigner.encode(parameter.getValue(), false))
+                    .collect(Collectors.joining("&"));
+        }
+        return HttpRequest.newBuilder(URI.create(uri)).timeout(requestTimeout).method(method, HttpRequest.BodyPublishers.noBody());
+    }
+
+    /**
+     * Signs and sends a request, retrying connection failures and 5xx answers of the requests
+     * that are safe to repeat: reads, deletes, conditional puts and numbered parts. POSTs
+     * (creating and completing multipart uploads) are sent once, since a retry after a lost
+     * answer would start a second upload that nothing aborts.
+     */
+    private <T> HttpResponse<T> send(HttpRequest.Builder builder, String payloadHash,
+                                     HttpRequest.BodyPublisher body, HttpResponse.BodyHandler<T> handler)
+            throws IOException {
+        HttpRequest unsigned = builder.build();
+        Map<String, String> headers = new LinkedHashMap<>();
+        unsigned.headers().map().forEach((name, values) -> headers.put(name, String.join(",", values)));
+        int maxAttempts = unsigned.method().equals("POST") ? 1 : MAX_ATTEMPTS;
+
+        for (int attempt = 1; ; attempt++) {
+            HttpRequest.Builder signed = builder.copy().method(unsigned.method(), body);
+            signer.sign(unsigned.method(), unsigned.uri(), headers, payloadHash, Instant.now()).forEach(signed::header);
+            try {
+                HttpResponse<T> response = httpClient.send(signed.build(), handler);
+                if (response.statusCode() < 500 || attempt == maxAttempts) {
+                    return response;
+                }
+                logger.warn("S3 {} {} answered {}, retrying", unsigned.method(), unsigned.uri().getRawPath(),
+                        response.statusCode());
+                // a streamed body holds its pooled connection until closed
+                if (response.body() instanceof Closeable closeable) {
+                    closeable.close();
+                }
+            } catch (IOException e) {
+                if (attempt == maxAttempts) {
+                    throw e;
+                }
+                logger.warn("S3 {} {} failed, retrying: {}", unsigned.method(), unsigned.uri().getRawPath(), e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during S3 " + unsigned.method() + " " + unsigned.uri());
+            }
+            try {
+                Thread.sleep(100L << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during S3 " + unsigned.method() + " " + unsigned.uri());
+            }
+        }
+    }
+
+    private String key(String name) {
+        return prefix + name;
+    }
+
+    private static void expectSuccess(HttpResponse<?> response, String operation, String name) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            String body = response.body() instanceof byte[] bytes ? ": " + new String(bytes, StandardCharsets.UTF_8) : "";
+            throw new IOException("S3 " + operation + " " + name + " failed with " + response.statusCode() + body);
+        }
+    }
+
+    private static Element parseXml(byte[] content) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(content));
+            return document.getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unreadable S3 response", e);
+        }
+    }
+
+    // text of the first descendant with the tag, or null
+    private static String text(Element element, String tag) {
+        NodeList nodes = element.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+    }
+
+    private static Instant parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static void requireValidName(String name) {
+        if (!UploadStorage.isValidName(name)) {
+            throw new IllegalArgumentException("Invalid upload name: " + name);
+        }
+    }
+
+    private final class S3Object implements StoredObject {
+
+        private final String name;
+        private final long size;
+        private final Instant lastModified;
+
+        private S3Object(String name, long size, Instant lastModified) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Instant lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public Optional<Path> file() {
+            return Optional.empty();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            long end = Math.min(size, position + count);
+            if (position >= end) {
+                return 0;
+            }
+            HttpRequest.Builder get = request("GET", key(name), Map.of())
+                    .header("Range", "bytes=" + position + "-" + (end - 1));
+            try (InputStream in = get(get)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                long sent = 0;
+                int read;
+                while (sent < end - position && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position - sent))) > 0) {
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        target.write(chunk);
+                    }
+                    sent += read;
+                }
+                return sent;
+            }
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return get(request("GET", key(name), Map.of()));
+        }
+
+        private InputStream get(HttpRequest.Builder get) throws IOException {
+            HttpResponse<InputStream> response = send(get, S3RequestSigner.EMPTY_PAYLOAD,
+                    HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofInputStream());
+            InputStream body = response.body();
+            if (response.statusCode() == 404) {
+                body.close();
+                throw new FileNotFoundException(name + " was deleted");
+            }
+            if (response.statusCode() / 100 != 2) {
+                body.close();
+                throw new IOException("S3 GET " + name + " failed with " + response.statusCode());
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.citynote.service.impl;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers in-memory side effects of a write until its transaction has committed,
+ * so rolled back writes never leak into caches or counters.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Runs the action after the current transaction commits, or immediately when
+     * no transaction synchronization is active.
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
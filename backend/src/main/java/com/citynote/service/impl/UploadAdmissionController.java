@@ -0,0 +1,168 @@
+package com.citynote.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Decides whether an upload may start, before its body is read, so a burst of uploads
+ * cannot take every request thread and the disk away from reads.
+ * <p>
+ * At most {@code file.upload.admission.max-concurrent} uploads run at once; beyond that an
+ * upload is turned away (503) instead of queueing on a thread. Each client address, and
+ * each user when the request carries a token, also has a byte-rate token bucket refilled
+ * at {@code bytes-per-second} up to {@code burst-mb}; an upload is charged its declared
+ * length and turned away (429) while its bucket is in debt, with {@code Retry-After} set
+ * to when the debt is paid off.
+ */
+@Component
+public class UploadAdmissionController {
+
+    public enum Rejection {
+        CONCURRENCY, RATE
+    }
+
+    /**
+     * Outcome of {@link #admit}: admitted, or rejected with the seconds to wait before retrying.
+     * An admitted upload must be {@link #release released} when it finishes.
+     */
+    public record Admission(Rejection rejection, long retryAfterSeconds) {
+
+        static final Admission ADMITTED = new Admission(null, 0);
+
+        public boolean admitted() {
+            return rejection == null;
+        }
+    }
+
+    private final Semaphore slots;
+    private final int maxConcurrent;
+    private final long concurrencyRetryAfterSeconds;
+    private final double bytesPerSecond;
+    private final double burstBytes;
+    private final Cache<String, ByteBucket> buckets;
+    private final Counter admitted;
+    private final Counter rejectedConcurrency;
+    private final Counter rejectedRate;
+
+    public UploadAdmissionController(
+            @Value("${file.upload.admission.max-concurrent:8}") int maxConcurrent,
+            @Value("${file.upload.admission.retry-after-seconds:2}") long concurrencyRetryAfterSeconds,
+            @Value("${file.upload.admission.bytes-per-second:2097152}") double bytesPerSecond,
+            @Value("${file.upload.admission.burst-mb:100}") long burstMb,
+            @Value("${file.upload.admission.max-clients:100000}") long maxClients,
+            MeterRegistry meterRegistry) {
+        this.slots = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.concurrencyRetryAfterSeconds = concurrencyRetryAfterSeconds;
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstMb * 1024.0 * 1024.0;
+        // an idle bucket refills completely within this time, dropping it loses nothing
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofSeconds((long) Math.ceil(burstBytes / bytesPerSecond) + 1))
+                .build();
+
+        this.admitted = Counter.builder("upload.admission.admitted")
+                .description("Uploads let through by the admission controller")
+                .register(meterRegistry);
+        this.rejectedConcurrency = Counter.builder("upload.admission.rejected")
+                .tag("reason", "concurrency")
+                .description("Uploads turned away by the admission controller")
+                .register(meterRegistry);
+        this.rejectedRate = Counter.builder("upload.admission.rejected")
+                .tag("reason", "rate")
+                .description("Uploads turned away by the admission controller")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.active", slots, available -> maxConcurrent - available.availablePermits())
+                .description("Uploads in progress")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.limit", () -> maxConcurrent)
+                .description("Uploads allowed to run at once")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.clients", buckets, cache -> cache.estimatedSize())
+                .description("Clients with a byte-rate bucket")
+                .register(meterRegistry);
+    }
+
+    public Admission admit(String address, Optional<String> user, long bytes) {
+        return admit(address, user, bytes, System.nanoTime());
+    }
+
+    /**
+     * Charges the upload to the address's and the user's bucket and takes a slot.
+     * Nothing stays charged when the upload is turned away.
+     */
+    Admission admit(String address, Optional<String> user, long bytes, long nowNanos) {
+        ByteBucket addressBucket = bucket("address:" + address, nowNanos);
+        ByteBucket userBucket = user.map(name -> bucket("user:" + name, nowNanos)).orElse(null);
+
+        long wait = addressBucket.take(bytes, nowNanos);
+        if (wait == 0 && userBucket != null) {
+            wait = userBucket.take(bytes, nowNanos);
+            if (wait > 0) {
+                addressBucket.refund(bytes);
+            }
+        }
+        if (wait > 0) {
+            rejectedRate.increment();
+            return new Admission(Rejection.RATE, wait);
+        }
+
+        if (!slots.tryAcquire()) {
+            addressBucket.refund(bytes);
+            if (userBucket != null) {
+                userBucket.refund(bytes);
+            }
+            rejectedConcurrency.increment();
+            return new Admission(Rejection.CONCURRENCY, concurrencyRetryAfterSeconds);
+        }
+        admitted.increment();
+        return Admission.ADMITTED;
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    private ByteBucket bucket(String key, long nowNanos) {
+        return buckets.get(key, k -> new ByteBucket(burstBytes, nowNanos));
+    }
+
+    // may go into debt, so an upload larger than the burst is still admitted from a full bucket
+    private final class ByteBucket {
+
+        private double tokens;
+        private long refilledAt;
+
+        private ByteBucket(double tokens, long nowNanos) {
+            this.tokens = tokens;
+            this.refilledAt = nowNanos;
+        }
+
+        // 0 if charged, else the whole seconds until the bucket is out of debt
+        synchronized long take(long bytes, long nowNanos) {
+            if (nowNanos > refilledAt) {
+                tokens = Math.min(burstBytes, tokens + (nowNanos - refilledAt) / 1e9 * bytesPerSecond);
+                refilledAt = nowNanos;
+            }
+            if (tokens < 0) {
+                return Math.max(1, (long) Math.ceil(-tokens / bytesPerSecond));
+            }
+            tokens -= bytes;
+            return 0;
+        }
+
+        synchronized void refund(long bytes) {
+            tokens = Math.min(burstBytes, tokens + bytes);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.citynote.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Moves files from the old flat upload directory into the sharded layout while the
+ * application serves traffic, at most {@code file.storage.migration.batch-size} files per
+ * {@code file.storage.migration.interval-ms}. Both layouts are readable throughout, so
+ * the migration can be stopped (disabled) and resumed at any time.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+public class UploadLayoutMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadLayoutMigrator.class);
+
+    private final LocalUploadStorage localUploadStorage;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Counter migrated;
+    private volatile boolean finished;
+
+    public UploadLayoutMigrator(
+            LocalUploadStorage localUploadStorage,
+            @Value("${file.storage.migration.enabled:true}") boolean enabled,
+            @Value("${file.storage.migration.batch-size:100}") int batchSize,
+            MeterRegistry meterRegistry) {
+        this.localUploadStorage = localUploadStorage;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.migrated = Counter.builder("file.storage.migrated")
+                .description("Uploads moved from the flat into the sharded layout")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.migration.interval-ms:1000}")
+    public void migrateBatch() {
+        if (!enabled || finished) {
+            return;
+        }
+        try {
+            int moved = localUploadStorage.migrateFlatFiles(batchSize);
+            migrated.increment(moved);
+            if (moved < batchSize) {
+                finished = true;
+                logger.info("Upload layout migration finished ({} files moved in total)", (long) migrated.count());
+            }
+        } catch (IOException e) {
+            // retried on the next tick
+            logger.warn("Upload layout migration batch failed", e);
+        }
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+}
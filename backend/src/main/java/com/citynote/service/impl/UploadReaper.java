@@ -0,0 +1,229 @@
+package com.citynote.service.impl;
+
+import com.citynote.repository.BlobRepository;
+import com.citynote.service.UploadStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes uploads no note links to: pictures of drafts that were never posted, or pictures
+ * dropped from a note whose queued deletion was given up.
+ * <p>
+ * A pass merge-joins the storage listing with the filenames in {@code blobs}, both in name
+ * order, so it holds one directory listing and one page of names at a time however many
+ * files there are. Files written within {@code file.reaper.grace-hours} are never
+ * candidates. The few candidates left are re-checked with a point query (the database may
+ * order names differently) and go through {@link ContentAddressedStore#discard}, which keeps
+ * content that is referenced or was uploaded recently.
+ * <p>
+ * The scheduler thread is shared, so a pass runs in slices of {@code file.reaper.batch-size}
+ * files per tick, and deletions are paced by a token bucket refilled at
+ * {@code file.reaper.max-deletes-per-second}.
+ */
+@Component
+public final class UploadReaper {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadReaper.class);
+
+    private static final int NAME_PAGE_SIZE = 1000;
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-f]{4}");
+
+    private final UploadStorage uploadStorage;
+    private final BlobRepository blobRepository;
+    private final ContentAddressedStore contentAddressedStore;
+    private final boolean enabled;
+    private final Duration grace;
+    private final int batchSize;
+    private final double maxDeletesPerSecond;
+    private final Duration passInterval;
+    private final Counter scanned;
+    private final Counter orphans;
+    private final Counter deleted;
+    private final Counter reclaimed;
+    private final Counter passes;
+
+    private Iterator<UploadStorage.Entry> pass;
+    private LinkedNames linkedNames;
+    private Instant nextPassAt = Instant.MIN;
+    private double deleteTokens;
+    private Instant lastRefill;
+    private volatile double progress;
+
+    public UploadReaper(
+            UploadStorage uploadStorage,
+            BlobRepository blobRepository,
+            ContentAddressedStore contentAddressedStore,
+            @Value("${file.reaper.enabled:true}") boolean enabled,
+            @Value("${file.reaper.grace-hours:24}") long graceHours,
+            @Value("${file.reaper.batch-size:500}") int batchSize,
+            @Value("${file.reaper.max-deletes-per-second:20}") double maxDeletesPerSecond,
+            @Value("${file.reaper.pass-interval-minutes:360}") long passIntervalMinutes,
+            MeterRegistry meterRegistry) {
+        this.uploadStorage = uploadStorage;
+        this.blobRepository = blobRepository;
+        this.contentAddressedStore = contentAddressedStore;
+        this.enabled = enabled;
+        this.grace = Duration.ofHours(graceHours);
+        this.batchSize = batchSize;
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+        this.passInterval = Duration.ofMinutes(passIntervalMinutes);
+        this.deleteTokens = maxDeletesPerSecond;
+
+        this.scanned = Counter.builder("file.reaper.scanned")
+                .description("Stored files looked at by the orphaned upload reaper")
+                .register(meterRegistry);
+        this.orphans = Counter.builder("file.reaper.orphans")
+                .description("Stored files found unlinked past the grace period")
+                .register(meterRegistry);
+        this.deleted = Counter.builder("file.reaper.deleted")
+                .description("Orphaned uploads deleted")
+                .register(meterRegistry);
+        this.reclaimed = Counter.builder("file.reaper.reclaimed")
+                .baseUnit("bytes")
+                .description("Space freed by deleting orphaned uploads")
+                .register(meterRegistry);
+        this.passes = Counter.builder("file.reaper.passes")
+                .description("Completed passes over the upload storage")
+                .register(meterRegistry);
+        Gauge.builder("file.reaper.progress", this, reaper -> reaper.progress)
+                .description("Position of the current pass in the name space, from 0 to 1")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${file.reaper.tick-ms:1000}")
+    public void reapBatch() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            reapBatch(now);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Upload reaper pass failed, starting over in {}", passInterval, e);
+            endPass(now);
+        }
+    }
+
+    /**
+     * Scans the next slice of the current pass, starting a pass when one is due.
+     *
+     * @return files scanned
+     */
+    synchronized int reapBatch(Instant now) throws IOException {
+        if (pass == null) {
+            if (now.isBefore(nextPassAt)) {
+                return 0;
+            }
+            pass = uploadStorage.list();
+            linkedNames = new LinkedNames();
+            progress = 0;
+        }
+        refillTokens(now);
+
+        Instant cutoff = now.minus(grace);
+        int count = 0;
+        while (count < batchSize && deleteTokens >= 1 && pass.hasNext()) {
+            UploadStorage.Entry entry = pass.next();
+            count++;
+            if (HEX_PREFIX.matcher(entry.name()).find()) {
+                progress = Integer.parseInt(entry.name().substring(0, 4), 16) / 65536.0;
+            }
+            if (isOrphan(entry, cutoff)) {
+                orphans.increment();
+                deleteTokens--;
+                reap(entry);
+            }
+        }
+        scanned.increment(count);
+
+        if (!pass.hasNext()) {
+            passes.increment();
+            logger.info("Upload reaper pass finished: {} orphans deleted, {} bytes reclaimed so far",
+                    (long) deleted.count(), (long) reclaimed.count());
+            endPass(now);
+            progress = 1;
+        }
+        return count;
+    }
+
+    private boolean isOrphan(UploadStorage.Entry entry, Instant cutoff) {
+        String name = entry.name();
+        if (ImageRenditionWorker.isRendition(name) || entry.lastModified().isAfter(cutoff)) {
+            return false;
+        }
+        return !linkedNames.contains(name) && !blobRepository.existsByFilename(name);
+    }
+
+    private void reap(UploadStorage.Entry entry) throws IOException {
+        // discard keeps content that was linked or uploaded again in the meantime
+        if (contentAddressedStore.discard(entry.name()) && !uploadStorage.exists(entry.name())) {
+            deleted.increment();
+            reclaimed.increment(entry.size());
+        }
+    }
+
+    private void refillTokens(Instant now) {
+        if (lastRefill != null && now.isAfter(lastRefill)) {
+            double seconds = Duration.between(lastRefill, now).toNanos() / 1e9;
+            deleteTokens = Math.min(maxDeletesPerSecond, deleteTokens + seconds * maxDeletesPerSecond);
+        }
+        lastRefill = now;
+    }
+
+    private void endPass(Instant now) {
+        pass = null;
+        linkedNames = null;
+        nextPassAt = now.plus(passInterval);
+    }
+
+    // forward-only cursor over the linked filenames, a keyset page at a time
+    private final class LinkedNames {
+
+        private List<String> page = List.of();
+        private int index;
+        private boolean lastPage = true;
+        private String previous;
+
+        boolean contains(String name) {
+            if (previous == null || name.compareTo(previous) < 0) {
+                // first lookup, or the listing moved on to the next part of the storage layout
+                load(blobRepository.findFilenamesFrom(name, PageRequest.of(0, NAME_PAGE_SIZE)));
+            }
+            previous = name;
+            while (true) {
+                if (index == page.size()) {
+                    if (lastPage) {
+                        return false;
+                    }
+                    load(blobRepository.findFilenamesAfter(page.get(page.size() - 1), PageRequest.of(0, NAME_PAGE_SIZE)));
+                    continue;
+                }
+                int order = page.get(index).compareTo(name);
+                if (order >= 0) {
+                    return order == 0;
+                }
+                index++;
+            }
+        }
+
+        private void load(List<String> names) {
+            page = names;
+            index = 0;
+            lastPage = names.size() < NAME_PAGE_SIZE;
+        }
+    }
+}
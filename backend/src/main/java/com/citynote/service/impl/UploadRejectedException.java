@@ -0,0 +1,16 @@
+package com.citynote.service.impl;
+
+import java.io.IOException;
+
+/**
+ * An upload refused because of what the client sent (too large, not the image it claims
+ * to be, malformed body); reported back as a bad request rather than a server error.
+ */
+public class UploadRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UploadRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,46 @@
+package com.citynote.service.impl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Temp files of uploads still being written, kept on the same file system as the storage
+ * they end up in so storing them is a rename (or a local copy), never a cross-device move.
+ */
+final class UploadStaging {
+
+    private final Path directory;
+
+    UploadStaging(Path directory) {
+        this.directory = directory;
+    }
+
+    Path createTempFile() throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "upload-", ".part");
+    }
+
+    // temp files last written before the cutoff
+    int deleteStale(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "upload-*.part")) {
+            for (Path temp : entries) {
+                try {
+                    if (Files.getLastModifiedTime(temp).toInstant().isBefore(cutoff) && Files.deleteIfExists(temp)) {
+                        deleted++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // finished while we were listing
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -52,6 +52,11 @@ public class UserServiceImpl implements UserService {
         return userRepository.findByEmail(email);
     }
 
+    @Override
+    public Optional<Integer> getProfileIdByUserId(Long userId) {
+        return userProfileRepository.findIdByUserId(userId);
+    }
+
     @Override
     public List<User> getAllUsers() {
         return userRepository.findAll();
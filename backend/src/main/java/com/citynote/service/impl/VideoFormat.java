@@ -0,0 +1,69 @@
+package com.citynote.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Video formats accepted for upload, recognised both by file extension and by the
+ * signature at the start of the content. Browsers play all of them in a video element
+ * (QuickTime when its codecs are H.264/AAC, as recorded by phones).
+ */
+public enum VideoFormat {
+
+    MP4("video/mp4", ".mp4", ".m4v"),
+    QUICKTIME("video/quicktime", ".mov"),
+    WEBM("video/webm", ".webm");
+
+    /**
+     * Leading bytes needed to recognise any of the formats.
+     */
+    public static final int SIGNATURE_LENGTH = 12;
+
+    private static final byte[] EBML_SIGNATURE = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    // ISO base media file brands of MP4 video
+    private static final Set<String> MP4_BRANDS = Set.of(
+            "isom", "iso2", "iso4", "iso5", "iso6", "mp41", "mp42", "avc1", "M4V ", "M4VH", "M4VP", "dash", "3gp4",
+            "3gp5", "3gp6");
+
+    private final String mimeType;
+    private final String[] extensions;
+
+    VideoFormat(String mimeType, String... extensions) {
+        this.mimeType = mimeType;
+        this.extensions = extensions;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    public static Optional<VideoFormat> fromExtension(String extension) {
+        String lowerExtension = extension.toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+                .filter(format -> Arrays.asList(format.extensions).contains(lowerExtension))
+                .findFirst();
+    }
+
+    /**
+     * Recognises the format from the first {@code length} bytes of {@code head}.
+     */
+    public static Optional<VideoFormat> sniff(byte[] head, int length) {
+        if (length >= EBML_SIGNATURE.length
+                && Arrays.equals(head, 0, EBML_SIGNATURE.length, EBML_SIGNATURE, 0, EBML_SIGNATURE.length)) {
+            return Optional.of(WEBM);
+        }
+        if (length >= 12 && new String(head, 4, 4, StandardCharsets.ISO_8859_1).equals("ftyp")) {
+            String brand = new String(head, 8, 4, StandardCharsets.ISO_8859_1);
+            if (brand.equals("qt  ")) {
+                return Optional.of(QUICKTIME);
+            }
+            if (MP4_BRANDS.contains(brand)) {
+                return Optional.of(MP4);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,61 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Poster images for uploaded videos, taken from the cover art MP4 and QuickTime files
+ * can embed. Decoding an actual frame needs an H.264/HEVC/VP9 decoder, which plain Java
+ * does not have, so videos without cover art rely on a poster sent by the client.
+ */
+@Component
+public class VideoPosterExtractor {
+
+    private final UploadStorage uploadStorage;
+    private final ContentAddressedStore contentAddressedStore;
+    private final ImageRenditionWorker imageRenditionWorker;
+
+    public VideoPosterExtractor(
+            UploadStorage uploadStorage,
+            ContentAddressedStore contentAddressedStore,
+            ImageRenditionWorker imageRenditionWorker) {
+        this.uploadStorage = uploadStorage;
+        this.contentAddressedStore = contentAddressedStore;
+        this.imageRenditionWorker = imageRenditionWorker;
+    }
+
+    /**
+     * Stores the cover art of a stored video as an image upload, or returns empty if the
+     * video has none.
+     */
+    public Optional<StoredUpload> extract(String videoFilename) throws IOException {
+        int dot = videoFilename.lastIndexOf('.');
+        Optional<VideoFormat> format = dot > 0 ? VideoFormat.fromExtension(videoFilename.substring(dot)) : Optional.empty();
+        if (format.isEmpty() || format.get() == VideoFormat.WEBM) {
+            return Optional.empty();
+        }
+        Optional<StoredObject> video = uploadStorage.open(videoFilename);
+        if (video.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] coverArt = Mp4Inspector.inspect(video.get()).coverArt();
+        if (coverArt == null) {
+            return Optional.empty();
+        }
+        Optional<ImageFormat> imageFormat = ImageFormat.sniff(coverArt, coverArt.length);
+        if (imageFormat.isEmpty()) {
+            return Optional.empty();
+        }
+        StoredUpload poster = contentAddressedStore.store(new ByteArrayInputStream(coverArt), imageFormat.get().extension());
+        if (poster.created()) {
+            imageRenditionWorker.submit(poster.filename());
+        }
+        return Optional.of(poster);
+    }
+}
@@ -0,0 +1,28 @@
+package com.citynote.service.impl;
+
+import java.io.InputStream;
+
+/**
+ * A video upload checked while it streams: the first {@link VideoFormat#SIGNATURE_LENGTH}
+ * bytes must be a supported video. MP4 and QuickTime share their container, so either
+ * extension is accepted for either brand.
+ */
+public class VideoUploadStream extends CheckedUploadStream {
+
+    private final VideoFormat expectedFormat;
+
+    public VideoUploadStream(InputStream in, VideoFormat expectedFormat, long maxBytes) {
+        super(in, VideoFormat.SIGNATURE_LENGTH, maxBytes);
+        this.expectedFormat = expectedFormat;
+    }
+
+    @Override
+    protected void checkSignature(byte[] signature, int length) throws UploadRejectedException {
+        VideoFormat actual = VideoFormat.sniff(signature, length)
+                .orElseThrow(() -> new UploadRejectedException("File content is not a supported video"));
+        boolean sameContainer = (actual == VideoFormat.WEBM) == (expectedFormat == VideoFormat.WEBM);
+        if (!sameContainer) {
+            throw new UploadRejectedException("File content is " + actual + ", which does not match its extension");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+-- Image metadata read at upload time: kept per stored content, copied onto each picture
+-- so feed pages read it along with the picture links
+ALTER TABLE stored_files
+    ADD COLUMN width INT NULL,
+    ADD COLUMN height INT NULL,
+    ADD COLUMN mime_type VARCHAR(32) NULL,
+    ADD COLUMN blur_hash VARCHAR(64) NULL;
+
+ALTER TABLE blobs
+    ADD COLUMN width INT NULL,
+    ADD COLUMN height INT NULL,
+    ADD COLUMN byte_size BIGINT NULL,
+    ADD COLUMN mime_type VARCHAR(32) NULL,
+    ADD COLUMN blur_hash VARCHAR(64) NULL;
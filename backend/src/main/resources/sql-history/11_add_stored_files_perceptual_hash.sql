@@ -0,0 +1,3 @@
+-- dHash of each stored image for the near-duplicate index: NULL until computed (backfilled in
+-- the background), 0 when there is nothing to compare
+ALTER TABLE stored_files ADD COLUMN perceptual_hash BIGINT NULL;
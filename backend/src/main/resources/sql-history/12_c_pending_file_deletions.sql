@@ -0,0 +1,13 @@
+-- Durable queue of released uploads waiting to be unlinked (FileDeletionQueue)
+CREATE TABLE pending_file_deletions
+(
+    pending_file_deletion_id BIGINT AUTO_INCREMENT NOT NULL,
+    filename                 VARCHAR(255) NOT NULL,
+    attempts                 INT          NOT NULL,
+    next_attempt_date        datetime     NOT NULL,
+    create_date              datetime     NOT NULL,
+    CONSTRAINT pk_pending_file_deletions PRIMARY KEY (pending_file_deletion_id)
+);
+
+-- Backs every poll: WHERE next_attempt_date <= ? ORDER BY pending_file_deletion_id
+CREATE INDEX idx_pending_file_deletions_due ON pending_file_deletions (next_attempt_date, pending_file_deletion_id);
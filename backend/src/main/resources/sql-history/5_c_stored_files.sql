@@ -0,0 +1,16 @@
+-- One row per stored upload, named <sha256><ext> and shared by every blob with the same bytes;
+-- must run before 10_add_image_metadata.sql and 11_add_stored_files_perceptual_hash.sql
+CREATE TABLE stored_files
+(
+    stored_file_id   INT AUTO_INCREMENT NOT NULL,
+    filename         VARCHAR(80)   NOT NULL,
+    content_hash     VARCHAR(64)   NOT NULL,
+    size             BIGINT        NOT NULL,
+    ref_count        INT DEFAULT 0 NOT NULL,
+    create_date      datetime      NOT NULL,
+    last_upload_date datetime      NOT NULL,
+    CONSTRAINT pk_stored_files PRIMARY KEY (stored_file_id)
+);
+
+ALTER TABLE stored_files
+    ADD CONSTRAINT uc_stored_files_filename UNIQUE (filename);
@@ -0,0 +1,6 @@
+-- Composite indexes backing the newest-first feeds and keyset (cursor) pagination:
+-- WHERE county_id / user_profile_id = ? AND (last_update_date, event_id) < (?, ?)
+-- ORDER BY last_update_date DESC, event_id DESC
+CREATE INDEX idx_events_county_feed ON events (county_id, last_update_date, event_id);
+
+CREATE INDEX idx_events_user_feed ON events (user_profile_id, last_update_date, event_id);
@@ -0,0 +1,3 @@
+-- Backs the orphaned upload reaper: keyset scans of linked file names in name order,
+-- and the existence check before a file is deleted
+CREATE INDEX idx_blobs_filename ON blobs (filename);
@@ -70,8 +70,9 @@ class AuthControllerTest {
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
         when(authentication.getPrincipal()).thenReturn(userDetails);
-        when(jwtTokenUtil.generateToken(userDetails)).thenReturn(expectedToken);
         when(userService.getUserByUsername("testuser")).thenReturn(Optional.of(user));
+        when(userService.getProfileIdByUserId(1L)).thenReturn(Optional.of(7));
+        when(jwtTokenUtil.generateToken(userDetails, 1L, 7)).thenReturn(expectedToken);
 
         // Act & Assert
         mockMvc.perform(post("/api/auth/login")
@@ -84,7 +85,7 @@ class AuthControllerTest {
                 .andExpect(jsonPath("$.user.email").value("test@example.com"));
 
         verify(authenticationManager).authenticate(any(UsernamePasswordAuthenticationToken.class));
-        verify(jwtTokenUtil).generateToken(userDetails);
+        verify(jwtTokenUtil).generateToken(userDetails, 1L, 7);
         verify(userService).getUserByUsername("testuser");
     }
 
@@ -98,7 +99,6 @@ class AuthControllerTest {
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
         when(authentication.getPrincipal()).thenReturn(userDetails);
-        when(jwtTokenUtil.generateToken(userDetails)).thenReturn("token");
         when(userService.getUserByUsername("nonexistent")).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -108,6 +108,7 @@ class AuthControllerTest {
                 .andExpect(status().isBadRequest());
 
         verify(userService).getUserByUsername("nonexistent");
+        verifyNoInteractions(jwtTokenUtil);
     }
 
     @Test
@@ -0,0 +1,201 @@
+package com.citynote.controller;
+
+import com.citynote.dto.ChunkedUploadDTO;
+import com.citynote.dto.ChunkedUploadRequestDTO;
+import com.citynote.service.impl.ChunkedUploadStore;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import com.citynote.service.impl.ImageMetadata;
+import com.citynote.service.impl.ImageRenditionWorker;
+import com.citynote.service.impl.PerceptualHashIndex;
+import com.citynote.service.impl.PerceptualHashIndex.NearDuplicate;
+import com.citynote.service.impl.UploadRejectedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadControllerTest {
+
+    @Mock
+    private ChunkedUploadStore chunkedUploadStore;
+
+    @Mock
+    private ImageRenditionWorker imageRenditionWorker;
+
+    @Mock
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @InjectMocks
+    private ChunkedUploadController chunkedUploadController;
+
+    @Test
+    void initiate_ValidRequest_ReturnsUploadState() throws IOException {
+        // Arrange
+        ChunkedUploadRequestDTO uploadRequest = new ChunkedUploadRequestDTO();
+        uploadRequest.setFilename("large.jpg");
+        uploadRequest.setSize(3_000_000L);
+        ChunkedUploadDTO upload = new ChunkedUploadDTO("u1", "large.jpg", 3_000_000L, 1_048_576, 3, List.of());
+        when(chunkedUploadStore.initiate("large.jpg", 3_000_000L, "user:alice")).thenReturn(upload);
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.initiate(uploadRequest, () -> "alice",
+                new MockHttpServletRequest());
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(upload, response.getBody());
+    }
+
+    @Test
+    void initiate_UnsupportedFile_ReturnsBadRequest() throws IOException {
+        // Arrange
+        ChunkedUploadRequestDTO uploadRequest = new ChunkedUploadRequestDTO();
+        uploadRequest.setFilename("notes.txt");
+        uploadRequest.setSize(100L);
+        when(chunkedUploadStore.initiate("notes.txt", 100L, "address:127.0.0.1"))
+                .thenThrow(new UploadRejectedException("Only image files are allowed (jpg, jpeg, png, gif, webp, heic, heif)"));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.initiate(uploadRequest, null, new MockHttpServletRequest());
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void status_UnknownUpload_ReturnsNotFound() {
+        // Arrange
+        when(chunkedUploadStore.status("gone")).thenReturn(Optional.empty());
+
+        // Act
+        ResponseEntity<ChunkedUploadDTO> response = chunkedUploadController.status("gone");
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void uploadChunk_WritesRequestBody() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/upload/chunked/u1/chunks/1");
+        request.setContent(new byte[]{1, 2, 3});
+        ChunkedUploadDTO upload = new ChunkedUploadDTO("u1", "large.jpg", 3_000_000L, 1_048_576, 3, List.of(1));
+        when(chunkedUploadStore.writeChunk(eq("u1"), eq(1), eq(1_048_576L), any(InputStream.class)))
+                .thenReturn(Optional.of(upload));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.uploadChunk("u1", 1, 1_048_576L, request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(upload, response.getBody());
+    }
+
+    @Test
+    void uploadChunk_WhileCompleting_ReturnsConflict() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/upload/chunked/u1/chunks/0");
+        when(chunkedUploadStore.writeChunk(eq("u1"), eq(0), eq(0L), any(InputStream.class)))
+                .thenThrow(new IllegalStateException("Upload is already being completed"));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.uploadChunk("u1", 0, 0L, request);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+
+    @Test
+    void complete_AllChunksReceived_ReturnsImageUrlAndQueuesRenditions() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/chunked/u1/complete");
+        String filename = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg";
+        when(chunkedUploadStore.complete("u1")).thenReturn(Optional.of(new StoredUpload(filename, true)));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.complete("u1", request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Map.of("url", "http://localhost:80/api/upload/image/" + filename, "filename", filename),
+                response.getBody());
+        verify(imageRenditionWorker).submit(filename);
+    }
+
+    @Test
+    void complete_LargePhoto_ReportsMetadataAndNearDuplicates() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/chunked/u1/complete");
+        String filename = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg";
+        when(chunkedUploadStore.complete("u1")).thenReturn(Optional.of(new StoredUpload(filename, true,
+                new ImageMetadata(4000, 3000, 9_000_000, "image/jpeg", "LEHV6nWB2yk8pyo0adR*.7kCMdnj", 0x5a5a5a5a5a5a5a5aL))));
+        when(perceptualHashIndex.nearDuplicates(filename, 0x5a5a5a5a5a5a5a5aL))
+                .thenReturn(List.of(new NearDuplicate("a.jpg", 3)));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.complete("u1", request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<?, ?> body = (Map<?, ?>) response.getBody();
+        assertEquals("4000", body.get("width"));
+        assertEquals("3000", body.get("height"));
+        assertEquals("image/jpeg", body.get("mimeType"));
+        assertEquals("LEHV6nWB2yk8pyo0adR*.7kCMdnj", body.get("blurHash"));
+        assertEquals("a.jpg", body.get("nearDuplicates"));
+    }
+
+    @Test
+    void complete_MissingChunks_ReturnsConflict() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/chunked/u1/complete");
+        when(chunkedUploadStore.complete("u1")).thenThrow(new IllegalStateException("Missing 1 of 3 chunks"));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.complete("u1", request);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(Map.of("error", "Missing 1 of 3 chunks"), response.getBody());
+        verifyNoInteractions(imageRenditionWorker);
+    }
+
+    @Test
+    void abort_UnknownUpload_ReturnsNotFound() throws IOException {
+        // Arrange
+        when(chunkedUploadStore.abort("gone")).thenReturn(false);
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.abort("gone");
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void abort_WhileCompleting_ReturnsConflict() throws IOException {
+        // Arrange
+        when(chunkedUploadStore.abort("u1")).thenThrow(new IllegalStateException("Upload is already being completed"));
+
+        // Act
+        ResponseEntity<?> response = chunkedUploadController.abort("u1");
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(Map.of("error", "Upload is already being completed"), response.getBody());
+    }
+}
@@ -1,5 +1,6 @@
 package com.citynote.controller;
 
+import com.citynote.dto.CursorPageDTO;
 import com.citynote.dto.EventRequestDTO;
 import com.citynote.dto.EventResponseDTO;
 import com.citynote.entity.enums.EventType;
@@ -20,10 +21,14 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -145,6 +150,117 @@ class EventControllerTest {
         verify(eventService).getPagesOfCurrentUserEvents(any(Pageable.class));
     }
 
+    @Test
+    void getEventsByCounty_WithCursor_ShouldReturnCursorSlice() throws Exception {
+        // Arrange
+        int countyId = 1;
+        int size = 2;
+        List<EventResponseDTO> events = Arrays.asList(
+                createTestEventResponseDTO(3, "Event 3"),
+                createTestEventResponseDTO(2, "Event 2")
+        );
+        CursorPageDTO<EventResponseDTO> slice = new CursorPageDTO<>(events, "next-cursor", size);
+
+        when(eventService.getCursorPageOfEventsByCounty(countyId, "", size)).thenReturn(slice);
+
+        // Act & Assert
+        mockMvc.perform(get("/event/county/{countyId}", countyId)
+                        .param("cursor", "")
+                        .param("size", String.valueOf(size)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(3))
+                .andExpect(jsonPath("$.content[1].id").value(2))
+                .andExpect(jsonPath("$.nextCursor").value("next-cursor"))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        verify(eventService).getCursorPageOfEventsByCounty(countyId, "", size);
+        verify(eventService, never()).getPagesOfEventsByCounty(anyInt(), any(Pageable.class));
+    }
+
+    @Test
+    void getEventsByCounty_WithInvalidCursor_ShouldReturnBadRequest() throws Exception {
+        // Arrange
+        when(eventService.getCursorPageOfEventsByCounty(1, "garbage", 10))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: garbage"));
+
+        // Act & Assert
+        mockMvc.perform(get("/event/county/{countyId}", 1)
+                        .param("cursor", "garbage")
+                        .param("size", "10"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getCurrentUserEvents_WithCursorAndOversizedPage_ShouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/event/user/me")
+                        .param("cursor", "")
+                        .param("size", "1000"))
+                .andExpect(status().isBadRequest());
+
+        verify(eventService, never()).getCursorPageOfCurrentUserEvents(anyString(), anyInt());
+    }
+
+    @Test
+    void getViewportEvents_WithCountyIds_ShouldReturnMergedSlice() throws Exception {
+        // Arrange
+        List<EventResponseDTO> events = Arrays.asList(
+                createTestEventResponseDTO(5, "Newest"),
+                createTestEventResponseDTO(4, "Older")
+        );
+        when(eventService.getRecentEventsAcrossCounties(List.of(6085, 6001), null, 2))
+                .thenReturn(new CursorPageDTO<>(events, "next-cursor", 2));
+
+        // Act & Assert
+        mockMvc.perform(get("/event/viewport")
+                        .param("countyIds", "6085", "6001")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].title").value("Newest"))
+                .andExpect(jsonPath("$.content[1].title").value("Older"))
+                .andExpect(jsonPath("$.nextCursor").value("next-cursor"));
+
+        verify(eventService).getRecentEventsAcrossCounties(List.of(6085, 6001), null, 2);
+    }
+
+    @Test
+    void getLikeStatus_ShouldReturnStatusPerEvent() throws Exception {
+        // Arrange
+        Map<Integer, Boolean> status = new LinkedHashMap<>();
+        status.put(3, true);
+        status.put(7, false);
+        when(eventService.getLikeStatus(List.of(3, 7))).thenReturn(status);
+
+        // Act & Assert
+        mockMvc.perform(post("/event/like-status")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"eventIds\":[3,7]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.3").value(true))
+                .andExpect(jsonPath("$.7").value(false));
+    }
+
+    @Test
+    void getLikeStatus_WithoutIds_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/event/like-status")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"eventIds\":[]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(eventService, never()).getLikeStatus(any());
+    }
+
+    @Test
+    void getLikeStatus_WithNullId_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/event/like-status")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"eventIds\":[3,null]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(eventService, never()).getLikeStatus(any());
+    }
+
     @Test
     void updateEvent_WithValidPermissionsAndExistingEvent_ShouldReturnUpdatedEventId() throws Exception {
         // Arrange
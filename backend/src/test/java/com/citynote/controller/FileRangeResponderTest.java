@@ -0,0 +1,158 @@
+package com.citynote.controller;
+
+import com.citynote.service.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileRangeResponderTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path tempDir;
+
+    private final FileRangeResponder responder = new FileRangeResponder();
+    private Path file;
+    private StoredObject object;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.writeString(tempDir.resolve("picture.jpg"), CONTENT);
+        object = StoredObject.ofFile(file).orElseThrow();
+    }
+
+    @Test
+    void serve_WholeFileWithImmutableCachingHeaders() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.US_ASCII));
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("image/jpeg", response.getContentType());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""), "strong ETag");
+    }
+
+    @Test
+    void serve_MatchingIfNoneMatch_NotModifiedWithoutBody() throws IOException {
+        String etag = firstResponse().getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void serve_SingleRange_PartialContent() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 5-9/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(5, response.getContentLengthLong());
+        assertEquals("56789", response.getContentAsString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void serve_SuffixRange_ServesTail() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.addHeader(HttpHeaders.RANGE, "bytes=-4");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 16-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("ghij", response.getContentAsString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void serve_RangePastEnd_NotSatisfiable() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.addHeader(HttpHeaders.RANGE, "bytes=50-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void serve_StaleIfRange_IgnoresRange() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void serve_SendfileConnector_HandsRangeToConnector() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/picture.jpg");
+        request.setAttribute(FileRangeResponder.SENDFILE_SUPPORTED_ATTR, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute(FileRangeResponder.SENDFILE_FILENAME_ATTR));
+        assertEquals(2L, request.getAttribute(FileRangeResponder.SENDFILE_START_ATTR));
+        assertEquals(20L, request.getAttribute(FileRangeResponder.SENDFILE_END_ATTR));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void serve_HeadRequest_HeadersOnly() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/upload/image/picture.jpg");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        responder.serve(object, MediaType.IMAGE_JPEG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void ofFile_MissingFile_IsEmpty() throws IOException {
+        assertTrue(StoredObject.ofFile(tempDir.resolve("missing.jpg")).isEmpty());
+    }
+
+    private MockHttpServletResponse firstResponse() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.serve(object, MediaType.IMAGE_JPEG, new MockHttpServletRequest("GET", "/upload/image/picture.jpg"), response);
+        return response;
+    }
+}
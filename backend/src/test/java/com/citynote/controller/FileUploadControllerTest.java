@@ -1,25 +1,42 @@
 package com.citynote.controller;
 
-import org.junit.jupiter.api.BeforeEach;
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import com.citynote.service.impl.ContentAddressedStore;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import com.citynote.service.impl.ImageMetadata;
+import com.citynote.service.impl.ImageRenditionWorker;
+import com.citynote.service.impl.PerceptualHashIndex;
+import com.citynote.service.impl.PerceptualHashIndex.NearDuplicate;
+import com.citynote.service.impl.VideoPosterExtractor;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.io.Resource;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,24 +44,38 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class FileUploadControllerTest {
 
+    private static final String BOUNDARY = "----formBoundaryQ7xk2";
+
     @Mock
     private MultipartFile multipartFile;
 
     @Mock
     private HttpServletRequest httpServletRequest;
 
+    @Mock
+    private UploadStorage uploadStorage;
+
+    @Mock
+    private FileRangeResponder fileRangeResponder;
+
+    @Mock
+    private ImageRenditionWorker imageRenditionWorker;
+
+    @Mock
+    private ContentAddressedStore contentAddressedStore;
+
+    @Mock
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @Mock
+    private VideoPosterExtractor videoPosterExtractor;
+
     @InjectMocks
     private FileUploadController fileUploadController;
 
     @TempDir
     Path tempDir;
 
-    @BeforeEach
-    void setUp() {
-        // Set up the upload path to use temporary directory
-        ReflectionTestUtils.setField(fileUploadController, "uploadPath", tempDir.toString() + "/");
-    }
-
     @Test
     void uploadImage_ValidImageFile_ReturnsSuccessResponse() throws IOException {
         // Arrange
@@ -55,6 +86,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(fileSize);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".jpg"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -70,6 +103,29 @@ class FileUploadControllerTest {
         assertTrue(response.getBody().containsKey("filename"));
         assertTrue(response.getBody().get("url").contains("http://localhost:8080/api/upload/image/"));
         assertTrue(response.getBody().get("filename").endsWith(".jpg"));
+        verify(imageRenditionWorker).submit(response.getBody().get("filename"));
+    }
+
+    @Test
+    void uploadImage_LooksLikeStoredPictures_ReportsThem() throws IOException {
+        String filename = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg";
+        InputStream inputStream = new ByteArrayInputStream("test image content".getBytes());
+        when(multipartFile.getOriginalFilename()).thenReturn("repost.jpg");
+        when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".jpg")).thenReturn(new StoredUpload(filename, true,
+                new ImageMetadata(800, 600, 18, "image/jpeg", "LEHV6nWB2yk8pyo0adR*.7kCMdnj", 0x5a5a5a5a5a5a5a5aL)));
+        when(perceptualHashIndex.nearDuplicates(filename, 0x5a5a5a5a5a5a5a5aL)).thenReturn(List.of(
+                new NearDuplicate("a.jpg", 2), new NearDuplicate("b.png", 5)));
+        when(httpServletRequest.getScheme()).thenReturn("http");
+        when(httpServletRequest.getServerName()).thenReturn("localhost");
+        when(httpServletRequest.getServerPort()).thenReturn(8080);
+
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImage(multipartFile, httpServletRequest);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("a.jpg,b.png", response.getBody().get("nearDuplicates"));
+        assertEquals("800", response.getBody().get("width"));
+        assertEquals("image/jpeg", response.getBody().get("mimeType"));
     }
 
     @Test
@@ -143,6 +199,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(fileSize);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".png"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.png", true));
 
         when(httpServletRequest.getScheme()).thenReturn("https");
         when(httpServletRequest.getServerName()).thenReturn("example.com");
@@ -168,6 +226,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(fileSize);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".gif"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.gif", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -190,6 +250,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(1024L);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".webp"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.webp", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -212,6 +274,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(2048L);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".heic"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.heic", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -234,6 +298,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(1536L);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".heif"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.heif", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -285,27 +351,30 @@ class FileUploadControllerTest {
         String filename = "test-image.jpg";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "test image content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().exists());
-        assertEquals("image/jpeg", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/jpeg")),
+                same(request), same(response));
     }
 
     @Test
-    void getImage_NonExistingFile_ReturnsNotFound() {
+    void getImage_NonExistingFile_ReturnsNotFound() throws IOException {
         // Arrange
         String filename = "non-existing.jpg";
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND.value(), response.getStatus());
     }
 
     @Test
@@ -314,13 +383,35 @@ class FileUploadControllerTest {
         String filename = "test-image.png";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "png content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("image/png", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/png")),
+                same(request), same(response));
+    }
+
+    @Test
+    void getImage_StoredMimeType_OverridesExtension() throws IOException {
+        // Arrange: a JPEG uploaded under a .png name
+        String filename = "a".repeat(64) + ".png";
+        Path filePath = tempDir.resolve(filename);
+        Files.write(filePath, "jpeg content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        when(contentAddressedStore.mimeType(filename)).thenReturn(Optional.of("image/jpeg"));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        fileUploadController.getImage(filename, null, request, response);
+
+        // Assert
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/jpeg")),
+                same(request), same(response));
     }
 
     @Test
@@ -329,13 +420,16 @@ class FileUploadControllerTest {
         String filename = "animated.gif";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "gif content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("image/gif", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/gif")),
+                same(request), same(response));
     }
 
     @Test
@@ -344,13 +438,16 @@ class FileUploadControllerTest {
         String filename = "image.webp";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "webp content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("image/webp", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/webp")),
+                same(request), same(response));
     }
 
     @Test
@@ -359,13 +456,16 @@ class FileUploadControllerTest {
         String filename = "photo.heic";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "heic content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("image/heic", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("image/heic")),
+                same(request), same(response));
     }
 
     @Test
@@ -374,38 +474,46 @@ class FileUploadControllerTest {
         String filename = "file.unknown";
         Path filePath = tempDir.resolve(filename);
         Files.write(filePath, "unknown content".getBytes());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Act
-        ResponseEntity<Resource> response = fileUploadController.getImage(filename);
+        fileUploadController.getImage(filename, null, request, response);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("application/octet-stream", response.getHeaders().getContentType().toString());
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("application/octet-stream")),
+                same(request), same(response));
     }
 
     @Test
-    void uploadImage_WithAbsoluteUploadPath_CreatesCorrectDirectory() throws IOException {
+    void removeFile_RefCountUpdateFails_ReturnsServerError() throws IOException {
         // Arrange
-        Path absolutePath = tempDir.resolve("absolute-uploads");
-        ReflectionTestUtils.setField(fileUploadController, "uploadPath", absolutePath.toString() + "/");
+        String filename = "b".repeat(64) + ".jpg";
+        when(uploadStorage.exists(filename)).thenReturn(true);
+        when(contentAddressedStore.discard(filename))
+                .thenThrow(new CannotAcquireLockException("lock wait timeout"));
 
-        String originalFilename = "test.jpg";
-        InputStream inputStream = new ByteArrayInputStream("test content".getBytes());
+        // Act
+        ResponseEntity<Integer> response = fileUploadController.removeFile(filename);
 
-        when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
-        when(multipartFile.getSize()).thenReturn(1024L);
-        when(multipartFile.getInputStream()).thenReturn(inputStream);
+        // Assert
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(-1, response.getBody());
+    }
 
-        when(httpServletRequest.getScheme()).thenReturn("http");
-        when(httpServletRequest.getServerName()).thenReturn("localhost");
-        when(httpServletRequest.getServerPort()).thenReturn(8080);
+    @Test
+    void removeFile_StorageUnreachable_ReturnsServerError() throws IOException {
+        // Arrange
+        String filename = "c".repeat(64) + ".jpg";
+        when(uploadStorage.exists(filename)).thenThrow(new IOException("S3 HEAD failed with 503"));
 
         // Act
-        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImage(multipartFile, httpServletRequest);
+        ResponseEntity<Integer> response = fileUploadController.removeFile(filename);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertTrue(Files.exists(absolutePath));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(-1, response.getBody());
     }
 
     @Test
@@ -432,6 +540,8 @@ class FileUploadControllerTest {
         when(multipartFile.getOriginalFilename()).thenReturn(originalFilename);
         when(multipartFile.getSize()).thenReturn(1024L);
         when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".jpeg"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpeg", true));
 
         when(httpServletRequest.getScheme()).thenReturn("http");
         when(httpServletRequest.getServerName()).thenReturn("localhost");
@@ -444,4 +554,354 @@ class FileUploadControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertTrue(response.getBody().get("filename").endsWith(".jpeg"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getImage_PathOutsideUploadDir_ReturnsBadRequest() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        fileUploadController.getImage("../application.properties", null, request, response);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
+        verifyNoInteractions(fileRangeResponder);
+    }
+
+    @Test
+    void getImage_RenditionReady_ServesRenditionAsJpeg() throws IOException {
+        // Arrange
+        String filename = "photo.png";
+        StoredObject rendition = mock(StoredObject.class);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(imageRenditionWorker.select("photo.png", 300)).thenReturn(Optional.of(rendition));
+
+        // Act
+        fileUploadController.getImage(filename, 300, request, response);
+
+        // Assert
+        verify(fileRangeResponder).serve(rendition, MediaType.IMAGE_JPEG, request, response);
+        verifyNoMoreInteractions(fileRangeResponder);
+    }
+
+    @Test
+    void getImage_RenditionNotReady_ServesOriginalWithoutImmutableCaching() throws IOException {
+        // Arrange
+        String filename = "photo.png";
+        Path filePath = Files.write(tempDir.resolve(filename), "original picture".getBytes());
+        when(imageRenditionWorker.select(filename, 160)).thenReturn(Optional.empty());
+        when(uploadStorage.open(filename)).thenReturn(StoredObject.ofFile(filePath));
+        FileUploadController controller = new FileUploadController(uploadStorage, new FileRangeResponder(),
+                imageRenditionWorker, contentAddressedStore, perceptualHashIndex, videoPosterExtractor);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/image/" + filename);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        controller.getImage(filename, 160, request, response);
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals("original picture", response.getContentAsString());
+        assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void uploadImage_DuplicateContent_ReusesStoredFileWithoutRenditions() throws IOException {
+        // Arrange
+        InputStream inputStream = new ByteArrayInputStream("same photo".getBytes());
+        when(multipartFile.getOriginalFilename()).thenReturn("again.jpg");
+        when(multipartFile.getSize()).thenReturn(1024L);
+        when(multipartFile.getInputStream()).thenReturn(inputStream);
+        when(contentAddressedStore.store(inputStream, ".jpg"))
+                .thenReturn(new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg", false));
+        when(httpServletRequest.getScheme()).thenReturn("http");
+        when(httpServletRequest.getServerName()).thenReturn("localhost");
+        when(httpServletRequest.getServerPort()).thenReturn(8080);
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImage(multipartFile, httpServletRequest);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg", response.getBody().get("filename"));
+        verify(imageRenditionWorker, never()).submit(anyString());
+    }
+
+    @Test
+    void uploadImageStream_ValidJpeg_StreamsPartIntoStore() throws IOException {
+        // Arrange
+        byte[] image = jpegBytes(200_000);
+        MockHttpServletRequest request = multipartRequest("holiday.jpg", image);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        when(contentAddressedStore.store(any(InputStream.class), eq(".jpg"))).thenAnswer(invocation -> {
+            received.writeBytes(invocation.<InputStream>getArgument(0).readAllBytes());
+            return new StoredUpload("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg", true);
+        });
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("http://localhost:80/api/upload/image/9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg",
+                response.getBody().get("url"));
+        assertArrayEquals(image, received.toByteArray());
+        verify(imageRenditionWorker).submit("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg");
+    }
+
+    @Test
+    void uploadImageStream_ContentNotMatchingExtension_ReturnsBadRequest() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = multipartRequest("renamed.png", jpegBytes(1_000));
+        when(contentAddressedStore.store(any(InputStream.class), eq(".png"))).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(0).readAllBytes();
+            return new StoredUpload("unused.png", true);
+        });
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertTrue(response.getBody().get("error").contains("does not match"));
+        verifyNoInteractions(imageRenditionWorker);
+    }
+
+    @Test
+    void uploadImageStream_InvalidExtension_ReturnsBadRequestWithoutStoring() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = multipartRequest("script.sh", jpegBytes(1_000));
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(contentAddressedStore);
+    }
+
+    @Test
+    void uploadImageStream_AnnouncedBodyTooLarge_ReturnsBadRequestWithoutReading() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/image/stream") {
+            @Override
+            public long getContentLengthLong() {
+                return 60L * 1024 * 1024;
+            }
+        };
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("File size exceeds 50MB limit", response.getBody().get("error"));
+        verifyNoInteractions(contentAddressedStore);
+    }
+
+    @Test
+    void uploadImageStream_NotMultipart_ReturnsBadRequest() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/image/stream");
+        request.setContentType("image/jpeg");
+        request.setContent(jpegBytes(1_000));
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(contentAddressedStore);
+    }
+
+    @Test
+    void uploadImageStream_MissingFilePart_ReturnsBadRequest() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/image/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"caption\"\r\n\r\nhello\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadImageStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Missing file part", response.getBody().get("error"));
+    }
+
+    @Test
+    void uploadVideoStream_ValidMp4_StoresClipAndItsCoverArtPoster() throws IOException {
+        // Arrange
+        byte[] video = mp4Bytes(100_000);
+        MockHttpServletRequest request = videoRequest("clip.mp4", video, null);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        when(contentAddressedStore.store(any(InputStream.class), eq(".mp4"))).thenAnswer(invocation -> {
+            received.writeBytes(invocation.<InputStream>getArgument(0).readAllBytes());
+            return new StoredUpload("c1.mp4", true, new ImageMetadata(1280, 720, video.length, "video/mp4", null, null));
+        });
+        when(videoPosterExtractor.extract("c1.mp4")).thenReturn(Optional.of(new StoredUpload("p1.jpg", true)));
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadVideoStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("http://localhost:80/api/upload/video/c1.mp4", response.getBody().get("url"));
+        assertEquals("video/mp4", response.getBody().get("mimeType"));
+        assertEquals("1280", response.getBody().get("width"));
+        assertEquals("p1.jpg", response.getBody().get("poster"));
+        assertArrayEquals(video, received.toByteArray());
+    }
+
+    @Test
+    void uploadVideoStream_NoCoverArt_UsesTheClientPoster() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = videoRequest("clip.mov", mp4Bytes(1_000), jpegBytes(1_000));
+        when(contentAddressedStore.store(any(InputStream.class), eq(".mov"))).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(0).readAllBytes();
+            return new StoredUpload("c2.mov", true);
+        });
+        when(contentAddressedStore.store(any(InputStream.class), eq(".jpg"))).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(0).readAllBytes();
+            return new StoredUpload("p2.jpg", true);
+        });
+        when(videoPosterExtractor.extract("c2.mov")).thenReturn(Optional.empty());
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadVideoStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("p2.jpg", response.getBody().get("poster"));
+        verify(imageRenditionWorker).submit("p2.jpg");
+    }
+
+    @Test
+    void uploadVideoStream_ImageExtension_ReturnsBadRequestWithoutStoring() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = videoRequest("holiday.jpg", jpegBytes(1_000), null);
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadVideoStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(contentAddressedStore, videoPosterExtractor);
+    }
+
+    @Test
+    void uploadVideoStream_SecondFilePart_ReturnsBadRequestWithoutStoringIt() throws IOException {
+        // Arrange
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (String filename : List.of("first.mp4", "second.mp4")) {
+            body.writeBytes(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(mp4Bytes(1_000));
+            body.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/video/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        when(contentAddressedStore.store(any(InputStream.class), eq(".mp4"))).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(0).readAllBytes();
+            return new StoredUpload("c3.mp4", true);
+        });
+
+        // Act
+        ResponseEntity<Map<String, String>> response = fileUploadController.uploadVideoStream(request);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Duplicate file part", response.getBody().get("error"));
+        verify(contentAddressedStore, times(1)).store(any(InputStream.class), eq(".mp4"));
+        verifyNoInteractions(videoPosterExtractor);
+    }
+
+    @Test
+    void getVideo_ExistingFile_ServesItWithRanges() throws IOException {
+        // Arrange
+        Path filePath = tempDir.resolve("c1.webm");
+        Files.write(filePath, new byte[]{0x1A, 0x45, (byte) 0xDF, (byte) 0xA3});
+        when(uploadStorage.open("c1.webm")).thenReturn(StoredObject.ofFile(filePath));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/video/c1.webm");
+        request.addHeader("Range", "bytes=2-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        fileUploadController.getVideo("c1.webm", request, response);
+
+        // Assert
+        verify(fileRangeResponder).serve(any(StoredObject.class), eq(MediaType.parseMediaType("video/webm")),
+                same(request), same(response));
+    }
+
+    @Test
+    void getVideo_ImageFile_ReturnsNotFound() throws IOException {
+        // Arrange
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        fileUploadController.getVideo("holiday.jpg", new MockHttpServletRequest(), response);
+
+        // Assert
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+        verifyNoInteractions(uploadStorage, fileRangeResponder);
+    }
+
+    private static MockHttpServletRequest videoRequest(String filename, byte[] video, byte[] poster) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(video);
+        if (poster != null) {
+            body.writeBytes(("\r\n--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"poster\"; filename=\"poster.jpg\"\r\n"
+                    + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(poster);
+        }
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/video/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        return request;
+    }
+
+    // an ftyp box of brand isom followed by filler
+    private static byte[] mp4Bytes(int length) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) 0x42);
+        System.arraycopy(new byte[]{0, 0, 0, 0x14, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'}, 0, content, 0, 12);
+        return content;
+    }
+
+    private static MockHttpServletRequest multipartRequest(String filename, byte[] content) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/image/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        return request;
+    }
+
+    private static byte[] jpegBytes(int length) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) 0x42);
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        return content;
+    }
+}
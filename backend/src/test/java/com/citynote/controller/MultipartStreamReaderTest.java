@@ -0,0 +1,178 @@
+package com.citynote.controller;
+
+import com.citynote.service.impl.UploadRejectedException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    @Test
+    void nextPart_ReadsFieldsAndFileInOrder() throws IOException {
+        byte[] image = randomBytes(10_000);
+        byte[] body = body(
+                part("form-data; name=\"caption\"", null, "sunset".getBytes(StandardCharsets.UTF_8)),
+                part("form-data; name=\"file\"; filename=\"photo.jpg\"", "image/jpeg", image));
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, body.length);
+
+        MultipartStreamReader.Part caption = reader.nextPart();
+        assertEquals("caption", caption.name());
+        assertNull(caption.filename());
+        assertEquals("sunset", new String(caption.content().readAllBytes(), StandardCharsets.UTF_8));
+
+        MultipartStreamReader.Part file = reader.nextPart();
+        assertEquals("file", file.name());
+        assertEquals("photo.jpg", file.filename());
+        assertEquals("image/jpeg", file.contentType());
+        assertArrayEquals(image, file.content().readAllBytes());
+
+        assertNull(reader.nextPart());
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    void nextPart_BoundaryStraddlingBufferRefills() throws IOException {
+        // a small buffer puts the delimiter across refills at many different offsets
+        for (int size = 0; size < 200; size++) {
+            byte[] content = new byte[size];
+            // CR LF and dashes look like the start of a delimiter
+            for (int i = 0; i < size; i++) {
+                content[i] = (byte) "\r\n--x".charAt(i % 5);
+            }
+            byte[] body = body(part("form-data; name=\"file\"; filename=\"a.png\"", null, content));
+
+            MultipartStreamReader reader = new MultipartStreamReader(
+                    new TrickleInputStream(body, 7), BOUNDARY, body.length, 64);
+
+            assertArrayEquals(content, reader.nextPart().content().readAllBytes(), "size " + size);
+            assertNull(reader.nextPart());
+        }
+    }
+
+    @Test
+    void nextPart_SkipsPreambleAndUnreadContent() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes("This is the preamble.\r\n".getBytes(StandardCharsets.US_ASCII));
+        body.writeBytes(body(
+                part("form-data; name=\"skipped\"", null, randomBytes(100_000)),
+                part("form-data; name=\"file\"; filename=\"b.gif\"", null, "GIF89a".getBytes(StandardCharsets.US_ASCII))));
+        byte[] bytes = body.toByteArray();
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(bytes), BOUNDARY, bytes.length);
+
+        assertEquals("skipped", reader.nextPart().name());
+        MultipartStreamReader.Part file = reader.nextPart();
+        assertEquals("b.gif", file.filename());
+        assertEquals("GIF89a", new String(file.content().readAllBytes(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void nextPart_Utf8Filename() throws IOException {
+        byte[] body = body(part("form-data; name=\"file\"; filename=\"旧金山.jpg\"", null, new byte[]{1}));
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, body.length);
+
+        assertEquals("旧金山.jpg", reader.nextPart().filename());
+    }
+
+    @Test
+    void read_TruncatedBody_IsRejected() throws IOException {
+        byte[] body = body(part("form-data; name=\"file\"; filename=\"c.jpg\"", null, randomBytes(1_000)));
+        byte[] truncated = java.util.Arrays.copyOf(body, body.length - 60);
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(truncated), BOUNDARY, body.length);
+        InputStream content = reader.nextPart().content();
+
+        assertThrows(UploadRejectedException.class, content::readAllBytes);
+    }
+
+    @Test
+    void read_BodyOverLimit_IsRejectedWithoutReadingIt() throws IOException {
+        byte[] body = body(part("form-data; name=\"file\"; filename=\"d.jpg\"", null, randomBytes(200_000)));
+        TrickleInputStream input = new TrickleInputStream(body, Integer.MAX_VALUE);
+
+        MultipartStreamReader reader = new MultipartStreamReader(input, BOUNDARY, 100_000);
+        InputStream content = reader.nextPart().content();
+
+        UploadRejectedException rejected = assertThrows(UploadRejectedException.class, content::readAllBytes);
+        assertTrue(rejected.getMessage().contains("exceeds"));
+        assertTrue(input.position < body.length);
+    }
+
+    @Test
+    void nextPart_NotMultipart_IsRejected() {
+        byte[] body = "just some bytes".getBytes(StandardCharsets.US_ASCII);
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, body.length);
+
+        assertThrows(UploadRejectedException.class, reader::nextPart);
+    }
+
+    private static byte[] part(String disposition, String contentType, byte[] content) {
+        ByteArrayOutputStream part = new ByteArrayOutputStream();
+        StringBuilder headers = new StringBuilder("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: ").append(disposition).append("\r\n");
+        if (contentType != null) {
+            headers.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        headers.append("\r\n");
+        part.writeBytes(headers.toString().getBytes(StandardCharsets.UTF_8));
+        part.writeBytes(content);
+        part.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        return part.toByteArray();
+    }
+
+    private static byte[] body(byte[]... parts) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            body.writeBytes(part);
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    // hands out at most chunk bytes per read, like a slow socket
+    private static class TrickleInputStream extends InputStream {
+
+        private final byte[] data;
+        private final int chunk;
+        int position;
+
+        TrickleInputStream(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, chunk), data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.citynote.controller;
+
+import com.citynote.service.impl.ImageFormat;
+import com.citynote.service.impl.ImageUploadStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap cost of 100 concurrent 20MB image uploads, each parsed from a multipart body and
+ * written (hashed) to a temp file:
+ * <ul>
+ *     <li>{@code streaming}: {@link MultipartStreamReader} and {@link ImageUploadStream}
+ *     feeding a channel transfer, as {@code POST /upload/image/stream} does</li>
+ *     <li>{@code buffered}: the file part collected in memory before it is written, what an
+ *     in-memory multipart resolver does with a large part</li>
+ * </ul>
+ * Run with the GC profiler (as {@code main} does): {@code gc.alloc.rate.norm} is the heap
+ * allocated per upload. Not part of the test run; start it with {@code main} from the test
+ * classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Threads(100)
+// buffered needs about 3GB of heap at once; streaming runs in well under 100MB
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StreamingUploadBenchmark {
+
+    private static final String BOUNDARY = "----benchmarkBoundary4f2a9c";
+    private static final long UPLOAD_SIZE = 20L * 1024 * 1024;
+    private static final long MAX_FILE_SIZE = 50L * 1024 * 1024;
+
+    private Path target;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        target = Files.createTempFile("upload-benchmark-", ".part");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(new MultipartBody(UPLOAD_SIZE), BOUNDARY,
+                MAX_FILE_SIZE + 64 * 1024);
+        MultipartStreamReader.Part part = reader.nextPart();
+        MessageDigest sha256 = sha256();
+        long size = 0;
+        try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(
+                new ImageUploadStream(part.content(), ImageFormat.JPEG, MAX_FILE_SIZE), sha256));
+             FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            long transferred;
+            while ((transferred = channel.transferFrom(source, size, 1024 * 1024)) > 0) {
+                size += transferred;
+            }
+        }
+        return size + sha256.digest()[0];
+    }
+
+    @Benchmark
+    public long buffered() throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(new MultipartBody(UPLOAD_SIZE), BOUNDARY,
+                MAX_FILE_SIZE + 64 * 1024);
+        byte[] content = reader.nextPart().content().readAllBytes();
+        MessageDigest sha256 = sha256();
+        sha256.update(content);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            out.write(content);
+        }
+        return content.length + sha256.digest()[0];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A multipart body with one JPEG file part, generated as it is read like a client
+     * upload arriving over the network.
+     */
+    static class MultipartBody extends InputStream {
+
+        private final byte[] head;
+        private final byte[] tail;
+        private final long length;
+        private long position;
+
+        MultipartBody(long fileSize) {
+            byte[] headers = ("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"benchmark.jpg\"\r\n"
+                    + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.head = new byte[headers.length + 3];
+            System.arraycopy(headers, 0, head, 0, headers.length);
+            head[headers.length] = (byte) 0xFF;
+            head[headers.length + 1] = (byte) 0xD8;
+            head[headers.length + 2] = (byte) 0xFF;
+            this.tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.length = headers.length + fileSize + tail.length;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) {
+                return -1;
+            }
+            // like a socket read: at most one TCP receive buffer's worth at a time
+            int n = (int) Math.min(Math.min(len, 64 * 1024), length - position);
+            for (int i = 0; i < n; i++) {
+                long at = position + i;
+                if (at < head.length) {
+                    b[off + i] = head[(int) at];
+                } else if (at >= length - tail.length) {
+                    b[off + i] = tail[(int) (at - (length - tail.length))];
+                } else {
+                    b[off + i] = (byte) at;
+                }
+            }
+            position += n;
+            return n;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StreamingUploadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.citynote.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenUtilTest {
+
+    private static final String SECRET = "test-secret-key-that-is-long-enough-for-hs256-signing";
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtTokenUtil jwtTokenUtil;
+    private UserDetails userDetails;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtTokenUtil = new JwtTokenUtil(SECRET, 3600L, 100, meterRegistry);
+        userDetails = User.withUsername("testuser").password("password").authorities("USER").build();
+    }
+
+    @Test
+    void verify_TokenWithIds_ReturnsPrincipal() {
+        String token = jwtTokenUtil.generateToken(userDetails, 42L, 7);
+
+        Optional<JwtTokenUtil.VerifiedToken> verified = jwtTokenUtil.verify(token);
+
+        assertTrue(verified.isPresent());
+        assertEquals(Optional.of(new JwtPrincipal("testuser", 42L, 7)), verified.get().principal());
+        assertTrue(jwtTokenUtil.validateToken(token, userDetails));
+    }
+
+    @Test
+    void verify_TokenWithoutIds_HasNoPrincipal() {
+        String token = jwtTokenUtil.generateToken(userDetails);
+
+        JwtTokenUtil.VerifiedToken verified = jwtTokenUtil.verify(token).orElseThrow();
+
+        assertEquals("testuser", verified.username());
+        assertTrue(verified.principal().isEmpty());
+        assertEquals("testuser", jwtTokenUtil.getUsernameFromToken(token));
+    }
+
+    @Test
+    void verify_RepeatedToken_IsServedFromCache() {
+        String token = jwtTokenUtil.generateToken(userDetails, 42L, 7);
+
+        jwtTokenUtil.verify(token);
+        jwtTokenUtil.verify(token);
+        jwtTokenUtil.verify(token);
+
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "jwtVerified").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwtVerified").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void verify_TamperedToken_IsRejectedAndNotCached() {
+        String token = jwtTokenUtil.generateToken(userDetails, 42L, 7);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertTrue(jwtTokenUtil.verify(tampered).isEmpty());
+        assertTrue(jwtTokenUtil.verify(tampered).isEmpty());
+        assertFalse(jwtTokenUtil.validateToken(tampered, userDetails));
+    }
+
+    @Test
+    void verify_ExpiredToken_IsRejected() {
+        JwtTokenUtil expiringUtil = new JwtTokenUtil(SECRET, -60L, 100, meterRegistry);
+        String token = expiringUtil.generateToken(userDetails, 42L, 7);
+
+        assertTrue(expiringUtil.verify(token).isEmpty());
+    }
+
+    @Test
+    void verify_TokenSignedWithOtherKey_IsRejected() {
+        JwtTokenUtil otherUtil = new JwtTokenUtil(SECRET + "-other", 3600L, 100, new SimpleMeterRegistry());
+        String token = otherUtil.generateToken(userDetails, 42L, 7);
+
+        assertTrue(jwtTokenUtil.verify(token).isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package com.citynote.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request token validation cost:
+ * <ul>
+ *     <li>{@code legacyTripleParse}: the previous JwtTokenUtil, which rebuilt the key and
+ *     parser on every call and parsed the token three times per validation</li>
+ *     <li>{@code singleParse}: one parse with the shared parser</li>
+ *     <li>{@code cachedVerify}: repeat request with the same bearer token (cache hit)</li>
+ * </ul>
+ * Not part of the test run; start it with {@code main} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-that-is-long-enough-for-hs256";
+
+    private JwtTokenUtil jwtTokenUtil;
+    private UserDetails userDetails;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtTokenUtil = new JwtTokenUtil(SECRET, 3600L, 10_000, new SimpleMeterRegistry());
+        userDetails = User.withUsername("benchuser").password("password").authorities("USER").build();
+        token = jwtTokenUtil.generateToken(userDetails, 1L, 1);
+        jwtTokenUtil.verify(token);
+    }
+
+    @Benchmark
+    public boolean legacyTripleParse() {
+        String username = legacyClaims(token).getSubject();
+        if (!username.equals(legacyClaims(token).getSubject())) {
+            return false;
+        }
+        return !legacyClaims(token).getExpiration().before(new Date());
+    }
+
+    @Benchmark
+    public Optional<JwtTokenUtil.VerifiedToken> singleParse() {
+        return jwtTokenUtil.parse(token);
+    }
+
+    @Benchmark
+    public Optional<JwtTokenUtil.VerifiedToken> cachedVerify() {
+        return jwtTokenUtil.verify(token);
+    }
+
+    private static Claims legacyClaims(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
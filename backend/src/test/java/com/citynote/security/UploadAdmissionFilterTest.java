@@ -0,0 +1,116 @@
+package com.citynote.security;
+
+import com.citynote.controller.FileUploadController;
+import com.citynote.service.impl.UploadAdmissionController;
+import com.citynote.service.impl.UploadAdmissionController.Admission;
+import com.citynote.service.impl.UploadAdmissionController.Rejection;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadAdmissionFilterTest {
+
+    @Mock
+    private UploadAdmissionController uploadAdmissionController;
+
+    @Mock
+    private JwtTokenUtil jwtTokenUtil;
+
+    @Mock
+    private FilterChain chain;
+
+    @InjectMocks
+    private UploadAdmissionFilter filter;
+
+    @Test
+    void doFilter_NotAnUpload_PassesThrough() throws ServletException, IOException {
+        MockHttpServletRequest request = request("GET", "/api/upload/image/a.jpg");
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(chain).doFilter(any(), any());
+        verifyNoInteractions(uploadAdmissionController);
+    }
+
+    @Test
+    void doFilter_RateLimited_RejectsWithoutReadingTheBody() throws ServletException, IOException {
+        MockHttpServletRequest request = request("POST", "/api/upload/image");
+        request.setContent(new byte[1234]);
+        when(uploadAdmissionController.admit("127.0.0.1", Optional.empty(), 1234))
+                .thenReturn(new Admission(Rejection.RATE, 7));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("7", response.getHeader("Retry-After"));
+        assertEquals("close", response.getHeader("Connection"));
+        assertTrue(response.getContentAsString().contains("error"));
+        verifyNoInteractions(chain);
+        verify(uploadAdmissionController, never()).release();
+    }
+
+    @Test
+    void doFilter_VideoWithoutContentLength_IsChargedTheVideoLimit() throws ServletException, IOException {
+        MockHttpServletRequest request = request("POST", "/api/upload/video/stream");
+        when(uploadAdmissionController.admit("127.0.0.1", Optional.empty(), FileUploadController.MAX_VIDEO_REQUEST_SIZE))
+                .thenReturn(new Admission(null, 0));
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(chain).doFilter(any(), any());
+        verify(uploadAdmissionController).release();
+    }
+
+    @Test
+    void doFilter_AllSlotsTaken_Returns503() throws ServletException, IOException {
+        MockHttpServletRequest request = request("PUT", "/api/upload/chunked/abc/chunks/3");
+        when(uploadAdmissionController.admit(anyString(), any(), anyLong()))
+                .thenReturn(new Admission(Rejection.CONCURRENCY, 2));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(503, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void doFilter_Admitted_ReleasesTheSlotEvenWhenTheUploadFails() throws ServletException, IOException {
+        MockHttpServletRequest request = request("POST", "/api/upload/image/stream");
+        request.addHeader("Authorization", "Bearer token");
+        when(jwtTokenUtil.verify("token")).thenReturn(Optional.of(
+                new JwtTokenUtil.VerifiedToken("alice", 1L, 2, new Date())));
+        when(uploadAdmissionController.admit(eq("127.0.0.1"), eq(Optional.of("alice")), anyLong()))
+                .thenReturn(new Admission(null, 0));
+        doThrow(new IOException("client went away")).when(chain).doFilter(any(), any());
+
+        assertThrows(IOException.class, () -> filter.doFilter(request, new MockHttpServletResponse(), chain));
+
+        verify(uploadAdmissionController).release();
+    }
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setContextPath("/api");
+        return request;
+    }
+}
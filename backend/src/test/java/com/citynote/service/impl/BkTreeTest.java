@@ -0,0 +1,86 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.impl.BkTree.Match;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BkTreeTest {
+
+    @Test
+    void search_FindsExactlyWhatAScanFinds() {
+        Random random = new Random(42);
+        BkTree tree = new BkTree();
+        List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // clusters of similar hashes, like re-encodes of the same picture
+            long hash = i % 10 == 0 || hashes.isEmpty() ? random.nextLong() : flip(hashes.get(random.nextInt(hashes.size())), random, 3);
+            hashes.add(hash);
+            tree.add("f" + i, hash);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            long hash = flip(hashes.get(random.nextInt(hashes.size())), random, 2);
+            List<Match> expected = new ArrayList<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                int distance = PerceptualHash.distance(hashes.get(i), hash);
+                if (distance <= 8) {
+                    expected.add(new Match("f" + i, distance));
+                }
+            }
+            expected.sort((a, b) -> a.distance() != b.distance()
+                    ? Integer.compare(a.distance(), b.distance())
+                    : a.name().compareTo(b.name()));
+
+            assertEquals(expected, tree.search(hash, 8));
+        }
+    }
+
+    @Test
+    void add_SameHashTwice_SharesANode() {
+        BkTree tree = new BkTree();
+        tree.add("a.jpg", 0xffL);
+        tree.add("b.jpg", 0xffL);
+        tree.add("c.jpg", 0xf0L);
+
+        assertEquals(2, tree.nodeCount());
+        assertEquals(List.of(new Match("a.jpg", 0), new Match("b.jpg", 0), new Match("c.jpg", 4)), tree.search(0xffL, 4));
+    }
+
+    @Test
+    void remove_NameIsNoLongerFound_OthersStillAre() {
+        BkTree tree = new BkTree();
+        tree.add("a.jpg", 0xffL);
+        tree.add("b.jpg", 0xfeL);
+        tree.add("c.jpg", 0xfcL);
+
+        tree.remove("a.jpg");
+        tree.remove("unknown.jpg");
+
+        assertEquals(List.of(new Match("b.jpg", 1), new Match("c.jpg", 2)), tree.search(0xffL, 8));
+        assertNull(tree.hashOf("a.jpg"));
+        assertEquals(2, tree.size());
+    }
+
+    @Test
+    void add_NewHashForKnownName_ReplacesTheOldOne() {
+        BkTree tree = new BkTree();
+        tree.add("a.jpg", 0xffL);
+        tree.add("a.jpg", 0xff00L);
+
+        assertTrue(tree.search(0xffL, 4).isEmpty());
+        assertEquals(List.of(new Match("a.jpg", 0)), tree.search(0xff00L, 0));
+    }
+
+    private static long flip(long hash, Random random, int maxBits) {
+        int bits = random.nextInt(maxBits + 1);
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}
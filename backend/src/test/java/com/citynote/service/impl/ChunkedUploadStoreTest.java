@@ -0,0 +1,235 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.ChunkedUploadDTO;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadStoreTest {
+
+    private static final int CHUNK = 1024;
+    private static final String CLIENT = "user:alice";
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ContentAddressedStore contentAddressedStore;
+
+    private LocalUploadStorage storage;
+    private ChunkedUploadStore store;
+
+    @BeforeEach
+    void setUp() {
+        storage = new LocalUploadStorage(Paths.get(System.getProperty("user.dir")).toAbsolutePath()
+                .relativize(tempDir.resolve("uploads")).toString());
+        store = new ChunkedUploadStore(storage, contentAddressedStore, 1, 60, 10, 4);
+    }
+
+    @Test
+    void chunksInAnyOrder_AreAssembledAndAdopted() throws IOException {
+        byte[] image = jpegBytes(2 * CHUNK + 100);
+        ChunkedUploadDTO upload = store.initiate("large.jpg", image.length, CLIENT);
+        assertEquals(3, upload.getChunkCount());
+        assertEquals(CHUNK, upload.getChunkSize());
+
+        AtomicReference<byte[]> adopted = new AtomicReference<>();
+        when(contentAddressedStore.adopt(any(Path.class), eq(".jpg"))).thenAnswer(invocation -> {
+            adopted.set(Files.readAllBytes(invocation.<Path>getArgument(0)));
+            return new StoredUpload("abcd.jpg", true);
+        });
+
+        for (int index : new int[]{2, 0, 1}) {
+            writeChunk(upload.getUploadId(), index, image);
+        }
+        Optional<StoredUpload> stored = store.complete(upload.getUploadId());
+
+        assertEquals(Optional.of(new StoredUpload("abcd.jpg", true)), stored);
+        assertArrayEquals(image, adopted.get());
+        assertTrue(store.status(upload.getUploadId()).isEmpty());
+    }
+
+    @Test
+    void status_ReportsReceivedChunksForResume() throws IOException {
+        byte[] image = jpegBytes(4 * CHUNK);
+        ChunkedUploadDTO upload = store.initiate("resume.jpg", image.length, CLIENT);
+
+        writeChunk(upload.getUploadId(), 0, image);
+        writeChunk(upload.getUploadId(), 3, image);
+        // connection dropped halfway through chunk 1
+        byte[] partial = Arrays.copyOfRange(image, CHUNK, CHUNK + 300);
+        assertThrows(UploadRejectedException.class, () ->
+                store.writeChunk(upload.getUploadId(), 1, CHUNK, new ByteArrayInputStream(partial)));
+
+        assertEquals(List.of(0, 3), store.status(upload.getUploadId()).orElseThrow().getReceivedChunks());
+        IllegalStateException missing = assertThrows(IllegalStateException.class,
+                () -> store.complete(upload.getUploadId()));
+        assertEquals("Missing 2 of 4 chunks", missing.getMessage());
+        verifyNoInteractions(contentAddressedStore);
+
+        // the upload is still there to finish
+        writeChunk(upload.getUploadId(), 1, image);
+        writeChunk(upload.getUploadId(), 2, image);
+        assertEquals(List.of(0, 1, 2, 3), store.status(upload.getUploadId()).orElseThrow().getReceivedChunks());
+    }
+
+    @Test
+    void writeChunk_WrongOffsetOrLength_IsRejected() throws IOException {
+        byte[] image = jpegBytes(2 * CHUNK);
+        String uploadId = store.initiate("offsets.jpg", image.length, CLIENT).getUploadId();
+
+        assertThrows(UploadRejectedException.class, () ->
+                store.writeChunk(uploadId, 1, CHUNK - 1, new ByteArrayInputStream(new byte[CHUNK])));
+        assertThrows(UploadRejectedException.class, () ->
+                store.writeChunk(uploadId, 2, 2 * CHUNK, new ByteArrayInputStream(new byte[CHUNK])));
+        assertThrows(UploadRejectedException.class, () ->
+                store.writeChunk(uploadId, 1, CHUNK, new ByteArrayInputStream(new byte[CHUNK + 1])));
+
+        assertEquals(List.of(), store.status(uploadId).orElseThrow().getReceivedChunks());
+    }
+
+    @Test
+    void writeChunk_FirstChunkNotMatchingFormat_IsRejected() throws IOException {
+        byte[] notAnImage = new byte[CHUNK];
+        Arrays.fill(notAnImage, (byte) 'A');
+        String uploadId = store.initiate("fake.png", notAnImage.length, CLIENT).getUploadId();
+
+        assertThrows(UploadRejectedException.class, () ->
+                store.writeChunk(uploadId, 0, 0, new ByteArrayInputStream(notAnImage)));
+        assertEquals(List.of(), store.status(uploadId).orElseThrow().getReceivedChunks());
+    }
+
+    @Test
+    void writeChunk_UnknownUpload_ReturnsEmpty() throws IOException {
+        assertTrue(store.writeChunk("no-such-upload", 0, 0, new ByteArrayInputStream(new byte[1])).isEmpty());
+        assertTrue(store.complete("no-such-upload").isEmpty());
+    }
+
+    @Test
+    void initiate_RejectsUnsupportedOrOversizeFiles() {
+        assertThrows(UploadRejectedException.class, () -> store.initiate("notes.txt", 100, CLIENT));
+        assertThrows(UploadRejectedException.class, () -> store.initiate("huge.jpg", 51L * 1024 * 1024, CLIENT));
+        assertThrows(UploadRejectedException.class, () -> store.initiate("empty.jpg", 0, CLIENT));
+    }
+
+    @Test
+    void initiate_TooManyUploads_IsRefused() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            store.initiate("photo" + i + ".jpg", CHUNK, "user:client" + i);
+        }
+
+        assertThrows(IllegalStateException.class, () -> store.initiate("one-more.jpg", CHUNK, "user:another"));
+    }
+
+    @Test
+    void initiate_TooManyUploadsOfOneClient_RefusesOnlyThatClient() throws IOException {
+        String first = null;
+        for (int i = 0; i < 4; i++) {
+            String uploadId = store.initiate("photo" + i + ".jpg", CHUNK, CLIENT).getUploadId();
+            first = first != null ? first : uploadId;
+        }
+
+        assertThrows(IllegalStateException.class, () -> store.initiate("one-more.jpg", CHUNK, CLIENT));
+        assertNotNull(store.initiate("other.jpg", CHUNK, "user:other").getUploadId());
+
+        // aborting one gives the client its slot back
+        assertTrue(store.abort(first));
+        assertNotNull(store.initiate("one-more.jpg", CHUNK, CLIENT).getUploadId());
+    }
+
+    @Test
+    void collectExpired_RemovesIdleUploadsAndTheirFiles() throws IOException {
+        String idle = store.initiate("idle.jpg", CHUNK, CLIENT).getUploadId();
+        assertEquals(1, stagedFileCount());
+
+        store.collectExpired(Instant.now().plus(Duration.ofMinutes(30)));
+        assertTrue(store.status(idle).isPresent(), "not idle long enough");
+
+        store.collectExpired(Instant.now().plus(Duration.ofMinutes(61)));
+        assertTrue(store.status(idle).isEmpty());
+        assertEquals(0, stagedFileCount());
+    }
+
+    @Test
+    void collectExpired_RemovesStagingFilesOfForgottenUploads() throws IOException {
+        Path orphan = storage.createTempFile();
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(Duration.ofMinutes(121))));
+        Path recent = storage.createTempFile();
+
+        store.collectExpired(Instant.now());
+
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(recent));
+    }
+
+    @Test
+    void abort_DeletesTheStagingFile() throws IOException {
+        String uploadId = store.initiate("cancelled.jpg", CHUNK, CLIENT).getUploadId();
+
+        assertTrue(store.abort(uploadId));
+        assertFalse(store.abort(uploadId));
+        assertEquals(0, stagedFileCount());
+    }
+
+    @Test
+    void abort_WhileCompleting_LeavesTheFileToTheCompletion() throws IOException {
+        byte[] image = jpegBytes(CHUNK);
+        String uploadId = store.initiate("racing.jpg", image.length, CLIENT).getUploadId();
+        writeChunk(uploadId, 0, image);
+        AtomicReference<byte[]> adopted = new AtomicReference<>();
+        when(contentAddressedStore.adopt(any(Path.class), eq(".jpg"))).thenAnswer(invocation -> {
+            // a DELETE arriving while the file is being hashed
+            assertThrows(IllegalStateException.class, () -> store.abort(uploadId));
+            adopted.set(Files.readAllBytes(invocation.<Path>getArgument(0)));
+            return new StoredUpload("abcd.jpg", true);
+        });
+
+        store.complete(uploadId);
+
+        assertArrayEquals(image, adopted.get());
+    }
+
+    private void writeChunk(String uploadId, int index, byte[] file) throws IOException {
+        int start = index * CHUNK;
+        byte[] chunk = Arrays.copyOfRange(file, start, Math.min(start + CHUNK, file.length));
+        assertTrue(store.writeChunk(uploadId, index, start, new ByteArrayInputStream(chunk)).isPresent());
+    }
+
+    private long stagedFileCount() throws IOException {
+        try (var files = Files.list(storage.root().resolve(LocalUploadStorage.STAGING_DIR))) {
+            return files.count();
+        }
+    }
+
+    private static byte[] jpegBytes(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        return content;
+    }
+}
@@ -0,0 +1,207 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.StoredFileEntity;
+import com.citynote.repository.StoredFileRepository;
+import com.citynote.service.impl.ContentAddressedStore.StoredUpload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// commits for real: the store runs its own transactions and they must race each other
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({ContentAddressedStore.class, LocalUploadStorage.class, ImageRenditionWorker.class, PerceptualHashIndex.class,
+        SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "file.upload.path=target/content-store-test/",
+        "file.dedup.unclaimed-grace-minutes=0",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+class ContentAddressedStoreTest {
+
+    @Autowired
+    private ContentAddressedStore store;
+
+    @Autowired
+    private StoredFileRepository storedFileRepository;
+
+    @Autowired
+    private LocalUploadStorage storage;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storedFileRepository.deleteAll();
+        FileSystemUtils.deleteRecursively(uploadDir());
+    }
+
+    @Test
+    void store_SameContentTwice_StoredOnce() throws IOException {
+        StoredUpload first = store("same photo", ".JPG");
+        StoredUpload second = store("same photo", ".jpg");
+
+        assertTrue(first.created());
+        assertFalse(second.created());
+        assertEquals(first.filename(), second.filename());
+        assertTrue(first.filename().matches("[0-9a-f]{64}\\.jpg"));
+        assertEquals("same photo", Files.readString(storage.resolve(first.filename()).orElseThrow()));
+        assertEquals(1, storedFileRepository.count());
+        assertEquals(1, storedFileCount(), "no temp files left behind");
+    }
+
+    @Test
+    void store_Image_RecordsItsMetadataOnce() throws IOException {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        StoredUpload stored = store.store(new ByteArrayInputStream(png.toByteArray()), ".png");
+        StoredUpload again = store.store(new ByteArrayInputStream(png.toByteArray()), ".png");
+
+        assertEquals("image/png", stored.metadata().mimeType());
+        assertEquals(40, (int) stored.metadata().width());
+        assertEquals(30, (int) stored.metadata().height());
+        assertEquals(png.size(), stored.metadata().size());
+        assertNotNull(stored.metadata().blurHash());
+        assertEquals(stored.metadata(), again.metadata());
+        assertEquals(stored.metadata(), store.metadata(List.of(stored.filename(), "unknown.png")).get(stored.filename()));
+        assertEquals(1, store.metadata(List.of(stored.filename(), "unknown.png")).size());
+    }
+
+    @Test
+    void discard_UnlinksOnlyAfterLastReferenceIsReleased() throws IOException {
+        String filename = store("shared photo", ".png").filename();
+        inTransaction(() -> {
+            store.retain(filename);
+            store.retain(filename);
+        });
+
+        inTransaction(() -> store.release(filename));
+        assertTrue(store.discard(filename));
+        assertTrue(storage.resolve(filename).isPresent());
+        assertEquals(1, storedFileRepository.findByFilename(filename).orElseThrow().getRefCount());
+
+        inTransaction(() -> store.release(filename));
+        assertTrue(store.discard(filename));
+        assertFalse(storage.resolve(filename).isPresent());
+        assertTrue(storedFileRepository.findByFilename(filename).isEmpty());
+    }
+
+    @Test
+    void discard_RecentlyUploadedUnclaimedContent_IsKept() throws IOException {
+        String filename = store("fresh photo", ".jpg").filename();
+        StoredFileEntity storedFile = storedFileRepository.findByFilename(filename).orElseThrow();
+        // uploaded again by someone who has not posted it yet
+        storedFile.setLastUploadDate(LocalDateTime.now().plusMinutes(5));
+        storedFileRepository.save(storedFile);
+
+        assertTrue(store.discard(filename));
+
+        assertTrue(storage.resolve(filename).isPresent());
+    }
+
+    @Test
+    void retain_AfterContentWasCollected_Fails() throws IOException {
+        String filename = store("short lived", ".jpg").filename();
+        assertTrue(store.discard(filename));
+
+        assertThrows(IllegalArgumentException.class, () -> inTransaction(() -> store.retain(filename)));
+    }
+
+    @Test
+    void discard_LegacyUuidName_UnlinksDirectly() throws IOException {
+        Files.createDirectories(uploadDir());
+        Path legacy = Files.writeString(uploadDir().resolve("3f1c2a9e-5b7d-4c1e-9f00-123456789abc.jpg"), "old");
+
+        assertTrue(store.discard(legacy.getFileName().toString()));
+
+        assertFalse(Files.exists(legacy));
+    }
+
+    @Test
+    void store_ConcurrentFirstUploads_OneRowOneFile() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<StoredUpload>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return store("viral photo", ".jpg");
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            String filename = null;
+            for (Future<StoredUpload> result : results) {
+                StoredUpload upload = result.get();
+                created += upload.created() ? 1 : 0;
+                assertTrue(filename == null || filename.equals(upload.filename()));
+                filename = upload.filename();
+            }
+            assertEquals(1, created);
+            assertEquals(1, storedFileRepository.count());
+            assertEquals(1, storedFileCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private StoredUpload store(String content, String extension) throws IOException {
+        return store.store(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), extension);
+    }
+
+    private void inTransaction(Runnable action) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> action.run());
+    }
+
+    private long storedFileCount() throws IOException {
+        try (var files = Files.walk(uploadDir())) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private Path uploadDir() {
+        return Paths.get(System.getProperty("user.dir"), uploadPath).toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,126 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.CountyActivityDTO;
+import com.citynote.repository.CountyRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.projection.CountyActivityRow;
+import com.citynote.repository.projection.EventCountyRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CountyActivityStoreTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private CountyRepository countyRepository;
+
+    private LikeCounterBuffer likeCounterBuffer;
+
+    private CountyActivityStore store;
+
+    @BeforeEach
+    void setUp() {
+        likeCounterBuffer = new LikeCounterBuffer(null, 200);
+        store = new CountyActivityStore(eventRepository, countyRepository, likeCounterBuffer, 2);
+    }
+
+    @Test
+    void rebuild_QueriesCountiesInBatches() {
+        when(countyRepository.findAllIds()).thenReturn(List.of(1, 2, 3));
+        when(eventRepository.summarizeByCountyIds(List.of(1, 2)))
+                .thenReturn(List.of(new CountyActivityRow(2, 4, 9, NOON)));
+        when(eventRepository.summarizeByCountyIds(List.of(3))).thenReturn(List.of());
+
+        store.rebuild();
+
+        CountyActivityDTO snapshot = store.snapshot();
+        assertArrayEquals(new int[]{2}, snapshot.getCountyIds());
+        assertArrayEquals(new long[]{4}, snapshot.getEventCounts());
+        assertArrayEquals(new long[]{9}, snapshot.getTotalLikes());
+        assertArrayEquals(new long[]{NOON.toEpochSecond(ZoneOffset.UTC)}, snapshot.getLatestUpdates());
+        verify(eventRepository, times(2)).summarizeByCountyIds(anyList());
+    }
+
+    @Test
+    void writes_AreAppliedIncrementallyAfterRebuild() {
+        when(countyRepository.findAllIds()).thenReturn(List.of(1, 2));
+        when(eventRepository.summarizeByCountyIds(List.of(1, 2)))
+                .thenReturn(List.of(new CountyActivityRow(1, 1, 0, NOON)));
+        store.rebuild();
+
+        store.recordPost(2, NOON.plusHours(1));
+        store.recordPost(1, NOON.plusHours(2));
+        store.recordLikes(1, 1);
+        store.recordLikes(1, 1);
+        store.recordLikes(1, -1);
+        store.recordUpdate(2, NOON.minusDays(1));
+
+        CountyActivityDTO snapshot = store.snapshot();
+        assertArrayEquals(new int[]{1, 2}, snapshot.getCountyIds());
+        assertArrayEquals(new long[]{2, 1}, snapshot.getEventCounts());
+        assertArrayEquals(new long[]{1, 0}, snapshot.getTotalLikes());
+        assertArrayEquals(new long[]{
+                NOON.plusHours(2).toEpochSecond(ZoneOffset.UTC),
+                NOON.plusHours(1).toEpochSecond(ZoneOffset.UTC)
+        }, snapshot.getLatestUpdates());
+        verifyNoMoreInteractions(eventRepository);
+    }
+
+    @Test
+    void recordDelete_ResummarizesThatCountyOnly() {
+        when(countyRepository.findAllIds()).thenReturn(List.of(1));
+        when(eventRepository.summarizeByCountyIds(List.of(1)))
+                .thenReturn(List.of(new CountyActivityRow(1, 2, 5, NOON)))
+                .thenReturn(List.of(new CountyActivityRow(1, 1, 3, NOON.minusHours(3))));
+        store.rebuild();
+
+        store.recordDelete(1);
+
+        assertEquals(new CountyActivityStore.Summary(1, 3, NOON.minusHours(3)), store.get(1));
+    }
+
+    @Test
+    void recordDelete_KeepsLikesNotFlushedYet() {
+        when(countyRepository.findAllIds()).thenReturn(List.of(1));
+        when(eventRepository.summarizeByCountyIds(List.of(1)))
+                .thenReturn(List.of(new CountyActivityRow(1, 2, 5, NOON)))
+                .thenReturn(List.of(new CountyActivityRow(1, 1, 3, NOON)));
+        store.rebuild();
+        // coalesced likes: in the overlay at once, in events.likes only after the next flush
+        likeCounterBuffer.add(10, 4);
+        likeCounterBuffer.add(20, 1);
+        store.recordLikes(1, 5);
+        when(eventRepository.findCountiesOfEvents(anyCollection(), eq(List.of(1))))
+                .thenReturn(List.of(new EventCountyRow(10, 1)));
+
+        store.recordDelete(1);
+
+        // event 20 is in another county
+        assertEquals(new CountyActivityStore.Summary(1, 7, NOON), store.get(1));
+    }
+
+    @Test
+    void writesBeforeRebuild_AreLeftToTheRebuild() {
+        store.recordPost(7, NOON);
+
+        assertNull(store.get(7));
+        assertEquals(0, store.snapshot().getCountyIds().length);
+    }
+}
@@ -0,0 +1,68 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.CountyEntity;
+import com.citynote.repository.CountyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CountyDirectoryTest {
+
+    @Mock
+    private CountyRepository countyRepository;
+
+    private CountyDirectory directory;
+    private CountyEntity santaClara;
+    private CountyEntity butler;
+
+    @BeforeEach
+    void setUp() {
+        santaClara = county(6085, "Santa Clara County", "California");
+        butler = county(1013, "Butler County", "Alabama");
+        when(countyRepository.findAll()).thenReturn(List.of(santaClara, butler));
+
+        directory = new CountyDirectory(countyRepository);
+        directory.load();
+    }
+
+    @Test
+    void lookups_AreServedFromMemory() {
+        assertSame(santaClara, directory.findById(6085).orElseThrow());
+        assertSame(santaClara, directory.findByFips("06085").orElseThrow());
+        assertSame(santaClara, directory.findByFips("6085").orElseThrow());
+        assertSame(butler, directory.findByCountyKey("Butler County Alabama").orElseThrow());
+        assertEquals(List.of(butler), directory.findByName(" butler county "));
+        assertEquals(List.of(santaClara), directory.findByState("CALIFORNIA"));
+        assertTrue(directory.findByFips("123456").isEmpty());
+
+        verify(countyRepository).findAll();
+        verifyNoMoreInteractions(countyRepository);
+    }
+
+    @Test
+    void findById_Miss_DoesNotQueryRepository() {
+        assertTrue(directory.findById(48201).isEmpty());
+        assertTrue(directory.findById(48201).isEmpty());
+
+        verify(countyRepository).findAll();
+        verifyNoMoreInteractions(countyRepository);
+        assertEquals(2, directory.size());
+    }
+
+    private static CountyEntity county(int id, String name, String state) {
+        CountyEntity county = new CountyEntity();
+        county.setId(id);
+        county.setCountyName(name);
+        county.setCountyState(state);
+        county.setCountyKey(name + " " + state);
+        return county;
+    }
+}
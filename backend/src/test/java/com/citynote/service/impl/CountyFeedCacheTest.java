@@ -0,0 +1,128 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.EventResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountyFeedCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private CountyFeedCache countyFeedCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        countyFeedCache = new CountyFeedCache(2, 20, 100, 60, meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_SecondReadOfSamePage_IsServedFromCache() {
+        Pageable pageable = PageRequest.of(0, 10);
+
+        countyFeedCache.get(1, pageable, loader(1));
+        Page<EventResponseDTO> cached = countyFeedCache.get(1, pageable, loader(1));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cached.getContent().get(0).getId());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "countyFeed").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "countyFeed").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void get_DeepOrOversizedPage_BypassesCache() {
+        countyFeedCache.get(1, PageRequest.of(2, 10), loader(1));
+        countyFeedCache.get(1, PageRequest.of(2, 10), loader(1));
+        countyFeedCache.get(1, PageRequest.of(0, 50), loader(1));
+        countyFeedCache.get(1, PageRequest.of(0, 50), loader(1));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void evictCounty_OnlyDropsPagesOfThatCounty() {
+        Pageable pageable = PageRequest.of(0, 10);
+        countyFeedCache.get(1, pageable, loader(1));
+        countyFeedCache.get(1, PageRequest.of(1, 10), loader(1));
+        countyFeedCache.get(2, pageable, loader(2));
+
+        countyFeedCache.evictCounty(1);
+
+        countyFeedCache.get(1, pageable, loader(1));
+        countyFeedCache.get(2, pageable, loader(2));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void setLikes_PatchesCachedEventWithoutReload() {
+        Pageable pageable = PageRequest.of(0, 10);
+        Page<EventResponseDTO> original = countyFeedCache.get(1, pageable, loader(7));
+
+        countyFeedCache.setLikes(1, 7, 6);
+        Page<EventResponseDTO> patched = countyFeedCache.get(1, pageable, loader(7));
+
+        assertEquals(1, loads.get());
+        assertEquals(5, original.getContent().get(0).getLikes());
+        assertEquals(6, patched.getContent().get(0).getLikes());
+    }
+
+    @Test
+    void setLikes_OtherCounty_LeavesPagesUntouched() {
+        Pageable pageable = PageRequest.of(0, 10);
+        countyFeedCache.get(1, pageable, loader(7));
+
+        countyFeedCache.setLikes(2, 7, 6);
+
+        assertEquals(5, countyFeedCache.get(1, pageable, loader(7)).getContent().get(0).getLikes());
+    }
+
+    @Test
+    void setLikes_PageLoadedAfterTheLike_IsNotCountedTwice() {
+        Pageable pageable = PageRequest.of(0, 10);
+        // the loader already read the committed count of 5
+        countyFeedCache.get(1, pageable, loader(7));
+
+        countyFeedCache.setLikes(1, 7, 5);
+        countyFeedCache.setLikes(1, 7, 5);
+
+        assertEquals(5, countyFeedCache.get(1, pageable, loader(7)).getContent().get(0).getLikes());
+    }
+
+    @Test
+    void get_AfterTheTtl_ReloadsEvenIfPatched() throws InterruptedException {
+        countyFeedCache = new CountyFeedCache(2, 20, 100, 1, meterRegistry);
+        Pageable pageable = PageRequest.of(0, 10);
+        countyFeedCache.get(1, pageable, loader(7));
+        Thread.sleep(600);
+        countyFeedCache.setLikes(1, 7, 6);
+        Thread.sleep(600);
+
+        countyFeedCache.get(1, pageable, loader(7));
+
+        assertEquals(2, loads.get());
+    }
+
+    private Function<Pageable, Page<EventResponseDTO>> loader(int eventId) {
+        return pageable -> {
+            loads.incrementAndGet();
+            EventResponseDTO event = new EventResponseDTO();
+            event.setId(eventId);
+            event.setLikes(5);
+            return new PageImpl<>(List.of(event), pageable, 1);
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package com.citynote.service.impl;
+
+import com.citynote.dto.CursorPageDTO;
+import com.citynote.dto.EventResponseDTO;
+import com.citynote.entity.*;
+import com.citynote.entity.enums.EventType;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({EventFeedReader.class, LikeCounterBuffer.class})
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "event.viewport.county-batch-size=2"
+})
+class EventFeedReaderQueryCountTest {
+
+    private static final int EVENT_COUNT = 30;
+    private static final int PICTURES_PER_EVENT = 3;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EventFeedReader eventFeedReader;
+
+    private CountyEntity county;
+    private UserProfile profile;
+    private LocalDateTime base;
+
+    @BeforeEach
+    void setUp() {
+        county = new CountyEntity();
+        county.setCountyName("Feed County");
+        county.setCountyState("Feed State");
+        county.setCountyKey("Feed County Feed State");
+        county = entityManager.persist(county);
+
+        User user = new User();
+        user.setUsername("feeduser");
+        user.setEmail("feeduser@example.com");
+        user.setPassword("password");
+        user.setFirstName("Feed");
+        user.setLastName("User");
+        user = entityManager.persist(user);
+
+        profile = new UserProfile();
+        profile.setUser(user);
+        profile = entityManager.persist(profile);
+
+        base = LocalDateTime.now();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            EventEntity event = new EventEntity();
+            event.setTitle("Event " + i);
+            event.setContent("Content " + i);
+            event.setEventType(EventType.IMAGE);
+            event.setCounty(county);
+            event.setUserProfile(profile);
+            event.setCreateDate(base.minusMinutes(i));
+            event.setLastUpdateDate(base.minusMinutes(i));
+            event = entityManager.persist(event);
+
+            for (int order = 1; order <= PICTURES_PER_EVENT; order++) {
+                BlobEntity blob = new BlobEntity();
+                blob.setFilename("event-" + i + "-picture-" + order + ".jpg");
+                blob.setInPlaceOrder(order);
+                blob.setEvent(event);
+                entityManager.persist(blob);
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void readCountyPage_StatementCountIndependentOfPageSize() {
+        long smallPageStatements = countStatements(5);
+        long largePageStatements = countStatements(20);
+
+        // rows + count + picture links
+        assertEquals(3, smallPageStatements);
+        assertEquals(smallPageStatements, largePageStatements);
+    }
+
+    @Test
+    void readCountyPage_ReturnsNewestFirstWithOrderedPictures() {
+        Page<EventResponseDTO> page = eventFeedReader.readCountyPage(county.getId(), PageRequest.of(0, 10));
+
+        assertEquals(EVENT_COUNT, page.getTotalElements());
+        assertEquals(10, page.getContent().size());
+
+        EventResponseDTO first = page.getContent().get(0);
+        assertEquals("Event 0", first.getTitle());
+        assertEquals("Feed County", first.getCounty());
+        assertEquals("feeduser", first.getAuthorUsername());
+        assertArrayEquals(new String[]{
+                "event-0-picture-1.jpg", "event-0-picture-2.jpg", "event-0-picture-3.jpg"
+        }, first.getPictureLinks());
+    }
+
+    @Test
+    void readCountySlice_WalksWholeFeedWithoutCountQuery() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<String> titles = new ArrayList<>();
+        String cursor = "";
+        int slices = 0;
+
+        do {
+            statistics.clear();
+            CursorPageDTO<EventResponseDTO> slice = eventFeedReader.readCountySlice(county.getId(), cursor, 7);
+            // rows + picture links, no COUNT
+            assertEquals(2, statistics.getPrepareStatementCount());
+
+            slice.getContent().forEach(event -> titles.add(event.getTitle()));
+            cursor = slice.getNextCursor();
+            slices++;
+        } while (cursor != null);
+
+        assertEquals(5, slices);
+        assertEquals(EVENT_COUNT, titles.size());
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            assertEquals("Event " + i, titles.get(i));
+        }
+    }
+
+    @Test
+    void readViewport_MergesCountiesNewestFirstWithOneQueryPerBatch() {
+        CountyEntity otherCounty = new CountyEntity();
+        otherCounty.setCountyName("Other County");
+        otherCounty.setCountyState("Feed State");
+        otherCounty.setCountyKey("Other County Feed State");
+        otherCounty = entityManager.persist(otherCounty);
+        for (int i = 0; i < 10; i++) {
+            EventEntity event = new EventEntity();
+            event.setTitle("Other " + i);
+            event.setContent("Other content " + i);
+            event.setEventType(EventType.TEXT);
+            event.setCounty(otherCounty);
+            event.setUserProfile(entityManager.find(UserProfile.class, profile.getId()));
+            event.setCreateDate(base.minusMinutes(i).minusSeconds(30));
+            event.setLastUpdateDate(base.minusMinutes(i).minusSeconds(30));
+            entityManager.persist(event);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        CursorPageDTO<EventResponseDTO> slice = eventFeedReader.readViewport(
+                List.of(otherCounty.getId(), county.getId()), "", 6);
+
+        // one statement for the county batch (batch size 2) + picture links
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(List.of("Event 0", "Other 0", "Event 1", "Other 1", "Event 2", "Other 2"),
+                slice.getContent().stream().map(EventResponseDTO::getTitle).toList());
+        assertTrue(slice.isHasNext());
+
+        CursorPageDTO<EventResponseDTO> next = eventFeedReader.readViewport(
+                List.of(otherCounty.getId(), county.getId()), slice.getNextCursor(), 2);
+        assertEquals(List.of("Event 3", "Other 3"),
+                next.getContent().stream().map(EventResponseDTO::getTitle).toList());
+    }
+
+    private long countStatements(int pageSize) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<EventResponseDTO> page = eventFeedReader.readCountyPage(county.getId(), PageRequest.of(0, pageSize));
+        assertEquals(pageSize, page.getContent().size());
+
+        return statistics.getPrepareStatementCount();
+    }
+}
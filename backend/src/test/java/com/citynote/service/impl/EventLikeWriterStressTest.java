@@ -0,0 +1,180 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.CountyEntity;
+import com.citynote.entity.EventEntity;
+import com.citynote.entity.User;
+import com.citynote.entity.UserProfile;
+import com.citynote.entity.enums.EventType;
+import com.citynote.repository.CountyRepository;
+import com.citynote.repository.EventLikeRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.UserProfileRepository;
+import com.citynote.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// commits for real: the writer's transactions must race each other, not share the test's
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({EventLikeWriter.class, LikeCounterBuffer.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "event.likes.max-attempts=50",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+class EventLikeWriterStressTest {
+
+    private static final int THREADS = 16;
+    private static final int USERS = 20;
+    // odd-indexed users toggle one extra time and must end up liking the note
+    private static final int TOGGLES_PER_USER = 200;
+
+    @Autowired
+    private EventLikeWriter eventLikeWriter;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventLikeRepository eventLikeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private CountyRepository countyRepository;
+
+    private CountyEntity county;
+    private final List<User> users = new ArrayList<>();
+    private final List<UserProfile> profiles = new ArrayList<>();
+    private EventEntity event;
+
+    @BeforeEach
+    void setUp() {
+        county = new CountyEntity();
+        county.setCountyName("Stress County");
+        county.setCountyState("Stress State");
+        county.setCountyKey("Stress County Stress State");
+        county = countyRepository.save(county);
+
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("liker" + i);
+            user.setEmail("liker" + i + "@example.com");
+            user.setPassword("password");
+            user = userRepository.save(user);
+            users.add(user);
+
+            UserProfile profile = new UserProfile();
+            profile.setUser(user);
+            profiles.add(userProfileRepository.save(profile));
+        }
+
+        event = new EventEntity();
+        event.setTitle("Popular note");
+        event.setContent("Everyone likes this");
+        event.setEventType(EventType.TEXT);
+        event.setCounty(county);
+        event.setUserProfile(profiles.get(0));
+        event.setCreateDate(LocalDateTime.now());
+        event.setLastUpdateDate(LocalDateTime.now());
+        event = eventRepository.save(event);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventLikeRepository.deleteAll(eventLikeRepository.findAll().stream()
+                .filter(like -> like.getEvent().getId() == event.getId())
+                .toList());
+        eventRepository.deleteById(event.getId());
+        userProfileRepository.deleteAll(profiles);
+        userRepository.deleteAll(users);
+        countyRepository.delete(county);
+    }
+
+    @Test
+    void concurrentToggles_KeepCounterEqualToLikeRows() throws Exception {
+        int eventId = event.getId();
+        AtomicIntegerArray successfulToggles = new AtomicIntegerArray(USERS);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Integer> togglers = new ArrayList<>();
+            for (int user = 0; user < USERS; user++) {
+                for (int i = 0; i < TOGGLES_PER_USER + user % 2; i++) {
+                    togglers.add(user);
+                }
+            }
+            Collections.shuffle(togglers, new Random(42));
+
+            List<Future<?>> results = new ArrayList<>(togglers.size());
+            for (int user : togglers) {
+                int profileId = profiles.get(user).getId();
+                results.add(pool.submit(() -> {
+                    start.await();
+                    eventLikeWriter.toggle(eventId, profileId);
+                    successfulToggles.incrementAndGet(user);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // every toggle flips the viewer's state, so an odd count leaves the note liked
+        int expectedLikes = 0;
+        for (int user = 0; user < USERS; user++) {
+            assertEquals(TOGGLES_PER_USER + user % 2, successfulToggles.get(user));
+            expectedLikes += successfulToggles.get(user) % 2;
+        }
+        assertEquals(USERS / 2, expectedLikes);
+
+        int likeRows = eventLikeRepository.countByEventId(eventId);
+        int counter = eventRepository.findById(eventId).orElseThrow().getLikes();
+        assertEquals(expectedLikes, likeRows);
+        assertEquals(likeRows, counter);
+    }
+
+    @Test
+    void toggle_AlternatesLikeAndUnlike() {
+        int eventId = event.getId();
+        int profileId = profiles.get(1).getId();
+
+        assertTrue(eventLikeWriter.toggle(eventId, profileId));
+        assertEquals(1, eventRepository.findById(eventId).orElseThrow().getLikes());
+        assertFalse(eventLikeWriter.toggle(eventId, profileId));
+        assertEquals(0, eventRepository.findById(eventId).orElseThrow().getLikes());
+        assertEquals(0, eventLikeRepository.countByEventId(eventId));
+    }
+}
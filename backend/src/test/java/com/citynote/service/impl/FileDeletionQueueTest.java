@@ -0,0 +1,148 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.PendingFileDeletionEntity;
+import com.citynote.repository.PendingFileDeletionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// commits for real: rows must be visible to the worker thread
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+class FileDeletionQueueTest {
+
+    @Autowired
+    private PendingFileDeletionRepository pendingFileDeletionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ContentAddressedStore contentAddressedStore;
+    private SimpleMeterRegistry meterRegistry;
+    private FileDeletionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        contentAddressedStore = mock(ContentAddressedStore.class);
+        meterRegistry = new SimpleMeterRegistry();
+        queue = new FileDeletionQueue(pendingFileDeletionRepository, contentAddressedStore, 2, 3, 60_000, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+        pendingFileDeletionRepository.deleteAll();
+    }
+
+    @Test
+    void enqueue_RolledBack_NothingIsDeleted() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            queue.enqueue(List.of("a.jpg"));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, pendingFileDeletionRepository.count());
+        verifyNoInteractions(contentAddressedStore);
+    }
+
+    @Test
+    void enqueue_Committed_DeletedInBackground() throws InterruptedException {
+        when(contentAddressedStore.discard(anyString())).thenReturn(true);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> queue.enqueue(List.of("a.jpg", "b.jpg", "a.jpg")));
+
+        verify(contentAddressedStore, timeout(5000)).discard("a.jpg");
+        verify(contentAddressedStore, timeout(5000)).discard("b.jpg");
+        awaitEmptyQueue();
+        verify(contentAddressedStore, times(1)).discard("a.jpg");
+    }
+
+    @Test
+    void drain_MoreThanOneBatchDue_DrainsAll() {
+        when(contentAddressedStore.discard(anyString())).thenReturn(true);
+        for (int i = 0; i < 5; i++) {
+            pending("photo" + i + ".jpg");
+        }
+
+        queue.drain();
+
+        assertEquals(0, pendingFileDeletionRepository.count());
+        verify(contentAddressedStore, times(5)).discard(anyString());
+        assertEquals(5, meterRegistry.counter("file.deletions.completed").count());
+    }
+
+    @Test
+    void drain_FailedDeletion_RetriedAfterBackoff() {
+        when(contentAddressedStore.discard("locked.jpg")).thenReturn(false);
+        pending("locked.jpg");
+
+        queue.drain();
+        queue.drain();
+
+        // the second drain found nothing due yet
+        verify(contentAddressedStore, times(1)).discard("locked.jpg");
+        PendingFileDeletionEntity deletion = pendingFileDeletionRepository.findAll().get(0);
+        assertEquals(1, deletion.getAttempts());
+        assertTrue(deletion.getNextAttemptDate().isAfter(LocalDateTime.now().plusSeconds(30)));
+        assertEquals(1, meterRegistry.counter("file.deletions.retried").count());
+    }
+
+    @Test
+    void drain_LastAttemptFails_GivesUp() {
+        when(contentAddressedStore.discard("gone.jpg")).thenThrow(new IllegalStateException("disk on fire"));
+        PendingFileDeletionEntity deletion = pending("gone.jpg");
+        pendingFileDeletionRepository.scheduleRetry(deletion.getId(), 2, LocalDateTime.now().minusSeconds(1));
+
+        queue.drain();
+
+        assertEquals(0, pendingFileDeletionRepository.count());
+        assertEquals(1, meterRegistry.counter("file.deletions.abandoned").count());
+    }
+
+    @Test
+    void backoff_DoublesUpToOneHour() {
+        assertEquals(Duration.ofMinutes(1), queue.backoff(1));
+        assertEquals(Duration.ofMinutes(2), queue.backoff(2));
+        assertEquals(Duration.ofMinutes(4), queue.backoff(3));
+        assertEquals(Duration.ofHours(1), queue.backoff(30));
+    }
+
+    private PendingFileDeletionEntity pending(String filename) {
+        PendingFileDeletionEntity deletion = new PendingFileDeletionEntity();
+        deletion.setFilename(filename);
+        deletion.setNextAttemptDate(LocalDateTime.now().minusSeconds(1));
+        deletion.setCreateDate(LocalDateTime.now());
+        return pendingFileDeletionRepository.save(deletion);
+    }
+
+    private void awaitEmptyQueue() throws InterruptedException {
+        for (int i = 0; i < 100 && pendingFileDeletionRepository.count() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, pendingFileDeletionRepository.count());
+    }
+}
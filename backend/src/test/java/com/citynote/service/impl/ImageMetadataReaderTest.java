@@ -0,0 +1,125 @@
+package com.citynote.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetadataReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void read_Png_ReportsDimensionsTypeAndPlaceholder() throws IOException {
+        Path file = write("wide.png", encode(gradient(300, 200), "png"));
+
+        ImageMetadata metadata = ImageMetadataReader.read(file, Files.size(file));
+
+        assertEquals(300, (int) metadata.width());
+        assertEquals(200, (int) metadata.height());
+        assertEquals(Files.size(file), metadata.size());
+        assertEquals("image/png", metadata.mimeType());
+        // 4 x 3 components: size flag, maximum, DC and eleven AC pairs
+        assertEquals(28, metadata.blurHash().length());
+        assertEquals('L', metadata.blurHash().charAt(0));
+    }
+
+    @Test
+    void read_Portrait_UsesMoreVerticalComponents() throws IOException {
+        Path file = write("tall.png", encode(gradient(120, 400), "png"));
+
+        ImageMetadata metadata = ImageMetadataReader.read(file, Files.size(file));
+
+        assertEquals(120, (int) metadata.width());
+        assertEquals(400, (int) metadata.height());
+        assertEquals('T', metadata.blurHash().charAt(0));
+    }
+
+    @Test
+    void read_RotatedJpeg_ReportsDisplayedDimensions() throws IOException {
+        byte[] jpeg = encode(gradient(200, 100), "jpg");
+        Path file = write("rotated.jpg", withOrientation(jpeg, 6));
+
+        ImageMetadata metadata = ImageMetadataReader.read(file, Files.size(file));
+
+        assertEquals("image/jpeg", metadata.mimeType());
+        assertEquals(100, (int) metadata.width());
+        assertEquals(200, (int) metadata.height());
+        assertEquals('T', metadata.blurHash().charAt(0));
+    }
+
+    @Test
+    void read_NotAnImage_KeepsOnlyTheSize() throws IOException {
+        Path file = write("notes.jpg", "not a picture".getBytes(StandardCharsets.US_ASCII));
+
+        ImageMetadata metadata = ImageMetadataReader.read(file, 13);
+
+        assertEquals(new ImageMetadata(null, null, 13, null, null, null), metadata);
+    }
+
+    @Test
+    void blurHash_UniformImage_EncodesItsColourAsTheAverage() {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(0x40, 0x80, 0xc0));
+        graphics.fillRect(0, 0, 32, 32);
+        graphics.dispose();
+
+        // 0x4080c0 in four base-83 digits
+        assertEquals("007Wp@", BlurHash.encode(image, 1, 1));
+        String hash = BlurHash.encode(image, 4, 3);
+        assertEquals(28, hash.length());
+        assertEquals("7Wp@", hash.substring(2, 6));
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.write(file, content);
+        return file;
+    }
+
+    private static BufferedImage gradient(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // inserts an EXIF APP1 segment with only an orientation tag right after SOI
+    static byte[] withOrientation(byte[] jpeg, int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(26);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+
+        byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 4 + exif.length + tiff.capacity());
+        out.put(jpeg, 0, 2);
+        out.put((byte) 0xff).put((byte) 0xe1).putShort((short) (2 + exif.length + tiff.capacity()));
+        out.put(exif).put(tiff.array());
+        out.put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+}
@@ -0,0 +1,181 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageRenditionWorkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalUploadStorage storage;
+    private ImageRenditionWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // the storage resolves its path against user.dir
+        storage = new LocalUploadStorage(Paths.get(System.getProperty("user.dir")).toAbsolutePath()
+                .relativize(tempDir).toString());
+        worker = new ImageRenditionWorker(storage, new int[]{480, 160, 1280}, 1, 1, 40_000_000L, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    @Test
+    void render_WritesEveryRenditionNarrowerThanTheOriginal() throws IOException {
+        String original = writePng("wide.png", 2000, 1000);
+
+        worker.render(original);
+
+        assertWidth("wide.w160.jpg", 160, 80);
+        assertWidth("wide.w480.jpg", 480, 240);
+        assertWidth("wide.w1280.jpg", 1280, 640);
+        try (var staged = Files.list(tempDir.resolve(LocalUploadStorage.STAGING_DIR))) {
+            assertEquals(0, staged.count(), "no temp files left behind");
+        }
+    }
+
+    @Test
+    void render_NeverUpscales() throws IOException {
+        String original = writePng("small.png", 300, 200);
+
+        worker.render(original);
+
+        assertTrue(storage.resolve("small.w160.jpg").isPresent());
+        assertFalse(storage.resolve("small.w480.jpg").isPresent());
+        assertFalse(storage.resolve("small.w1280.jpg").isPresent());
+    }
+
+    @Test
+    void render_UndecodableFile_LeavesOnlyTheOriginal() throws IOException {
+        Files.writeString(tempDir.resolve("photo.heic"), "not an image the JDK can read");
+
+        worker.render("photo.heic");
+
+        assertEquals(0, meterRegistry.get("file.renditions.failed").counter().count());
+        try (var files = Files.walk(tempDir)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void render_RotatedJpeg_RendersUpright() throws IOException {
+        // stored landscape with the top half red; orientation 6 shows it turned clockwise
+        BufferedImage sensor = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = sensor.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2000, 500);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(0, 500, 2000, 500);
+        graphics.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(sensor, "jpg", jpeg);
+        Path staged = storage.createTempFile();
+        Files.write(staged, ImageMetadataReaderTest.withOrientation(jpeg.toByteArray(), 6));
+        storage.store("portrait.jpg", staged);
+
+        worker.render("portrait.jpg");
+
+        assertWidth("portrait.w160.jpg", 160, 320);
+        assertWidth("portrait.w480.jpg", 480, 960);
+        assertFalse(storage.resolve("portrait.w1280.jpg").isPresent(), "wider than the displayed image");
+        BufferedImage rendition = ImageIO.read(storage.resolve("portrait.w480.jpg").orElseThrow().toFile());
+        assertTrue(new Color(rendition.getRGB(40, 480)).getBlue() > 200, "left half blue");
+        assertTrue(new Color(rendition.getRGB(440, 480)).getRed() > 200, "right half red");
+    }
+
+    @Test
+    void select_SmallestReadyRenditionOrOriginal() throws IOException {
+        String original = writePng("pick.png", 2000, 1000);
+
+        assertEquals(Optional.empty(), worker.select(original, 300), "not rendered yet");
+
+        worker.render(original);
+
+        assertEquals(storage.resolve("pick.w480.jpg"), worker.select(original, 300).flatMap(StoredObject::file));
+        assertEquals(storage.resolve("pick.w160.jpg"), worker.select(original, 160).flatMap(StoredObject::file));
+        assertTrue(worker.select(original, 160).isPresent());
+        assertEquals(Optional.empty(), worker.select(original, 4000), "wider than every rendition");
+        assertEquals(Optional.empty(), worker.select(original, null));
+    }
+
+    @Test
+    void deleteRenditions_RemovesAllSizes() throws IOException {
+        String original = writePng("gone.png", 2000, 1000);
+        worker.render(original);
+
+        worker.deleteRenditions(original);
+
+        assertFalse(storage.resolve("gone.w160.jpg").isPresent());
+        assertFalse(storage.resolve("gone.w480.jpg").isPresent());
+        assertFalse(storage.resolve("gone.w1280.jpg").isPresent());
+        assertTrue(storage.resolve(original).isPresent());
+    }
+
+    @Test
+    void subsampling_KeepsTwiceTheLargestRenditionWithinPixelBudget() {
+        assertEquals(1, worker.subsampling(2000, 1000, 1280));
+        assertEquals(3, worker.subsampling(8000, 6000, 1280));
+
+        ImageRenditionWorker tightBudget = new ImageRenditionWorker(
+                storage, new int[]{160}, 1, 1, 1_000_000L, new SimpleMeterRegistry());
+        try {
+            // 1000 x 100000 strip: as coarse as the rendition width allows, never narrower than it
+            assertEquals(6, tightBudget.subsampling(1000, 100_000, 160));
+        } finally {
+            tightBudget.shutdown();
+        }
+    }
+
+    @Test
+    void submit_QueueFull_CountsRejection() throws IOException {
+        String original = writePng("busy.png", 2000, 1000);
+
+        for (int i = 0; i < 20; i++) {
+            worker.submit(original);
+        }
+
+        assertTrue(meterRegistry.get("file.renditions.rejected").counter().count() > 0);
+        assertNotNull(meterRegistry.get("file.renditions.queue").gauge());
+    }
+
+    private String writePng(String name, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < width; x += 7) {
+            image.setRGB(x, x * height / width, 0xFF336699);
+        }
+        Path staged = storage.createTempFile();
+        ImageIO.write(image, "png", staged.toFile());
+        storage.store(name, staged);
+        return name;
+    }
+
+    private void assertWidth(String rendition, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(storage.resolve(rendition).orElseThrow().toFile());
+        assertNotNull(image, rendition + " missing");
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+}
@@ -0,0 +1,108 @@
+package com.citynote.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageUploadStreamTest {
+
+    private static final byte[] JPEG_HEAD = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0, 1};
+    private static final byte[] PNG_HEAD = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0x0D};
+
+    @Test
+    void sniff_RecognisesEachFormat() {
+        assertEquals(Optional.of(ImageFormat.JPEG), sniff(JPEG_HEAD));
+        assertEquals(Optional.of(ImageFormat.PNG), sniff(PNG_HEAD));
+        assertEquals(Optional.of(ImageFormat.GIF), sniff(ascii("GIF89a\u0001\u0000\u0001\u0000\u0000\u0000")));
+        assertEquals(Optional.of(ImageFormat.WEBP), sniff(ascii("RIFF$\u0000\u0000\u0000WEBP")));
+        assertEquals(Optional.of(ImageFormat.HEIF), sniff(ascii("\u0000\u0000\u0000\u0018ftypheic")));
+        assertEquals(Optional.empty(), sniff(ascii("\u0000\u0000\u0000\u0018ftypisom")), "MP4 is not an image");
+        assertEquals(Optional.empty(), sniff(ascii("<svg xmlns=\"")));
+    }
+
+    @Test
+    void fromExtension_IsCaseInsensitive() {
+        assertEquals(Optional.of(ImageFormat.JPEG), ImageFormat.fromExtension(".JPEG"));
+        assertEquals(Optional.of(ImageFormat.HEIF), ImageFormat.fromExtension(".heic"));
+        assertEquals(Optional.empty(), ImageFormat.fromExtension(".exe"));
+    }
+
+    @Test
+    void read_MatchingContent_PassesThrough() throws IOException {
+        byte[] content = withHead(JPEG_HEAD, 100_000);
+
+        byte[] read = new ImageUploadStream(new ByteArrayInputStream(content), ImageFormat.JPEG, 1_000_000).readAllBytes();
+
+        assertArrayEquals(content, read);
+    }
+
+    @Test
+    void read_SignatureSplitAcrossReads_IsStillChecked() throws IOException {
+        InputStream upload = new ImageUploadStream(new ByteArrayInputStream(withHead(PNG_HEAD, 64)), ImageFormat.JPEG, 1_000);
+
+        // byte by byte: the mismatch shows once the whole signature has arrived
+        for (int i = 0; i < ImageFormat.SIGNATURE_LENGTH - 1; i++) {
+            assertNotEquals(-1, upload.read());
+        }
+        UploadRejectedException rejected = assertThrows(UploadRejectedException.class, upload::read);
+        assertTrue(rejected.getMessage().contains("does not match"));
+    }
+
+    @Test
+    void read_NotAnImage_IsRejected() {
+        byte[] script = "#!/bin/sh\nrm -rf /\n".getBytes(StandardCharsets.US_ASCII);
+
+        InputStream upload = new ImageUploadStream(new ByteArrayInputStream(script), ImageFormat.PNG, 1_000);
+
+        assertThrows(UploadRejectedException.class, upload::readAllBytes);
+    }
+
+    @Test
+    void read_ShorterThanSignature_IsRejected() {
+        InputStream upload = new ImageUploadStream(new ByteArrayInputStream(new byte[]{(byte) 0xFF}), ImageFormat.JPEG, 1_000);
+
+        assertThrows(UploadRejectedException.class, upload::readAllBytes);
+    }
+
+    @Test
+    void read_OverLimit_IsRejectedAtTheLimit() throws IOException {
+        InputStream upload = new ImageUploadStream(
+                new ByteArrayInputStream(withHead(JPEG_HEAD, 3 * 1024 * 1024)), ImageFormat.JPEG, 2 * 1024 * 1024);
+        byte[] chunk = new byte[64 * 1024];
+        long read = 0;
+
+        UploadRejectedException rejected = null;
+        try {
+            for (int n; (n = upload.read(chunk)) != -1; ) {
+                read += n;
+            }
+        } catch (UploadRejectedException e) {
+            rejected = e;
+        }
+
+        assertNotNull(rejected);
+        assertEquals("File size exceeds 2MB limit", rejected.getMessage());
+        assertTrue(read <= 2 * 1024 * 1024);
+    }
+
+    private static Optional<ImageFormat> sniff(byte[] head) {
+        return ImageFormat.sniff(head, head.length);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] withHead(byte[] head, int length) {
+        byte[] content = Arrays.copyOf(head, length);
+        Arrays.fill(content, head.length, length, (byte) 0x5A);
+        return content;
+    }
+}
@@ -0,0 +1,216 @@
+package com.citynote.service.impl;
+
+import com.citynote.entity.CountyEntity;
+import com.citynote.entity.EventEntity;
+import com.citynote.entity.User;
+import com.citynote.entity.UserProfile;
+import com.citynote.entity.enums.EventType;
+import com.citynote.repository.CountyRepository;
+import com.citynote.repository.EventLikeRepository;
+import com.citynote.repository.EventRepository;
+import com.citynote.repository.UserProfileRepository;
+import com.citynote.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({EventLikeWriter.class, LikeCounterBuffer.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "event.likes.mode=coalesced",
+        "event.likes.max-attempts=50",
+        "event.likes.flush-batch-size=2",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+class LikeCounterBufferTest {
+
+    private static final int USERS = 10;
+
+    @Autowired
+    private LikeCounterBuffer likeCounterBuffer;
+
+    @Autowired
+    private EventLikeWriter eventLikeWriter;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventLikeRepository eventLikeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private CountyRepository countyRepository;
+
+    private CountyEntity county;
+    private final List<User> users = new ArrayList<>();
+    private final List<UserProfile> profiles = new ArrayList<>();
+    private final List<EventEntity> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        county = new CountyEntity();
+        county.setCountyName("Buffer County");
+        county.setCountyState("Buffer State");
+        county.setCountyKey("Buffer County Buffer State");
+        county = countyRepository.save(county);
+
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("buffered" + i);
+            user.setEmail("buffered" + i + "@example.com");
+            user.setPassword("password");
+            users.add(userRepository.save(user));
+
+            UserProfile profile = new UserProfile();
+            profile.setUser(users.get(i));
+            profiles.add(userProfileRepository.save(profile));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            EventEntity event = new EventEntity();
+            event.setTitle("Viral note " + i);
+            event.setContent("Content " + i);
+            event.setEventType(EventType.TEXT);
+            event.setCounty(county);
+            event.setUserProfile(profiles.get(0));
+            event.setCreateDate(LocalDateTime.now());
+            event.setLastUpdateDate(LocalDateTime.now());
+            events.add(eventRepository.save(event));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        likeCounterBuffer.flush();
+        List<Integer> eventIds = events.stream().map(EventEntity::getId).toList();
+        eventLikeRepository.deleteAll(eventLikeRepository.findAll().stream()
+                .filter(like -> eventIds.contains(like.getEvent().getId()))
+                .toList());
+        eventRepository.deleteAll(events);
+        userProfileRepository.deleteAll(profiles);
+        userRepository.deleteAll(users);
+        countyRepository.delete(county);
+    }
+
+    @Test
+    void pendingDelta_IsVisibleUntilFlushed() {
+        int eventId = events.get(0).getId();
+
+        likeCounterBuffer.add(eventId, 3);
+        likeCounterBuffer.add(eventId, -1);
+
+        assertEquals(2, likeCounterBuffer.pendingDelta(eventId));
+        assertEquals(0, eventRepository.findById(eventId).orElseThrow().getLikes());
+
+        likeCounterBuffer.flush();
+
+        assertEquals(0, likeCounterBuffer.pendingDelta(eventId));
+        assertEquals(2, eventRepository.findById(eventId).orElseThrow().getLikes());
+    }
+
+    @Test
+    void flush_NegativeDeltaDoesNotTakeLikesBelowZero() {
+        int eventId = events.get(0).getId();
+        int otherId = events.get(1).getId();
+
+        likeCounterBuffer.add(eventId, -2);
+        likeCounterBuffer.add(otherId, 1);
+        likeCounterBuffer.flush();
+
+        assertEquals(0, likeCounterBuffer.pendingDelta(eventId));
+        assertEquals(0, eventRepository.findById(eventId).orElseThrow().getLikes());
+        assertEquals(1, eventRepository.findById(otherId).orElseThrow().getLikes());
+    }
+
+    @Test
+    void withPendingDelta_CountsEachLikeOnceAcrossAFlush() {
+        int eventId = events.get(0).getId();
+        likeCounterBuffer.add(eventId, 3);
+
+        assertEquals(Optional.of(3L), likeCounterBuffer.withPendingDelta(eventId, () -> eventRepository.findLikesById(eventId)));
+
+        likeCounterBuffer.flush();
+        likeCounterBuffer.add(eventId, 1);
+
+        assertEquals(Optional.of(4L), likeCounterBuffer.withPendingDelta(eventId, () -> eventRepository.findLikesById(eventId)));
+    }
+
+    @Test
+    void concurrentTogglesWithBackgroundFlushes_CounterMatchesLikeRows() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(9);
+        try {
+            // flushes race the toggles, as the scheduler would
+            Future<?> flusher = pool.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    likeCounterBuffer.flush();
+                    Thread.sleep(2);
+                }
+                return null;
+            });
+
+            List<Future<?>> togglers = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                togglers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 150; i++) {
+                        int eventId = events.get((seed + i) % events.size()).getId();
+                        int profileId = profiles.get((seed * 7 + i) % USERS).getId();
+                        eventLikeWriter.toggle(eventId, profileId);
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> toggler : togglers) {
+                toggler.get(2, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            flusher.get(1, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        likeCounterBuffer.flush();
+        for (EventEntity event : events) {
+            int eventId = event.getId();
+            assertEquals(0, likeCounterBuffer.pendingDelta(eventId));
+            assertEquals(eventLikeRepository.countByEventId(eventId),
+                    eventRepository.findById(eventId).orElseThrow().getLikes());
+        }
+    }
+}
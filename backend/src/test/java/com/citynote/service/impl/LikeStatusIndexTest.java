@@ -0,0 +1,79 @@
+package com.citynote.service.impl;
+
+import com.citynote.repository.EventLikeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LikeStatusIndexTest {
+
+    @Mock
+    private EventLikeRepository eventLikeRepository;
+
+    private LikeStatusIndex likeStatusIndex;
+
+    @BeforeEach
+    void setUp() {
+        likeStatusIndex = new LikeStatusIndex(eventLikeRepository, 100, 30, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void likeStatus_LoadsOnceAndAnswersWholeList() {
+        when(eventLikeRepository.findEventIdsByUserProfileId(1)).thenReturn(List.of(3, 70_000, 5));
+
+        Map<Integer, Boolean> first = likeStatusIndex.likeStatus(1, List.of(5, 4, 70_000));
+        Map<Integer, Boolean> second = likeStatusIndex.likeStatus(1, List.of(3));
+
+        assertEquals(List.of(5, 4, 70_000), List.copyOf(first.keySet()));
+        assertEquals(List.of(true, false, true), List.copyOf(first.values()));
+        assertTrue(second.get(3));
+        verify(eventLikeRepository, times(1)).findEventIdsByUserProfileId(1);
+    }
+
+    @Test
+    void refresh_PatchesLoadedProfileWithoutReload() {
+        when(eventLikeRepository.findEventIdsByUserProfileId(1)).thenReturn(List.of(3));
+        when(eventLikeRepository.existsByEventIdAndUserProfileId(8, 1)).thenReturn(true);
+        when(eventLikeRepository.existsByEventIdAndUserProfileId(3, 1)).thenReturn(false);
+        likeStatusIndex.likeStatus(1, List.of(3));
+
+        likeStatusIndex.refresh(1, 8);
+        likeStatusIndex.refresh(1, 3);
+        likeStatusIndex.refresh(1, 8);
+
+        Map<Integer, Boolean> status = likeStatusIndex.likeStatus(1, List.of(3, 8));
+        assertFalse(status.get(3));
+        assertTrue(status.get(8));
+        verify(eventLikeRepository, times(1)).findEventIdsByUserProfileId(1);
+    }
+
+    @Test
+    void refresh_DoubleTapPatchedOutOfOrder_EndsAtTheCommittedState() {
+        when(eventLikeRepository.findEventIdsByUserProfileId(1)).thenReturn(List.of());
+        likeStatusIndex.likeStatus(1, List.of(8));
+        // like then unlike both committed before either patch ran; the unlike's patch runs first
+        when(eventLikeRepository.existsByEventIdAndUserProfileId(8, 1)).thenReturn(false);
+
+        likeStatusIndex.refresh(1, 8);
+        likeStatusIndex.refresh(1, 8);
+
+        assertFalse(likeStatusIndex.likeStatus(1, List.of(8)).get(8));
+    }
+
+    @Test
+    void refresh_ProfileNotLoaded_IsLeftToLazyLoad() {
+        likeStatusIndex.refresh(2, 8);
+
+        verifyNoInteractions(eventLikeRepository);
+    }
+}
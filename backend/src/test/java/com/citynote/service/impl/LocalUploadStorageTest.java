@@ -0,0 +1,169 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.UploadStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalUploadStorageTest {
+
+    private static final String HASHED_NAME = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg";
+
+    @TempDir
+    Path tempDir;
+
+    private Path root;
+    private LocalUploadStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        root = tempDir.resolve("uploads");
+        // the storage resolves its path against user.dir
+        storage = new LocalUploadStorage(Paths.get(System.getProperty("user.dir")).toAbsolutePath()
+                .relativize(root).toString());
+    }
+
+    @Test
+    void store_CreatesDirectoriesAndShardsByNamePrefix() throws IOException {
+        assertTrue(storage.store(HASHED_NAME, staged("content")));
+
+        Path stored = root.resolve("9f").resolve("86").resolve(HASHED_NAME);
+        assertEquals(stored, storage.resolve(HASHED_NAME).orElseThrow());
+        assertEquals("content", Files.readString(stored));
+    }
+
+    @Test
+    void store_RenditionsShareTheOriginalsShard() throws IOException {
+        storage.store("report-photo.png", staged("original"));
+        storage.store("report-photo.w160.jpg", staged("rendition"));
+
+        assertEquals(storage.resolve("report-photo.png").orElseThrow().getParent(),
+                storage.resolve("report-photo.w160.jpg").orElseThrow().getParent());
+    }
+
+    @Test
+    void store_ExistingName_LeavesStagedFile() throws IOException {
+        storage.store(HASHED_NAME, staged("first"));
+        Path second = staged("first");
+
+        assertFalse(storage.store(HASHED_NAME, second));
+
+        assertTrue(Files.exists(second));
+    }
+
+    @Test
+    void resolve_ReadsFlatLayoutUntilMigrated() throws IOException {
+        Files.createDirectories(root);
+        Path flat = Files.writeString(root.resolve("3f1c2a9e-5b7d-4c1e-9f00-123456789abc.jpg"), "legacy");
+
+        assertEquals(flat, storage.resolve("3f1c2a9e-5b7d-4c1e-9f00-123456789abc.jpg").orElseThrow());
+
+        assertEquals(1, storage.migrateFlatFiles(10));
+
+        Path sharded = storage.resolve("3f1c2a9e-5b7d-4c1e-9f00-123456789abc.jpg").orElseThrow();
+        assertEquals(root.resolve("3f").resolve("1c"), sharded.getParent());
+        assertEquals("legacy", Files.readString(sharded));
+        assertFalse(Files.exists(flat));
+    }
+
+    @Test
+    void migrateFlatFiles_MovesInBatchesAndSkipsTempFiles() throws IOException {
+        Files.createDirectories(root);
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(root.resolve(String.format("%04x-legacy.jpg", i)), "legacy " + i);
+        }
+        Files.writeString(root.resolve("abcd.w160.jpg.tmp"), "half written");
+
+        assertEquals(3, storage.migrateFlatFiles(3));
+        assertEquals(2, storage.migrateFlatFiles(3));
+        assertEquals(0, storage.migrateFlatFiles(3));
+
+        for (int i = 0; i < 5; i++) {
+            String name = String.format("%04x-legacy.jpg", i);
+            assertEquals("legacy " + i, Files.readString(storage.resolve(name).orElseThrow()));
+        }
+        assertTrue(Files.exists(root.resolve("abcd.w160.jpg.tmp")));
+    }
+
+    @Test
+    void migrateFlatFiles_TargetExistsWithDifferentSize_KeepsBoth() throws IOException {
+        storage.store(HASHED_NAME, staged("sharded copy"));
+        Path flat = Files.writeString(root.resolve(HASHED_NAME), "flat");
+
+        assertEquals(0, storage.migrateFlatFiles(10));
+
+        assertEquals("sharded copy", Files.readString(storage.resolve(HASHED_NAME).orElseThrow()));
+        assertEquals("flat", Files.readString(flat));
+    }
+
+    @Test
+    void migrateFlatFiles_TargetExistsWithSameSize_DropsTheFlatCopy() throws IOException {
+        storage.store(HASHED_NAME, staged("same"));
+        Path flat = Files.writeString(root.resolve(HASHED_NAME), "same");
+
+        assertEquals(1, storage.migrateFlatFiles(10));
+
+        assertFalse(Files.exists(flat));
+        assertEquals("same", Files.readString(storage.resolve(HASHED_NAME).orElseThrow()));
+    }
+
+    @Test
+    void delete_RemovesEitherLayout() throws IOException {
+        storage.store(HASHED_NAME, staged("sharded"));
+        Files.writeString(root.resolve("flat.jpg"), "flat");
+
+        assertTrue(storage.delete(HASHED_NAME));
+        assertTrue(storage.delete("flat.jpg"));
+        assertFalse(storage.delete("flat.jpg"));
+
+        assertTrue(storage.resolve(HASHED_NAME).isEmpty());
+        assertTrue(storage.resolve("flat.jpg").isEmpty());
+    }
+
+    @Test
+    void list_FlatFilesFirstThenShardsInNameOrder() throws IOException {
+        storage.store("ffff0000.jpg", staged("last shard"));
+        storage.store(HASHED_NAME, staged("sharded"));
+        storage.store("9f86aaaa.png", staged("same shard"));
+        Files.writeString(root.resolve("0000-legacy.jpg"), "flat");
+        Files.writeString(root.resolve("abcd.w160.jpg.tmp"), "half written");
+        storage.createTempFile();
+
+        List<String> names = new ArrayList<>();
+        for (Iterator<UploadStorage.Entry> entries = storage.list(); entries.hasNext(); ) {
+            UploadStorage.Entry entry = entries.next();
+            names.add(entry.name());
+            assertEquals(Files.size(storage.resolve(entry.name()).orElseThrow()), entry.size());
+        }
+
+        assertEquals(List.of("0000-legacy.jpg", "9f86aaaa.png", HASHED_NAME, "ffff0000.jpg"), names);
+    }
+
+    @Test
+    void list_EmptyStore_ListsNothing() throws IOException {
+        assertFalse(storage.list().hasNext());
+    }
+
+    @Test
+    void resolve_RejectsPathsOutsideTheStore() throws IOException {
+        Files.writeString(tempDir.resolve("secret.txt"), "secret");
+
+        assertTrue(storage.resolve("../secret.txt").isEmpty());
+        assertTrue(storage.resolve(".staging").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> storage.delete("../secret.txt"));
+    }
+
+    private Path staged(String content) throws IOException {
+        return Files.writeString(storage.createTempFile(), content);
+    }
+}
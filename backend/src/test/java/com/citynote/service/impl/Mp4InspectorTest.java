@@ -0,0 +1,134 @@
+package com.citynote.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp4InspectorTest {
+
+    private static final byte[] PNG_HEAD = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0x0D};
+    private static final int[] IDENTITY = {0x10000, 0, 0, 0, 0x10000, 0, 0, 0, 0x40000000};
+    // 90 degrees, as phones write portrait clips
+    private static final int[] QUARTER_TURN = {0, 0x10000, 0, -0x10000, 0, 0, 0, 0, 0x40000000};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void inspect_MoovAfterMediaData_ReadsSizeDurationAndCoverArt() throws IOException {
+        byte[] moov = box("moov", mvhd(600, 7_200), trak(0, 0, IDENTITY), trak(1280, 720, IDENTITY),
+                box("udta", metaWithCover(PNG_HEAD)));
+        Path file = write("clip.mp4", ftyp("isom"), box("mdat", new byte[50_000]), moov);
+
+        Mp4Inspector.Mp4Info info = Mp4Inspector.inspect(file, Files.size(file));
+
+        // the audio track comes first and has no size
+        assertEquals(1280, (int) info.width());
+        assertEquals(720, (int) info.height());
+        assertEquals(12_000L, (long) info.durationMillis());
+        assertArrayEquals(PNG_HEAD, info.coverArt());
+    }
+
+    @Test
+    void inspect_RotatedTrack_ReportsDisplayedSize() throws IOException {
+        Path file = write("portrait.mov", ftyp("qt  "), box("moov", mvhd(1_000, 500), trak(1920, 1080, QUARTER_TURN)));
+
+        Mp4Inspector.Mp4Info info = Mp4Inspector.inspect(file, Files.size(file));
+
+        assertEquals(1080, (int) info.width());
+        assertEquals(1920, (int) info.height());
+        assertNull(info.coverArt());
+    }
+
+    @Test
+    void inspect_TruncatedMoov_ReturnsNothing() throws IOException {
+        byte[] complete = concat(ftyp("isom"), box("moov", mvhd(600, 600), trak(640, 480, IDENTITY)));
+        Path file = write("cut.mp4", Arrays.copyOf(complete, complete.length - 60));
+
+        Mp4Inspector.Mp4Info info = Mp4Inspector.inspect(file, Files.size(file));
+
+        assertNull(info.width());
+        assertNull(info.durationMillis());
+    }
+
+    @Test
+    void inspect_LargeSizePastTheEnd_StopsWalking() throws IOException {
+        // size 1 means a 64-bit size follows; this one would overflow the position
+        byte[] huge = concat(ByteBuffer.allocate(4).putInt(1).array(), ascii("free"),
+                ByteBuffer.allocate(8).putLong(Long.MAX_VALUE - 8).array());
+        Path file = write("huge.mp4", ftyp("isom"), huge, box("moov", mvhd(600, 600), trak(640, 480, IDENTITY)));
+
+        Mp4Inspector.Mp4Info info = Mp4Inspector.inspect(file, Files.size(file));
+
+        assertNull(info.width());
+        assertEquals(new ImageMetadata(null, null, Files.size(file), "video/mp4", null, null),
+                ImageMetadataReader.read(file, Files.size(file)));
+    }
+
+    @Test
+    void metadataReader_Video_ReportsTypeAndSizeWithoutPlaceholder() throws IOException {
+        Path file = write("clip.mp4", ftyp("mp42"), box("moov", mvhd(600, 600), trak(640, 480, IDENTITY)));
+
+        ImageMetadata metadata = ImageMetadataReader.read(file, Files.size(file));
+
+        assertEquals(new ImageMetadata(640, 480, Files.size(file), "video/mp4", null, null), metadata);
+    }
+
+    private Path write(String name, byte[]... parts) throws IOException {
+        return Files.write(tempDir.resolve(name), concat(parts));
+    }
+
+    private static byte[] ftyp(String brand) {
+        return box("ftyp", ascii(brand), new byte[4], ascii(brand));
+    }
+
+    private static byte[] mvhd(int timescale, int duration) {
+        ByteBuffer content = ByteBuffer.allocate(100);
+        content.putInt(12, timescale);
+        content.putInt(16, duration);
+        return box("mvhd", content.array());
+    }
+
+    private static byte[] trak(int width, int height, int[] matrix) {
+        ByteBuffer content = ByteBuffer.allocate(84);
+        content.position(40);
+        for (int value : matrix) {
+            content.putInt(value);
+        }
+        content.putInt(width << 16);
+        content.putInt(height << 16);
+        return box("trak", box("tkhd", content.array()));
+    }
+
+    private static byte[] metaWithCover(byte[] image) {
+        byte[] data = box("data", new byte[]{0, 0, 0, 14, 0, 0, 0, 0}, image);
+        byte[] ilst = box("ilst", box("covr", data));
+        return box("meta", new byte[4], box("hdlr", new byte[25]), ilst);
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        byte[] body = concat(content);
+        return concat(ByteBuffer.allocate(4).putInt(8 + body.length).array(), ascii(type), body);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
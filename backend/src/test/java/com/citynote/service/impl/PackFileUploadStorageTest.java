@@ -0,0 +1,245 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackFileUploadStorageTest {
+
+    // two fit in a 1 MB pack, a third starts the next one
+    private static final int LARGE = 400 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private Path directory;
+    private PackFileUploadStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = tempDir.resolve("packs");
+        storage = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void store_ThenOpen_ReadsTheBytesFromThePack() throws IOException {
+        Path staged = staged("first".getBytes(StandardCharsets.UTF_8));
+        assertTrue(storage.store("a.jpg", staged));
+        storage.store("b.jpg", staged("second".getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(Files.exists(staged));
+        StoredObject object = storage.open("a.jpg").orElseThrow();
+        assertTrue(object.file().isEmpty());
+        assertEquals(5, object.size());
+        assertEquals("first", read(object));
+        assertEquals("second", read(storage.open("b.jpg").orElseThrow()));
+
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        assertEquals(3, object.transferTo(1, 3, Channels.newChannel(range)));
+        assertEquals("irs", range.toString(StandardCharsets.UTF_8));
+        assertTrue(storage.open("missing.jpg").isEmpty());
+        assertTrue(storage.open("../a.jpg").isEmpty());
+    }
+
+    @Test
+    void store_ExistingName_LeavesStagedFile() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        Path second = staged("second".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(storage.store("a.jpg", second));
+        assertTrue(Files.exists(second));
+        assertEquals("first", read(storage.open("a.jpg").orElseThrow()));
+    }
+
+    @Test
+    void delete_SurvivesReopening() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        storage.store("b.jpg", staged("second".getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(storage.delete("a.jpg"));
+        assertFalse(storage.delete("a.jpg"));
+        assertFalse(storage.exists("a.jpg"));
+        reopen();
+
+        assertFalse(storage.exists("a.jpg"));
+        assertEquals("second", read(storage.open("b.jpg").orElseThrow()));
+        // a name can be stored again once deleted
+        assertTrue(storage.store("a.jpg", staged("again".getBytes(StandardCharsets.UTF_8))));
+        reopen();
+        assertEquals("again", read(storage.open("a.jpg").orElseThrow()));
+    }
+
+    @Test
+    void load_IncompleteRecordAtTheEnd_IsTruncated() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        Path pack = directory.resolve("pack-000001.dat");
+        long size = Files.size(pack);
+        storage.close();
+        // a record cut off by a crash
+        Files.write(pack, new byte[]{0x43, 0x4e, 0x50, 0x4b, 0, 0, 9}, StandardOpenOption.APPEND);
+
+        storage = open();
+
+        assertEquals(size, Files.size(pack));
+        assertEquals("first", read(storage.open("a.jpg").orElseThrow()));
+        storage.store("b.jpg", staged("second".getBytes(StandardCharsets.UTF_8)));
+        reopen();
+        assertEquals("second", read(storage.open("b.jpg").orElseThrow()));
+    }
+
+    @Test
+    void load_UncompletedRecordBeforeOthers_IsSkippedAsDead() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        storage.store("b.jpg", staged("second".getBytes(StandardCharsets.UTF_8)));
+        Path pack = directory.resolve("pack-000001.dat");
+        long endOfB = Files.size(pack);
+        storage.store("c.jpg", staged("third".getBytes(StandardCharsets.UTF_8)));
+        storage.close();
+        // b was reserved but its bytes never made it, while c after it was forced
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), endOfB - 4);
+        }
+
+        storage = open();
+
+        assertEquals("first", read(storage.open("a.jpg").orElseThrow()));
+        assertFalse(storage.exists("b.jpg"));
+        assertEquals("third", read(storage.open("c.jpg").orElseThrow()));
+        assertTrue(storage.pack(1).deadBytes() > 0);
+    }
+
+    @Test
+    void open_UploadsStoredAfterTheMapping_AreRead() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("first", read(storage.open("a.jpg").orElseThrow()));
+
+        storage.store("b.jpg", staged("second".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("second", read(storage.open("b.jpg").orElseThrow()));
+        assertEquals("first", read(storage.open("a.jpg").orElseThrow()));
+    }
+
+    @Test
+    void store_FullPack_StartsTheNextOne() throws IOException {
+        byte[] a = large('a');
+        byte[] c = large('c');
+        storage.store("a.jpg", staged(a));
+        storage.store("b.jpg", staged(large('b')));
+        storage.store("c.jpg", staged(c));
+
+        assertEquals(2, storage.packCount());
+        assertTrue(Files.exists(directory.resolve("pack-000002.dat")));
+        assertArrayEquals(a, bytes(storage.open("a.jpg").orElseThrow()));
+        assertArrayEquals(c, bytes(storage.open("c.jpg").orElseThrow()));
+    }
+
+    @Test
+    void compact_MovesLiveUploadsAndRemovesThePack() throws IOException {
+        byte[] b = large('b');
+        storage.store("a.jpg", staged(large('a')));
+        storage.store("b.jpg", staged(b));
+        storage.store("c.jpg", staged(large('c')));
+        storage.delete("a.jpg");
+        long packSize = Files.size(directory.resolve("pack-000001.dat"));
+
+        long reclaimed = storage.compact(storage.pack(1));
+
+        assertTrue(reclaimed > LARGE);
+        assertTrue(reclaimed < packSize);
+        assertFalse(Files.exists(directory.resolve("pack-000001.dat")));
+        assertArrayEquals(b, bytes(storage.open("b.jpg").orElseThrow()));
+        reopen();
+        assertFalse(storage.exists("a.jpg"));
+        assertArrayEquals(b, bytes(storage.open("b.jpg").orElseThrow()));
+        assertTrue(storage.exists("c.jpg"));
+    }
+
+    @Test
+    void compact_SkipsTheCurrentAndMostlyLivePacks() throws IOException {
+        storage.store("a.jpg", staged(large('a')));
+        storage.store("b.jpg", staged(large('b')));
+        storage.store("c.jpg", staged(large('c')));
+        storage.delete("c.jpg");
+
+        storage.compact();
+
+        assertEquals(2, storage.packCount());
+        assertEquals(0, storage.pack(1).deadBytes());
+    }
+
+    @Test
+    void list_ReturnsUploadsInNameOrder() throws IOException {
+        storage.store("c.jpg", staged("3".getBytes(StandardCharsets.UTF_8)));
+        storage.store("a.jpg", staged("1".getBytes(StandardCharsets.UTF_8)));
+        storage.store("b.jpg", staged("22".getBytes(StandardCharsets.UTF_8)));
+
+        List<String> names = new ArrayList<>();
+        for (Iterator<UploadStorage.Entry> entries = storage.list(); entries.hasNext(); ) {
+            UploadStorage.Entry entry = entries.next();
+            names.add(entry.name() + ":" + entry.size());
+        }
+
+        assertEquals(List.of("a.jpg:1", "b.jpg:2", "c.jpg:1"), names);
+    }
+
+    private PackFileUploadStorage open() throws IOException {
+        // the storage resolves its path against user.dir
+        PackFileUploadStorage opened = new PackFileUploadStorage(Paths.get(System.getProperty("user.dir"))
+                .toAbsolutePath().relativize(directory).toString(), 1, 0.5);
+        opened.load();
+        return opened;
+    }
+
+    private void reopen() throws IOException {
+        storage.close();
+        storage = open();
+    }
+
+    private Path staged(byte[] content) throws IOException {
+        Path staged = storage.createTempFile();
+        Files.write(staged, content);
+        return staged;
+    }
+
+    private static byte[] large(char fill) {
+        byte[] content = new byte[LARGE];
+        Arrays.fill(content, (byte) fill);
+        return content;
+    }
+
+    private static byte[] bytes(StoredObject object) throws IOException {
+        try (InputStream in = object.openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String read(StoredObject object) throws IOException {
+        return new String(bytes(object), StandardCharsets.UTF_8);
+    }
+}
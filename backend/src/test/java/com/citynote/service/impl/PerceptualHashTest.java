@@ -0,0 +1,96 @@
+package com.citynote.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashTest {
+
+    @Test
+    void dHash_ResizedAndRecompressed_StaysClose() throws IOException {
+        BufferedImage original = scene(640, 480, Color.ORANGE);
+        BufferedImage repost = recompress(resize(original, 400, 300), 0.3f);
+
+        int distance = PerceptualHash.distance(PerceptualHash.dHash(original), PerceptualHash.dHash(repost));
+
+        assertTrue(distance <= 4, "distance " + distance);
+    }
+
+    @Test
+    void dHash_DifferentPictures_AreFarApart() {
+        BufferedImage first = scene(640, 480, Color.ORANGE);
+        BufferedImage second = resize(scene(640, 480, Color.BLUE), 640, 480);
+        // mirrored: same colours, different structure
+        BufferedImage mirrored = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 480; y++) {
+            for (int x = 0; x < 640; x++) {
+                mirrored.setRGB(639 - x, y, second.getRGB(x, y));
+            }
+        }
+
+        int distance = PerceptualHash.distance(PerceptualHash.dHash(first), PerceptualHash.dHash(mirrored));
+
+        assertTrue(distance > 10, "distance " + distance);
+    }
+
+    @Test
+    void dHash_FlatImage_IsNone() {
+        BufferedImage flat = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+
+        assertEquals(PerceptualHash.NONE, PerceptualHash.dHash(flat));
+    }
+
+    private static BufferedImage scene(int width, int height, Color sun) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        // hills across the picture, so neighbouring cells differ as in a photo
+        for (int x = 0; x < width; x++) {
+            int shade = (int) (60 * Math.sin(x * 3 * Math.PI / width));
+            graphics.setColor(new Color(100 + shade, 120 + shade, 140 - shade));
+            graphics.drawLine(x, 0, x, height);
+        }
+        graphics.setColor(sun);
+        graphics.fillOval(width / 5, height / 6, width / 4, width / 4);
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.fillRect(width / 2, height / 2, width / 3, height / 3);
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    private static BufferedImage recompress(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -5,9 +5,11 @@ import com.citynote.dto.EventResponseDTO;
 import com.citynote.entity.*;
 import com.citynote.entity.enums.EventType;
 import com.citynote.repository.*;
+import com.citynote.security.JwtPrincipal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
@@ -25,6 +27,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -43,10 +47,31 @@ class RdbEventServImplTest {
     private UserProfileRepository userProfileRepository;
 
     @Mock
-    private CountyRepository countyRepository;
+    private CountyDirectory countyDirectory;
 
     @Mock
-    private EventLikeRepository eventLikeRepository;
+    private EventLikeWriter eventLikeWriter;
+
+    @Mock
+    private LikeCounterBuffer likeCounterBuffer;
+
+    @Mock
+    private LikeStatusIndex likeStatusIndex;
+
+    @Mock
+    private EventFeedReader eventFeedReader;
+
+    @Mock
+    private CountyFeedCache countyFeedCache;
+
+    @Mock
+    private CountyActivityStore countyActivityStore;
+
+    @Mock
+    private ContentAddressedStore contentAddressedStore;
+
+    @Mock
+    private FileDeletionQueue fileDeletionQueue;
 
     @Mock
     private SecurityContext securityContext;
@@ -66,7 +91,8 @@ class RdbEventServImplTest {
     @BeforeEach
     void setUp() {
         // Reset all mocks before each test
-        reset(eventRepository, blobRepository, userProfileRepository, countyRepository, eventLikeRepository);
+        reset(eventRepository, blobRepository, userProfileRepository, countyDirectory, eventLikeWriter, eventFeedReader,
+                countyFeedCache);
 
         // Setup test user
         testUser = new User();
@@ -139,8 +165,14 @@ class RdbEventServImplTest {
     void getPagesOfEventsByCounty_Success() {
         // Given
         Pageable pageable = PageRequest.of(0, 10);
-        Page<EventEntity> eventPage = new PageImpl<>(Arrays.asList(testEvent));
-        when(eventRepository.findByCounty_Id(6085, pageable)).thenReturn(eventPage);
+        EventResponseDTO testEventDTO = new EventResponseDTO();
+        testEventDTO.setId(1);
+        testEventDTO.setTitle("Test Event");
+        Page<EventResponseDTO> eventPage = new PageImpl<>(Arrays.asList(testEventDTO));
+        when(eventFeedReader.readCountyPage(6085, pageable)).thenReturn(eventPage);
+        when(countyFeedCache.get(eq(6085), eq(pageable), any()))
+                .thenAnswer(invocation -> invocation.<Function<Pageable, Page<EventResponseDTO>>>getArgument(2)
+                        .apply(pageable));
 
         // When
         Page<EventResponseDTO> result = eventService.getPagesOfEventsByCounty(6085, pageable);
@@ -149,7 +181,9 @@ class RdbEventServImplTest {
         assertNotNull(result);
         assertEquals(1, result.getTotalElements());
         assertEquals("Test Event", result.getContent().get(0).getTitle());
-        verify(eventRepository).findByCounty_Id(6085, pageable);
+        verify(eventFeedReader).readCountyPage(6085, pageable);
+        verify(countyFeedCache).get(eq(6085), eq(pageable), any());
+        verify(eventRepository, never()).findByCounty_Id(anyInt(), any(Pageable.class));
     }
 
     @Test
@@ -220,7 +254,7 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(countyRepository.findById(testEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
+            when(countyDirectory.findById(testEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
             when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
 
             // When
@@ -229,9 +263,34 @@ class RdbEventServImplTest {
             // Then
             assertEquals(1, result);
             verify(userProfileRepository).findByUsername("testuser");
-            verify(countyRepository).findById(testEventRequest.getCountyId());
+            verify(countyDirectory).findById(testEventRequest.getCountyId());
             verify(eventRepository).save(any(EventEntity.class));
             verify(blobRepository, never()).save(any(BlobEntity.class));
+            verify(countyFeedCache).evictCounty(6085);
+            verify(countyActivityStore).recordPost(eq(6085), any(LocalDateTime.class));
+        }
+    }
+
+    @Test
+    void postEvent_WithTokenPrincipal_SkipsProfileLookup() {
+        // Given
+        try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder = mockStatic(SecurityContextHolder.class)) {
+            mockedSecurityContextHolder.when(SecurityContextHolder::getContext).thenReturn(securityContext);
+            when(securityContext.getAuthentication()).thenReturn(authentication);
+            when(authentication.isAuthenticated()).thenReturn(true);
+            when(authentication.getName()).thenReturn("testuser");
+            when(authentication.getPrincipal()).thenReturn(new JwtPrincipal("testuser", 1L, 1));
+            when(userProfileRepository.getReferenceById(1)).thenReturn(testUserProfile);
+            when(countyDirectory.findById(testEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
+            when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
+
+            // When
+            int result = eventService.postEvent(testEventRequest);
+
+            // Then
+            assertEquals(1, result);
+            verify(userProfileRepository).getReferenceById(1);
+            verify(userProfileRepository, never()).findByUsername(anyString());
         }
     }
 
@@ -250,7 +309,7 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(countyRepository.findById(imageEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
+            when(countyDirectory.findById(imageEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
             when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
             when(blobRepository.save(any(BlobEntity.class))).thenReturn(new BlobEntity());
 
@@ -260,9 +319,69 @@ class RdbEventServImplTest {
             // Then
             assertEquals(1, result);
             verify(userProfileRepository).findByUsername("testuser");
-            verify(countyRepository).findById(imageEventRequest.getCountyId());
+            verify(countyDirectory).findById(imageEventRequest.getCountyId());
             verify(eventRepository).save(any(EventEntity.class));
             verify(blobRepository, times(2)).save(any(BlobEntity.class));
+            verify(contentAddressedStore).retain("image1.jpg");
+            verify(contentAddressedStore).retain("image2.jpg");
+        }
+    }
+
+    @Test
+    void postEvent_VideoEvent_LinksTheClipAheadOfItsPoster() {
+        // Given
+        EventRequestDTO videoEventRequest = new EventRequestDTO();
+        videoEventRequest.setTitle("Test Video Event");
+        videoEventRequest.setContent("Test Content");
+        videoEventRequest.setCountyId(6085);
+        videoEventRequest.setVideoLink("clip.mp4");
+        videoEventRequest.setPictureLinks(new String[]{"poster.jpg"});
+
+        try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder = mockStatic(SecurityContextHolder.class)) {
+            mockedSecurityContextHolder.when(SecurityContextHolder::getContext).thenReturn(securityContext);
+            when(securityContext.getAuthentication()).thenReturn(authentication);
+            when(authentication.isAuthenticated()).thenReturn(true);
+            when(authentication.getName()).thenReturn("testuser");
+            when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
+            when(countyDirectory.findById(videoEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
+            when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
+            ArgumentCaptor<BlobEntity> blobs = ArgumentCaptor.forClass(BlobEntity.class);
+            when(blobRepository.save(blobs.capture())).thenReturn(new BlobEntity());
+
+            // When
+            eventService.postEvent(videoEventRequest);
+
+            // Then
+            assertEquals(List.of("clip.mp4", "poster.jpg"), blobs.getAllValues().stream().map(BlobEntity::getFilename).toList());
+            assertEquals(List.of(0, 1), blobs.getAllValues().stream().map(BlobEntity::getInPlaceOrder).toList());
+            assertEquals(EventType.VIDEO, blobs.getValue().getEvent().getEventType());
+            verify(contentAddressedStore).retain("clip.mp4");
+            verify(contentAddressedStore).retain("poster.jpg");
+        }
+    }
+
+    @Test
+    void postEvent_VideoWithSeveralPictures_IsRejected() {
+        // Given
+        EventRequestDTO videoEventRequest = new EventRequestDTO();
+        videoEventRequest.setTitle("Test Video Event");
+        videoEventRequest.setContent("Test Content");
+        videoEventRequest.setCountyId(6085);
+        videoEventRequest.setVideoLink("clip.mp4");
+        videoEventRequest.setPictureLinks(new String[]{"poster.jpg", "extra.jpg"});
+
+        try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder = mockStatic(SecurityContextHolder.class)) {
+            mockedSecurityContextHolder.when(SecurityContextHolder::getContext).thenReturn(securityContext);
+            when(securityContext.getAuthentication()).thenReturn(authentication);
+            when(authentication.isAuthenticated()).thenReturn(true);
+            when(authentication.getName()).thenReturn("testuser");
+            when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
+            when(countyDirectory.findById(videoEventRequest.getCountyId())).thenReturn(Optional.of(testCounty));
+
+            // When & Then
+            assertThrows(IllegalArgumentException.class, () -> eventService.postEvent(videoEventRequest));
+            verify(blobRepository, never()).save(any(BlobEntity.class));
+            verify(contentAddressedStore, never()).retain(anyString());
         }
     }
 
@@ -281,7 +400,7 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(countyRepository.findById(countyNotFoundRequest.getCountyId())).thenReturn(Optional.empty());
+            when(countyDirectory.findById(countyNotFoundRequest.getCountyId())).thenReturn(Optional.empty());
 
             // When & Then
             RuntimeException exception = assertThrows(RuntimeException.class,
@@ -355,6 +474,32 @@ class RdbEventServImplTest {
         verify(eventRepository).findById(1);
         verify(eventRepository).delete(testEvent);
         verify(blobRepository).findBlobEntitiesByEvent(testEvent);
+        verify(countyFeedCache).evictCounty(6085);
+        verify(countyActivityStore).recordDelete(6085);
+    }
+
+    @Test
+    void deleteEvent_WithPictures_QueuesFilesInsteadOfDeletingThem() {
+        // Given
+        BlobEntity first = new BlobEntity();
+        first.setFilename("image1.jpg");
+        BlobEntity second = new BlobEntity();
+        second.setFilename("image2.jpg");
+        List<BlobEntity> blobs = Arrays.asList(first, second);
+        when(eventRepository.findById(1)).thenReturn(Optional.of(testEvent));
+        when(blobRepository.findBlobEntitiesByEvent(testEvent)).thenReturn(blobs);
+
+        // When
+        Boolean result = eventService.deleteEvent(1);
+
+        // Then
+        assertTrue(result);
+        verify(blobRepository).deleteAll(blobs);
+        verify(contentAddressedStore).release("image1.jpg");
+        verify(contentAddressedStore).release("image2.jpg");
+        verify(fileDeletionQueue).enqueue(List.of("image1.jpg", "image2.jpg"));
+        verify(contentAddressedStore, never()).discard(anyString());
+        verify(eventRepository).delete(testEvent);
     }
 
     @Test
@@ -369,6 +514,7 @@ class RdbEventServImplTest {
         assertFalse(result);
         verify(eventRepository).findById(1);
         verify(eventRepository, never()).delete(any(EventEntity.class));
+        verifyNoInteractions(fileDeletionQueue);
     }
 
     @Test
@@ -380,45 +526,50 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(eventRepository.findById(1)).thenReturn(Optional.of(testEvent));
-            when(eventLikeRepository.findByEventIdAndUserProfileId(1, 1)).thenReturn(Optional.empty());
-            when(eventLikeRepository.save(any(EventLikeEntity.class))).thenReturn(new EventLikeEntity());
-            when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
+            when(eventRepository.findCountyIdById(1)).thenReturn(Optional.of(6085));
+            when(eventLikeWriter.toggle(1, 1)).thenReturn(true);
+            when(eventRepository.findLikesById(1)).thenReturn(Optional.of(6));
+            when(likeCounterBuffer.withPendingDelta(eq(1), any())).thenAnswer(invocation ->
+                    invocation.<Supplier<Optional<Integer>>>getArgument(1).get().map(Integer::longValue));
 
             // When
             Boolean result = eventService.toggleEventLike(1);
 
             // Then
             assertTrue(result);
-            verify(eventLikeRepository).save(any(EventLikeEntity.class));
-            verify(eventRepository).save(testEvent);
+            verify(eventLikeWriter).toggle(1, 1);
+            verify(eventRepository, never()).save(any(EventEntity.class));
+            verify(countyFeedCache).setLikes(6085, 1, 6);
+            verify(countyActivityStore).recordLikes(6085, 1);
+            verify(likeStatusIndex).refresh(1, 1);
         }
     }
 
     @Test
     void toggleEventLike_UnlikeEvent_Success() {
         // Given
-        EventLikeEntity existingLike = new EventLikeEntity();
-        existingLike.setEvent(testEvent);
-        existingLike.setUserProfile(testUserProfile);
-
         try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder = mockStatic(SecurityContextHolder.class)) {
             mockedSecurityContextHolder.when(SecurityContextHolder::getContext).thenReturn(securityContext);
             when(securityContext.getAuthentication()).thenReturn(authentication);
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(eventRepository.findById(1)).thenReturn(Optional.of(testEvent));
-            when(eventLikeRepository.findByEventIdAndUserProfileId(1, 1)).thenReturn(Optional.of(existingLike));
-            when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
+            when(eventRepository.findCountyIdById(1)).thenReturn(Optional.of(6085));
+            when(eventLikeWriter.toggle(1, 1)).thenReturn(false);
+            when(eventRepository.findLikesById(1)).thenReturn(Optional.of(4));
+            when(likeCounterBuffer.withPendingDelta(eq(1), any())).thenAnswer(invocation ->
+                    invocation.<Supplier<Optional<Integer>>>getArgument(1).get().map(Integer::longValue));
 
             // When
             Boolean result = eventService.toggleEventLike(1);
 
             // Then
             assertFalse(result);
-            verify(eventLikeRepository).delete(existingLike);
-            verify(eventRepository).save(testEvent);
+            verify(eventLikeWriter).toggle(1, 1);
+            verify(eventRepository, never()).save(any(EventEntity.class));
+            verify(countyFeedCache).setLikes(6085, 1, 4);
+            verify(countyActivityStore).recordLikes(6085, -1);
+            verify(likeStatusIndex).refresh(1, 1);
         }
     }
 
@@ -431,15 +582,14 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(eventRepository.findById(1)).thenReturn(Optional.empty());
+            when(eventRepository.findCountyIdById(1)).thenReturn(Optional.empty());
 
             // When
             Boolean result = eventService.toggleEventLike(1);
 
             // Then
             assertFalse(result);
-            verify(eventLikeRepository, never()).save(any(EventLikeEntity.class));
-            verify(eventLikeRepository, never()).delete(any(EventLikeEntity.class));
+            verify(eventLikeWriter, never()).toggle(anyInt(), anyInt());
         }
     }
 
@@ -525,17 +675,15 @@ class RdbEventServImplTest {
             when(authentication.isAuthenticated()).thenReturn(true);
             when(authentication.getName()).thenReturn("testuser");
             when(userProfileRepository.findByUsername("testuser")).thenReturn(Optional.of(testUserProfile));
-            when(eventRepository.findById(1)).thenReturn(Optional.of(testEvent));
-            when(eventLikeRepository.findByEventIdAndUserProfileId(1, 1)).thenReturn(Optional.empty());
-            when(eventLikeRepository.save(any(EventLikeEntity.class))).thenReturn(new EventLikeEntity());
-            when(eventRepository.save(any(EventEntity.class))).thenReturn(testEvent);
+            when(eventRepository.findCountyIdById(1)).thenReturn(Optional.of(6085));
+            when(eventLikeWriter.toggle(1, 1)).thenReturn(true);
 
             // When
             Boolean result = eventService.incrementEventLikes(1);
 
             // Then
             assertTrue(result);
-            verify(eventLikeRepository).save(any(EventLikeEntity.class));
+            verify(eventLikeWriter).toggle(1, 1);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,434 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.StoredObject;
+import com.citynote.service.UploadStorage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3UploadStorageTest {
+
+    private static final String ACCESS_KEY = "test-access-key";
+    private static final String SECRET_KEY = "test-secret-key";
+
+    @TempDir
+    Path tempDir;
+
+    private FakeS3 s3;
+    private S3UploadStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3 = new FakeS3();
+        storage = storage(SECRET_KEY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+        s3.stop();
+    }
+
+    @Test
+    void store_SmallFile_IsPutAndReadBackInRanges() throws IOException {
+        Path staged = staged("hello object storage".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(storage.store("a.jpg", staged));
+
+        assertFalse(Files.exists(staged));
+        assertTrue(storage.exists("a.jpg"));
+        StoredObject object = storage.open("a.jpg").orElseThrow();
+        assertTrue(object.file().isEmpty());
+        assertEquals(20, object.size());
+        assertEquals("hello object storage", new String(bytes(object), StandardCharsets.UTF_8));
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        assertEquals(6, object.transferTo(6, 6, Channels.newChannel(range)));
+        assertEquals("object", range.toString(StandardCharsets.UTF_8));
+        assertEquals(0, s3.multipartUploads.get());
+    }
+
+    @Test
+    void store_ExistingName_LeavesStagedFile() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+        Path second = staged("second".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(storage.store("a.jpg", second));
+
+        assertTrue(Files.exists(second));
+        assertEquals("first", new String(bytes(storage.open("a.jpg").orElseThrow()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void store_LargeFile_UploadsPartsInParallel() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 12345];
+        new Random(7).nextBytes(content);
+
+        assertTrue(storage.store("large.jpg", staged(content)));
+
+        assertEquals(1, s3.multipartUploads.get());
+        assertEquals(4, s3.partsReceived.get());
+        assertTrue(s3.maxPartsInFlight.get() > 1);
+        assertTrue(s3.uploads.isEmpty());
+        assertArrayEquals(content, bytes(storage.open("large.jpg").orElseThrow()));
+    }
+
+    @Test
+    void store_PartKeepsFailing_AbortsTheUpload() throws IOException {
+        s3.failParts = true;
+        Path staged = staged(new byte[2 * 1024 * 1024]);
+
+        assertThrows(IOException.class, () -> storage.store("large.jpg", staged));
+
+        assertTrue(s3.uploads.isEmpty());
+        assertFalse(storage.exists("large.jpg"));
+        assertTrue(Files.exists(staged));
+    }
+
+    @Test
+    void store_CreateMultipartUploadFails_IsNotRetried() throws IOException {
+        s3.failInitiate = true;
+        Path staged = staged(new byte[2 * 1024 * 1024]);
+
+        assertThrows(IOException.class, () -> storage.store("large.jpg", staged));
+
+        assertEquals(1, s3.multipartUploads.get());
+        assertTrue(Files.exists(staged));
+    }
+
+    @Test
+    void delete_RemovesTheObject() throws IOException {
+        storage.store("a.jpg", staged("first".getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(storage.delete("a.jpg"));
+        assertFalse(storage.delete("a.jpg"));
+        assertTrue(storage.open("a.jpg").isEmpty());
+    }
+
+    @Test
+    void list_PagesThroughThePrefixInKeyOrder() {
+        for (int i = 1004; i >= 0; i--) {
+            s3.objects.put("uploads/" + String.format("%05d", i) + ".jpg", new FakeS3.StoredBlob(new byte[i % 7], Instant.now()));
+        }
+        s3.objects.put("other/a.jpg", new FakeS3.StoredBlob(new byte[1], Instant.now()));
+        s3.objects.put("uploads/nested/a.jpg", new FakeS3.StoredBlob(new byte[1], Instant.now()));
+
+        List<UploadStorage.Entry> entries = new ArrayList<>();
+        for (Iterator<UploadStorage.Entry> listing = storage.list(); listing.hasNext(); ) {
+            entries.add(listing.next());
+        }
+
+        assertEquals(1005, entries.size());
+        assertEquals("00000.jpg", entries.get(0).name());
+        assertEquals("01004.jpg", entries.get(1004).name());
+        assertEquals(1004 % 7, entries.get(1004).size());
+    }
+
+    @Test
+    void open_WrongCredentials_IsRejected() throws IOException {
+        S3UploadStorage wrong = storage("not-the-secret");
+        try {
+            assertThrows(IOException.class, () -> wrong.open("a.jpg"));
+        } finally {
+            wrong.shutdown();
+        }
+    }
+
+    private S3UploadStorage storage(String secretKey) {
+        // the staging path resolves against user.dir
+        String stagingPath = Paths.get(System.getProperty("user.dir")).toAbsolutePath()
+                .relativize(tempDir.resolve("staging")).toString();
+        return new S3UploadStorage(s3.endpoint(), "us-east-1", "bucket", ACCESS_KEY, secretKey, "uploads/",
+                stagingPath, 1, 1, 4, 2000, 10000);
+    }
+
+    private Path staged(byte[] content) throws IOException {
+        Path staged = storage.createTempFile();
+        Files.write(staged, content);
+        return staged;
+    }
+
+    private static byte[] bytes(StoredObject object) throws IOException {
+        try (InputStream in = object.openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Just enough of the S3 API for the storage: objects, ranged reads, conditional writes,
+     * multipart uploads and ListObjectsV2, with every request's signature checked.
+     */
+    static final class FakeS3 {
+
+        record StoredBlob(byte[] content, Instant lastModified) {
+        }
+
+        private static final Pattern SIGNED_HEADERS = Pattern.compile("SignedHeaders=([^,]+)");
+        private static final DateTimeFormatter AMZ_DATE =
+                DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+        final ConcurrentSkipListMap<String, StoredBlob> objects = new ConcurrentSkipListMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        final AtomicInteger multipartUploads = new AtomicInteger();
+        final AtomicInteger partsReceived = new AtomicInteger();
+        final AtomicInteger maxPartsInFlight = new AtomicInteger();
+        private final AtomicInteger partsInFlight = new AtomicInteger();
+        volatile boolean failParts;
+        // the upload is created but the answer is an error, as when the response is lost
+        volatile boolean failInitiate;
+
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newFixedThreadPool(8);
+        private final S3RequestSigner signer = new S3RequestSigner(ACCESS_KEY, SECRET_KEY, "us-east-1");
+
+        FakeS3() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                try {
+                    handle(exchange);
+                } catch (Exception e) {
+                    respond(exchange, 500, e.toString().getBytes(StandardCharsets.UTF_8));
+                } finally {
+                    exchange.close();
+                }
+            });
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        String endpoint() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws Exception {
+            String method = exchange.getRequestMethod();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (!signatureMatches(exchange, body)) {
+                respond(exchange, 403, "<Error><Code>SignatureDoesNotMatch</Code></Error>".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), StandardCharsets.UTF_8);
+            String key = path.substring("/bucket/".length());
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+
+            if (method.equals("GET") && query.containsKey("list-type")) {
+                list(exchange, query);
+            } else if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                multipartUploads.incrementAndGet();
+                if (failInitiate) {
+                    respond(exchange, 500, new byte[0]);
+                    return;
+                }
+                respond(exchange, 200, ("<InitiateMultipartUploadResult><UploadId>" + uploadId
+                        + "</UploadId></InitiateMultipartUploadResult>").getBytes(StandardCharsets.UTF_8));
+            } else if (method.equals("PUT") && query.containsKey("partNumber")) {
+                uploadPart(exchange, query, body);
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                complete(exchange, key, query.get("uploadId"), body);
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                respond(exchange, 204, null);
+            } else if (method.equals("PUT")) {
+                if (exchange.getRequestHeaders().containsKey("If-None-Match") && objects.containsKey(key)) {
+                    respond(exchange, 412, new byte[0]);
+                } else {
+                    objects.put(key, new StoredBlob(body, Instant.now()));
+                    respond(exchange, 200, new byte[0]);
+                }
+            } else if (method.equals("DELETE")) {
+                objects.remove(key);
+                respond(exchange, 204, null);
+            } else {
+                read(exchange, method, key);
+            }
+        }
+
+        private void read(HttpExchange exchange, String method, String key) throws IOException {
+            StoredBlob blob = objects.get(key);
+            if (blob == null) {
+                respond(exchange, 404, method.equals("HEAD") ? null : new byte[0]);
+                return;
+            }
+            exchange.getResponseHeaders().set("Last-Modified",
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(blob.lastModified().atZone(ZoneOffset.UTC)));
+            if (method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(blob.content().length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range == null) {
+                respond(exchange, 200, blob.content());
+                return;
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(blob.content().length - 1, Integer.parseInt(bounds[1]));
+            respond(exchange, 206, Arrays.copyOfRange(blob.content(), start, end + 1));
+        }
+
+        private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] body) throws Exception {
+            int inFlight = partsInFlight.incrementAndGet();
+            maxPartsInFlight.accumulateAndGet(inFlight, Math::max);
+            try {
+                // long enough for the parts to overlap
+                Thread.sleep(100);
+                Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+                if (failParts || parts == null) {
+                    respond(exchange, failParts ? 500 : 404, new byte[0]);
+                    return;
+                }
+                int partNumber = Integer.parseInt(query.get("partNumber"));
+                parts.put(partNumber, body);
+                partsReceived.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", "\"part-" + partNumber + "\"");
+                respond(exchange, 200, new byte[0]);
+            } finally {
+                partsInFlight.decrementAndGet();
+            }
+        }
+
+        private void complete(HttpExchange exchange, String key, String uploadId, byte[] body) throws IOException {
+            Map<Integer, byte[]> parts = uploads.remove(uploadId);
+            if (parts == null) {
+                respond(exchange, 404, new byte[0]);
+                return;
+            }
+            if (objects.containsKey(key)) {
+                respond(exchange, 412, new byte[0]);
+                return;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            Matcher etags = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>&quot;part-(\\d+)&quot;</ETag>")
+                    .matcher(new String(body, StandardCharsets.UTF_8));
+            int expected = 1;
+            while (etags.find()) {
+                assertEquals(expected++, Integer.parseInt(etags.group(1)));
+                content.write(parts.get(Integer.parseInt(etags.group(2))));
+            }
+            assertEquals(parts.size() + 1, expected);
+            objects.put(key, new StoredBlob(content.toByteArray(), Instant.now()));
+            respond(exchange, 200, "<CompleteMultipartUploadResult/>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+            String prefix = query.getOrDefault("prefix", "");
+            int maxKeys = Integer.parseInt(query.get("max-keys"));
+            String after = query.get("continuation-token");
+            StringBuilder xml = new StringBuilder("<ListBucketResult>");
+            String last = null;
+            int count = 0;
+            boolean truncated = false;
+            for (Map.Entry<String, StoredBlob> object
+                    : (after == null ? objects : objects.tailMap(after, false)).entrySet()) {
+                if (!object.getKey().startsWith(prefix)) {
+                    continue;
+                }
+                if (count == maxKeys) {
+                    truncated = true;
+                    break;
+                }
+                xml.append("<Contents><Key>").append(object.getKey()).append("</Key><Size>")
+                        .append(object.getValue().content().length).append("</Size><LastModified>")
+                        .append(object.getValue().lastModified()).append("</LastModified></Contents>");
+                last = object.getKey();
+                count++;
+            }
+            xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+            if (truncated) {
+                xml.append("<NextContinuationToken>").append(last).append("</NextContinuationToken>");
+            }
+            respond(exchange, 200, xml.append("</ListBucketResult>").toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private boolean signatureMatches(HttpExchange exchange, byte[] body) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            String amzDate = exchange.getRequestHeaders().getFirst("x-amz-date");
+            if (authorization == null || payloadHash == null || amzDate == null) {
+                return false;
+            }
+            if (!payloadHash.equals(S3RequestSigner.UNSIGNED_PAYLOAD) && !payloadHash.equals(S3RequestSigner.sha256Hex(body))) {
+                return false;
+            }
+            Matcher signedHeaders = SIGNED_HEADERS.matcher(authorization);
+            if (!signedHeaders.find()) {
+                return false;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (String name : signedHeaders.group(1).split(";")) {
+                if (!List.of("host", "x-amz-date", "x-amz-content-sha256").contains(name)) {
+                    headers.put(name, exchange.getRequestHeaders().getFirst(name));
+                }
+            }
+            URI uri = URI.create("http://" + exchange.getRequestHeaders().getFirst("Host")
+                    + exchange.getRequestURI().getRawPath()
+                    + (exchange.getRequestURI().getRawQuery() == null ? "" : "?" + exchange.getRequestURI().getRawQuery()));
+            Instant date = AMZ_DATE.parse(amzDate, Instant::from);
+            return authorization.equals(signer.sign(exchange.getRequestMethod(), uri, headers, payloadHash, date)
+                    .get("Authorization"));
+        }
+
+        private static Map<String, String> query(String rawQuery) {
+            Map<String, String> query = new TreeMap<>();
+            if (rawQuery != null) {
+                for (String parameter : rawQuery.split("&")) {
+                    String[] pair = parameter.split("=", 2);
+                    query.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                            pair.length < 2 ? "" : URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+                }
+            }
+            return query;
+        }
+
+        // null for no body
+        private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.sendResponseHeaders(status, body == null ? -1 : body.length == 0 ? -1 : body.length);
+            if (body != null && body.length > 0) {
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+}
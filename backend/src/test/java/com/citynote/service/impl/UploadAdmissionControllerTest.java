@@ -0,0 +1,81 @@
+package com.citynote.service.impl;
+
+import com.citynote.service.impl.UploadAdmissionController.Admission;
+import com.citynote.service.impl.UploadAdmissionController.Rejection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadAdmissionControllerTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long SECOND = 1_000_000_000L;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UploadAdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // two at a time, 1 MB/s with a 1 MB burst
+        controller = new UploadAdmissionController(2, 2, MB, 1, 1000, meterRegistry);
+    }
+
+    @Test
+    void admit_AllSlotsTaken_RejectsUntilOneIsReleased() {
+        assertTrue(controller.admit("10.0.0.1", Optional.empty(), 10, 0).admitted());
+        assertTrue(controller.admit("10.0.0.2", Optional.empty(), 10, 0).admitted());
+
+        Admission rejected = controller.admit("10.0.0.3", Optional.empty(), 10, 0);
+        assertEquals(Rejection.CONCURRENCY, rejected.rejection());
+        assertEquals(2, rejected.retryAfterSeconds());
+        assertEquals(2, meterRegistry.get("upload.admission.active").gauge().value());
+
+        controller.release();
+        assertTrue(controller.admit("10.0.0.3", Optional.empty(), 10, 0).admitted());
+        assertEquals(1, meterRegistry.get("upload.admission.rejected").tag("reason", "concurrency").counter().count());
+        assertEquals(3, meterRegistry.get("upload.admission.admitted").counter().count());
+    }
+
+    @Test
+    void admit_BucketInDebt_RejectsUntilItRefills() {
+        // larger than the burst, still admitted from a full bucket
+        assertTrue(controller.admit("10.0.0.1", Optional.empty(), 3 * MB, 0).admitted());
+        controller.release();
+
+        Admission rejected = controller.admit("10.0.0.1", Optional.empty(), 10, 0);
+        assertEquals(Rejection.RATE, rejected.rejection());
+        assertEquals(2, rejected.retryAfterSeconds());
+        assertEquals(1, controller.admit("10.0.0.1", Optional.empty(), 10, SECOND).retryAfterSeconds());
+        assertTrue(controller.admit("10.0.0.2", Optional.empty(), 10, SECOND).admitted());
+        assertTrue(controller.admit("10.0.0.1", Optional.empty(), 10, 2 * SECOND).admitted());
+        assertEquals(2, meterRegistry.get("upload.admission.rejected").tag("reason", "rate").counter().count());
+    }
+
+    @Test
+    void admit_UserBucketFollowsTheUserAcrossAddresses() {
+        assertTrue(controller.admit("10.0.0.1", Optional.of("alice"), 3 * MB, 0).admitted());
+        controller.release();
+
+        assertEquals(Rejection.RATE, controller.admit("10.0.0.2", Optional.of("alice"), 10, 0).rejection());
+        // the address was not charged for the rejected upload
+        assertTrue(controller.admit("10.0.0.2", Optional.of("bob"), MB, 0).admitted());
+    }
+
+    @Test
+    void admit_RejectedForConcurrency_ChargesNothing() {
+        UploadAdmissionController single = new UploadAdmissionController(1, 2, MB, 1, 1000, meterRegistry);
+        assertTrue(single.admit("10.0.0.1", Optional.empty(), 10, 0).admitted());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Rejection.CONCURRENCY, single.admit("10.0.0.2", Optional.empty(), MB, 0).rejection());
+        }
+        single.release();
+
+        assertTrue(single.admit("10.0.0.2", Optional.empty(), MB, 0).admitted());
+    }
+}
@@ -0,0 +1,55 @@
+package com.citynote.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadLayoutMigratorTest {
+
+    @Mock
+    private LocalUploadStorage localUploadStorage;
+
+    @Test
+    void migrateBatch_StopsOnceABatchComesBackShort() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UploadLayoutMigrator migrator = new UploadLayoutMigrator(localUploadStorage, true, 2, meterRegistry);
+        when(localUploadStorage.migrateFlatFiles(2)).thenReturn(2, 1);
+
+        migrator.migrateBatch();
+        assertFalse(migrator.isFinished());
+        migrator.migrateBatch();
+        assertTrue(migrator.isFinished());
+        migrator.migrateBatch();
+
+        verify(localUploadStorage, times(2)).migrateFlatFiles(2);
+        assertEquals(3, meterRegistry.get("file.storage.migrated").counter().count());
+    }
+
+    @Test
+    void migrateBatch_FailedBatchIsRetried() throws IOException {
+        UploadLayoutMigrator migrator = new UploadLayoutMigrator(localUploadStorage, true, 2, new SimpleMeterRegistry());
+        when(localUploadStorage.migrateFlatFiles(2)).thenThrow(new IOException("disk busy")).thenReturn(0);
+
+        migrator.migrateBatch();
+        assertFalse(migrator.isFinished());
+        migrator.migrateBatch();
+        assertTrue(migrator.isFinished());
+    }
+
+    @Test
+    void migrateBatch_Disabled_DoesNothing() {
+        UploadLayoutMigrator migrator = new UploadLayoutMigrator(localUploadStorage, false, 2, new SimpleMeterRegistry());
+
+        migrator.migrateBatch();
+
+        verifyNoInteractions(localUploadStorage);
+    }
+}
@@ -0,0 +1,158 @@
+package com.citynote.service.impl;
+
+import com.citynote.repository.BlobRepository;
+import com.citynote.service.UploadStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadReaperTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-18T12:00:00Z");
+    private static final Instant OLD = NOW.minus(Duration.ofDays(3));
+
+    @Mock
+    private UploadStorage uploadStorage;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private ContentAddressedStore contentAddressedStore;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(blobRepository.findFilenamesFrom(anyString(), any(Pageable.class))).thenReturn(List.of());
+        lenient().when(contentAddressedStore.discard(anyString())).thenReturn(true);
+        lenient().when(uploadStorage.exists(anyString())).thenReturn(false);
+    }
+
+    @Test
+    void reapBatch_DeletesOnlyOldUnlinkedOriginals() throws IOException {
+        when(uploadStorage.list()).thenReturn(List.of(
+                new UploadStorage.Entry("aaaa.jpg", 10, OLD),
+                new UploadStorage.Entry("bbbb.jpg", 20, OLD),
+                new UploadStorage.Entry("bbbb.w160.jpg", 5, OLD),
+                new UploadStorage.Entry("cccc.jpg", 30, NOW.minusSeconds(60))).iterator());
+        when(blobRepository.findFilenamesFrom("aaaa.jpg", pageable())).thenReturn(List.of("aaaa.jpg", "zzzz.jpg"));
+
+        assertEquals(4, reaper(100, 10).reapBatch(NOW));
+
+        verify(contentAddressedStore).discard("bbbb.jpg");
+        verifyNoMoreInteractions(contentAddressedStore);
+        assertEquals(1, meterRegistry.get("file.reaper.deleted").counter().count());
+        assertEquals(20, meterRegistry.get("file.reaper.reclaimed").counter().count());
+        assertEquals(4, meterRegistry.get("file.reaper.scanned").counter().count());
+        assertEquals(1, meterRegistry.get("file.reaper.progress").gauge().value());
+    }
+
+    @Test
+    void reapBatch_LinkedInTheDatabaseButMissedByTheJoin_IsKept() throws IOException {
+        when(uploadStorage.list()).thenReturn(List.of(new UploadStorage.Entry("aaaa.JPG", 10, OLD)).iterator());
+        when(blobRepository.existsByFilename("aaaa.JPG")).thenReturn(true);
+
+        reaper(100, 10).reapBatch(NOW);
+
+        verifyNoInteractions(contentAddressedStore);
+    }
+
+    @Test
+    void reapBatch_ListingStartsANewSortedRun_SeeksTheNames() throws IOException {
+        // a not yet migrated flat file, then the shards
+        when(uploadStorage.list()).thenReturn(List.of(
+                new UploadStorage.Entry("ffff.jpg", 10, OLD),
+                new UploadStorage.Entry("aaaa.jpg", 10, OLD)).iterator());
+        when(blobRepository.findFilenamesFrom("aaaa.jpg", pageable())).thenReturn(List.of("aaaa.jpg"));
+
+        reaper(100, 10).reapBatch(NOW);
+
+        verify(contentAddressedStore).discard("ffff.jpg");
+        verify(contentAddressedStore, never()).discard("aaaa.jpg");
+    }
+
+    @Test
+    void reapBatch_KeptByTheStore_NotCountedAsDeleted() throws IOException {
+        when(uploadStorage.list()).thenReturn(List.of(new UploadStorage.Entry("aaaa.jpg", 10, OLD)).iterator());
+        // linked again (or uploaded again) between the join and the delete
+        when(uploadStorage.exists("aaaa.jpg")).thenReturn(true);
+
+        reaper(100, 10).reapBatch(NOW);
+
+        assertEquals(1, meterRegistry.get("file.reaper.orphans").counter().count());
+        assertEquals(0, meterRegistry.get("file.reaper.deleted").counter().count());
+    }
+
+    @Test
+    void reapBatch_DeletesAreRateLimited() throws IOException {
+        when(uploadStorage.list()).thenReturn(List.of(
+                new UploadStorage.Entry("aaaa.jpg", 1, OLD),
+                new UploadStorage.Entry("bbbb.jpg", 1, OLD),
+                new UploadStorage.Entry("cccc.jpg", 1, OLD),
+                new UploadStorage.Entry("dddd.jpg", 1, OLD)).iterator());
+        UploadReaper reaper = reaper(100, 2);
+
+        reaper.reapBatch(NOW);
+        assertEquals(2, meterRegistry.get("file.reaper.deleted").counter().count());
+        reaper.reapBatch(NOW);
+        assertEquals(2, meterRegistry.get("file.reaper.deleted").counter().count());
+        reaper.reapBatch(NOW.plusMillis(500));
+        assertEquals(3, meterRegistry.get("file.reaper.deleted").counter().count());
+        reaper.reapBatch(NOW.plusSeconds(10));
+        assertEquals(4, meterRegistry.get("file.reaper.deleted").counter().count());
+    }
+
+    @Test
+    void reapBatch_NextPassWaitsForTheInterval() throws IOException {
+        when(uploadStorage.list()).thenAnswer(invocation -> List.of(
+                new UploadStorage.Entry("aaaa.jpg", 1, NOW),
+                new UploadStorage.Entry("bbbb.jpg", 1, NOW),
+                new UploadStorage.Entry("cccc.jpg", 1, NOW)).iterator());
+        UploadReaper reaper = reaper(2, 10);
+
+        assertEquals(2, reaper.reapBatch(NOW));
+        assertEquals(1, reaper.reapBatch(NOW));
+        assertEquals(0, reaper.reapBatch(NOW.plus(Duration.ofMinutes(59))));
+        assertEquals(2, reaper.reapBatch(NOW.plus(Duration.ofMinutes(61))));
+
+        verify(uploadStorage, times(2)).list();
+        assertEquals(1, meterRegistry.get("file.reaper.passes").counter().count());
+    }
+
+    @Test
+    void reapBatch_Disabled_DoesNothing() {
+        UploadReaper reaper = new UploadReaper(uploadStorage, blobRepository, contentAddressedStore,
+                false, 24, 100, 10, 60, meterRegistry);
+
+        reaper.reapBatch();
+
+        verifyNoInteractions(uploadStorage, blobRepository, contentAddressedStore);
+    }
+
+    private UploadReaper reaper(int batchSize, double maxDeletesPerSecond) {
+        return new UploadReaper(uploadStorage, blobRepository, contentAddressedStore,
+                true, 24, batchSize, maxDeletesPerSecond, 60, meterRegistry);
+    }
+
+    private static Pageable pageable() {
+        return PageRequest.of(0, 1000);
+    }
+}
@@ -0,0 +1,68 @@
+package com.citynote.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoUploadStreamTest {
+
+    private static final byte[] MP4_HEAD = ascii("\u0000\u0000\u0000\u0018ftypisom");
+    private static final byte[] WEBM_HEAD = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, (byte) 0x9F, 0x42, (byte) 0x86, (byte) 0x81, 1, 0x42, (byte) 0xF7, (byte) 0x81};
+
+    @Test
+    void sniff_RecognisesEachFormat() {
+        assertEquals(Optional.of(VideoFormat.MP4), sniff(MP4_HEAD));
+        assertEquals(Optional.of(VideoFormat.MP4), sniff(ascii("\u0000\u0000\u0000\u001cftypM4V ")));
+        assertEquals(Optional.of(VideoFormat.QUICKTIME), sniff(ascii("\u0000\u0000\u0000\u0014ftypqt  ")));
+        assertEquals(Optional.of(VideoFormat.WEBM), sniff(WEBM_HEAD));
+        assertEquals(Optional.empty(), sniff(ascii("\u0000\u0000\u0000\u0018ftypheic")), "HEIC is not a video");
+        assertEquals(Optional.empty(), sniff(ascii("RIFF$\u0000\u0000\u0000AVI ")));
+    }
+
+    @Test
+    void read_QuickTimeExtensionWithMp4Brand_PassesThrough() throws IOException {
+        byte[] content = withHead(MP4_HEAD, 100_000);
+
+        byte[] read = new VideoUploadStream(new ByteArrayInputStream(content), VideoFormat.QUICKTIME, 1_000_000)
+                .readAllBytes();
+
+        assertArrayEquals(content, read);
+    }
+
+    @Test
+    void read_WebmNamedMp4_IsRejected() {
+        InputStream upload = new VideoUploadStream(new ByteArrayInputStream(withHead(WEBM_HEAD, 1_000)), VideoFormat.MP4, 10_000);
+
+        UploadRejectedException rejected = assertThrows(UploadRejectedException.class, upload::readAllBytes);
+        assertTrue(rejected.getMessage().contains("does not match"));
+    }
+
+    @Test
+    void read_ImageNamedMp4_IsRejected() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0, 1};
+        InputStream upload = new VideoUploadStream(new ByteArrayInputStream(withHead(jpeg, 1_000)), VideoFormat.MP4, 10_000);
+
+        assertThrows(UploadRejectedException.class, upload::readAllBytes);
+    }
+
+    private static Optional<VideoFormat> sniff(byte[] head) {
+        return VideoFormat.sniff(head, head.length);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] withHead(byte[] head, int length) {
+        byte[] content = Arrays.copyOf(head, length);
+        Arrays.fill(content, head.length, length, (byte) 0x5A);
+        return content;
+    }
+}